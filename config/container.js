@@ -71,6 +71,12 @@
 // never conflict with a lockedDomainSuffix.
 "gadgets.jsUriTemplate" : "http://%host%/gadgets/js/%js%",
 
+// Maximum time, in milliseconds, that rendering a gadget will wait for its
+// Preload requests. Preloads that are still outstanding are abandoned and
+// fetched by the gadget on demand. Individual preloads may override this
+// with a timeout attribute. Remove to wait indefinitely.
+"gadgets.preloadTimeout" : 5000,
+
 // Use an insecure security token by default
 "gadgets.securityTokenType" : "insecure",
 
@@ -92,7 +98,11 @@
 "include-tags": ["link", "script", "embed", "img", "style"],
 "expires": "86400",
 "proxy-url": "http://localhost:8080/gadgets/proxy?url=",
-"concat-url": "http://localhost:8080/gadgets/concat?"
+"concat-url": "http://localhost:8080/gadgets/concat?",
+// Strip comments and whitespace from proxied and concatenated javascript and CSS.
+"minify": false,
+// Strip comments and collapse whitespace in rendered gadget HTML.
+"minify-html": false
 },
 
 
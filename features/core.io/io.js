@@ -214,7 +214,8 @@ gadgets.io = function() {
   /**
    * Satisfy a request with data that is prefetched as per the gadget Preload
    * directive. The preloader will only satisfy a request for a specific piece
-   * of content once.
+   * of content once. Preloads that the server gave up on are marked as
+   * timedOut, and are fetched normally instead.
    *
    * @param postData The definition of the request to be executed by the proxy
    * @param params The params to use when processing the response
@@ -227,6 +228,9 @@ gadgets.io = function() {
       var preload = gadgets.io.preloaded_[postData.url];
       if (postData.httpMethod == "GET") {
         delete gadgets.io.preloaded_[postData.url];
+        if (preload.timedOut) {
+          return false;
+        }
         if (preload.rc !== 200) {
           callback({errors : ["Error " + preload.rc]});
         } else {
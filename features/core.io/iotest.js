@@ -880,6 +880,33 @@ IoTest.prototype.testPreloadMiss_wrongUrl = function() {
   this.assertEquals('some data', resp.text);
 };
 
+IoTest.prototype.testPreloadMiss_timedOut = function() {
+  gadgets.io.preloaded_ = {
+    "http://target.example.com/somepage" : {
+      "timedOut" : true
+    }
+  };
+
+  var req = new fakeXhr.Expectation("GET", "http://example.com/json");
+  this.setStandardArgs(req, false);
+  req.setQueryArg("url", "http://target.example.com/somepage");
+
+  var resp = this.makeFakeResponse(
+      "{ 'http://target.example.com/somepage' : { 'body' : 'some data' }}");
+
+  this.fakeXhrs.expect(req, resp);
+
+  var resp = null;
+  var params = {};
+  gadgets.io.makeRequest(
+      "http://target.example.com/somepage",
+      function(data) {
+        resp = data;
+      },
+      params);
+  this.assertEquals('some data', resp.text);
+};
+
 IoTest.prototype.testPreload_error404 = function() {
   gadgets.io.preloaded_ = {
     "http://target.example.com/somepage" : {
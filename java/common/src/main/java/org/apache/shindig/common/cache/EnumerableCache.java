@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.cache;
+
+import java.util.Map;
+
+/**
+ * A cache that can list the entries it currently holds, e.g. so that its hottest entries can be
+ * saved and restored across restarts.
+ */
+public interface EnumerableCache<K, V> extends Cache<K, V> {
+
+  /**
+   * @return A copy of the entries currently in the cache, ordered from least to most recently used
+   *     when the cache tracks usage. Listing entries doesn't count as using them, so it changes
+   *     neither that order nor any cache statistics.
+   */
+  public Map<K, V> getEntries();
+}
@@ -20,28 +20,60 @@ package org.apache.shindig.common.cache;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * A basic LRU cache. Prefer using EhCache for most purposes to this class.
  */
-public class LruCache<K, V> extends LinkedHashMap<K, V> implements Cache<K, V> {
+public class LruCache<K, V> extends LinkedHashMap<K, V> implements EnumerableCache<K, V> {
   final int capacity;
 
+  // An explicit lock rather than synchronized methods, so that a virtual thread waiting for the
+  // cache doesn't hold on to its carrier thread.
+  private final Lock lock = new ReentrantLock();
+
   public LruCache(int capacity) {
     super(capacity, 0.75f, true);
     this.capacity = capacity;
   }
 
-  public synchronized V getElement(K key) {
-    return super.get(key);
+  public V getElement(K key) {
+    lock.lock();
+    try {
+      return super.get(key);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void addElement(K key, V value) {
+    lock.lock();
+    try {
+      super.put(key, value);
+    } finally {
+      lock.unlock();
+    }
   }
 
-  public synchronized void addElement(K key, V value) {
-    super.put(key, value);
+  public V removeElement(K key) {
+    lock.lock();
+    try {
+      return super.remove(key);
+    } finally {
+      lock.unlock();
+    }
   }
 
-  public synchronized V removeElement(K key) {
-    return super.remove(key);
+  public Map<K, V> getEntries() {
+    lock.lock();
+    try {
+      // Iteration follows access order, least recently used first, and unlike get doesn't change
+      // it.
+      return new LinkedHashMap<K, V>(this);
+    } finally {
+      lock.unlock();
+    }
   }
 
   public long getCapacity() {
@@ -53,7 +85,8 @@ public class LruCache<K, V> extends LinkedHashMap<K, V> implements Cache<K, V> {
   }
 
   @Override
-  protected synchronized boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+  protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+    // Only called by put, with the lock held.
     return size() > capacity;
   }
 }
@@ -22,6 +22,7 @@ import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
 import com.google.inject.Key;
+import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 import com.google.inject.name.Names;
 
@@ -40,6 +41,7 @@ import java.util.logging.Logger;
  * An in memory LRU cache only scales so far. For a production-worthy cache, use
  * {@code EhCacheCacheProvider}.
  */
+@Singleton
 public class LruCacheProvider implements CacheProvider {
   private static final Logger LOG = Logger.getLogger(LruCacheProvider.class.getName());
   private final int defaultCapacity;
@@ -23,6 +23,9 @@ import org.apache.shindig.common.util.TimeSource;
 import com.google.common.base.ReferenceType;
 import com.google.common.collect.ReferenceMap;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * A cache that uses a soft expiration policy. Entries will be kept around for potentially as long
  * as the underlying cache permits, but we keep a timestamp around to retain a notion of the actual
@@ -72,7 +75,7 @@ public class SoftExpiringCache<K, V> {
       return null;
     }
 
-    return new CachedObject<V>(value, expiration < timeSource.currentTimeMillis());
+    return new CachedObject<V>(value, expiration, expiration < timeSource.currentTimeMillis());
   }
 
   /**
@@ -89,6 +92,26 @@ public class SoftExpiringCache<K, V> {
     expirationTimes.put(value, now + maxAge);
   }
 
+  /**
+   * @return The entries in the underlying cache, least recently used first, or none if the
+   *     underlying cache can't list its entries. Listing entries doesn't count as using them.
+   */
+  @SuppressWarnings("unchecked")
+  public Map<K, CachedObject<V>> getEntries() {
+    Map<K, CachedObject<V>> entries = new LinkedHashMap<K, CachedObject<V>>();
+    if (cache instanceof EnumerableCache) {
+      long now = timeSource.currentTimeMillis();
+      for (Map.Entry<K, V> entry : ((EnumerableCache<K, V>) cache).getEntries().entrySet()) {
+        Long expiration = expirationTimes.get(entry.getValue());
+        if (expiration != null) {
+          entries.put(entry.getKey(),
+              new CachedObject<V>(entry.getValue(), expiration, expiration < now));
+        }
+      }
+    }
+    return entries;
+  }
+
   /**
    * Set a new time source. Used for testing, so package-private.
    * @param timeSource New time source to use.
@@ -100,9 +123,12 @@ public class SoftExpiringCache<K, V> {
   public static class CachedObject<V> {
     public final V obj;
     public final boolean isExpired;
+    /** The time at which the entry expires, in milliseconds since the epoch. */
+    public final long expiration;
 
-    private CachedObject(V obj, boolean isExpired) {
+    private CachedObject(V obj, long expiration, boolean isExpired) {
       this.obj = obj;
+      this.expiration = expiration;
       this.isExpired = isExpired;
     }
   }
@@ -18,16 +18,23 @@
  */
 package org.apache.shindig.common.cache.ehcache;
 
-import org.apache.shindig.common.cache.Cache;
+import org.apache.shindig.common.cache.EnumerableCache;
 
 import net.sf.ehcache.CacheManager;
 import net.sf.ehcache.Element;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 
 /**
  * Produces a cache configured from ehcache.
  */
-public class EhConfiguredCache<K, V> implements Cache<K, V> {
+public class EhConfiguredCache<K, V> implements EnumerableCache<K, V> {
 
   private net.sf.ehcache.Cache cache;
 
@@ -67,6 +74,33 @@ public class EhConfiguredCache<K, V> implements Cache<K, V> {
     return (V) value;
   }
 
+  /**
+   * Orders the entries by last access time. Elements are read with getQuiet so that listing the
+   * entries doesn't affect cache statistics or eviction.
+   */
+  @SuppressWarnings("unchecked")
+  public Map<K, V> getEntries() {
+    List<Element> elements = new ArrayList<Element>();
+    for (Object key : cache.getKeysNoDuplicateCheck()) {
+      Element element = cache.getQuiet(key);
+      if (element != null) {
+        elements.add(element);
+      }
+    }
+    Collections.sort(elements, new Comparator<Element>() {
+      public int compare(Element a, Element b) {
+        long aTime = Math.max(a.getLastAccessTime(), a.getCreationTime());
+        long bTime = Math.max(b.getLastAccessTime(), b.getCreationTime());
+        return aTime < bTime ? -1 : (aTime == bTime ? 0 : 1);
+      }
+    });
+    Map<K, V> entries = new LinkedHashMap<K, V>();
+    for (Element element : elements) {
+      entries.put((K) element.getObjectKey(), (V) element.getObjectValue());
+    }
+    return entries;
+  }
+
   public long getCapacity() {
     return cache.getCacheConfiguration().getMaxElementsInMemory() +
         cache.getCacheConfiguration().getMaxElementsOnDisk();
@@ -48,4 +48,14 @@ public class CharsetUtil {
     ByteBuffer bb = UTF8.encode(s);
     return ArrayUtils.subarray(bb.array(), 0, bb.limit());
   }
+
+  /**
+   * @return The string for the input UTF-8 bytes.
+   */
+  public static String newUtf8String(byte[] b) {
+    if (b == null) {
+      return "";
+    }
+    return UTF8.decode(ByteBuffer.wrap(b)).toString();
+  }
 }
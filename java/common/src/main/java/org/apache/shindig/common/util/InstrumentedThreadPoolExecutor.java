@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.util;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread pool with a bounded number of threads and a bounded queue, which records how long
+ * tasks wait before they run and how many are rejected. Statistics are exported over JMX.
+ *
+ * Tasks that arrive when every thread is busy and the queue is full are handled according to the
+ * pool's {@link RejectionPolicy}, so that a slow dependency backs up into the callers instead of
+ * creating an unbounded number of threads.
+ */
+public class InstrumentedThreadPoolExecutor extends ThreadPoolExecutor
+    implements InstrumentedThreadPoolExecutorMBean {
+
+  /**
+   * What happens to a task submitted to a saturated pool.
+   */
+  public enum RejectionPolicy {
+    /** The task runs on the submitting thread. */
+    CALLER_RUNS,
+    /** A {@link RejectedExecutionException} is thrown to the submitter. */
+    ABORT;
+
+    /**
+     * Parses a policy name such as "caller_runs" or "abort", ignoring case.
+     */
+    public static RejectionPolicy parse(String name) {
+      return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+  }
+
+  private final String name;
+  private final RejectionPolicy rejectionPolicy;
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong started = new AtomicLong();
+  private final AtomicLong totalWait = new AtomicLong();
+  private final AtomicLong maxWait = new AtomicLong();
+
+  /**
+   * @param name A name for the pool, used for thread names and the JMX object name.
+   * @param coreSize The number of threads kept when the pool is idle.
+   * @param maxSize The maximum number of threads.
+   * @param queueCapacity The number of tasks that may wait for a thread. 0 hands tasks directly
+   *     to threads, so the pool grows to maxSize before rejecting anything.
+   * @param keepAliveMillis How long threads above coreSize are kept while idle.
+   * @param rejectionPolicy What to do with tasks that can't be run or queued.
+   */
+  public InstrumentedThreadPoolExecutor(String name, int coreSize, int maxSize, int queueCapacity,
+      long keepAliveMillis, RejectionPolicy rejectionPolicy) {
+    this(name, coreSize, maxSize, queueCapacity, keepAliveMillis, rejectionPolicy,
+        new NamedThreadFactory(name));
+  }
+
+  private InstrumentedThreadPoolExecutor(String name, int coreSize, int maxSize,
+      int queueCapacity, long keepAliveMillis, RejectionPolicy rejectionPolicy,
+      ThreadFactory threadFactory) {
+    super(coreSize, Math.max(Math.max(coreSize, maxSize), 1), keepAliveMillis,
+        TimeUnit.MILLISECONDS, createQueue(queueCapacity), threadFactory);
+    this.name = name;
+    this.rejectionPolicy = rejectionPolicy;
+    setRejectedExecutionHandler(new CountingRejectionHandler());
+  }
+
+  /**
+   * Creates an executor that runs every task on a new virtual thread. Idle threads aren't kept and
+   * tasks are never queued; at most maxConcurrency tasks run at once, and further tasks are handled
+   * according to rejectionPolicy.
+   *
+   * @throws UnsupportedOperationException If the JVM doesn't support virtual threads.
+   */
+  public static InstrumentedThreadPoolExecutor newVirtualThreadExecutor(String name,
+      int maxConcurrency, RejectionPolicy rejectionPolicy) {
+    return new InstrumentedThreadPoolExecutor(name, 0, maxConcurrency, 0, 0L, rejectionPolicy,
+        VirtualThreads.newThreadFactory(name + '-'));
+  }
+
+  private static BlockingQueue<Runnable> createQueue(int capacity) {
+    if (capacity <= 0) {
+      return new SynchronousQueue<Runnable>();
+    }
+    return new LinkedBlockingQueue<Runnable>(capacity);
+  }
+
+  /**
+   * Registers the pool's statistics with JMX under the pool's name.
+   */
+  public void registerMBean() {
+    JmxUtil.register(this, "Executor", name);
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    super.execute(new TimedRunnable(command));
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getRejectionPolicy() {
+    return rejectionPolicy.toString();
+  }
+
+  public int getQueueSize() {
+    return getQueue().size();
+  }
+
+  public int getQueueRemainingCapacity() {
+    return getQueue().remainingCapacity();
+  }
+
+  public long getRejectedCount() {
+    return rejected.get();
+  }
+
+  public long getAverageWaitMillis() {
+    long count = started.get();
+    return count == 0 ? 0 : totalWait.get() / count;
+  }
+
+  public long getMaxWaitMillis() {
+    return maxWait.get();
+  }
+
+  private void recordWait(long millis) {
+    started.incrementAndGet();
+    totalWait.addAndGet(millis);
+    long max = maxWait.get();
+    while (millis > max && !maxWait.compareAndSet(max, millis)) {
+      max = maxWait.get();
+    }
+  }
+
+  /**
+   * Records the time between a task being submitted and it starting to run.
+   */
+  private class TimedRunnable implements Runnable {
+    private final Runnable task;
+    private final long submitted = System.currentTimeMillis();
+
+    TimedRunnable(Runnable task) {
+      this.task = task;
+    }
+
+    public void run() {
+      recordWait(System.currentTimeMillis() - submitted);
+      task.run();
+    }
+  }
+
+  private class CountingRejectionHandler implements RejectedExecutionHandler {
+    public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+      rejected.incrementAndGet();
+      if (executor.isShutdown()) {
+        throw new RejectedExecutionException(name + " has been shut down");
+      }
+      if (rejectionPolicy == RejectionPolicy.CALLER_RUNS) {
+        task.run();
+      } else {
+        throw new RejectedExecutionException(name + " is saturated: " + getActiveCount() +
+            " active threads and " + getQueueSize() + " queued tasks");
+      }
+    }
+  }
+
+  /**
+   * Creates daemon threads named after the pool, so that they're recognizable in thread dumps and
+   * never keep the server from shutting down.
+   */
+  private static class NamedThreadFactory implements ThreadFactory {
+    private final String prefix;
+    private final AtomicInteger count = new AtomicInteger();
+
+    NamedThreadFactory(String name) {
+      this.prefix = name + '-';
+    }
+
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
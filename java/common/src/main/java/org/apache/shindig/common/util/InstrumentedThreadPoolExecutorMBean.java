@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.util;
+
+/**
+ * JMX view of {@link InstrumentedThreadPoolExecutor}. Pool sizes may be changed at runtime.
+ */
+public interface InstrumentedThreadPoolExecutorMBean {
+  /**
+   * @return The name of the pool.
+   */
+  String getName();
+
+  /**
+   * @return What happens to tasks submitted when the pool is saturated.
+   */
+  String getRejectionPolicy();
+
+  int getCorePoolSize();
+
+  void setCorePoolSize(int size);
+
+  int getMaximumPoolSize();
+
+  void setMaximumPoolSize(int size);
+
+  /**
+   * @return The current number of threads in the pool.
+   */
+  int getPoolSize();
+
+  /**
+   * @return The largest number of threads that have been in the pool at once.
+   */
+  int getLargestPoolSize();
+
+  /**
+   * @return The approximate number of threads running tasks.
+   */
+  int getActiveCount();
+
+  /**
+   * @return The number of tasks waiting for a thread.
+   */
+  int getQueueSize();
+
+  /**
+   * @return The number of additional tasks that may be queued before tasks are rejected.
+   */
+  int getQueueRemainingCapacity();
+
+  /**
+   * @return The approximate number of tasks that have finished running.
+   */
+  long getCompletedTaskCount();
+
+  /**
+   * @return The number of tasks that couldn't be run or queued when they were submitted.
+   */
+  long getRejectedCount();
+
+  /**
+   * @return The average time tasks waited for a thread, in milliseconds.
+   */
+  long getAverageWaitMillis();
+
+  /**
+   * @return The longest time any task waited for a thread, in milliseconds.
+   */
+  long getMaxWaitMillis();
+}
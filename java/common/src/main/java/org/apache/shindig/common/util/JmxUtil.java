@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Routines for exposing server statistics over JMX.
+ */
+public class JmxUtil {
+  private static final Logger LOG = Logger.getLogger(JmxUtil.class.getName());
+
+  public static final String DOMAIN = "org.apache.shindig";
+
+  /**
+   * Registers a standard MBean with the platform MBean server, replacing any existing bean with
+   * the same name. Failures are logged rather than thrown since statistics are never critical to
+   * serving requests.
+   *
+   * @param mbean The bean to register. Must implement an interface named after its class with an
+   *     "MBean" suffix.
+   * @param type The value of the "type" key of the bean's object name.
+   * @param name The value of the "name" key of the bean's object name. May be null.
+   */
+  public static void register(Object mbean, String type, String name) {
+    try {
+      String objectName = DOMAIN + ":type=" + ObjectName.quote(type);
+      if (name != null) {
+        objectName += ",name=" + ObjectName.quote(name);
+      }
+      ObjectName oName = new ObjectName(objectName);
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      if (server.isRegistered(oName)) {
+        server.unregisterMBean(oName);
+      }
+      server.registerMBean(mbean, oName);
+    } catch (JMException e) {
+      LOG.log(Level.WARNING, "Unable to register " + type + " with JMX", e);
+    } catch (SecurityException e) {
+      LOG.log(Level.WARNING, "Unable to register " + type + " with JMX", e);
+    }
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates virtual threads when the JVM supports them (Java 21 and later). Shindig still runs on
+ * older JVMs, so the Thread.Builder API is looked up reflectively.
+ */
+public final class VirtualThreads {
+  private static final Method OF_VIRTUAL;
+  private static final Method NAME;
+  private static final Method FACTORY;
+
+  static {
+    Method ofVirtual = null;
+    Method name = null;
+    Method factory = null;
+    try {
+      Class<?> builder = Class.forName("java.lang.Thread$Builder");
+      ofVirtual = Thread.class.getMethod("ofVirtual");
+      name = builder.getMethod("name", String.class, long.class);
+      factory = builder.getMethod("factory");
+    } catch (ClassNotFoundException e) {
+      ofVirtual = null;
+    } catch (NoSuchMethodException e) {
+      ofVirtual = null;
+    }
+    OF_VIRTUAL = ofVirtual;
+    NAME = name;
+    FACTORY = factory;
+  }
+
+  private VirtualThreads() {}
+
+  /**
+   * @return True if virtual threads can be created on this JVM.
+   */
+  public static boolean isSupported() {
+    return OF_VIRTUAL != null;
+  }
+
+  /**
+   * @param prefix Threads are named prefix followed by a sequence number.
+   * @return A factory creating a new virtual thread for every runnable.
+   * @throws UnsupportedOperationException If the JVM doesn't support virtual threads.
+   */
+  public static ThreadFactory newThreadFactory(String prefix) {
+    if (!isSupported()) {
+      throw new UnsupportedOperationException("Virtual threads require Java 21 or later.");
+    }
+    try {
+      Object builder = OF_VIRTUAL.invoke(null);
+      builder = NAME.invoke(builder, prefix, 1L);
+      return (ThreadFactory) FACTORY.invoke(builder);
+    } catch (Exception e) {
+      throw new UnsupportedOperationException("Unable to create virtual threads: " + e);
+    }
+  }
+}
@@ -32,6 +32,10 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -60,18 +64,11 @@ public class XmlUtil {
   private static final DocumentBuilderFactory builderFactory
       = DocumentBuilderFactory.newInstance();
 
-  private static final ThreadLocal<DocumentBuilder> reusableBuilder
-      = new ThreadLocal<DocumentBuilder>() {
-          @Override
-          protected DocumentBuilder initialValue() {
-            try {
-              LOG.info("Created a new document builder");
-              return builderFactory.newDocumentBuilder();
-            } catch (ParserConfigurationException e) {
-              throw new RuntimeException(e);
-            }
-          }
-        };
+  // Builders are pooled rather than kept per thread, since a thread per task (as with virtual
+  // threads) would create a new builder for every parse.
+  private static final int MAX_POOLED_BUILDERS = 64;
+  private static final BlockingQueue<DocumentBuilder> builderPool
+      = new ArrayBlockingQueue<DocumentBuilder>(MAX_POOLED_BUILDERS);
 
   static {
     // Disable various insecure and/or expensive options.
@@ -263,21 +260,100 @@ public class XmlUtil {
     return getIntAttribute(node, attr, 0);
   }
 
+  /**
+   * @return All attributes of the node, in document order, keyed on their qualified names.
+   */
+  public static Map<String, String> getAttributes(Node node) {
+    NamedNodeMap attrs = node.getAttributes();
+    Map<String, String> attributes = new LinkedHashMap<String, String>(attrs.getLength() * 2);
+    for (int i = 0, j = attrs.getLength(); i < j; ++i) {
+      Node attr = attrs.item(i);
+      attributes.put(attr.getNodeName(), attr.getNodeValue());
+    }
+    return attributes;
+  }
+
+  /**
+   * The methods below read already extracted attributes, such as those returned by
+   * {@link #getAttributes} or collected by a streaming parser, the same way as the methods above
+   * read a node's attributes.
+   */
+
+  public static String getAttribute(Map<String, String> attributes, String attr, String def) {
+    String value = attributes.get(attr);
+    return value == null ? def : value;
+  }
+
+  public static String getAttribute(Map<String, String> attributes, String attr) {
+    return attributes.get(attr);
+  }
+
+  public static Uri getUriAttribute(Map<String, String> attributes, String attr, Uri def) {
+    String uri = attributes.get(attr);
+    if (uri != null) {
+      try {
+        return Uri.parse(uri);
+      } catch (IllegalArgumentException e) {
+        return def;
+      }
+    }
+    return def;
+  }
+
+  public static Uri getUriAttribute(Map<String, String> attributes, String attr) {
+    return getUriAttribute(attributes, attr, null);
+  }
+
+  public static boolean getBoolAttribute(Map<String, String> attributes, String attr,
+      boolean def) {
+    String value = attributes.get(attr);
+    if (value == null) {
+      return def;
+    }
+    return Boolean.parseBoolean(value);
+  }
+
+  public static boolean getBoolAttribute(Map<String, String> attributes, String attr) {
+    return getBoolAttribute(attributes, attr, false);
+  }
+
+  public static int getIntAttribute(Map<String, String> attributes, String attr, int def) {
+    String value = attributes.get(attr);
+    if (value == null) {
+      return def;
+    }
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      return def;
+    }
+  }
+
+  public static int getIntAttribute(Map<String, String> attributes, String attr) {
+    return getIntAttribute(attributes, attr, 0);
+  }
+
   /**
    * Fetch a builder from the pool, creating a new one only if necessary.
    */
   private static DocumentBuilder getBuilder() throws ParserConfigurationException {
     DocumentBuilder builder;
-    if (canReuseBuilders) {
-      builder = reusableBuilder.get();
-      builder.reset();
-    } else {
+    builder = canReuseBuilders ? builderPool.poll() : null;
+    if (builder == null) {
       builder = builderFactory.newDocumentBuilder();
+    } else {
+      builder.reset();
     }
     builder.setErrorHandler(errorHandler);
     return builder;
   }
 
+  private static void releaseBuilder(DocumentBuilder builder) {
+    if (canReuseBuilders) {
+      builderPool.offer(builder);
+    }
+  }
+
   /**
    * Attempts to parse the input xml into a single element.
    * @param xml
@@ -287,9 +363,12 @@ public class XmlUtil {
   public static Element parse(String xml) throws XmlException {
     try {
       DocumentBuilder builder = getBuilder();
-      InputSource is = new InputSource(new StringReader(xml.trim()));
-      Element element = builder.parse(is).getDocumentElement();
-      return element;
+      try {
+        InputSource is = new InputSource(new StringReader(xml.trim()));
+        return builder.parse(is).getDocumentElement();
+      } finally {
+        releaseBuilder(builder);
+      }
     } catch (SAXParseException e) {
       throw new XmlException(
           e.getMessage() + " At: (" + e.getLineNumber() + ',' + e.getColumnNumber() + ')', e);
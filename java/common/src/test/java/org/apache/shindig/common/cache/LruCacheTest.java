@@ -22,6 +22,9 @@ import static org.junit.Assert.assertEquals;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+
 public class LruCacheTest {
   private static final int TEST_CAPACITY = 2;
 
@@ -49,4 +52,22 @@ public class LruCacheTest {
     assertEquals(TEST_CAPACITY, cache.getCapacity());
     assertEquals(null, cache.getElement("0"));
   }
+
+  @Test
+  public void entriesLeastRecentlyUsedFirst() {
+    cache.addElement("0", "0");
+    cache.addElement("1", "1");
+    cache.getElement("0");
+    assertEquals(Arrays.asList("1", "0"), new ArrayList<String>(cache.getEntries().keySet()));
+    assertEquals("1", cache.getEntries().get("1"));
+  }
+
+  @Test
+  public void listingEntriesDoesNotUseThem() {
+    cache.addElement("0", "0");
+    cache.addElement("1", "1");
+    cache.getEntries();
+    cache.addElement("2", "2");
+    assertEquals(null, cache.getElement("0"));
+  }
 }
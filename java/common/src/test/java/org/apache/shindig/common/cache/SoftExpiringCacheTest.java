@@ -22,6 +22,10 @@ import org.apache.shindig.common.util.FakeTimeSource;
 
 import junit.framework.TestCase;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
 public class SoftExpiringCacheTest extends TestCase {
   private FakeTimeSource timeSource;
   private Cache<String, String> cache;
@@ -57,4 +61,17 @@ public class SoftExpiringCacheTest extends TestCase {
     SoftExpiringCache<String, String> expiringCache = makeSoftExpiringCache();
     assertNull(expiringCache.getElement("not set"));
   }
+
+  public void testEntriesAndExpiration() {
+    SoftExpiringCache<String, String> expiringCache = makeSoftExpiringCache();
+    timeSource.setCurrentTimeMillis(1000);
+    expiringCache.addElement("key1", "val1", 500);
+    expiringCache.addElement("key2", "val2", 500);
+
+    Map<String, SoftExpiringCache.CachedObject<String>> entries = expiringCache.getEntries();
+    assertEquals(Arrays.asList("key1", "key2"), new ArrayList<String>(entries.keySet()));
+    assertEquals("val1", entries.get("key1").obj);
+    assertEquals(1500, entries.get("key1").expiration);
+    assertEquals(1500, expiringCache.getElement("key1").expiration);
+  }
 }
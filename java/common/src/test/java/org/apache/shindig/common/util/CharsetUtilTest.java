@@ -66,4 +66,11 @@ public class CharsetUtilTest {
   public void testLatin1() {
     ArrayAssert.assertEquals(LATIN1_UTF8_DATA, CharsetUtil.getUtf8Bytes(LATIN1_STRING));
   }
+
+  @Test
+  public void testNewUtf8String() {
+    assertEquals(LATIN1_STRING, CharsetUtil.newUtf8String(LATIN1_UTF8_DATA));
+    assertEquals("", CharsetUtil.newUtf8String(new byte[] {}));
+    assertEquals("", CharsetUtil.newUtf8String(null));
+  }
 }
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.util;
+
+import org.apache.shindig.common.util.InstrumentedThreadPoolExecutor.RejectionPolicy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Compares platform and virtual thread executors running blocking tasks, such as preloads and
+ * metadata fetches waiting on a slow origin.
+ *
+ * Usage: ExecutorBenchmark [tasks] [blockMillis] [concurrency]
+ */
+public class ExecutorBenchmark {
+  private final int tasks;
+  private final long blockMillis;
+  private final int concurrency;
+
+  private ExecutorBenchmark(int tasks, long blockMillis, int concurrency) {
+    this.tasks = tasks;
+    this.blockMillis = blockMillis;
+    this.concurrency = concurrency;
+  }
+
+  private void run(String label, InstrumentedThreadPoolExecutor executor) throws Exception {
+    long start = System.currentTimeMillis();
+    List<Future<Long>> results = new ArrayList<Future<Long>>(tasks);
+    for (int i = 0; i < tasks; ++i) {
+      final long submitted = System.currentTimeMillis();
+      results.add(executor.submit(new Callable<Long>() {
+        public Long call() throws InterruptedException {
+          Thread.sleep(blockMillis);
+          return System.currentTimeMillis() - submitted;
+        }
+      }));
+    }
+    long totalLatency = 0;
+    for (Future<Long> result : results) {
+      totalLatency += result.get();
+    }
+    long elapsed = Math.max(1, System.currentTimeMillis() - start);
+    System.out.println(label + ": " + (tasks * 1000L / elapsed) + " tasks/s, average latency " +
+        (totalLatency / tasks) + "ms, average wait " + executor.getAverageWaitMillis() +
+        "ms, largest pool " + executor.getLargestPoolSize() + ", rejected " +
+        executor.getRejectedCount());
+    executor.shutdown();
+  }
+
+  private void runAll(boolean print) throws Exception {
+    run("platform threads", new InstrumentedThreadPoolExecutor("platform", concurrency / 4,
+        concurrency, concurrency, 60000L, RejectionPolicy.CALLER_RUNS));
+    if (VirtualThreads.isSupported()) {
+      run("virtual threads", InstrumentedThreadPoolExecutor.newVirtualThreadExecutor("virtual",
+          concurrency, RejectionPolicy.CALLER_RUNS));
+    } else if (print) {
+      System.out.println("Virtual threads aren't supported by this JVM.");
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int tasks = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+    long blockMillis = args.length > 1 ? Long.parseLong(args[1]) : 50L;
+    int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+    ExecutorBenchmark benchmark = new ExecutorBenchmark(tasks, blockMillis, concurrency);
+    System.out.println("Warming up...");
+    benchmark.runAll(false);
+    System.out.println(tasks + " tasks blocking for " + blockMillis + "ms, at most " +
+        concurrency + " at once:");
+    benchmark.runAll(true);
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.common.util;
+
+import org.apache.shindig.common.util.InstrumentedThreadPoolExecutor.RejectionPolicy;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for InstrumentedThreadPoolExecutor.
+ */
+public class InstrumentedThreadPoolExecutorTest extends TestCase {
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final CountDownLatch running = new CountDownLatch(1);
+  private InstrumentedThreadPoolExecutor executor;
+
+  @Override
+  protected void tearDown() {
+    release.countDown();
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+
+  private final Runnable blocker = new Runnable() {
+    public void run() {
+      running.countDown();
+      try {
+        release.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  };
+
+  private Callable<Thread> currentThread() {
+    return new Callable<Thread>() {
+      public Thread call() {
+        return Thread.currentThread();
+      }
+    };
+  }
+
+  public void testRunsTasksOnNamedDaemonThreads() throws Exception {
+    executor = new InstrumentedThreadPoolExecutor("test", 1, 1, 10, 1000L,
+        RejectionPolicy.ABORT);
+    Thread thread = executor.submit(currentThread()).get();
+    assertTrue(thread.getName().startsWith("test-"));
+    assertTrue(thread.isDaemon());
+    assertEquals(0, executor.getRejectedCount());
+  }
+
+  public void testCallerRunsWhenSaturated() throws Exception {
+    executor = new InstrumentedThreadPoolExecutor("test", 1, 1, 1, 1000L,
+        RejectionPolicy.CALLER_RUNS);
+    executor.execute(blocker);
+    assertTrue(running.await(5, TimeUnit.SECONDS));
+    executor.execute(new Runnable() {
+      public void run() {}
+    });
+    assertEquals(1, executor.getQueueSize());
+    assertEquals(0, executor.getQueueRemainingCapacity());
+
+    Future<Thread> inline = executor.submit(currentThread());
+    assertSame(Thread.currentThread(), inline.get());
+    assertEquals(1, executor.getRejectedCount());
+    assertEquals(1, executor.getActiveCount());
+  }
+
+  public void testAbortWhenSaturated() throws Exception {
+    executor = new InstrumentedThreadPoolExecutor("test", 1, 1, 0, 1000L,
+        RejectionPolicy.ABORT);
+    executor.execute(blocker);
+    assertTrue(running.await(5, TimeUnit.SECONDS));
+    try {
+      executor.submit(currentThread());
+      fail("Saturated executor should reject tasks.");
+    } catch (RejectedExecutionException e) {
+      // Expected.
+    }
+    assertEquals(1, executor.getRejectedCount());
+  }
+
+  public void testWaitTimeRecorded() throws Exception {
+    executor = new InstrumentedThreadPoolExecutor("test", 1, 1, 10, 1000L,
+        RejectionPolicy.ABORT);
+    executor.execute(blocker);
+    assertTrue(running.await(5, TimeUnit.SECONDS));
+    Future<Thread> queued = executor.submit(currentThread());
+    Thread.sleep(50L);
+    release.countDown();
+    queued.get();
+    assertTrue(executor.getMaxWaitMillis() >= 40);
+    assertTrue(executor.getAverageWaitMillis() > 0);
+  }
+
+  public void testVirtualThreadExecutor() throws Exception {
+    if (!VirtualThreads.isSupported()) {
+      try {
+        InstrumentedThreadPoolExecutor.newVirtualThreadExecutor("test", 10,
+            RejectionPolicy.ABORT);
+        fail("Virtual threads aren't supported by this JVM.");
+      } catch (UnsupportedOperationException e) {
+        // Expected.
+      }
+      return;
+    }
+    executor = InstrumentedThreadPoolExecutor.newVirtualThreadExecutor("test", 1,
+        RejectionPolicy.CALLER_RUNS);
+    executor.execute(blocker);
+    assertTrue(running.await(5, TimeUnit.SECONDS));
+    assertEquals(0, executor.getQueueRemainingCapacity());
+    assertSame(Thread.currentThread(), executor.submit(currentThread()).get());
+    assertEquals(1, executor.getRejectedCount());
+    release.countDown();
+    Thread thread = executor.submit(currentThread()).get();
+    assertTrue(thread.getName().startsWith("test-"));
+  }
+
+  public void testParseRejectionPolicy() {
+    assertEquals(RejectionPolicy.CALLER_RUNS, RejectionPolicy.parse(" caller_runs"));
+    assertEquals(RejectionPolicy.CALLER_RUNS, RejectionPolicy.parse("Caller-Runs"));
+    assertEquals(RejectionPolicy.ABORT, RejectionPolicy.parse("abort"));
+  }
+}
@@ -21,46 +21,148 @@ import org.apache.shindig.common.uri.Uri;
 import org.apache.shindig.gadgets.spec.GadgetSpec;
 import org.apache.shindig.gadgets.spec.LocaleSpec;
 import org.apache.shindig.gadgets.spec.MessageBundle;
+import org.apache.shindig.gadgets.spec.ModulePrefs;
 
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Core implementation of MessageBundleFactory that ensures proper MessageBundle creation and
  * delegates caching and network retrieval to concreate implementations.
+ *
+ * A bundle is merged from the locale's fallback chain, e.g. all_ALL, en_ALL and en_US. Remote
+ * bundles in the chain are fetched concurrently when an executor is available, so that a cold
+ * cache costs a single round trip rather than one per locale.
  */
 public abstract class AbstractMessageBundleFactory implements MessageBundleFactory {
   private static final Locale ALL_ALL = new Locale("all", "ALL");
 
+  private Executor executor;
+
+  /**
+   * @param executor Runs remote bundle fetches concurrently. Without one, they are fetched one
+   *     at a time on the calling thread.
+   */
+  @Inject(optional = true)
+  public void setExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
   public MessageBundle getBundle(GadgetSpec spec, Locale locale, boolean ignoreCache)
       throws GadgetException {
-    MessageBundle parent = getParentBundle(spec, locale, ignoreCache);
-    MessageBundle child = null;
-    LocaleSpec localeSpec = spec.getModulePrefs().getLocale(locale);
-    if (localeSpec == null) {
-      return parent == null ? MessageBundle.EMPTY : parent;
+    List<LocaleSpec> chain = getLocaleChain(spec.getModulePrefs(), locale);
+    if (chain.isEmpty()) {
+      return MessageBundle.EMPTY;
+    }
+
+    List<FutureTask<MessageBundle>> fetches = Lists.newArrayList();
+    for (LocaleSpec localeSpec : chain) {
+      if (isRemote(localeSpec)) {
+        fetches.add(new FutureTask<MessageBundle>(new FetchBundleTask(localeSpec, ignoreCache)));
+      }
+    }
+
+    // All but the last fetch are handed to the executor. This thread then runs the last one, and
+    // any others that the executor hasn't started yet.
+    if (executor != null) {
+      try {
+        for (int i = 0; i < fetches.size() - 1; ++i) {
+          executor.execute(fetches.get(i));
+        }
+      } catch (RejectedExecutionException e) {
+        // The remaining fetches run below.
+      }
+    }
+    for (int i = fetches.size() - 1; i >= 0; --i) {
+      fetches.get(i).run();
     }
+
+    MessageBundle merged = null;
+    int fetched = 0;
+    for (LocaleSpec localeSpec : chain) {
+      MessageBundle child;
+      if (isRemote(localeSpec)) {
+        child = getFetchedBundle(fetches.get(fetched++));
+      } else {
+        child = localeSpec.getMessageBundle();
+      }
+      merged = new MessageBundle(merged, child);
+    }
+    return merged;
+  }
+
+  private static boolean isRemote(LocaleSpec localeSpec) {
     Uri messages = localeSpec.getMessages();
-    if (messages == null || messages.toString().length() == 0) {
-      child = localeSpec.getMessageBundle();
-    } else {
-      child = fetchBundle(localeSpec, ignoreCache);
+    return messages != null && messages.toString().length() > 0;
+  }
+
+  /**
+   * @return The distinct locale specs that make up the bundle for the given locale, most general
+   *     first.
+   */
+  private static List<LocaleSpec> getLocaleChain(ModulePrefs prefs, Locale locale) {
+    List<Locale> locales = Lists.newArrayList();
+    if (!locale.getLanguage().equalsIgnoreCase("all")) {
+      locales.add(ALL_ALL);
+      if (!locale.getCountry().equalsIgnoreCase("ALL")) {
+        locales.add(new Locale(locale.getLanguage(), "ALL"));
+      }
     }
+    locales.add(locale);
 
-    return new MessageBundle(parent, child);
+    // getLocale falls back to more general locales itself, so the same spec may be found twice.
+    List<LocaleSpec> chain = Lists.newArrayList();
+    LocaleSpec previous = null;
+    for (Locale candidate : locales) {
+      LocaleSpec localeSpec = prefs.getLocale(candidate);
+      if (localeSpec != null && localeSpec != previous) {
+        chain.add(localeSpec);
+        previous = localeSpec;
+      }
+    }
+    return chain;
   }
 
-  private MessageBundle getParentBundle(GadgetSpec spec, Locale locale, boolean ignoreCache)
+  private static MessageBundle getFetchedBundle(FutureTask<MessageBundle> fetch)
       throws GadgetException {
-    if (locale.getLanguage().equalsIgnoreCase("all")) {
-      // Top most locale already.
-      return null;
+    try {
+      return fetch.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new GadgetException(GadgetException.Code.INTERNAL_SERVER_ERROR, e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof GadgetException) {
+        throw (GadgetException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new GadgetException(GadgetException.Code.INTERNAL_SERVER_ERROR, cause);
     }
+  }
+
+  private class FetchBundleTask implements Callable<MessageBundle> {
+    private final LocaleSpec localeSpec;
+    private final boolean ignoreCache;
 
-    if (locale.getCountry().equalsIgnoreCase("ALL")) {
-      return getBundle(spec, ALL_ALL, ignoreCache);
+    public FetchBundleTask(LocaleSpec localeSpec, boolean ignoreCache) {
+      this.localeSpec = localeSpec;
+      this.ignoreCache = ignoreCache;
     }
 
-    return getBundle(spec, new Locale(locale.getLanguage(), "ALL"), ignoreCache);
+    public MessageBundle call() throws GadgetException {
+      return fetchBundle(localeSpec, ignoreCache);
+    }
   }
 
   /**
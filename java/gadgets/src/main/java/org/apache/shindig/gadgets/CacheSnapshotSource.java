@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Implemented by components whose cached entries can be saved to a snapshot and restored after a
+ * restart, so that a freshly started server doesn't send all of its traffic to origin servers.
+ *
+ * @see CacheSnapshotter
+ */
+public interface CacheSnapshotSource {
+
+  /**
+   * @return The name of this source's section of the snapshot. Must be unique among sources.
+   */
+  String getSnapshotName();
+
+  /**
+   * Called before any snapshot is written. Sources that don't normally keep everything that they
+   * need to write a snapshot should start keeping it.
+   */
+  void enableSnapshots();
+
+  /**
+   * Writes the most recently used entries, without counting that as using them. Entries that are
+   * past their expiration time may be written so that they remain available for negative caching
+   * after a restart.
+   *
+   * Entries are written field by field, never as serialized objects, so that reading a snapshot
+   * can't instantiate arbitrary classes. {@link CacheSnapshotter} has helpers for strings and byte
+   * arrays.
+   *
+   * @param out The stream to write to.
+   * @param maxEntries The maximum number of entries to write.
+   * @return The number of entries written.
+   */
+  int writeSnapshot(DataOutput out, int maxEntries) throws IOException;
+
+  /**
+   * Restores entries written by {@link #writeSnapshot}, keeping their original expiration times.
+   * Entries that were added since the server started are never replaced.
+   *
+   * @return The number of entries restored.
+   */
+  int readSnapshot(DataInput in) throws IOException;
+}
@@ -0,0 +1,352 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets;
+
+import org.apache.shindig.common.util.CharsetUtil;
+import org.apache.shindig.gadgets.http.HttpCache;
+
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Saves the hottest entries of the spec, message bundle and HTTP response caches to a local file,
+ * and restores them when the server starts, so that a restarted server doesn't begin with empty
+ * caches and send all of its traffic to origin servers.
+ *
+ * Snapshots are disabled unless shindig.cache.snapshot.file is set. When enabled, the snapshot is
+ * restored in the background by {@link #start}, and saved every shindig.cache.snapshot.interval
+ * milliseconds and by {@link #stop}. Entries keep their original expiration times.
+ *
+ * The file holds plain data written by each {@link CacheSnapshotSource}, never serialized objects,
+ * and is written to a temporary file first so that a crash while saving leaves the previous
+ * snapshot intact.
+ */
+@Singleton
+public class CacheSnapshotter {
+  private static final Logger LOG = Logger.getLogger(CacheSnapshotter.class.getName());
+  static final int FORMAT_VERSION = 2;
+
+  private final List<CacheSnapshotSource> sources;
+  private final Executor executor;
+  private final File file;
+  private final long interval;
+  private final int maxEntries;
+  private final Lock fileLock = new ReentrantLock();
+  private volatile boolean restored;
+  private boolean started;
+  private Timer timer;
+
+  /**
+   * @param sources Snapshot sources, in the order in which they are restored.
+   * @param executor Runs the restore started by {@link #start}.
+   * @param file The snapshot file, or null to disable snapshots.
+   * @param interval How often to save the snapshot, in milliseconds. 0 only saves it on stop.
+   * @param maxEntries The maximum number of entries saved for each source.
+   */
+  public CacheSnapshotter(List<CacheSnapshotSource> sources, Executor executor, File file,
+      long interval, int maxEntries) {
+    this.sources = sources;
+    this.executor = executor;
+    this.file = file;
+    this.interval = interval;
+    this.maxEntries = maxEntries;
+  }
+
+  @Inject
+  public CacheSnapshotter(HttpCache httpCache,
+                          MessageBundleFactory bundleFactory,
+                          GadgetSpecFactory specFactory,
+                          @Named(ExecutorProvider.BACKGROUND) ExecutorService executor,
+                          @Named("shindig.cache.snapshot.file") String fileName,
+                          @Named("shindig.cache.snapshot.interval") long interval,
+                          @Named("shindig.cache.snapshot.maxEntries") int maxEntries) {
+    // HTTP responses go first, so that anything restored later finds its resources cached.
+    this(getSources(httpCache, bundleFactory, specFactory), executor,
+        fileName == null || fileName.trim().length() == 0 ? null : new File(fileName.trim()),
+        interval, maxEntries);
+  }
+
+  private static List<CacheSnapshotSource> getSources(Object... candidates) {
+    List<CacheSnapshotSource> sources = Lists.newArrayList();
+    for (Object candidate : candidates) {
+      if (candidate instanceof CacheSnapshotSource) {
+        sources.add((CacheSnapshotSource) candidate);
+      }
+    }
+    return sources;
+  }
+
+  /**
+   * @return True if a snapshot file is configured.
+   */
+  public boolean isEnabled() {
+    return file != null;
+  }
+
+  /**
+   * Restores the last snapshot in the background, and starts saving snapshots periodically.
+   * Requests may be served while the snapshot is restored.
+   */
+  public synchronized void start() {
+    if (file == null || started) {
+      return;
+    }
+    started = true;
+    for (CacheSnapshotSource source : sources) {
+      source.enableSnapshots();
+    }
+    executor.execute(new Runnable() {
+      public void run() {
+        restore();
+      }
+    });
+    if (interval > 0) {
+      timer = new Timer("cache-snapshot", true);
+      timer.schedule(new TimerTask() {
+        @Override
+        public void run() {
+          saveQuietly();
+        }
+      }, interval, interval);
+    }
+  }
+
+  /**
+   * Stops periodic snapshots and saves a final one.
+   */
+  public synchronized void stop() {
+    if (!started) {
+      return;
+    }
+    started = false;
+    if (timer != null) {
+      timer.cancel();
+      timer = null;
+    }
+    saveQuietly();
+  }
+
+  private void saveQuietly() {
+    try {
+      save();
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Failed to save cache snapshot to " + file, e);
+    }
+  }
+
+  /**
+   * Saves a snapshot, replacing the previous one. Nothing is saved until the previous snapshot has
+   * been restored, so that a snapshot taken right after startup doesn't replace a fuller one.
+   *
+   * @return The number of entries saved.
+   */
+  public int save() throws IOException {
+    if (file == null || !restored) {
+      return 0;
+    }
+    // Not synchronized: virtual threads can't release their carrier while blocked in a monitor.
+    fileLock.lock();
+    try {
+      int total = 0;
+      File temp = new File(file.getPath() + ".tmp");
+      DataOutputStream out = new DataOutputStream(new GZIPOutputStream(
+          new BufferedOutputStream(new FileOutputStream(temp))));
+      try {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(sources.size());
+        for (CacheSnapshotSource source : sources) {
+          // Sections are length prefixed so that one that can't be read doesn't spoil the rest.
+          ByteArrayOutputStream section = new ByteArrayOutputStream();
+          DataOutputStream sectionOut = new DataOutputStream(section);
+          total += source.writeSnapshot(sectionOut, maxEntries);
+          sectionOut.close();
+          out.writeUTF(source.getSnapshotName());
+          out.writeInt(section.size());
+          section.writeTo(out);
+        }
+      } finally {
+        out.close();
+      }
+      // Renaming over an existing file fails on filesystems that aren't POSIX.
+      if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+        temp.delete();
+        throw new IOException("Failed to replace " + file + " with " + temp);
+      }
+      LOG.info("Saved " + total + " cache entries to " + file);
+      return total;
+    } finally {
+      fileLock.unlock();
+    }
+  }
+
+  /**
+   * Restores the last snapshot, if there is one. Sections that can't be read are skipped.
+   *
+   * @return The number of entries restored.
+   */
+  public int restore() {
+    if (file == null) {
+      return 0;
+    }
+    int total = 0;
+    try {
+      fileLock.lock();
+      try {
+        if (!file.exists()) {
+          return 0;
+        }
+        DataInputStream in = new DataInputStream(new GZIPInputStream(
+            new BufferedInputStream(new FileInputStream(file))));
+        try {
+          if (in.readInt() != FORMAT_VERSION) {
+            LOG.info("Ignoring cache snapshot " + file + " written by another version.");
+            return 0;
+          }
+          for (int i = 0, j = in.readInt(); i < j; ++i) {
+            String name = in.readUTF();
+            byte[] section = readBytes(in);
+            if (section == null) {
+              throw new IOException("Corrupt cache snapshot section " + name);
+            }
+            total += restoreSection(name, section);
+          }
+        } finally {
+          in.close();
+        }
+      } finally {
+        fileLock.unlock();
+      }
+      LOG.info("Restored " + total + " cache entries from " + file);
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Failed to restore cache snapshot from " + file, e);
+    } finally {
+      restored = true;
+    }
+    return total;
+  }
+
+  private int restoreSection(String name, byte[] section) {
+    for (CacheSnapshotSource source : sources) {
+      if (source.getSnapshotName().equals(name)) {
+        try {
+          return source.readSnapshot(new DataInputStream(new ByteArrayInputStream(section)));
+        } catch (IOException e) {
+          LOG.log(Level.WARNING, "Unable to restore cache snapshot section " + name, e);
+        } catch (RuntimeException e) {
+          LOG.log(Level.WARNING, "Unable to restore cache snapshot section " + name, e);
+        }
+        return 0;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Writes a byte array, which may be null, for {@link #readBytes}.
+   */
+  public static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+    if (bytes == null) {
+      out.writeInt(-1);
+    } else {
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  /**
+   * Reads a byte array written by {@link #writeBytes}.
+   */
+  public static byte[] readBytes(DataInput in) throws IOException {
+    int length = in.readInt();
+    if (length == -1) {
+      return null;
+    }
+    if (length < 0) {
+      throw new IOException("Corrupt cache snapshot: negative length " + length);
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  /**
+   * Writes a string, which may be null or longer than writeUTF allows, for {@link #readString}.
+   */
+  public static void writeString(DataOutput out, String s) throws IOException {
+    writeBytes(out, s == null ? null : CharsetUtil.getUtf8Bytes(s));
+  }
+
+  /**
+   * Reads a string written by {@link #writeString}.
+   */
+  public static String readString(DataInput in) throws IOException {
+    byte[] bytes = readBytes(in);
+    return bytes == null ? null : CharsetUtil.newUtf8String(bytes);
+  }
+
+  /**
+   * Compresses a string, for sources that keep data in memory only so that it can be snapshotted.
+   */
+  static byte[] compress(String data) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      GZIPOutputStream out = new GZIPOutputStream(bytes);
+      out.write(CharsetUtil.getUtf8Bytes(data));
+      out.close();
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      // Only in-memory streams are used here.
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Reverses {@link #compress}.
+   */
+  static String decompress(byte[] data) throws IOException {
+    return IOUtils.toString(new GZIPInputStream(new ByteArrayInputStream(data)), "UTF-8");
+  }
+}
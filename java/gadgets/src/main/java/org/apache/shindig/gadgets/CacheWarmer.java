@@ -0,0 +1,337 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets;
+
+import org.apache.shindig.common.ContainerConfig;
+import org.apache.shindig.common.uri.Uri;
+import org.apache.shindig.common.util.ResourceLoader;
+import org.apache.shindig.gadgets.http.ContentFetcherFactory;
+import org.apache.shindig.gadgets.http.HttpRequest;
+import org.apache.shindig.gadgets.render.RenderingContentRewriter;
+import org.apache.shindig.gadgets.spec.GadgetSpec;
+import org.apache.shindig.gadgets.spec.Preload;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Loads a list of gadgets into the caches before users request them: the spec, its message bundles
+ * for the configured locales, its feature javascript for every container and, optionally, its
+ * unauthenticated preloads.
+ *
+ * Feature javascript is loaded the way {@link RenderingContentRewriter} would load it for a render
+ * with the libs in shindig.cache.warm.libs forced, and, if shindig.cache.warm.debug is set, for
+ * debug renders as well.
+ *
+ * Gadgets are warmed by at most shindig.cache.warm.parallelism threads at a time. Warming is
+ * started with {@link #warm}, by {@code CacheWarmupServlet}, or from the list in
+ * shindig.cache.warm.file when the server starts.
+ */
+@Singleton
+public class CacheWarmer {
+  private static final Logger LOG = Logger.getLogger(CacheWarmer.class.getName());
+
+  private final GadgetSpecFactory specFactory;
+  private final MessageBundleFactory bundleFactory;
+  private final ContainerConfig containerConfig;
+  private final RenderingContentRewriter renderingRewriter;
+  private final ContentFetcherFactory fetcherFactory;
+  private final Executor executor;
+  private final List<Locale> locales;
+  private final int parallelism;
+  private final boolean warmPreloads;
+  private final String forcedLibs;
+  private final boolean warmDebug;
+  private final String warmListFile;
+  private volatile Progress progress;
+
+  @Inject
+  public CacheWarmer(GadgetSpecFactory specFactory,
+                     MessageBundleFactory bundleFactory,
+                     ContainerConfig containerConfig,
+                     RenderingContentRewriter renderingRewriter,
+                     ContentFetcherFactory fetcherFactory,
+                     @Named(ExecutorProvider.BACKGROUND) ExecutorService executor,
+                     @Named("shindig.cache.warm.locales") String locales,
+                     @Named("shindig.cache.warm.parallelism") int parallelism,
+                     @Named("shindig.cache.warm.preloads") boolean warmPreloads,
+                     @Named("shindig.cache.warm.file") String warmListFile,
+                     @Named("shindig.cache.warm.libs") String forcedLibs,
+                     @Named("shindig.cache.warm.debug") boolean warmDebug) {
+    this.specFactory = specFactory;
+    this.bundleFactory = bundleFactory;
+    this.containerConfig = containerConfig;
+    this.renderingRewriter = renderingRewriter;
+    this.fetcherFactory = fetcherFactory;
+    this.executor = executor;
+    this.locales = parseLocales(locales);
+    this.parallelism = Math.max(1, parallelism);
+    this.warmPreloads = warmPreloads;
+    this.warmListFile = warmListFile == null ? "" : warmListFile.trim();
+    this.forcedLibs = forcedLibs == null ? "" : forcedLibs.trim();
+    this.warmDebug = warmDebug;
+  }
+
+  /**
+   * Parses a comma separated list of locales, e.g. "en_US,fr". A missing country means all
+   * countries.
+   */
+  static List<Locale> parseLocales(String locales) {
+    List<Locale> parsed = Lists.newArrayList();
+    for (String locale : locales.split(",")) {
+      locale = locale.trim();
+      if (locale.length() > 0) {
+        String[] parts = locale.split("_");
+        parsed.add(new Locale(parts[0], parts.length > 1 ? parts[1] : "ALL"));
+      }
+    }
+    return parsed;
+  }
+
+  /**
+   * Reads a list of gadget urls, one per line. Blank lines and lines starting with # are ignored.
+   */
+  public static List<Uri> parseGadgetList(Reader reader) throws IOException {
+    List<Uri> gadgets = Lists.newArrayList();
+    BufferedReader lines = new BufferedReader(reader);
+    for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+      line = line.trim();
+      if (line.length() > 0 && !line.startsWith("#")) {
+        gadgets.add(Uri.parse(line));
+      }
+    }
+    return gadgets;
+  }
+
+  /**
+   * Starts warming the gadgets in the configured warm list, if there is one.
+   *
+   * @return The progress of the warm up, or null if no list is configured.
+   */
+  public Progress warmFromList() throws IOException {
+    if (warmListFile.length() == 0) {
+      return null;
+    }
+    Reader reader = new InputStreamReader(ResourceLoader.open(warmListFile), "UTF-8");
+    try {
+      return warm(parseGadgetList(reader));
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Starts warming the given gadgets in the background.
+   *
+   * @return The progress of the warm up, which also becomes the latest progress.
+   */
+  public Progress warm(Collection<Uri> gadgets) {
+    final Queue<Uri> pending = new ConcurrentLinkedQueue<Uri>(gadgets);
+    final Progress run = new Progress(pending.size());
+    progress = run;
+    LOG.info("Warming caches for " + run.total + " gadgets.");
+    for (int i = 0, j = Math.min(parallelism, run.total); i < j; ++i) {
+      executor.execute(new Runnable() {
+        public void run() {
+          for (Uri gadget = pending.poll(); gadget != null; gadget = pending.poll()) {
+            try {
+              warmGadget(gadget);
+            } catch (GadgetException e) {
+              run.fail(gadget, e);
+            } catch (RuntimeException e) {
+              run.fail(gadget, e);
+            } finally {
+              run.complete();
+            }
+          }
+        }
+      });
+    }
+    return run;
+  }
+
+  /**
+   * @return The progress of the latest warm up, or null if none was started.
+   */
+  public Progress getProgress() {
+    return progress;
+  }
+
+  private void warmGadget(Uri gadget) throws GadgetException {
+    GadgetSpec spec = specFactory.getGadgetSpec(gadget.toJavaUri(), false);
+
+    for (Locale locale : locales) {
+      bundleFactory.getBundle(spec, locale, false);
+    }
+
+    for (String container : containerConfig.getContainers()) {
+      renderingRewriter.loadFeatureLibraries(new WarmupContext(gadget, container, false), spec);
+      if (warmDebug) {
+        renderingRewriter.loadFeatureLibraries(new WarmupContext(gadget, container, true), spec);
+      }
+
+      if (warmPreloads) {
+        for (Preload preload : spec.getModulePrefs().getPreloads()) {
+          // Signed and OAuth preloads depend on the viewer, so there's nothing to share.
+          if (preload.getAuthType() == AuthType.NONE) {
+            fetcherFactory.fetch(new HttpRequest(preload.getHref())
+                .setContainer(container)
+                .setGadget(gadget));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * The parts of a render request that decide which feature javascript is loaded.
+   */
+  private class WarmupContext extends GadgetContext {
+    private final Uri gadget;
+    private final String container;
+    private final boolean debug;
+
+    WarmupContext(Uri gadget, String container, boolean debug) {
+      this.gadget = gadget;
+      this.container = container;
+      this.debug = debug;
+    }
+
+    @Override
+    public String getParameter(String name) {
+      return "libs".equals(name) ? forcedLibs : null;
+    }
+
+    @Override
+    public URI getUrl() {
+      return gadget.toJavaUri();
+    }
+
+    @Override
+    public String getContainer() {
+      return container;
+    }
+
+    @Override
+    public boolean getDebug() {
+      return debug;
+    }
+  }
+
+  /**
+   * The progress of a single warm up.
+   */
+  public static class Progress {
+    private final int total;
+    private final AtomicInteger completed = new AtomicInteger();
+    private final Map<Uri, String> failures
+        = Collections.synchronizedMap(Maps.<Uri, String>newLinkedHashMap());
+    private final CountDownLatch done;
+
+    Progress(int total) {
+      this.total = total;
+      this.done = new CountDownLatch(total);
+    }
+
+    void fail(Uri gadget, Exception e) {
+      LOG.log(Level.INFO, "Failed to warm caches for " + gadget, e);
+      failures.put(gadget, e.getMessage() == null ? e.getClass().getName() : e.getMessage());
+    }
+
+    void complete() {
+      int count = completed.incrementAndGet();
+      done.countDown();
+      if (count == total) {
+        LOG.info("Warmed caches for " + total + " gadgets, " + failures.size() + " failed.");
+      }
+    }
+
+    public int getTotal() {
+      return total;
+    }
+
+    public int getCompleted() {
+      return completed.get();
+    }
+
+    public boolean isDone() {
+      return completed.get() == total;
+    }
+
+    /**
+     * @return The gadgets that failed so far, with the reason for each failure.
+     */
+    public Map<Uri, String> getFailures() {
+      synchronized (failures) {
+        return Maps.newLinkedHashMap(failures);
+      }
+    }
+
+    /**
+     * Waits for the warm up to finish.
+     *
+     * @return True if it finished before the timeout.
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+      return done.await(timeout, unit);
+    }
+
+    public JSONObject toJson() {
+      try {
+        JSONObject failed = new JSONObject();
+        for (Map.Entry<Uri, String> entry : getFailures().entrySet()) {
+          failed.put(entry.getKey().toString(), entry.getValue());
+        }
+        return new JSONObject()
+            .put("total", total)
+            .put("completed", getCompleted())
+            .put("done", isDone())
+            .put("failures", failed);
+      } catch (JSONException e) {
+        // Only thrown for null keys or non-finite numbers.
+        throw new RuntimeException(e);
+      }
+    }
+  }
+}
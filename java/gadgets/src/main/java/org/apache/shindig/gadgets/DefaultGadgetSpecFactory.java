@@ -26,30 +26,43 @@ import org.apache.shindig.common.util.Check;
 import org.apache.shindig.gadgets.http.HttpFetcher;
 import org.apache.shindig.gadgets.http.HttpRequest;
 import org.apache.shindig.gadgets.http.HttpResponse;
+import org.apache.shindig.gadgets.spec.DomGadgetSpecParser;
 import org.apache.shindig.gadgets.spec.GadgetSpec;
+import org.apache.shindig.gadgets.spec.GadgetSpecParser;
+import org.apache.shindig.gadgets.spec.SpecParserException;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Default implementation of a gadget spec factory.
  */
 @Singleton
-public class DefaultGadgetSpecFactory implements GadgetSpecFactory {
+public class DefaultGadgetSpecFactory implements GadgetSpecFactory, CacheSnapshotSource {
   public static final String CACHE_NAME = "gadgetSpecs";
   static final String RAW_GADGETSPEC_XML_PARAM_NAME = "rawxml";
   static final Uri RAW_GADGET_URI = Uri.parse("http://localhost/raw.xml");
   static final String ERROR_SPEC = "<Module><ModulePrefs title='Error'/><Content/></Module>";
   static final String ERROR_KEY = "parse.exception";
+  static final String RAW_XML_KEY = "snapshot.rawxml";
   static final Logger LOG = Logger.getLogger(DefaultGadgetSpecFactory.class.getName());
 
   private final HttpFetcher fetcher;
   private final SoftExpiringCache<Uri, GadgetSpec> cache;
   private final long refresh;
+  private GadgetSpecParser specParser = new DomGadgetSpecParser();
+  private volatile boolean keepRawXml;
 
   @Inject
   public DefaultGadgetSpecFactory(HttpFetcher fetcher,
@@ -61,13 +74,21 @@ public class DefaultGadgetSpecFactory implements GadgetSpecFactory {
     this.refresh = refresh;
   }
 
+  /**
+   * @param specParser The parser used to create specs from retrieved xml.
+   */
+  @Inject
+  public void setSpecParser(GadgetSpecParser specParser) {
+    this.specParser = specParser;
+  }
+
   public GadgetSpec getGadgetSpec(GadgetContext context) throws GadgetException {
     String rawxml = context.getParameter(RAW_GADGETSPEC_XML_PARAM_NAME);
     if (rawxml != null) {
       // Set URI to a fixed, safe value (localhost), preventing a gadget rendered
       // via raw XML (eg. via POST) to be rendered on a locked domain of any other
       // gadget whose spec is hosted non-locally.
-      return new GadgetSpec(RAW_GADGET_URI, rawxml);
+      return specParser.parse(RAW_GADGET_URI, rawxml);
     }
     return getGadgetSpec(context.getUrl(), context.getIgnoreCache());
   }
@@ -94,7 +115,7 @@ public class DefaultGadgetSpecFactory implements GadgetSpecFactory {
           Check.notNull(spec);
         } else {
           // We create this dummy spec to avoid the cost of re-parsing when a remote site is out.
-          spec = new GadgetSpec(uri, ERROR_SPEC);
+          spec = specParser.parse(uri, ERROR_SPEC);
           spec.setAttribute(ERROR_KEY, e);
         }
         LOG.info("GadgetSpec fetch failed for " + uri + " - using cached.");
@@ -128,8 +149,70 @@ public class DefaultGadgetSpecFactory implements GadgetSpecFactory {
                                 response.getHttpStatusCode());
     }
 
-    GadgetSpec spec = new GadgetSpec(url, response.getResponseAsString());
+    String xml = response.getResponseAsString();
+    GadgetSpec spec = specParser.parse(url, xml);
+    if (keepRawXml) {
+      spec.setAttribute(RAW_XML_KEY, CacheSnapshotter.compress(xml));
+    }
     cache.addElement(url, spec, refresh);
     return spec;
   }
+
+  public String getSnapshotName() {
+    return CACHE_NAME;
+  }
+
+  /**
+   * Specs can't be written back out as the xml they were parsed from, so from here on the
+   * compressed xml is kept with each fetched spec.
+   */
+  public void enableSnapshots() {
+    keepRawXml = true;
+  }
+
+  public int writeSnapshot(DataOutput out, int maxEntries) throws IOException {
+    List<Map.Entry<Uri, SoftExpiringCache.CachedObject<GadgetSpec>>> entries
+        = new ArrayList<Map.Entry<Uri, SoftExpiringCache.CachedObject<GadgetSpec>>>(
+            cache.getEntries().entrySet());
+    entries = entries.subList(Math.max(0, entries.size() - maxEntries), entries.size());
+    int count = 0;
+    for (Map.Entry<Uri, SoftExpiringCache.CachedObject<GadgetSpec>> entry : entries) {
+      SoftExpiringCache.CachedObject<GadgetSpec> cached = entry.getValue();
+      // Error specs and specs fetched before snapshots were enabled have no xml.
+      byte[] xml = (byte[]) cached.obj.getAttribute(RAW_XML_KEY);
+      if (xml != null) {
+        out.writeBoolean(true);
+        CacheSnapshotter.writeString(out, entry.getKey().toString());
+        out.writeLong(cached.expiration);
+        CacheSnapshotter.writeBytes(out, xml);
+        ++count;
+      }
+    }
+    out.writeBoolean(false);
+    return count;
+  }
+
+  public int readSnapshot(DataInput in) throws IOException {
+    int count = 0;
+    while (in.readBoolean()) {
+      Uri uri = Uri.parse(CacheSnapshotter.readString(in));
+      long expiration = in.readLong();
+      byte[] xml = CacheSnapshotter.readBytes(in);
+      if (cache.getElement(uri) != null) {
+        continue;
+      }
+      try {
+        GadgetSpec spec = specParser.parse(uri, CacheSnapshotter.decompress(xml));
+        if (keepRawXml) {
+          spec.setAttribute(RAW_XML_KEY, xml);
+        }
+        // Expired specs are restored too; they are still used when a refresh fails.
+        cache.addElement(uri, spec, expiration - System.currentTimeMillis());
+        ++count;
+      } catch (SpecParserException e) {
+        LOG.log(Level.INFO, "Unable to restore snapshotted spec " + uri, e);
+      }
+    }
+    return count;
+  }
 }
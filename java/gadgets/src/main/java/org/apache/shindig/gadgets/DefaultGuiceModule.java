@@ -24,6 +24,8 @@ import org.apache.shindig.gadgets.preload.HttpPreloader;
 import org.apache.shindig.gadgets.preload.Preloader;
 import org.apache.shindig.gadgets.render.RenderingContentRewriter;
 import org.apache.shindig.gadgets.rewrite.ContentRewriter;
+import org.apache.shindig.gadgets.rewrite.MinifyingContentRewriter;
+import org.apache.shindig.gadgets.rewrite.ResourceInliningRewriter;
 import org.apache.shindig.gadgets.rewrite.lexer.DefaultContentRewriter;
 import org.apache.shindig.gadgets.servlet.CajaContentRewriter;
 
@@ -31,12 +33,13 @@ import com.google.common.collect.Lists;
 import com.google.inject.AbstractModule;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
+import com.google.inject.Scopes;
 import com.google.inject.TypeLiteral;
+import com.google.inject.name.Names;
 
 import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * Creates a module to supply all of the Basic* classes
@@ -47,9 +50,13 @@ public class DefaultGuiceModule extends AbstractModule {
   @Override
   protected void configure() {
 
-    ExecutorService service = Executors.newCachedThreadPool();
-    bind(Executor.class).toInstance(service);
-    bind(ExecutorService.class).toInstance(service);
+    bind(ExecutorService.class)
+        .toProvider(new ExecutorProvider(ExecutorProvider.DEFAULT)).in(Scopes.SINGLETON);
+    bind(Executor.class).to(ExecutorService.class);
+    bindExecutor(ExecutorProvider.PRELOAD);
+    bindExecutor(ExecutorProvider.METADATA);
+    bindExecutor(ExecutorProvider.BACKGROUND);
+    bindExecutor(ExecutorProvider.INLINE);
 
     this.install(new ParseModule());
 
@@ -60,17 +67,28 @@ public class DefaultGuiceModule extends AbstractModule {
     requestStaticInjection(HttpResponse.class);
   }
 
+  private void bindExecutor(String name) {
+    bind(ExecutorService.class).annotatedWith(Names.named(name))
+        .toProvider(new ExecutorProvider(name)).in(Scopes.SINGLETON);
+  }
+
   private static class ContentRewritersProvider implements Provider<List<ContentRewriter>> {
     private final List<ContentRewriter> rewriters;
 
     @Inject
-    public ContentRewritersProvider(DefaultContentRewriter optimizingRewriter,
+    public ContentRewritersProvider(ResourceInliningRewriter inliningRewriter,
+                                    DefaultContentRewriter optimizingRewriter,
                                     CajaContentRewriter cajaRewriter,
-                                    RenderingContentRewriter renderingRewriter) {
+                                    RenderingContentRewriter renderingRewriter,
+                                    MinifyingContentRewriter minifyingRewriter) {
       rewriters = Lists.newArrayList();
+      // Inlined references must not be proxied or concatenated first.
+      rewriters.add(inliningRewriter);
       rewriters.add(optimizingRewriter);
       rewriters.add(cajaRewriter);
       rewriters.add(renderingRewriter);
+      // Minification must see the final content, so it's always last.
+      rewriters.add(minifyingRewriter);
     }
 
     public List<ContentRewriter> get() {
@@ -25,6 +25,7 @@ import org.apache.shindig.common.uri.Uri;
 import org.apache.shindig.gadgets.http.HttpFetcher;
 import org.apache.shindig.gadgets.http.HttpRequest;
 import org.apache.shindig.gadgets.http.HttpResponse;
+import org.apache.shindig.gadgets.spec.GadgetSpec;
 import org.apache.shindig.gadgets.spec.LocaleSpec;
 import org.apache.shindig.gadgets.spec.MessageBundle;
 
@@ -32,17 +33,28 @@ import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.logging.Logger;
 
 /**
  * Default implementation of a message bundle factory.
  */
 @Singleton
-public class DefaultMessageBundleFactory extends AbstractMessageBundleFactory {
+public class DefaultMessageBundleFactory extends AbstractMessageBundleFactory
+    implements CacheSnapshotSource {
   public static final String CACHE_NAME = "messageBundles";
+  public static final String MERGED_CACHE_NAME = "mergedMessageBundles";
   static final Logger LOG = Logger.getLogger(DefaultMessageBundleFactory.class.getName());
   private final HttpFetcher fetcher;
   private final SoftExpiringCache<Uri, MessageBundle> cache;
+  private final SoftExpiringCache<String, MessageBundle> mergedCache;
   private final long refresh;
 
   @Inject
@@ -52,9 +64,36 @@ public class DefaultMessageBundleFactory extends AbstractMessageBundleFactory {
     this.fetcher = fetcher;
     Cache<Uri, MessageBundle> baseCache = cacheProvider.createCache(CACHE_NAME);
     this.cache = new SoftExpiringCache<Uri, MessageBundle>(baseCache);
+    Cache<String, MessageBundle> mergedBaseCache = cacheProvider.createCache(MERGED_CACHE_NAME);
+    this.mergedCache = new SoftExpiringCache<String, MessageBundle>(mergedBaseCache);
     this.refresh = refresh;
   }
 
+  /**
+   * Caches the bundle merged from the locale's fallback chain under the requested locale, so that
+   * rendering a cached gadget costs a single lookup.
+   */
+  @Override
+  public MessageBundle getBundle(GadgetSpec spec, Locale locale, boolean ignoreCache)
+      throws GadgetException {
+    if (ignoreCache) {
+      return super.getBundle(spec, locale, ignoreCache);
+    }
+
+    // The checksum distinguishes versions of the spec, including specs passed as raw xml.
+    String key = spec.getUrl() + "#" + spec.getChecksum() + "#" + locale;
+    SoftExpiringCache.CachedObject<MessageBundle> cached = mergedCache.getElement(key);
+    if (cached != null && !cached.isExpired) {
+      return cached.obj;
+    }
+
+    // Fetch failures fall back to stale bundles in the per-url cache, so there's nothing to
+    // recover here.
+    MessageBundle bundle = super.getBundle(spec, locale, ignoreCache);
+    mergedCache.addElement(key, bundle, refresh);
+    return bundle;
+  }
+
   @Override
   protected MessageBundle fetchBundle(LocaleSpec locale, boolean ignoreCache)
       throws GadgetException {
@@ -107,4 +146,54 @@ public class DefaultMessageBundleFactory extends AbstractMessageBundleFactory {
     cache.addElement(url, bundle, refresh);
     return bundle;
   }
+
+  public String getSnapshotName() {
+    return CACHE_NAME;
+  }
+
+  public void enableSnapshots() {
+    // Bundles are snapshotted from their parsed messages.
+  }
+
+  public int writeSnapshot(DataOutput out, int maxEntries) throws IOException {
+    List<Map.Entry<Uri, SoftExpiringCache.CachedObject<MessageBundle>>> entries
+        = new ArrayList<Map.Entry<Uri, SoftExpiringCache.CachedObject<MessageBundle>>>(
+            cache.getEntries().entrySet());
+    entries = entries.subList(Math.max(0, entries.size() - maxEntries), entries.size());
+    for (Map.Entry<Uri, SoftExpiringCache.CachedObject<MessageBundle>> entry : entries) {
+      SoftExpiringCache.CachedObject<MessageBundle> cached = entry.getValue();
+      out.writeBoolean(true);
+      CacheSnapshotter.writeString(out, entry.getKey().toString());
+      out.writeLong(cached.expiration);
+      CacheSnapshotter.writeString(out, cached.obj.getLanguageDirection());
+      Map<String, String> messages = cached.obj.getMessages();
+      out.writeInt(messages.size());
+      for (Map.Entry<String, String> message : messages.entrySet()) {
+        CacheSnapshotter.writeString(out, message.getKey());
+        CacheSnapshotter.writeString(out, message.getValue());
+      }
+    }
+    out.writeBoolean(false);
+    return entries.size();
+  }
+
+  public int readSnapshot(DataInput in) throws IOException {
+    int count = 0;
+    while (in.readBoolean()) {
+      Uri uri = Uri.parse(CacheSnapshotter.readString(in));
+      long expiration = in.readLong();
+      String languageDirection = CacheSnapshotter.readString(in);
+      Map<String, String> messages = new HashMap<String, String>();
+      for (int i = 0, j = in.readInt(); i < j; ++i) {
+        messages.put(CacheSnapshotter.readString(in), CacheSnapshotter.readString(in));
+      }
+      // Expired bundles are restored too; they are still used when a refresh fails.
+      if (cache.getElement(uri) == null) {
+        MessageBundle bundle = new MessageBundle(messages, languageDirection);
+        cache.addElement(uri, bundle, expiration - System.currentTimeMillis());
+        ++count;
+      }
+    }
+    return count;
+  }
 }
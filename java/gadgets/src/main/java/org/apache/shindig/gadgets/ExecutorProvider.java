@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets;
+
+import org.apache.shindig.common.util.InstrumentedThreadPoolExecutor;
+import org.apache.shindig.common.util.InstrumentedThreadPoolExecutor.RejectionPolicy;
+import org.apache.shindig.common.util.VirtualThreads;
+
+import com.google.inject.Binding;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+import com.google.inject.name.Names;
+
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Logger;
+
+/**
+ * Creates the thread pool for one kind of work, configured by the properties
+ * shindig.executor.&lt;name&gt;.coreSize, .maxSize, .queueCapacity, .keepAlive, .rejection and
+ * .threads. Missing properties fall back to the values of the "default" pool, and then to built in
+ * values.
+ *
+ * With threads=virtual every task runs on a new virtual thread and maxSize only limits how many
+ * run at once. Pools fall back to platform threads on JVMs without virtual threads.
+ *
+ * Each pool is bound to {@code ExecutorService} with a {@code @Named} binding annotation using one
+ * of the names below, except for the default pool, which is bound without an annotation.
+ */
+public class ExecutorProvider implements Provider<ExecutorService> {
+  private static final Logger LOG = Logger.getLogger(ExecutorProvider.class.getName());
+
+  /** Runs tasks on behalf of rendering requests, e.g. fetching message bundles. */
+  public static final String DEFAULT = "default";
+
+  /** Fetches preloads and proxied content while a gadget is rendered. */
+  public static final String PRELOAD = "preload";
+
+  /** Processes gadget metadata requests. */
+  public static final String METADATA = "metadata";
+
+  /** Runs work that no request waits for, such as cache warming and restoring cache snapshots. */
+  public static final String BACKGROUND = "background";
+
+  /**
+   * Fetches resources to inline into rendered gadgets. Rendering only waits for these briefly, so
+   * this pool should reject tasks rather than run them on the rendering thread.
+   */
+  public static final String INLINE = "inline";
+
+  private static final String PREFIX = "shindig.executor.";
+
+  private final String name;
+  private Injector injector;
+  private ExecutorService executor;
+
+  public ExecutorProvider(String name) {
+    this.name = name;
+  }
+
+  @Inject
+  public void setInjector(Injector injector) {
+    this.injector = injector;
+  }
+
+  public synchronized ExecutorService get() {
+    if (executor == null) {
+      String poolName = "shindig-" + name;
+      int maxSize = Integer.parseInt(getProperty("maxSize", "128"));
+      RejectionPolicy rejection = RejectionPolicy.parse(getProperty("rejection", "caller_runs"));
+      InstrumentedThreadPoolExecutor pool = null;
+      if ("virtual".equalsIgnoreCase(getProperty("threads", "platform"))) {
+        if (VirtualThreads.isSupported()) {
+          pool = InstrumentedThreadPoolExecutor.newVirtualThreadExecutor(
+              poolName, maxSize, rejection);
+        } else {
+          LOG.warning("Virtual threads aren't supported by this JVM; " + poolName +
+              " uses platform threads.");
+        }
+      }
+      if (pool == null) {
+        pool = new InstrumentedThreadPoolExecutor(
+            poolName,
+            Integer.parseInt(getProperty("coreSize", "16")),
+            maxSize,
+            Integer.parseInt(getProperty("queueCapacity", "256")),
+            Long.parseLong(getProperty("keepAlive", "60000")),
+            rejection);
+      }
+      pool.registerMBean();
+      executor = pool;
+    }
+    return executor;
+  }
+
+  private String getProperty(String property, String defaultValue) {
+    String value = getBoundProperty(PREFIX + name + '.' + property);
+    if (value == null) {
+      value = getBoundProperty(PREFIX + DEFAULT + '.' + property);
+    }
+    return value == null ? defaultValue : value;
+  }
+
+  private String getBoundProperty(String key) {
+    if (injector == null) {
+      return null;
+    }
+    Binding<String> binding = injector.getBinding(Key.get(String.class, Names.named(key)));
+    if (binding == null) {
+      return null;
+    }
+    String value = binding.getProvider().get();
+    return value == null || value.trim().length() == 0 ? null : value.trim();
+  }
+}
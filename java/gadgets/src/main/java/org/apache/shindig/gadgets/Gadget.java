@@ -20,6 +20,7 @@ package org.apache.shindig.gadgets;
 import org.apache.shindig.gadgets.preload.Preloads;
 import org.apache.shindig.gadgets.spec.GadgetSpec;
 import org.apache.shindig.gadgets.spec.LocaleSpec;
+import org.apache.shindig.gadgets.spec.MessageBundle;
 import org.apache.shindig.gadgets.spec.View;
 
 /**
@@ -30,6 +31,7 @@ public class Gadget {
   private GadgetContext context;
   private GadgetSpec spec;
   private Preloads preloads;
+  private MessageBundle messageBundle;
   private View currentView;
   /**
    * @param context The request that the gadget is being processed for.
@@ -67,6 +69,22 @@ public class Gadget {
     return preloads;
   }
 
+  /**
+   * @param messageBundle The message bundle for the current locale, if it has already been
+   *     retrieved for this request.
+   */
+  public Gadget setMessageBundle(MessageBundle messageBundle) {
+    this.messageBundle = messageBundle;
+    return this;
+  }
+
+  /**
+   * @return The message bundle for the current locale, or null if it has not been retrieved yet.
+   */
+  public MessageBundle getMessageBundle() {
+    return messageBundle;
+  }
+
   public Gadget setCurrentView(View currentView) {
     this.currentView = currentView;
     return this;
@@ -17,6 +17,8 @@
  */
 package org.apache.shindig.gadgets;
 
+import org.apache.shindig.common.cache.Cache;
+import org.apache.shindig.common.cache.CacheProvider;
 import org.apache.shindig.gadgets.http.HttpFetcher;
 
 import com.google.common.collect.Maps;
@@ -24,10 +26,12 @@ import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
@@ -42,14 +46,28 @@ import java.util.logging.Logger;
  */
 @Singleton
 public class GadgetFeatureRegistry {
+  public static final String FEATURE_BUNDLES = "featureBundles";
+
   private final Map<String, GadgetFeature> features;
   private final Map<String, GadgetFeature> core;
 
-  // Caches the transitive dependencies to enable faster lookups.
-  private final Map<Collection<String>, Collection<GadgetFeature>> cache
-      = Maps.newConcurrentHashMap();
+  // Every feature is given a dense id at registration time so that requests can be keyed on
+  // feature ids, independent of the type of the caller's collection.
+  private final Map<String, Integer> featureIds;
+  private final List<GadgetFeature> featuresById;
+
+  // Direct dependencies of each feature, by id, in declared order. Computed once the graph is
+  // complete.
+  private int[][] dependencyIds;
+  private FeatureKey coreKey;
+
+  // Caches the transitive dependencies of each requested feature list.
+  private final Map<FeatureKey, List<GadgetFeature>> cache = Maps.newConcurrentHashMap();
+
+  // Caches concatenated javascript, keyed by feature list, container, context and debug mode.
+  private Cache<String, JsFeatureBundle> bundleCache;
 
-  private boolean graphComplete = false;
+  private volatile boolean graphComplete = false;
 
   private final static Logger logger
       = Logger.getLogger("org.apache.shindig.gadgets");
@@ -66,12 +84,19 @@ public class GadgetFeatureRegistry {
       HttpFetcher httpFetcher) throws GadgetException {
     features = new HashMap<String, GadgetFeature>();
     core = new HashMap<String, GadgetFeature>();
+    featureIds = new HashMap<String, Integer>();
+    featuresById = new ArrayList<GadgetFeature>();
     if (featureFiles != null) {
       JsFeatureLoader loader = new JsFeatureLoader(httpFetcher);
       loader.loadFeatures(featureFiles, this);
     }
   }
 
+  @Inject
+  public void setCacheProvider(CacheProvider cacheProvider) {
+    bundleCache = cacheProvider.createCache(FEATURE_BUNDLES);
+  }
+
   /**
    * Register a {@code GadgetFeature}.
    *
@@ -92,6 +117,13 @@ public class GadgetFeatureRegistry {
       feature.addDependencies(core.keySet());
     }
     features.put(feature.getName(), feature);
+    Integer id = featureIds.get(feature.getName());
+    if (id == null) {
+      featureIds.put(feature.getName(), featuresById.size());
+      featuresById.add(feature);
+    } else {
+      featuresById.set(id, feature);
+    }
   }
 
   /**
@@ -120,49 +152,162 @@ public class GadgetFeatureRegistry {
    * @param needed All features requested by the gadget.
    * @param unsupported Populated with any unsupported features.
    * @return All {@code GadgetFeature} objects necessary for {@code needed} in
-   *     graph-dependent order.
+   *     graph-dependent order. Features that don't depend on each other are returned in the
+   *     order of {@code needed}.
    */
   public Collection<GadgetFeature> getFeatures(Collection<String> needed,
                                                Collection<String> unsupported) {
-    graphComplete = true;
+    if (!graphComplete) {
+      completeGraph();
+    }
+
+    FeatureKey key;
     if (needed.isEmpty()) {
-      needed = core.keySet();
-    }
-    // We use the cache only for situations where all needed are available.
-    // if any are missing, the result won't be cached.
-    Collection<GadgetFeature> libCache = cache.get(needed);
-    if (libCache != null) {
-      return libCache;
-    }
-    List<GadgetFeature> ret = new LinkedList<GadgetFeature>();
-    populateDependencies(needed, ret);
-    // Fill in anything that was optional but missing. These won't be cached.
-    if (unsupported != null) {
+      key = coreKey;
+    } else {
+      BitSet seen = new BitSet(featuresById.size());
+      int[] ids = new int[needed.size()];
+      int count = 0;
       for (String feature : needed) {
-        if (!features.containsKey(feature)) {
-          unsupported.add(feature);
+        Integer id = featureIds.get(feature);
+        if (id == null) {
+          if (unsupported != null) {
+            unsupported.add(feature);
+          }
+        } else if (!seen.get(id)) {
+          seen.set(id);
+          ids[count++] = id;
         }
       }
+      key = new FeatureKey(ids, count);
     }
-    if (unsupported == null || unsupported.isEmpty()) {
-      cache.put(needed, Collections.unmodifiableList(ret));
+
+    List<GadgetFeature> ret = cache.get(key);
+    if (ret == null) {
+      ret = Collections.unmodifiableList(resolve(key));
+      cache.put(key, ret);
     }
     return ret;
   }
 
   /**
-   * Recursively populates {@code libraries} with libraries from dependent
-   * features. This ensures that features will always be loaded in the order
-   * that they are declared.
+   * Freezes the dependency graph, translating dependencies into feature ids.
+   */
+  private synchronized void completeGraph() {
+    if (graphComplete) {
+      return;
+    }
+    int count = featuresById.size();
+    dependencyIds = new int[count][];
+    for (int i = 0; i < count; ++i) {
+      dependencyIds[i] = getIds(featuresById.get(i).getDependencies());
+    }
+    int[] coreIds = getIds(core.keySet());
+    coreKey = new FeatureKey(coreIds, coreIds.length);
+    graphComplete = true;
+  }
+
+  /**
+   * @return The ids of the registered features among {@code names}, in order.
    */
-  private void populateDependencies(Collection<String> needed,
-      List<GadgetFeature> deps) {
-    for (String feature : needed) {
-      GadgetFeature feat = features.get(feature);
-      if (feat != null && !deps.contains(feat)) {
-        populateDependencies(feat.getDependencies(), deps);
-        deps.add(feat);
+  private int[] getIds(Collection<String> names) {
+    if (names == null) {
+      return new int[0];
+    }
+    int[] ids = new int[names.size()];
+    int count = 0;
+    for (String name : names) {
+      Integer id = featureIds.get(name);
+      if (id != null) {
+        ids[count++] = id;
       }
     }
+    int[] trimmed = new int[count];
+    System.arraycopy(ids, 0, trimmed, 0, count);
+    return trimmed;
+  }
+
+  /**
+   * Computes the transitive closure of {@code needed} in dependency order.
+   */
+  private List<GadgetFeature> resolve(FeatureKey needed) {
+    List<GadgetFeature> deps = new ArrayList<GadgetFeature>();
+    BitSet visited = new BitSet(featuresById.size());
+    for (int id : needed.ids) {
+      populateDependencies(id, visited, deps);
+    }
+    return deps;
+  }
+
+  /**
+   * Recursively populates {@code deps} with the dependencies of the given feature, followed by
+   * the feature itself. This ensures that a feature is always loaded after everything it
+   * depends on.
+   */
+  private void populateDependencies(int id, BitSet visited, List<GadgetFeature> deps) {
+    if (visited.get(id)) {
+      return;
+    }
+    visited.set(id);
+    for (int dep : dependencyIds[id]) {
+      populateDependencies(dep, visited, deps);
+    }
+    deps.add(featuresById.get(id));
+  }
+
+  /**
+   * Provides the concatenated inline javascript for the given features. Bundles are built lazily
+   * the first time a given combination is requested and cached thereafter.
+   *
+   * @param features Resolved features, in the order that their javascript should be emitted. This
+   *     is normally the output of {@link #getFeatures}.
+   * @param context The context in which the javascript will be used.
+   * @param container The container to get libraries for.
+   * @param debug True to use the unmodified (debug) content of each library.
+   * @return The bundle. External (URL) libraries are never included.
+   */
+  public JsFeatureBundle getJsBundle(Collection<GadgetFeature> features, RenderingContext context,
+      String container, boolean debug) {
+    if (bundleCache == null) {
+      return JsFeatureBundle.create(features, context, container, debug);
+    }
+
+    StringBuilder key = new StringBuilder();
+    key.append(context).append(':').append(container).append(':').append(debug);
+    for (GadgetFeature feature : features) {
+      key.append(':').append(feature.getName());
+    }
+    String cacheKey = key.toString();
+
+    JsFeatureBundle bundle = bundleCache.getElement(cacheKey);
+    if (bundle == null) {
+      bundle = JsFeatureBundle.create(features, context, container, debug);
+      bundleCache.addElement(cacheKey, bundle);
+    }
+    return bundle;
+  }
+
+  /**
+   * The ids of the requested features, in request order.
+   */
+  private static final class FeatureKey {
+    private final int[] ids;
+    private final int hashCode;
+
+    FeatureKey(int[] ids, int count) {
+      this.ids = new int[count];
+      System.arraycopy(ids, 0, this.ids, 0, count);
+      this.hashCode = Arrays.hashCode(this.ids);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof FeatureKey && Arrays.equals(ids, ((FeatureKey) obj).ids);
+    }
   }
 }
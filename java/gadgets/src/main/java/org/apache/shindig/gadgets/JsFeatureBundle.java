@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets;
+
+import org.apache.shindig.common.util.HashUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Collection;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The concatenated javascript for a resolved set of features, rendered for a single container,
+ * rendering context, and debug mode.
+ *
+ * Bundles are immutable so that they may be cached by {@code GadgetFeatureRegistry} and shared
+ * across requests. The UTF-8 encoding, the gzipped encoding and the ETag are computed once, when
+ * the bundle is created, so serving a bundle never requires re-encoding its content.
+ */
+public final class JsFeatureBundle {
+  // Compressing tiny bundles isn't worth the extra header overhead.
+  static final int MIN_GZIP_LENGTH = 512;
+
+  private final String content;
+  private final byte[] bytes;
+  private final byte[] gzippedBytes;
+  private final String etag;
+
+  /**
+   * @param content The javascript for the bundle.
+   */
+  public JsFeatureBundle(String content) {
+    this.content = content;
+    try {
+      bytes = content.getBytes("UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      // Never happens; UTF-8 is always supported.
+      throw new RuntimeException(e);
+    }
+    gzippedBytes = bytes.length >= MIN_GZIP_LENGTH ? gzip(bytes) : null;
+    etag = '"' + HashUtil.checksum(bytes) + '"';
+  }
+
+  /**
+   * Creates a bundle from the inline libraries of the given features, in the provided order.
+   * External (URL) libraries are skipped.
+   */
+  public static JsFeatureBundle create(Collection<GadgetFeature> features,
+      RenderingContext context, String container, boolean debug) {
+    StringBuilder js = new StringBuilder();
+    for (GadgetFeature feature : features) {
+      for (JsLibrary lib : feature.getJsLibraries(context, container)) {
+        if (!lib.getType().equals(JsLibrary.Type.URL)) {
+          if (debug) {
+            js.append(lib.getDebugContent());
+          } else {
+            js.append(lib.getContent());
+          }
+          js.append(";\n");
+        }
+      }
+    }
+    return new JsFeatureBundle(js.toString());
+  }
+
+  /**
+   * @return The javascript for this bundle.
+   */
+  public String getContent() {
+    return content;
+  }
+
+  /**
+   * @return The javascript for this bundle, encoded as UTF-8. Callers must not modify the array.
+   */
+  public byte[] getBytes() {
+    return bytes;
+  }
+
+  /**
+   * @return The gzipped UTF-8 javascript for this bundle, or null if compression wouldn't help.
+   *     Callers must not modify the array.
+   */
+  public byte[] getGzippedBytes() {
+    return gzippedBytes;
+  }
+
+  /**
+   * @return A strong HTTP entity tag for this bundle, including the surrounding quotes.
+   */
+  public String getETag() {
+    return etag;
+  }
+
+  /**
+   * @return True if the bundle contains no javascript.
+   */
+  public boolean isEmpty() {
+    return bytes.length == 0;
+  }
+
+  private static byte[] gzip(byte[] data) {
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+      GZIPOutputStream gzipOut = new GZIPOutputStream(out);
+      gzipOut.write(data);
+      gzipOut.close();
+      byte[] compressed = out.toByteArray();
+      return compressed.length < data.length ? compressed : null;
+    } catch (IOException e) {
+      // Only in-memory streams are used here.
+      return null;
+    }
+  }
+}
@@ -19,14 +19,25 @@ package org.apache.shindig.gadgets.http;
 
 import org.apache.shindig.common.cache.Cache;
 import org.apache.shindig.common.cache.CacheProvider;
+import org.apache.shindig.common.cache.EnumerableCache;
+import org.apache.shindig.gadgets.CacheSnapshotSource;
+import org.apache.shindig.gadgets.CacheSnapshotter;
 
 import com.google.inject.Inject;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Simple cache of HttpResponses. It is recommended that this cache be configured with a shared
  * cache rather than a memory only cache.
  */
-public class DefaultHttpCache extends AbstractHttpCache {
+public class DefaultHttpCache extends AbstractHttpCache implements CacheSnapshotSource {
   public static final String CACHE_NAME = "httpResponses";
 
   private final Cache<String, HttpResponse> cache;
@@ -50,4 +61,72 @@ public class DefaultHttpCache extends AbstractHttpCache {
   protected HttpResponse removeResponseImpl(String key) {
     return cache.removeElement(key);
   }
+
+  public String getSnapshotName() {
+    return CACHE_NAME;
+  }
+
+  public void enableSnapshots() {
+    // Responses are snapshotted as they are.
+  }
+
+  public int writeSnapshot(DataOutput out, int maxEntries) throws IOException {
+    List<Map.Entry<String, HttpResponse>> entries = Collections.emptyList();
+    if (cache instanceof EnumerableCache) {
+      entries = new ArrayList<Map.Entry<String, HttpResponse>>(
+          ((EnumerableCache<String, HttpResponse>) cache).getEntries().entrySet());
+    }
+    // Entries are ordered least recently used first.
+    entries = entries.subList(Math.max(0, entries.size() - maxEntries), entries.size());
+    int count = 0;
+    for (Map.Entry<String, HttpResponse> entry : entries) {
+      if (responseStillUsable(entry.getValue())) {
+        out.writeBoolean(true);
+        CacheSnapshotter.writeString(out, entry.getKey());
+        writeResponse(out, entry.getValue());
+        ++count;
+      }
+    }
+    out.writeBoolean(false);
+    return count;
+  }
+
+  public int readSnapshot(DataInput in) throws IOException {
+    int count = 0;
+    while (in.readBoolean()) {
+      String key = CacheSnapshotter.readString(in);
+      HttpResponse response = readResponse(in);
+      // Responses carry their own expiration, so those that expired while down are dropped.
+      if (responseStillUsable(response) && cache.getElement(key) == null) {
+        cache.addElement(key, response);
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  private static void writeResponse(DataOutput out, HttpResponse response) throws IOException {
+    out.writeInt(response.getHttpStatusCode());
+    Map<String, List<String>> headers = response.getHeaders();
+    out.writeInt(headers.size());
+    for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+      CacheSnapshotter.writeString(out, header.getKey());
+      out.writeInt(header.getValue().size());
+      for (String value : header.getValue()) {
+        CacheSnapshotter.writeString(out, value);
+      }
+    }
+    CacheSnapshotter.writeBytes(out, response.getResponseAsBytes());
+  }
+
+  private static HttpResponse readResponse(DataInput in) throws IOException {
+    HttpResponseBuilder builder = new HttpResponseBuilder().setHttpStatusCode(in.readInt());
+    for (int i = 0, j = in.readInt(); i < j; ++i) {
+      String name = CacheSnapshotter.readString(in);
+      for (int k = 0, l = in.readInt(); k < l; ++k) {
+        builder.addHeader(name, CacheSnapshotter.readString(in));
+      }
+    }
+    return builder.setResponseNoCopy(CacheSnapshotter.readBytes(in)).create();
+  }
 }
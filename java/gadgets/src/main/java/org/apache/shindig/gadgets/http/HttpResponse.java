@@ -477,10 +477,9 @@ public final class HttpResponse implements Externalizable {
   }
 
   /**
-   * @return The response as a byte array. Only visible to the package to avoid copying when
-   * making a new HttpResponseBuilder.
+   * @return The response as a byte array, without copying it. Callers must not modify the array.
    */
-  byte[] getResponseAsBytes() {
+  public byte[] getResponseAsBytes() {
     return responseBytes;
   }
 
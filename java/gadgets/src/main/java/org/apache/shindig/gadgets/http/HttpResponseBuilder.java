@@ -76,6 +76,18 @@ public class HttpResponseBuilder {
     return this;
   }
 
+  /**
+   * @param responseBytes The response body. Not copied, so the caller must not modify the array
+   *     afterwards.
+   */
+  public HttpResponseBuilder setResponseNoCopy(byte[] responseBytes) {
+    if (responseBytes == null) {
+      responseBytes = ArrayUtils.EMPTY_BYTE_ARRAY;
+    }
+    this.responseBytes = responseBytes;
+    return this;
+  }
+
   /**
    * @param httpStatusCode The HTTP response status, defined on HttpResponse.
    */
@@ -34,6 +34,33 @@ import java.util.Set;
  * Utility functions for navigating DOM
  */
 public class DomUtil {
+  /**
+   * @return True if root has a descendant element with one of the given lower case names.
+   *     Only sibling links are followed, so the tree isn't changed in any way and may be shared
+   *     with other threads.
+   */
+  public static boolean hasElementNamedCaseInsensitive(Node root, Set<String> lowerCaseNames) {
+    Node current = root.getFirstChild();
+    while (current != null) {
+      if (current.getNodeType() == Node.ELEMENT_NODE &&
+          lowerCaseNames.contains(current.getNodeName().toLowerCase())) {
+        return true;
+      }
+      Node next = current.getFirstChild();
+      while (next == null && current != root) {
+        next = current.getNextSibling();
+        if (next == null) {
+          current = current.getParentNode();
+        }
+      }
+      if (next == null) {
+        return false;
+      }
+      current = next;
+    }
+    return false;
+  }
+
   /**
    * @return first child node matching the specified name
    */
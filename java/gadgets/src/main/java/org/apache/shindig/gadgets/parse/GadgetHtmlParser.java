@@ -19,7 +19,6 @@ package org.apache.shindig.gadgets.parse;
 
 import org.apache.shindig.common.cache.Cache;
 import org.apache.shindig.common.cache.CacheProvider;
-import org.apache.shindig.common.util.HashUtil;
 import org.apache.shindig.gadgets.GadgetException;
 import org.apache.shindig.gadgets.parse.nekohtml.NekoSimplifiedHtmlParser;
 
@@ -37,12 +36,18 @@ import org.w3c.dom.Node;
 public abstract class GadgetHtmlParser {
 
   public static final String PARSED_DOCUMENTS = "parsedDocuments";
+  public static final String PARSED_TREES = "parsedTrees";
+
+  // User data holding the source of a cached document. Copies don't inherit it.
+  private static final String SOURCE_KEY = "parsedSource";
 
   private Cache<String, Document> documentCache;
+  private Cache<String, CachedTree> treeCache;
 
   @Inject
   public void setCacheProvider(CacheProvider cacheProvider) {
     documentCache = cacheProvider.createCache(PARSED_DOCUMENTS);
+    treeCache = cacheProvider.createCache(PARSED_TREES);
   }
 
   /**
@@ -54,47 +59,117 @@ public abstract class GadgetHtmlParser {
     return normalized.contains("<!DOCTYPE") || normalized.contains("<HTML");
   }
 
+  /**
+   * Parses the source into a document that belongs to the caller and may be modified.
+   */
   public final Document parseDom(String source) throws GadgetException {
-    Document document = null;
-    String key = null;  
-    // Avoid checksum overhead if we arent caching
+    Document document = parseSharedDom(source);
+    return isShared(document) ? copyDom(document) : document;
+  }
+
+  /**
+   * Parses the source into a document that must not be modified, since it may be shared with
+   * other callers through the parsed document cache. Use {@link #copyDom} to get a modifiable copy
+   * once changes are needed.
+   */
+  public final Document parseSharedDom(String source) throws GadgetException {
+    // Avoid the cache lookup if we arent caching
     boolean shouldCache = shouldCache();
+    String key = null;
     if (shouldCache) {
-      // TODO - Consider using the source if its under a certain size
-      key = HashUtil.rawChecksum(source.getBytes());
-      document = documentCache.getElement(key);
-    }
-    if (document == null) {
-      document = parseDomImpl(source);
-      // Ensure head tag exists
-      if (DomUtil.getFirstNamedChildNode(document.getDocumentElement(), "head") == null) {
-        // Add as first element
-        document.getDocumentElement().insertBefore(
-            document.createElement("head"),
-            document.getDocumentElement().getFirstChild());
-      }
-      // If body not found the document was entirely empty. Create the
-      // element anyway
-      if (DomUtil.getFirstNamedChildNode(document.getDocumentElement(), "body") == null) {
-        document.getDocumentElement().appendChild(
-            document.createElement("body"));
-      }
-      if (shouldCache) {
-        documentCache.addElement(key, document);
+      // String caches its hash code, so this key is nearly free. Unlike a digest, it may collide,
+      // so hits are checked against the source the document was parsed from.
+      key = Integer.toHexString(source.hashCode()) + ':' + source.length();
+      Document document = documentCache.getElement(key);
+      if (document != null && source.equals(document.getUserData(SOURCE_KEY))) {
+        return document;
       }
     }
+    Document document = parseDomImpl(source);
+    // Ensure head tag exists
+    if (DomUtil.getFirstNamedChildNode(document.getDocumentElement(), "head") == null) {
+      // Add as first element
+      document.getDocumentElement().insertBefore(
+          document.createElement("head"),
+          document.getDocumentElement().getFirstChild());
+    }
+    // If body not found the document was entirely empty. Create the
+    // element anyway
+    if (DomUtil.getFirstNamedChildNode(document.getDocumentElement(), "body") == null) {
+      document.getDocumentElement().appendChild(
+          document.createElement("body"));
+    }
     if (shouldCache) {
-      Document copy = (Document)document.cloneNode(true);
-      HtmlSerializer.copySerializer(document, copy);
-      return copy;
+      document.setUserData(SOURCE_KEY, source, null);
+      documentCache.addElement(key, document);
     }
     return document;
   }
 
+  /**
+   * @return True if the document came from the parsed document cache and must not be modified.
+   */
+  public static boolean isShared(Document document) {
+    return document.getUserData(SOURCE_KEY) != null;
+  }
+
+  /**
+   * @return A modifiable deep copy of the document.
+   */
+  public static Document copyDom(Document document) {
+    Document copy = (Document)document.cloneNode(true);
+    HtmlSerializer.copySerializer(document, copy);
+    return copy;
+  }
+
   private boolean shouldCache() {
     return documentCache != null && documentCache.getCapacity() != 0;
   }
 
+  /**
+   * Parses the source into a {@link HtmlTree} that belongs to the caller and may be modified. The
+   * tree always has html, head and body elements.
+   */
+  public final HtmlTree parseTree(String source) throws GadgetException {
+    boolean shouldCache = treeCache != null && treeCache.getCapacity() != 0;
+    String key = null;
+    if (shouldCache) {
+      key = Integer.toHexString(source.hashCode()) + ':' + source.length();
+      CachedTree cached = treeCache.getElement(key);
+      if (cached != null && source.equals(cached.source)) {
+        // Copying a tree is a handful of array clones.
+        return cached.tree.copy();
+      }
+    }
+    HtmlTree tree = parseTreeImpl(source);
+    tree.normalize();
+    tree.setOriginalLength(source.length());
+    if (shouldCache) {
+      treeCache.addElement(key, new CachedTree(source, tree));
+      return tree.copy();
+    }
+    return tree;
+  }
+
+  /**
+   * Parses the source into a tree. Parsers that can build trees directly should override this;
+   * by default the tree is converted from a parsed DOM.
+   *
+   * @param source
+   * @return a parsed tree, which may not have been normalized yet
+   * @throws GadgetException
+   */
+  protected HtmlTree parseTreeImpl(String source) throws GadgetException {
+    return toTree(parseSharedDom(source));
+  }
+
+  /**
+   * Converts a document produced by this parser into a tree. The document isn't modified.
+   */
+  public HtmlTree toTree(Document document) {
+    return HtmlTree.fromDocument(document, false);
+  }
+
   /**
    * @param source
    * @return a parsed document or document fragment
@@ -134,4 +209,14 @@ public abstract class GadgetHtmlParser {
       }
     }
   }
+
+  private static class CachedTree {
+    private final String source;
+    private final HtmlTree tree;
+
+    private CachedTree(String source, HtmlTree tree) {
+      this.source = source;
+      this.tree = tree;
+    }
+  }
 }
@@ -0,0 +1,751 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.parse;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * A compact, mutable HTML parse tree for rewriting.
+ *
+ * Nodes are identified by int ids and stored in parallel arrays rather than as objects, so a
+ * parse allocates a handful of arrays instead of a DOM node, child list and attribute map per
+ * element, and {@link #copy} is a few array clones. Like the simplified parser's DOM, the tree
+ * only needs elements that rewriters care about; everything else may be kept as literal text.
+ *
+ * Text is literal markup and is serialized without escaping. Attribute values are unescaped and
+ * are escaped when serialized.
+ *
+ * Instances aren't thread safe. Trees handed out by the parser belong to the caller.
+ */
+public final class HtmlTree {
+  public static final int DOCUMENT = Node.DOCUMENT_NODE;
+  public static final int ELEMENT = Node.ELEMENT_NODE;
+  public static final int TEXT = Node.TEXT_NODE;
+
+  /** Returned in place of a node id when there is no such node. */
+  public static final int NONE = -1;
+
+  // The doctype written when the parsed document didn't declare one, as the DOM serializer does.
+  static final String DEFAULT_PUBLIC_ID = "-//W3C//DTD HTML 4.01//EN";
+  static final String DEFAULT_SYSTEM_ID = "http://www.w3.org/TR/html4/strict.dtd";
+
+  private static final Set<String> EMPTY_TAGS = ImmutableSet.of("area", "base", "basefont", "br",
+      "col", "frame", "hr", "img", "input", "isindex", "link", "meta", "param");
+
+  // Elements whose text content is never escaped.
+  private static final Set<String> RAW_TEXT_TAGS = ImmutableSet.of("script", "style");
+
+  private static final String[] NO_ATTRIBUTES = new String[0];
+
+  private static final int ROOT = 0;
+
+  /**
+   * Notified after every change to a tree.
+   */
+  public interface Listener {
+    void treeChanged(HtmlTree tree);
+  }
+
+  private int size;
+  private byte[] types;
+  private int[] parents;
+  private int[] firstChildren;
+  private int[] lastChildren;
+  private int[] nextSiblings;
+  private int[] previousSiblings;
+  // Tag name of an element or the markup of a text node.
+  private String[] values;
+  // Alternating attribute names and values. The arrays are shared by copies, so they're never
+  // modified in place.
+  private String[][] attributes;
+
+  private String publicId;
+  private String systemId;
+  private int originalLength = -1;
+  private Listener listener;
+
+  /**
+   * Creates an empty tree, holding only the document node.
+   */
+  public HtmlTree() {
+    this(16);
+  }
+
+  private HtmlTree(int capacity) {
+    types = new byte[capacity];
+    parents = new int[capacity];
+    firstChildren = new int[capacity];
+    lastChildren = new int[capacity];
+    nextSiblings = new int[capacity];
+    previousSiblings = new int[capacity];
+    values = new String[capacity];
+    attributes = new String[capacity][];
+    newNode(DOCUMENT, "#document", null);
+  }
+
+  /**
+   * @return A modifiable copy of this tree. The copy has no listener.
+   */
+  public HtmlTree copy() {
+    HtmlTree copy = new HtmlTree(0);
+    copy.size = size;
+    copy.types = types.clone();
+    copy.parents = parents.clone();
+    copy.firstChildren = firstChildren.clone();
+    copy.lastChildren = lastChildren.clone();
+    copy.nextSiblings = nextSiblings.clone();
+    copy.previousSiblings = previousSiblings.clone();
+    copy.values = values.clone();
+    copy.attributes = attributes.clone();
+    copy.publicId = publicId;
+    copy.systemId = systemId;
+    copy.originalLength = originalLength;
+    return copy;
+  }
+
+  /**
+   * Converts a parsed DOM into a tree. Only sibling links are followed, so the document may be a
+   * shared, read only document. Comments are kept as text.
+   *
+   * @param literalText True if the document's text nodes hold markup, as the simplified parser's
+   *     do, rather than character data that must be escaped.
+   */
+  public static HtmlTree fromDocument(org.w3c.dom.Document document, boolean literalText) {
+    HtmlTree tree = new HtmlTree(64);
+    DocumentType doctype = document.getDoctype();
+    if (doctype != null) {
+      tree.setDoctype(doctype.getPublicId(), doctype.getSystemId());
+    }
+    tree.importChildren(document, ROOT, literalText);
+    return tree;
+  }
+
+  private void importChildren(Node from, int parent, boolean literalText) {
+    for (Node child = from.getFirstChild(); child != null; child = child.getNextSibling()) {
+      switch (child.getNodeType()) {
+        case Node.ELEMENT_NODE:
+          int element = createElement(child.getNodeName());
+          NamedNodeMap attrs = child.getAttributes();
+          int length = attrs.getLength();
+          if (length > 0) {
+            String[] values = new String[length * 2];
+            for (int i = 0; i < length; ++i) {
+              Node attr = attrs.item(i);
+              values[i * 2] = attr.getNodeName();
+              values[i * 2 + 1] = attr.getNodeValue();
+            }
+            attributes[element] = values;
+          }
+          appendChild(parent, element);
+          importChildren(child, element, literalText);
+          break;
+        case Node.TEXT_NODE:
+        case Node.CDATA_SECTION_NODE:
+          String text = child.getNodeValue();
+          if (!literalText && !RAW_TEXT_TAGS.contains(from.getNodeName().toLowerCase())) {
+            text = escape(text);
+          }
+          appendChild(parent, createText(text));
+          break;
+        case Node.COMMENT_NODE:
+          appendChild(parent, createText("<!--" + child.getNodeValue() + "-->"));
+          break;
+        default:
+          // Doctypes are handled separately. Nothing else can be expressed in HTML output.
+          break;
+      }
+    }
+  }
+
+  /**
+   * Sets the public and system ids of the document type declaration.
+   */
+  public void setDoctype(String publicId, String systemId) {
+    this.publicId = publicId;
+    this.systemId = systemId;
+    changed();
+  }
+
+  public String getDoctypePublicId() {
+    return publicId;
+  }
+
+  public String getDoctypeSystemId() {
+    return systemId;
+  }
+
+  /**
+   * Records the length of the content the tree was parsed from, to size serialization buffers.
+   */
+  public void setOriginalLength(int originalLength) {
+    this.originalLength = originalLength;
+  }
+
+  /**
+   * Sets the listener notified about changes to this tree, replacing any previous one.
+   */
+  public void setListener(Listener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * @return The document node, which is the parent of the html element.
+   */
+  public int getRoot() {
+    return ROOT;
+  }
+
+  /**
+   * @return The html element, or NONE if the tree has no elements.
+   */
+  public int getDocumentElement() {
+    for (int node = firstChildren[ROOT]; node != NONE; node = nextSiblings[node]) {
+      if (types[node] == ELEMENT) {
+        return node;
+      }
+    }
+    return NONE;
+  }
+
+  /**
+   * @return The head element, or NONE.
+   */
+  public int getHead() {
+    int html = getDocumentElement();
+    return html == NONE ? NONE : getFirstChildNamed(html, "head");
+  }
+
+  /**
+   * @return The body element, or NONE.
+   */
+  public int getBody() {
+    int html = getDocumentElement();
+    return html == NONE ? NONE : getFirstChildNamed(html, "body");
+  }
+
+  public int getNodeType(int node) {
+    return types[node];
+  }
+
+  public boolean isElement(int node) {
+    return types[node] == ELEMENT;
+  }
+
+  public int getParent(int node) {
+    return parents[node];
+  }
+
+  public int getFirstChild(int node) {
+    return firstChildren[node];
+  }
+
+  public int getLastChild(int node) {
+    return lastChildren[node];
+  }
+
+  public int getNextSibling(int node) {
+    return nextSiblings[node];
+  }
+
+  public int getPreviousSibling(int node) {
+    return previousSiblings[node];
+  }
+
+  /**
+   * @return The tag name of an element, as it appeared in the source.
+   */
+  public String getTagName(int node) {
+    checkType(node, ELEMENT);
+    return values[node];
+  }
+
+  /**
+   * @return True if the node is an element with the given name, ignoring case.
+   */
+  public boolean isElementNamed(int node, String name) {
+    return types[node] == ELEMENT && values[node].equalsIgnoreCase(name);
+  }
+
+  /**
+   * @return The markup of a text node.
+   */
+  public String getText(int node) {
+    checkType(node, TEXT);
+    return values[node];
+  }
+
+  public void setText(int node, String text) {
+    checkType(node, TEXT);
+    values[node] = text;
+    changed();
+  }
+
+  /**
+   * @return The concatenated markup of the text children of an element.
+   */
+  public String getTextContent(int element) {
+    StringBuilder text = new StringBuilder();
+    for (int child = firstChildren[element]; child != NONE; child = nextSiblings[child]) {
+      if (types[child] == TEXT) {
+        text.append(values[child]);
+      }
+    }
+    return text.toString();
+  }
+
+  /**
+   * @return The value of the named attribute, ignoring case, or null if it isn't set.
+   */
+  public String getAttribute(int element, String name) {
+    String[] attrs = attributes[element];
+    if (attrs != null) {
+      for (int i = 0; i < attrs.length; i += 2) {
+        if (attrs[i].equalsIgnoreCase(name)) {
+          return attrs[i + 1];
+        }
+      }
+    }
+    return null;
+  }
+
+  public int getAttributeCount(int element) {
+    String[] attrs = attributes[element];
+    return attrs == null ? 0 : attrs.length / 2;
+  }
+
+  public String getAttributeName(int element, int index) {
+    return attributes[element][index * 2];
+  }
+
+  public String getAttributeValue(int element, int index) {
+    return attributes[element][index * 2 + 1];
+  }
+
+  /**
+   * Sets an attribute, replacing the value of an existing attribute with the same name.
+   */
+  public void setAttribute(int element, String name, String value) {
+    checkType(element, ELEMENT);
+    String[] attrs = attributes[element] == null ? NO_ATTRIBUTES : attributes[element];
+    String[] updated;
+    int index = indexOfAttribute(attrs, name);
+    if (index == NONE) {
+      updated = new String[attrs.length + 2];
+      System.arraycopy(attrs, 0, updated, 0, attrs.length);
+      updated[attrs.length] = name;
+      updated[attrs.length + 1] = value;
+    } else {
+      updated = attrs.clone();
+      updated[index + 1] = value;
+    }
+    attributes[element] = updated;
+    changed();
+  }
+
+  public void removeAttribute(int element, String name) {
+    String[] attrs = attributes[element];
+    int index = attrs == null ? NONE : indexOfAttribute(attrs, name);
+    if (index != NONE) {
+      String[] updated = new String[attrs.length - 2];
+      System.arraycopy(attrs, 0, updated, 0, index);
+      System.arraycopy(attrs, index + 2, updated, index, updated.length - index);
+      attributes[element] = updated;
+      changed();
+    }
+  }
+
+  private static int indexOfAttribute(String[] attrs, String name) {
+    for (int i = 0; i < attrs.length; i += 2) {
+      if (attrs[i].equalsIgnoreCase(name)) {
+        return i;
+      }
+    }
+    return NONE;
+  }
+
+  /**
+   * @return First child element of the parent with the given name, ignoring case, or NONE.
+   */
+  public int getFirstChildNamed(int parent, String name) {
+    for (int node = firstChildren[parent]; node != NONE; node = nextSiblings[node]) {
+      if (isElementNamed(node, name)) {
+        return node;
+      }
+    }
+    return NONE;
+  }
+
+  /**
+   * @return All descendants of root that are elements with one of the given lower case names,
+   *     in document order.
+   */
+  public int[] getElementsByTagName(int root, Set<String> lowerCaseNames) {
+    int[] found = new int[8];
+    int count = 0;
+    int node = firstChildren[root];
+    while (node != NONE) {
+      if (types[node] == ELEMENT && lowerCaseNames.contains(values[node].toLowerCase())) {
+        if (count == found.length) {
+          int[] grown = new int[count * 2];
+          System.arraycopy(found, 0, grown, 0, count);
+          found = grown;
+        }
+        found[count++] = node;
+      }
+      node = nextInDocument(node, root);
+    }
+    int[] result = new int[count];
+    System.arraycopy(found, 0, result, 0, count);
+    return result;
+  }
+
+  /**
+   * @return True if root has a descendant element with one of the given lower case names.
+   */
+  public boolean hasElementNamed(int root, Set<String> lowerCaseNames) {
+    for (int node = firstChildren[root]; node != NONE; node = nextInDocument(node, root)) {
+      if (types[node] == ELEMENT && lowerCaseNames.contains(values[node].toLowerCase())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private int nextInDocument(int node, int root) {
+    if (firstChildren[node] != NONE) {
+      return firstChildren[node];
+    }
+    while (node != root) {
+      if (nextSiblings[node] != NONE) {
+        return nextSiblings[node];
+      }
+      node = parents[node];
+    }
+    return NONE;
+  }
+
+  /**
+   * @return A new, detached element.
+   */
+  public int createElement(String tagName) {
+    return newNode(ELEMENT, tagName, null);
+  }
+
+  /**
+   * @return A new element with the given alternating attribute names and values.
+   */
+  public int createElement(String tagName, String... attributeNamesAndValues) {
+    if (attributeNamesAndValues.length % 2 != 0) {
+      throw new IllegalArgumentException("Attribute names and values must be paired");
+    }
+    return newNode(ELEMENT, tagName,
+        attributeNamesAndValues.length == 0 ? null : attributeNamesAndValues.clone());
+  }
+
+  /**
+   * @return A new, detached text node holding literal markup.
+   */
+  public int createText(String text) {
+    return newNode(TEXT, text, null);
+  }
+
+  /**
+   * Appends the node as the last child of the parent, detaching it from its current parent.
+   */
+  public void appendChild(int parent, int child) {
+    insertBefore(parent, child, NONE);
+  }
+
+  /**
+   * Inserts the node before reference, a child of parent, or last if reference is NONE. The node
+   * is detached from its current parent first.
+   */
+  public void insertBefore(int parent, int child, int reference) {
+    if (types[parent] == TEXT) {
+      throw new IllegalArgumentException("Text nodes can't have children");
+    }
+    if (reference != NONE && parents[reference] != parent) {
+      throw new IllegalArgumentException("Node " + reference + " isn't a child of " + parent);
+    }
+    for (int ancestor = parent; ancestor != NONE; ancestor = parents[ancestor]) {
+      if (ancestor == child) {
+        throw new IllegalArgumentException("Node " + child + " is an ancestor of " + parent);
+      }
+    }
+    detach(child);
+    int previous = reference == NONE ? lastChildren[parent] : previousSiblings[reference];
+    parents[child] = parent;
+    previousSiblings[child] = previous;
+    nextSiblings[child] = reference;
+    if (previous == NONE) {
+      firstChildren[parent] = child;
+    } else {
+      nextSiblings[previous] = child;
+    }
+    if (reference == NONE) {
+      lastChildren[parent] = child;
+    } else {
+      previousSiblings[reference] = child;
+    }
+    changed();
+  }
+
+  /**
+   * Detaches the node, and its children, from its parent. It may be inserted again later.
+   */
+  public void removeChild(int child) {
+    if (parents[child] != NONE) {
+      detach(child);
+      changed();
+    }
+  }
+
+  /**
+   * Moves every child of from to the end of to's children.
+   */
+  public void moveChildren(int from, int to) {
+    int child = firstChildren[from];
+    while (child != NONE) {
+      int next = nextSiblings[child];
+      appendChild(to, child);
+      child = next;
+    }
+  }
+
+  private void detach(int node) {
+    int parent = parents[node];
+    if (parent == NONE) {
+      return;
+    }
+    int previous = previousSiblings[node];
+    int next = nextSiblings[node];
+    if (previous == NONE) {
+      firstChildren[parent] = next;
+    } else {
+      nextSiblings[previous] = next;
+    }
+    if (next == NONE) {
+      lastChildren[parent] = previous;
+    } else {
+      previousSiblings[next] = previous;
+    }
+    parents[node] = NONE;
+    previousSiblings[node] = NONE;
+    nextSiblings[node] = NONE;
+  }
+
+  private int newNode(int type, String value, String[] attrs) {
+    if (size == types.length) {
+      grow();
+    }
+    int node = size++;
+    types[node] = (byte) type;
+    parents[node] = NONE;
+    firstChildren[node] = NONE;
+    lastChildren[node] = NONE;
+    nextSiblings[node] = NONE;
+    previousSiblings[node] = NONE;
+    values[node] = value;
+    attributes[node] = attrs;
+    return node;
+  }
+
+  private void grow() {
+    int capacity = Math.max(16, size * 2);
+    types = grow(types, new byte[capacity]);
+    parents = grow(parents, new int[capacity]);
+    firstChildren = grow(firstChildren, new int[capacity]);
+    lastChildren = grow(lastChildren, new int[capacity]);
+    nextSiblings = grow(nextSiblings, new int[capacity]);
+    previousSiblings = grow(previousSiblings, new int[capacity]);
+    values = grow(values, new String[capacity]);
+    attributes = grow(attributes, new String[capacity][]);
+  }
+
+  private <T> T grow(T from, T to) {
+    System.arraycopy(from, 0, to, 0, size);
+    return to;
+  }
+
+  private void checkType(int node, int type) {
+    if (types[node] != type) {
+      throw new IllegalArgumentException("Node " + node + " has type " + types[node]);
+    }
+  }
+
+  private void changed() {
+    if (listener != null) {
+      listener.treeChanged(this);
+    }
+  }
+
+  /**
+   * Wraps the top level nodes in html, head and body elements the same way
+   * {@link GadgetHtmlParser#normalizeFragment} does for DOM fragments, then makes sure that both
+   * head and body exist.
+   */
+  public void normalize() {
+    Listener saved = listener;
+    listener = null;
+    int html = getFirstChildNamed(ROOT, "html");
+    if (html != NONE) {
+      // Anything outside of the html element is dropped, as it is when parsing into a DOM.
+      int node = firstChildren[ROOT];
+      while (node != NONE) {
+        int next = nextSiblings[node];
+        if (node != html) {
+          detach(node);
+        }
+        node = next;
+      }
+    } else {
+      int body = getFirstChildNamed(ROOT, "body");
+      int head = getFirstChildNamed(ROOT, "head");
+      html = createElement("html");
+      if (head != NONE && body == NONE) {
+        appendChild(html, head);
+        body = createElement("body");
+        appendChild(html, body);
+        moveChildren(ROOT, body);
+      } else if (head != NONE || body != NONE) {
+        moveChildren(ROOT, html);
+      } else {
+        body = createElement("body");
+        appendChild(html, body);
+        moveChildren(ROOT, body);
+      }
+      appendChild(ROOT, html);
+    }
+    if (getFirstChildNamed(html, "head") == NONE) {
+      insertBefore(html, createElement("head"), firstChildren[html]);
+    }
+    if (getFirstChildNamed(html, "body") == NONE) {
+      appendChild(html, createElement("body"));
+    }
+    listener = saved;
+  }
+
+  /**
+   * @return The tree as HTML.
+   */
+  public String serialize() {
+    // Typically rewriting makes a document larger
+    StringBuilder out = new StringBuilder(
+        originalLength == -1 ? 8192 : originalLength + originalLength / 10 + 256);
+    try {
+      serialize(out);
+    } catch (IOException e) {
+      // StringBuilder doesn't throw.
+      throw new RuntimeException(e);
+    }
+    return out.toString();
+  }
+
+  /**
+   * Writes the tree as HTML. The output matches that of the DOM serializer, except that
+   * attributes are written in the order they were set.
+   */
+  public void serialize(Appendable out) throws IOException {
+    out.append("<!DOCTYPE HTML");
+    if (publicId == null && systemId == null) {
+      out.append(" PUBLIC \"").append(DEFAULT_PUBLIC_ID)
+         .append("\" \"").append(DEFAULT_SYSTEM_ID).append('"');
+    } else if (publicId != null) {
+      out.append(" PUBLIC \"").append(publicId).append('"');
+      if (systemId != null) {
+        out.append(" \"").append(systemId).append('"');
+      }
+    } else {
+      out.append(" SYSTEM \"").append(systemId).append('"');
+    }
+    out.append(">\n");
+    serializeChildren(ROOT, out);
+  }
+
+  private void serializeChildren(int parent, Appendable out) throws IOException {
+    for (int node = firstChildren[parent]; node != NONE; node = nextSiblings[node]) {
+      if (types[node] == TEXT) {
+        out.append(values[node]);
+      } else {
+        String name = values[node];
+        out.append('<').append(name);
+        String[] attrs = attributes[node];
+        if (attrs != null) {
+          for (int i = 0; i < attrs.length; i += 2) {
+            out.append(' ').append(attrs[i]).append("=\"");
+            appendEscaped(attrs[i + 1], out);
+            out.append('"');
+          }
+        }
+        out.append('>');
+        if (firstChildren[node] != NONE || !EMPTY_TAGS.contains(name.toLowerCase())) {
+          serializeChildren(node, out);
+          out.append("</").append(name).append('>');
+        }
+      }
+    }
+  }
+
+  private static void appendEscaped(String value, Appendable out) throws IOException {
+    for (int i = 0, j = value.length(); i < j; ++i) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '&':
+          out.append("&amp;");
+          break;
+        case '"':
+          out.append("&quot;");
+          break;
+        case '<':
+          out.append("&lt;");
+          break;
+        case '>':
+          out.append("&gt;");
+          break;
+        default:
+          out.append(c);
+      }
+    }
+  }
+
+  /**
+   * @return The text with markup characters escaped, for use in a text node.
+   */
+  public static String escape(String text) {
+    StringBuilder escaped = new StringBuilder(text.length() + 16);
+    try {
+      appendEscaped(text, escaped);
+    } catch (IOException e) {
+      // StringBuilder doesn't throw.
+      throw new RuntimeException(e);
+    }
+    return escaped.toString();
+  }
+
+  @Override
+  public String toString() {
+    return serialize();
+  }
+}
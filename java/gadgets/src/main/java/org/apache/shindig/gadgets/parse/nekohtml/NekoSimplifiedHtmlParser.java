@@ -17,8 +17,10 @@
  */
 package org.apache.shindig.gadgets.parse.nekohtml;
 
+import org.apache.shindig.gadgets.GadgetException;
 import org.apache.shindig.gadgets.parse.GadgetHtmlParser;
 import org.apache.shindig.gadgets.parse.HtmlSerializer;
+import org.apache.shindig.gadgets.parse.HtmlTree;
 
 import com.google.common.collect.ImmutableSet;
 import com.google.inject.Inject;
@@ -58,6 +60,8 @@ import java.util.Stack;
  * Neko based DOM parser that concatentates elements which we dont care about into
  * text nodes to keep DOM model simplified. Much of this code is based on
  * org.cyberneko.html.filters.Writer
+ *
+ * The same simplified document can be built as an {@link HtmlTree}, without creating a DOM.
  */
 @Singleton
 public class NekoSimplifiedHtmlParser extends GadgetHtmlParser {
@@ -73,9 +77,35 @@ public class NekoSimplifiedHtmlParser extends GadgetHtmlParser {
 
   @Override
   protected Document parseDomImpl(String source) {
+    DomBuilder builder = new DomBuilder();
+    if (!parse(source, builder)) {
+      return null;
+    }
+    Document document = builder.document;
+    normalizeFragment(document, builder.fragment);
+    HtmlSerializer.attach(document, new Serializer(), source);
+    return document;
+  }
+
+  @Override
+  protected HtmlTree parseTreeImpl(String source) throws GadgetException {
+    TreeBuilder builder = new TreeBuilder();
+    if (!parse(source, builder)) {
+      throw new GadgetException(GadgetException.Code.HTML_PARSE_ERROR);
+    }
+    return builder.tree;
+  }
+
+  @Override
+  public HtmlTree toTree(Document document) {
+    // Text nodes hold the markup of the elements that were folded into them.
+    return HtmlTree.fromDocument(document, true);
+  }
+
+  private boolean parse(String source, Builder builder) {
     HTMLScanner htmlScanner = new HTMLScanner();
     HTMLTagBalancer tagBalancer = new HTMLTagBalancer();
-    DocumentHandler handler = new DocumentHandler(source);
+    DocumentHandler handler = new DocumentHandler(source, builder);
     tagBalancer.setDocumentHandler(handler);
     htmlScanner.setDocumentHandler(tagBalancer);
 
@@ -90,46 +120,114 @@ public class NekoSimplifiedHtmlParser extends GadgetHtmlParser {
     try {
       htmlScanner.setInputSource(inputSource);
       htmlScanner.scanDocument(true);
-      Document document = handler.getDocument();
-      DocumentFragment fragment = handler.getFragment();
-      normalizeFragment(document, fragment);
-      HtmlSerializer.attach(document, new Serializer(), source);
-      return document;
+      return true;
     } catch (IOException ioe) {
-      return null;
+      return false;
     }
   }
 
   /**
-   * Handler for XNI events from Neko
+   * Receives the simplified document from the handler.
+   */
+  private interface Builder {
+    void startDocument(String rootElement, String publicId, String systemId);
+    void text(String text);
+    void startElement(String name, XMLAttributes attributes);
+    void endElement();
+  }
+
+  /**
+   * Builds a DOM fragment, to be normalized into the document.
    */
-  private class DocumentHandler implements XMLDocumentHandler {
+  private class DomBuilder implements Builder {
     private final Stack<Node> elementStack = new Stack<Node>();
-    private final StringBuilder builder;
+    private Document document;
+    private DocumentFragment fragment;
 
+    public void startDocument(String rootElement, String publicId, String systemId) {
+      if (rootElement == null) {
+        document = documentFactory.createDocument(null, null, null);
+      } else {
+        document = documentFactory.createDocument(null, null,
+            documentFactory.createDocumentType(rootElement, publicId, systemId));
+      }
+      elementStack.clear();
+      fragment = document.createDocumentFragment();
+      elementStack.push(fragment);
+    }
 
-    private DocumentFragment documentFragment;
-    private Document document;
+    public void text(String text) {
+      elementStack.peek().appendChild(document.createTextNode(text));
+    }
 
-    public DocumentHandler(String content) {
-      builder = new StringBuilder(content.length() / 10);
+    public void startElement(String name, XMLAttributes attributes) {
+      Element element = document.createElement(name);
+      for (int i = 0; i < attributes.getLength(); i++) {
+        element.setAttribute(attributes.getLocalName(i) , attributes.getValue(i));
+      }
+      elementStack.peek().appendChild(element);
+      elementStack.push(element);
     }
 
-    public DocumentFragment getFragment() {
-      return documentFragment;
+    public void endElement() {
+      elementStack.pop();
     }
+  }
+
+  /**
+   * Builds the tree directly. It's normalized by the caller.
+   */
+  private static class TreeBuilder implements Builder {
+    private final HtmlTree tree = new HtmlTree();
+    private int current = tree.getRoot();
 
-    public Document getDocument() {
-      return document;
+    public void startDocument(String rootElement, String publicId, String systemId) {
+      if (rootElement != null) {
+        tree.setDoctype(publicId, systemId);
+      }
+    }
+
+    public void text(String text) {
+      tree.appendChild(current, tree.createText(text));
+    }
+
+    public void startElement(String name, XMLAttributes attributes) {
+      int length = attributes.getLength();
+      String[] namesAndValues = new String[length * 2];
+      for (int i = 0; i < length; i++) {
+        namesAndValues[i * 2] = attributes.getLocalName(i);
+        namesAndValues[i * 2 + 1] = attributes.getValue(i);
+      }
+      int element = tree.createElement(name, namesAndValues);
+      tree.appendChild(current, element);
+      current = element;
+    }
+
+    public void endElement() {
+      current = tree.getParent(current);
+    }
+  }
+
+  /**
+   * Handler for XNI events from Neko
+   */
+  private static class DocumentHandler implements XMLDocumentHandler {
+    // Names of the open elements being kept. The fragment itself has an empty name.
+    private final Stack<String> elementStack = new Stack<String>();
+    private final StringBuilder builder;
+    private final Builder output;
+
+    public DocumentHandler(String content, Builder output) {
+      builder = new StringBuilder(content.length() / 10);
+      this.output = output;
     }
 
     public void startDocument(XMLLocator xmlLocator, String encoding,
                               NamespaceContext namespaceContext, Augmentations augs)
         throws XNIException {
-      document = documentFactory.createDocument(null, null, null);
+      output.startDocument(null, null, null);
       elementStack.clear();
-      documentFragment = document.createDocumentFragment();
-      elementStack.push(documentFragment);
+      elementStack.push("");
     }
 
     public void xmlDecl(String version, String encoding, String standalone, Augmentations augs)
@@ -150,11 +248,9 @@ public class NekoSimplifiedHtmlParser extends GadgetHtmlParser {
 
     public void doctypeDecl(String rootElement, String publicId, String systemId,
         Augmentations augs) throws XNIException {
-      document = documentFactory.createDocument(null, null,
-          documentFactory.createDocumentType(rootElement, publicId, systemId));
+      output.startDocument(rootElement, publicId, systemId);
       elementStack.clear();
-      documentFragment = document.createDocumentFragment();
-      elementStack.push(documentFragment);
+      elementStack.push("");
     }
 
     public void comment(XMLString text, Augmentations augs) throws XNIException {
@@ -169,47 +265,39 @@ public class NekoSimplifiedHtmlParser extends GadgetHtmlParser {
     public void startElement(QName qName, XMLAttributes xmlAttributes, Augmentations augs)
         throws XNIException {
       if (elements.contains(qName.rawname.toLowerCase())) {
-        if (builder.length() > 0) {
-          elementStack.peek().appendChild(document.createTextNode(builder.toString()));
-          builder.setLength(0);
-        }
-        Element element = document.createElement(qName.rawname);
-        for (int i = 0; i < xmlAttributes.getLength(); i++) {
-          element.setAttribute(xmlAttributes.getLocalName(i) , xmlAttributes.getValue(i));
-        }
-        elementStack.peek().appendChild(element);
-        elementStack.push(element);
+        flushText();
+        output.startElement(qName.rawname, xmlAttributes);
+        elementStack.push(qName.rawname);
       } else {
-        builder.append("<").append(qName.rawname);
-        for (int i = 0; i < xmlAttributes.getLength(); i++) {
-          builder.append(" ").append(xmlAttributes.getLocalName(i)).append("=\"");
-          appendAttributeValue(xmlAttributes.getValue(i));
-          builder.append("\"");
-        }
-        builder.append(">");
+        appendStartTag(qName, xmlAttributes);
       }
     }
 
     public void emptyElement(QName qName, XMLAttributes xmlAttributes, Augmentations augs)
         throws XNIException {
       if (elements.contains(qName.rawname.toLowerCase())) {
-        if (builder.length() > 0) {
-          elementStack.peek().appendChild(document.createTextNode(builder.toString()));
-          builder.setLength(0);
-        }
-        Element element = document.createElement(qName.rawname);
-        for (int i = 0; i < xmlAttributes.getLength(); i++) {
-          element.setAttribute(xmlAttributes.getLocalName(i) , xmlAttributes.getValue(i));
-        }
-        elementStack.peek().appendChild(element);
+        flushText();
+        output.startElement(qName.rawname, xmlAttributes);
+        output.endElement();
       } else {
-        builder.append("<").append(qName.rawname);
-        for (int i = 0; i < xmlAttributes.getLength(); i++) {
-          builder.append(" ").append(xmlAttributes.getLocalName(i)).append("=\"");
-          appendAttributeValue(xmlAttributes.getValue(i));
-          builder.append("\"");
-        }
-        builder.append(">");
+        appendStartTag(qName, xmlAttributes);
+      }
+    }
+
+    private void appendStartTag(QName qName, XMLAttributes xmlAttributes) {
+      builder.append("<").append(qName.rawname);
+      for (int i = 0; i < xmlAttributes.getLength(); i++) {
+        builder.append(" ").append(xmlAttributes.getLocalName(i)).append("=\"");
+        appendAttributeValue(xmlAttributes.getValue(i));
+        builder.append("\"");
+      }
+      builder.append(">");
+    }
+
+    private void flushText() {
+      if (builder.length() > 0) {
+        output.text(builder.toString());
+        builder.setLength(0);
       }
     }
 
@@ -259,7 +347,7 @@ public class NekoSimplifiedHtmlParser extends GadgetHtmlParser {
     }
 
     public void characters(XMLString text, Augmentations augs) throws XNIException {
-      if (HTMLElements.getElement(elementStack.peek().getNodeName()).isSpecial()) {
+      if (HTMLElements.getElement(elementStack.peek()).isSpecial()) {
         builder.append(text.ch, text.offset, text.length);
       } else {
         for (int i = 0; i < text.length; i++) {
@@ -284,10 +372,8 @@ public class NekoSimplifiedHtmlParser extends GadgetHtmlParser {
 
     public void endElement(QName qName, Augmentations augs) throws XNIException {
       if (elements.contains(qName.rawname.toLowerCase())) {
-        if (builder.length() > 0) {
-          elementStack.peek().appendChild(document.createTextNode(builder.toString()));
-          builder.setLength(0);
-        }
+        flushText();
+        output.endElement();
         elementStack.pop();
       } else {
         builder.append("</").append(qName.rawname).append(">");
@@ -303,10 +389,7 @@ public class NekoSimplifiedHtmlParser extends GadgetHtmlParser {
     }
 
     public void endDocument(Augmentations augs) throws XNIException {
-      if (builder.length() > 0) {
-        elementStack.peek().appendChild(document.createTextNode(builder.toString()));
-        builder.setLength(0);
-      }
+      flushText();
       elementStack.pop();
     }
 
@@ -17,38 +17,116 @@
  */
 package org.apache.shindig.gadgets.preload;
 
+import org.apache.shindig.common.ContainerConfig;
+import org.apache.shindig.common.util.TimeSource;
+import org.apache.shindig.gadgets.ExecutorProvider;
 import org.apache.shindig.gadgets.GadgetContext;
 import org.apache.shindig.gadgets.spec.GadgetSpec;
 
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
+import java.util.logging.Logger;
 
 /**
  * Preloads will be fetched concurrently using the injected ExecutorService, and they can be read
  * lazily using the returned map of futures.
+ *
+ * Each render has a time budget, configured per container through {@link #PRELOAD_TIMEOUT_KEY}
+ * and overridable for individual preloads by {@link TimeLimitedPreload}. Preloads that are not
+ * available once their budget is spent are abandoned.
  */
 public class ConcurrentPreloaderService implements PreloaderService {
+  private static final Logger LOG = Logger.getLogger(ConcurrentPreloaderService.class.getName());
+
+  static final String PRELOAD_TIMEOUT_KEY = "gadgets.preloadTimeout";
+
   private final ExecutorService executor;
   private final List<? extends Preloader> preloaders;
+  private final ContainerConfig containerConfig;
+  private final PreloadStatistics statistics;
+  private TimeSource timeSource = new TimeSource();
 
-  @Inject
   public ConcurrentPreloaderService(ExecutorService executor, List<Preloader> preloaders) {
+    this(executor, preloaders, null, null);
+  }
+
+  @Inject
+  public ConcurrentPreloaderService(@Named(ExecutorProvider.PRELOAD) ExecutorService executor,
+      List<Preloader> preloaders, ContainerConfig containerConfig, PreloadStatistics statistics) {
     this.executor = executor;
     this.preloaders = preloaders;
+    this.containerConfig = containerConfig;
+    this.statistics = statistics;
+  }
+
+  public void setTimeSource(TimeSource timeSource) {
+    this.timeSource = timeSource;
   }
 
   public Preloads preload(GadgetContext context, GadgetSpec gadget) {
-    ConcurrentPreloads preloads = new ConcurrentPreloads();
+    long start = timeSource.currentTimeMillis();
+    long timeout = getContainerTimeout(context);
+    ConcurrentPreloads preloads = new ConcurrentPreloads(timeSource, statistics);
     for (Preloader preloader : preloaders) {
       Map<String, Callable<PreloadedData>> tasks = preloader.createPreloadTasks(context, gadget);
       for (Map.Entry<String, Callable<PreloadedData>> entry : tasks.entrySet()) {
-        preloads.add(entry.getKey(), executor.submit(entry.getValue()));
+        Callable<PreloadedData> task = entry.getValue();
+        long taskTimeout = timeout;
+        if (task instanceof TimeLimitedPreload && ((TimeLimitedPreload) task).getTimeout() >= 0) {
+          taskTimeout = ((TimeLimitedPreload) task).getTimeout();
+        }
+        long deadline
+            = taskTimeout < 0 ? ConcurrentPreloads.NO_DEADLINE : start + taskTimeout;
+        preloads.add(entry.getKey(), executor.submit(new TimedTask(task)), deadline);
       }
     }
     return preloads;
   }
+
+  /**
+   * @return The render time budget for the context's container, in milliseconds, or -1 if
+   *     preloads should be waited on indefinitely.
+   */
+  private long getContainerTimeout(GadgetContext context) {
+    if (containerConfig == null || context == null) {
+      return -1;
+    }
+    String timeout = containerConfig.get(context.getContainer(), PRELOAD_TIMEOUT_KEY);
+    if (timeout == null) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(timeout);
+    } catch (NumberFormatException e) {
+      LOG.warning("Invalid " + PRELOAD_TIMEOUT_KEY + " for container " + context.getContainer());
+      return -1;
+    }
+  }
+
+  /**
+   * Records the execution time of a preload task.
+   */
+  private class TimedTask implements Callable<PreloadedData> {
+    private final Callable<PreloadedData> task;
+
+    public TimedTask(Callable<PreloadedData> task) {
+      this.task = task;
+    }
+
+    public PreloadedData call() throws Exception {
+      long start = timeSource.currentTimeMillis();
+      try {
+        return task.call();
+      } finally {
+        if (statistics != null) {
+          statistics.recordLatency(timeSource.currentTimeMillis() - start);
+        }
+      }
+    }
+  }
 }
@@ -18,21 +18,42 @@
  */
 package org.apache.shindig.gadgets.preload;
 
+import org.apache.shindig.common.util.TimeSource;
+
 import com.google.common.collect.Maps;
 
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Preloads data by processing all Runnables concurrently.
+ *
+ * Each preload may have a deadline. Reading a preload after its deadline has passed without the
+ * data being available cancels the preload and throws {@link PreloadTimeoutException}, so that
+ * rendering can proceed without it.
  */
 class ConcurrentPreloads implements Preloads {
+  static final long NO_DEADLINE = -1;
+
   private final Map<String, Future<PreloadedData>> preloads;
+  private final Map<String, Long> deadlines;
+  private final TimeSource timeSource;
+  private final PreloadStatistics statistics;
 
   ConcurrentPreloads() {
+    this(new TimeSource(), null);
+  }
+
+  ConcurrentPreloads(TimeSource timeSource, PreloadStatistics statistics) {
     preloads = Maps.newHashMap();
+    deadlines = Maps.newHashMap();
+    this.timeSource = timeSource;
+    this.statistics = statistics;
   }
 
   /**
@@ -42,7 +63,24 @@ class ConcurrentPreloads implements Preloads {
    * @param futureData A future that will return the preloaded data.
    */
   ConcurrentPreloads add(String key, Future<PreloadedData> futureData) {
+    return add(key, futureData, NO_DEADLINE);
+  }
+
+  /**
+   * Add an active preloading process that must complete by a given time.
+   *
+   * @param key The key that this preload will be stored under.
+   * @param futureData A future that will return the preloaded data.
+   * @param deadline The time, in milliseconds since the epoch, after which the preload will be
+   *     abandoned, or NO_DEADLINE.
+   */
+  ConcurrentPreloads add(String key, Future<PreloadedData> futureData, long deadline) {
     preloads.put(key, futureData);
+    if (deadline == NO_DEADLINE) {
+      deadlines.remove(key);
+    } else {
+      deadlines.put(key, deadline);
+    }
     return this;
   }
 
@@ -58,8 +96,22 @@ class ConcurrentPreloads implements Preloads {
     }
 
     try {
-      // TODO: Determine if timeouts should be supported.
-      return future.get();
+      Long deadline = deadlines.get(key);
+      if (deadline == null) {
+        return future.get();
+      }
+      long remaining = Math.max(0, deadline - timeSource.currentTimeMillis());
+      return future.get(remaining, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      // Stop waiting. The fetch is interrupted if it is still running; the client will request
+      // the data itself if it needs it.
+      future.cancel(true);
+      if (statistics != null) {
+        statistics.recordTimeout();
+      }
+      throw new PreloadTimeoutException("Preload of " + key + " did not complete in time.");
+    } catch (CancellationException e) {
+      throw new PreloadTimeoutException("Preload of " + key + " was cancelled.");
     } catch (InterruptedException e) {
       // Thread was interrupted. We might want to throw a RTE here, but this is probably only going
       // to happen if we're shutting down the server anyway.
@@ -66,7 +66,7 @@ public class HttpPreloader implements Preloader {
     return preloads;
   }
 
-  private class PreloadTask implements Callable<PreloadedData> {
+  private class PreloadTask implements TimeLimitedPreload {
     private final GadgetContext context;
     private final Preload preload;
 
@@ -75,6 +75,10 @@ public class HttpPreloader implements Preloader {
       this.preload = preload;
     }
 
+    public long getTimeout() {
+      return preload.getTimeout();
+    }
+
     public PreloadedData call() throws Exception {
       // TODO: This should be extracted into a common helper that takes any
       // org.apache.shindig.gadgets.spec.RequestAuthenticationInfo.
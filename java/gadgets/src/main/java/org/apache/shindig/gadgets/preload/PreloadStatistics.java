@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.gadgets.preload;
+
+import org.apache.shindig.common.util.JmxUtil;
+
+import com.google.inject.Singleton;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregate preload latency and timeout counts, exported over JMX.
+ */
+@Singleton
+public class PreloadStatistics implements PreloadStatisticsMBean {
+  private final AtomicLong completed = new AtomicLong();
+  private final AtomicLong timeouts = new AtomicLong();
+  private final AtomicLong totalLatency = new AtomicLong();
+  private final AtomicLong maxLatency = new AtomicLong();
+
+  public PreloadStatistics() {
+    JmxUtil.register(this, "PreloadStatistics", null);
+  }
+
+  /**
+   * Records the execution time of a single preload task.
+   */
+  public void recordLatency(long millis) {
+    completed.incrementAndGet();
+    totalLatency.addAndGet(millis);
+    long max = maxLatency.get();
+    while (millis > max && !maxLatency.compareAndSet(max, millis)) {
+      max = maxLatency.get();
+    }
+  }
+
+  /**
+   * Records a preload that missed its deadline.
+   */
+  public void recordTimeout() {
+    timeouts.incrementAndGet();
+  }
+
+  public long getCompletedCount() {
+    return completed.get();
+  }
+
+  public long getTimeoutCount() {
+    return timeouts.get();
+  }
+
+  public long getAverageLatencyMillis() {
+    long count = completed.get();
+    return count == 0 ? 0 : totalLatency.get() / count;
+  }
+
+  public long getMaxLatencyMillis() {
+    return maxLatency.get();
+  }
+}
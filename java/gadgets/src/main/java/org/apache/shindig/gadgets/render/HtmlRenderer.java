@@ -19,9 +19,11 @@
 package org.apache.shindig.gadgets.render;
 
 import org.apache.shindig.common.uri.UriBuilder;
+import org.apache.shindig.gadgets.ExecutorProvider;
 import org.apache.shindig.gadgets.Gadget;
 import org.apache.shindig.gadgets.GadgetContext;
 import org.apache.shindig.gadgets.GadgetException;
+import org.apache.shindig.gadgets.MessageBundleFactory;
 import org.apache.shindig.gadgets.http.ContentFetcherFactory;
 import org.apache.shindig.gadgets.http.HttpRequest;
 import org.apache.shindig.gadgets.http.HttpResponse;
@@ -33,30 +35,61 @@ import org.apache.shindig.gadgets.spec.GadgetSpec;
 import org.apache.shindig.gadgets.spec.View;
 
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
  * Handles producing output markup for a gadget based on the provided context.
+ *
+ * All of the I/O that a render depends on is started as soon as the gadget is known: proxied view
+ * content is fetched on the injected ExecutorService, preloads are started through the
+ * PreloaderService, and the message bundle is retrieved on the request thread in the meantime.
+ * Results are only waited on when they are actually needed, so the latency of a render is bounded
+ * by its slowest dependency rather than the sum of all of them.
  */
 public class HtmlRenderer {
+  private final ExecutorService executor;
   private final ContentFetcherFactory fetcher;
   private final PreloaderService preloader;
+  private final MessageBundleFactory messageBundleFactory;
   private final ContentRewriterRegistry rewriter;
 
-  @Inject
+  /**
+   * Creates a renderer that fetches proxied content on the calling thread and leaves message
+   * bundle retrieval to the rewriters.
+   */
   public HtmlRenderer(ContentFetcherFactory fetcher,
                       PreloaderService preloader,
                       ContentRewriterRegistry rewriter) {
+    this(null, fetcher, preloader, null, rewriter);
+  }
+
+  @Inject
+  public HtmlRenderer(@Named(ExecutorProvider.PRELOAD) ExecutorService executor,
+                      ContentFetcherFactory fetcher,
+                      PreloaderService preloader,
+                      MessageBundleFactory messageBundleFactory,
+                      ContentRewriterRegistry rewriter) {
+    this.executor = executor;
     this.fetcher = fetcher;
     this.preloader = preloader;
+    this.messageBundleFactory = messageBundleFactory;
     this.rewriter = rewriter;
   }
 
   /**
    * Render the gadget into a string by performing the following steps:
    *
-   * - Retrieve gadget specification information (GadgetSpec, MessageBundle, etc.)
+   * - Start fetching proxied view content, if the view has an href.
    *
-   * - Fetch any preloaded data needed to handle the request, as handled by Preloader.
+   * - Start fetching any preloaded data needed to handle the request, as handled by Preloader.
+   *
+   * - Retrieve the message bundle for the current locale while the above are in flight.
    *
    * - Perform rewriting operations on the output content, handled by Rewriter.
    *
@@ -70,25 +103,23 @@ public class HtmlRenderer {
       GadgetContext context = gadget.getContext();
       GadgetSpec spec = gadget.getSpec();
 
+      Future<HttpResponse> proxiedContent = null;
+      if (view.getHref() != null) {
+        proxiedContent = fetchProxiedContent(gadget);
+      }
+
       Preloads preloads = preloader.preload(context, spec);
       gadget.setPreloads(preloads);
 
-      if (view.getHref() == null) {
+      if (messageBundleFactory != null && gadget.getMessageBundle() == null) {
+        gadget.setMessageBundle(messageBundleFactory.getBundle(
+            spec, context.getLocale(), context.getIgnoreCache()));
+      }
+
+      if (proxiedContent == null) {
         return rewriter.rewriteGadget(gadget, view.getContent());
       } else {
-        // TODO: Add current url to GadgetContext to support transitive proxying.
-        UriBuilder uri = new UriBuilder(view.getHref());
-        uri.addQueryParameter("lang", context.getLocale().getLanguage());
-        uri.addQueryParameter("country", context.getLocale().getCountry());
-
-        HttpRequest request = new HttpRequest(uri.toUri())
-            .setIgnoreCache(context.getIgnoreCache())
-            .setOAuthArguments(new OAuthArguments(view))
-            .setAuthType(view.getAuthType())
-            .setSecurityToken(context.getToken())
-            .setContainer(context.getContainer())
-            .setGadget(spec.getUrl());
-        HttpResponse response = fetcher.fetch(request);
+        HttpResponse response = getProxiedContent(proxiedContent);
         if (response.getHttpStatusCode() != HttpResponse.SC_OK) {
           throw new RenderingException("Unable to reach remote host. HTTP status " +
               response.getHttpStatusCode());
@@ -99,4 +130,57 @@ public class HtmlRenderer {
       throw new RenderingException(e.getMessage(), e);
     }
   }
+
+  /**
+   * Starts fetching the content of a proxied view. Without an executor, the fetch happens
+   * immediately on the calling thread.
+   */
+  private Future<HttpResponse> fetchProxiedContent(Gadget gadget) throws GadgetException {
+    View view = gadget.getCurrentView();
+    GadgetContext context = gadget.getContext();
+
+    // TODO: Add current url to GadgetContext to support transitive proxying.
+    UriBuilder uri = new UriBuilder(view.getHref());
+    uri.addQueryParameter("lang", context.getLocale().getLanguage());
+    uri.addQueryParameter("country", context.getLocale().getCountry());
+
+    final HttpRequest request = new HttpRequest(uri.toUri())
+        .setIgnoreCache(context.getIgnoreCache())
+        .setOAuthArguments(new OAuthArguments(view))
+        .setAuthType(view.getAuthType())
+        .setSecurityToken(context.getToken())
+        .setContainer(context.getContainer())
+        .setGadget(gadget.getSpec().getUrl());
+
+    Callable<HttpResponse> task = new Callable<HttpResponse>() {
+      public HttpResponse call() throws GadgetException {
+        return fetcher.fetch(request);
+      }
+    };
+
+    if (executor == null) {
+      FutureTask<HttpResponse> future = new FutureTask<HttpResponse>(task);
+      future.run();
+      return future;
+    }
+    return executor.submit(task);
+  }
+
+  private HttpResponse getProxiedContent(Future<HttpResponse> future)
+      throws GadgetException, RenderingException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RenderingException("Interrupted while fetching proxied content.", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof GadgetException) {
+        throw (GadgetException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new RenderingException("Unable to fetch proxied content.", cause);
+    }
+  }
 }
@@ -33,8 +33,9 @@ import org.apache.shindig.gadgets.UnsupportedFeatureException;
 import org.apache.shindig.gadgets.UrlGenerator;
 import org.apache.shindig.gadgets.http.HttpRequest;
 import org.apache.shindig.gadgets.http.HttpResponse;
-import org.apache.shindig.gadgets.parse.DomUtil;
+import org.apache.shindig.gadgets.parse.HtmlTree;
 import org.apache.shindig.gadgets.preload.PreloadException;
+import org.apache.shindig.gadgets.preload.PreloadTimeoutException;
 import org.apache.shindig.gadgets.preload.Preloads;
 import org.apache.shindig.gadgets.rewrite.ContentRewriter;
 import org.apache.shindig.gadgets.rewrite.MutableContent;
@@ -53,10 +54,6 @@ import com.google.inject.Inject;
 
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.w3c.dom.Text;
 
 import java.util.Collection;
 import java.util.HashSet;
@@ -93,6 +90,7 @@ public class RenderingContentRewriter implements ContentRewriter {
       "body{margin: 0px;padding: 0px;background-color:white;}";
   static final String INSERT_BASE_ELEMENT_KEY = "gadgets.insertBaseElement";
   static final String FEATURES_KEY = "gadgets.features";
+  static final String PRELOAD_TIMED_OUT_KEY = "timedOut";
 
   private final MessageBundleFactory messageBundleFactory;
   private final ContainerConfig containerConfig;
@@ -120,50 +118,38 @@ public class RenderingContentRewriter implements ContentRewriter {
 
   public RewriterResults rewrite(Gadget gadget, MutableContent mutableContent) {
     try {
-      Element head = (Element)DomUtil.getFirstNamedChildNode(
-          mutableContent.getDocument().getDocumentElement(), "head");
+      HtmlTree tree = mutableContent.getParseTree();
+      int head = tree.getHead();
 
       // Remove all the elements currently in head and add them back after we inject content
-      List<Node> existingHeadContent = Lists.newArrayList();
-      NodeList children = head.getChildNodes();
-      for (int i = 0; i < children.getLength(); i++) {
-        existingHeadContent.add(children.item(i));
-      }
-      for (Node n : existingHeadContent) {
-        head.removeChild(n);
-      }
+      int existingHeadContent = tree.createElement("head");
+      tree.moveChildren(head, existingHeadContent);
 
-      Element defaultStyle = head.getOwnerDocument().createElement("style");
-      defaultStyle.setAttribute("type", "text/css");
-      head.appendChild(defaultStyle);
-      defaultStyle.appendChild(defaultStyle.getOwnerDocument().
-          createTextNode(DEFAULT_HEAD_CONTENT));
+      int defaultStyle = tree.createElement("style", "type", "text/css");
+      tree.appendChild(head, defaultStyle);
+      tree.appendChild(defaultStyle, tree.createText(DEFAULT_HEAD_CONTENT));
 
-      injectBaseTag(gadget, head);
-      injectFeatureLibraries(gadget, head);
+      injectBaseTag(gadget, tree, head);
+      injectFeatureLibraries(gadget, tree, head);
 
       // This can be one script block.
-      Element mainScriptTag = head.getOwnerDocument().createElement("script");
-      injectMessageBundles(gadget, mainScriptTag);
-      injectDefaultPrefs(gadget, mainScriptTag);
-      injectPreloads(gadget, mainScriptTag);
-      head.appendChild(mainScriptTag);
-
-      Element body = (Element)DomUtil.getFirstNamedChildNode(
-          mutableContent.getDocument().getDocumentElement(), "body");
-      
+      StringBuilder mainScript = new StringBuilder();
+      injectMessageBundles(gadget, mainScript);
+      injectDefaultPrefs(gadget, mainScript);
+      injectPreloads(gadget, mainScript);
+      appendScript(tree, head, mainScript.toString());
+
+      int body = tree.getBody();
+
       LocaleSpec localeSpec = gadget.getLocale();
       if (localeSpec != null) {
-        body.setAttribute("dir", localeSpec.getLanguageDirection());
+        tree.setAttribute(body, "dir", localeSpec.getLanguageDirection());
       }
 
-      injectOnLoadHandlers(body);
+      injectOnLoadHandlers(tree, body);
 
-      for (Node n : existingHeadContent) {
-        head.appendChild(n);
-      }
+      tree.moveChildren(existingHeadContent, head);
 
-      MutableContent.notifyEdit(mutableContent.getDocument());
       return RewriterResults.notCacheable();
     } catch (GadgetException e) {
       // TODO: Rewriter interface needs to be modified to handle GadgetException or
@@ -172,7 +158,7 @@ public class RenderingContentRewriter implements ContentRewriter {
     }
   }
 
-  private void injectBaseTag(Gadget gadget, Node headTag) {
+  private void injectBaseTag(Gadget gadget, HtmlTree tree, int headTag) {
     GadgetContext context = gadget.getContext();
     if ("true".equals(containerConfig.get(context.getContainer(), INSERT_BASE_ELEMENT_KEY))) {
       Uri base = gadget.getSpec().getUrl();
@@ -180,27 +166,71 @@ public class RenderingContentRewriter implements ContentRewriter {
       if (view != null && view.getHref() != null) {
         base = view.getHref();
       }
-      Element baseTag = headTag.getOwnerDocument().createElement("base");
-      baseTag.setAttribute("href", base.toString());
-      headTag.appendChild(baseTag);
+      tree.appendChild(headTag, tree.createElement("base", "href", base.toString()));
     }
   }
 
-  private void injectOnLoadHandlers(Node bodyTag) {
-    Element onloadScript = bodyTag.getOwnerDocument().createElement("script");
-    bodyTag.appendChild(onloadScript);
-    onloadScript.appendChild(bodyTag.getOwnerDocument().createTextNode(
-        "gadgets.util.runOnLoadHandlers();"));
+  private void injectOnLoadHandlers(HtmlTree tree, int bodyTag) {
+    appendScript(tree, bodyTag, "gadgets.util.runOnLoadHandlers();");
+  }
+
+  private static void appendScript(HtmlTree tree, int parent, String js) {
+    int script = tree.createElement("script");
+    tree.appendChild(parent, script);
+    tree.appendChild(script, tree.createText(js));
   }
 
   /**
    * Injects javascript libraries needed to satisfy feature dependencies.
    */
-  private void injectFeatureLibraries(Gadget gadget, Node headTag) throws GadgetException {
+  private void injectFeatureLibraries(Gadget gadget, HtmlTree tree, int headTag)
+      throws GadgetException {
     // TODO: If there isn't any js in the document, we can skip this. Unfortunately, that means
     // both script tags (easy to detect) and event handlers (much more complex).
     GadgetContext context = gadget.getContext();
-    GadgetSpec spec = gadget.getSpec();
+    List<String> externalUrls = Lists.newArrayList();
+    List<String> inlineScripts = Lists.newArrayList();
+    StringBuilder inlineJs = new StringBuilder();
+    Collection<GadgetFeature> features
+        = getFeatureScripts(context, gadget.getSpec(), externalUrls, inlineScripts, inlineJs);
+
+    for (int i = 0; i < externalUrls.size(); ++i) {
+      String inline = inlineScripts.get(i);
+      if (inline != null) {
+        appendScript(tree, headTag, inline);
+      }
+      tree.appendChild(headTag, tree.createElement("script", "src", externalUrls.get(i)));
+    }
+
+    inlineJs.append(getLibraryConfig(gadget, features));
+
+    if (inlineJs.length() > 0) {
+      appendScript(tree, headTag, inlineJs.toString());
+    }
+  }
+
+  /**
+   * Loads the feature javascript that rendering a gadget in the given context inlines into the
+   * feature registry's caches, without rendering it.
+   */
+  public void loadFeatureLibraries(GadgetContext context, GadgetSpec spec)
+      throws GadgetException {
+    getFeatureScripts(context, spec, Lists.<String>newArrayList(),
+        Lists.<String>newArrayList(), new StringBuilder());
+  }
+
+  /**
+   * Works out the scripts that load a gadget's features, in document order.
+   *
+   * @param externalUrls Receives the src of each external script.
+   * @param inlineScripts Receives the inline javascript that goes just before the external script
+   *     at the same index, or null if there is none.
+   * @param inlineJs Receives the inline javascript that follows the last external script.
+   * @return All features needed to satisfy the request.
+   */
+  private Collection<GadgetFeature> getFeatureScripts(GadgetContext context, GadgetSpec spec,
+      List<String> externalUrls, List<String> inlineScripts, StringBuilder inlineJs)
+      throws GadgetException {
     String forcedLibs = context.getParameter("libs");
     Set<String> forced;
     if (forcedLibs == null || forcedLibs.length() == 0) {
@@ -212,10 +242,8 @@ public class RenderingContentRewriter implements ContentRewriter {
 
     // Forced libs are always done first.
     if (!forced.isEmpty()) {
-      String jsUrl = urlGenerator.getBundledJsUrl(forced, context);
-      Element libsTag = headTag.getOwnerDocument().createElement("script");
-      libsTag.setAttribute("src", jsUrl.toString());
-      headTag.appendChild(libsTag);
+      externalUrls.add(urlGenerator.getBundledJsUrl(forced, context));
+      inlineScripts.add(null);
 
       // Forced transitive deps need to be added as well so that they don't get pulled in twice.
       // TODO: Figure out a clean way to avoid having to call getFeatures twice.
@@ -224,25 +252,32 @@ public class RenderingContentRewriter implements ContentRewriter {
       }
     }
 
-    StringBuilder inlineJs = new StringBuilder();
-
     // Inline any libs that weren't forced. The ugly context switch between inline and external
     // Js is needed to allow both inline and external scripts declared in feature.xml.
     String container = context.getContainer();
     Collection<GadgetFeature> features = getFeatures(spec, forced);
 
+    // Runs of features that only have inline libraries are served from the registry's
+    // precompiled bundles rather than concatenated on every request.
+    List<GadgetFeature> inlineRun = Lists.newArrayList();
     for (GadgetFeature feature : features) {
+      if (forced.contains(feature.getName())) {
+        // Inline libraries were already pulled in from the shared contents.
+        if (!hasExternalLibraries(feature, container)) {
+          continue;
+        }
+      } else if (!hasExternalLibraries(feature, container)) {
+        inlineRun.add(feature);
+        continue;
+      }
+
+      appendBundle(inlineRun, container, context.getDebug(), inlineJs);
+      inlineRun.clear();
       for (JsLibrary library : feature.getJsLibraries(RenderingContext.GADGET, container)) {
         if (library.getType().equals(JsLibrary.Type.URL)) {
-          if (inlineJs.length() > 0) {
-            Element inlineTag = headTag.getOwnerDocument().createElement("script");
-            headTag.appendChild(inlineTag);
-            inlineTag.appendChild(headTag.getOwnerDocument().createTextNode(inlineJs.toString()));
-            inlineJs.setLength(0);
-          }
-          Element referenceTag = headTag.getOwnerDocument().createElement("script");
-          referenceTag.setAttribute("src", library.getContent());
-          headTag.appendChild(referenceTag);
+          externalUrls.add(library.getContent());
+          inlineScripts.add(inlineJs.length() > 0 ? inlineJs.toString() : null);
+          inlineJs.setLength(0);
         } else {
           if (!forced.contains(feature.getName())) {
             // already pulled this file in from the shared contents.
@@ -256,13 +291,24 @@ public class RenderingContentRewriter implements ContentRewriter {
         }
       }
     }
+    appendBundle(inlineRun, container, context.getDebug(), inlineJs);
+    return features;
+  }
 
-    inlineJs.append(getLibraryConfig(gadget, features));
+  private static boolean hasExternalLibraries(GadgetFeature feature, String container) {
+    for (JsLibrary library : feature.getJsLibraries(RenderingContext.GADGET, container)) {
+      if (library.getType().equals(JsLibrary.Type.URL)) {
+        return true;
+      }
+    }
+    return false;
+  }
 
-    if (inlineJs.length() > 0) {
-      Element inlineTag = headTag.getOwnerDocument().createElement("script");
-      headTag.appendChild(inlineTag);
-      inlineTag.appendChild(headTag.getOwnerDocument().createTextNode(inlineJs.toString()));
+  private void appendBundle(List<GadgetFeature> features, String container, boolean debug,
+      StringBuilder inlineJs) {
+    if (!features.isEmpty()) {
+      inlineJs.append(featureRegistry.getJsBundle(
+          features, RenderingContext.GADGET, container, debug).getContent());
     }
   }
 
@@ -369,23 +415,23 @@ public class RenderingContentRewriter implements ContentRewriter {
    * Injects message bundles into the gadget output.
    * @throws GadgetException If we are unable to retrieve the message bundle.
    */
-  private void injectMessageBundles(Gadget gadget, Node scriptTag) throws GadgetException {
-    GadgetContext context = gadget.getContext();
-    MessageBundle bundle = messageBundleFactory.getBundle(
-        gadget.getSpec(), context.getLocale(), context.getIgnoreCache());
+  private void injectMessageBundles(Gadget gadget, StringBuilder script) throws GadgetException {
+    MessageBundle bundle = gadget.getMessageBundle();
+    if (bundle == null) {
+      GadgetContext context = gadget.getContext();
+      bundle = messageBundleFactory.getBundle(
+          gadget.getSpec(), context.getLocale(), context.getIgnoreCache());
+    }
 
     String msgs = bundle.toJSONString();
 
-    Text text = scriptTag.getOwnerDocument().createTextNode("gadgets.Prefs.setMessages_(");
-    text.appendData(msgs);
-    text.appendData(");");
-    scriptTag.appendChild(text);
+    script.append("gadgets.Prefs.setMessages_(").append(msgs).append(");");
   }
 
   /**
    * Injects default values for user prefs into the gadget output.
    */
-  private void injectDefaultPrefs(Gadget gadget, Node scriptTag) {
+  private void injectDefaultPrefs(Gadget gadget, StringBuilder script) {
     JSONObject defaultPrefs = new JSONObject();
     try {
       for (UserPref up : gadget.getSpec().getUserPrefs()) {
@@ -394,24 +440,29 @@ public class RenderingContentRewriter implements ContentRewriter {
     } catch (JSONException e) {
       // Never happens. Name is required (cannot be null). Default value is a String.
     }
-    Text text = scriptTag.getOwnerDocument().createTextNode("gadgets.Prefs.setDefaultPrefs_(");
-    text.appendData(defaultPrefs.toString());
-    text.appendData(");");
-    scriptTag.appendChild(text);
+    script.append("gadgets.Prefs.setDefaultPrefs_(").append(defaultPrefs.toString()).append(");");
   }
 
   /**
    * Injects preloads into the gadget output.
    *
-   * If preloading fails for any reason, we just output an empty object.
+   * If preloading fails for any reason, we just output an empty object. Preloads that missed
+   * their deadline are flagged so that the client knows to fetch them itself.
    */
-  private void injectPreloads(Gadget gadget, Node scriptTag) {
+  private void injectPreloads(Gadget gadget, StringBuilder script) {
     JSONObject preload = new JSONObject();
     Preloads preloads = gadget.getPreloads();
 
     for (String name : preloads.getKeys()) {
       try {
         preload.put(name, preloads.getData(name).toJson());
+      } catch (PreloadTimeoutException e) {
+        LOG.info(e.getMessage());
+        try {
+          preload.put(name, new JSONObject().put(PRELOAD_TIMED_OUT_KEY, true));
+        } catch (JSONException je) {
+          throw new RuntimeException(je);
+        }
       } catch (PreloadException e) {
         // This will be thrown in the event of some unexpected exception. We can move on.
         LOG.log(Level.WARNING, "Unexpected error attempting to preload " + name, e);
@@ -420,9 +471,6 @@ public class RenderingContentRewriter implements ContentRewriter {
         throw new RuntimeException(e);
       }
     }
-    Text text = scriptTag.getOwnerDocument().createTextNode("gadgets.io.preloaded_=");
-    text.appendData(preload.toString());
-    text.appendData(";");
-    scriptTag.appendChild(text);
+    script.append("gadgets.io.preloaded_=").append(preload.toString()).append(";");
   }
 }
@@ -57,6 +57,10 @@ public class CSSContentRewriter implements ContentRewriter {
     if (!RewriterUtils.isCss(request, original)) {
       return null;      
     }
+    if (!content.mayContainCssReferences()) {
+      // Nothing to proxy, so don't bother lexing the stylesheet.
+      return RewriterResults.cacheableIndefinitely();
+    }
     ContentRewriterFeature feature = rewriterFeatureFactory.get(request);
     content.setContent(CssRewriter.rewrite(content.getContent(), request.getUri(),
         createLinkRewriter(request.getGadget(), feature, request.getContainer())));
@@ -24,7 +24,6 @@ import org.apache.shindig.gadgets.spec.GadgetSpec;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.regex.Pattern;
 
 /**
  * Parser for the "content-rewrite" feature. The supported params are
@@ -50,8 +49,9 @@ public class ContentRewriterFeature {
   private boolean includeAll;
   private boolean includeNone;
 
-  private Pattern include;
-  private Pattern exclude;
+  private String includeRegex;
+  private String excludeRegex;
+  private UrlMatcher urlMatcher;
 
   // If null then dont enforce a min TTL for proxied content. Use contents headers
   private Integer expires;
@@ -130,12 +130,9 @@ public class ContentRewriterFeature {
       includeNone = true;
     }
 
-    if (includeRegex != null) {
-      include = Pattern.compile(includeRegex);
-    }
-    if (excludeRegex != null) {
-      exclude = Pattern.compile(excludeRegex);
-    }
+    this.includeRegex = includeRegex;
+    this.excludeRegex = excludeRegex;
+    urlMatcher = new UrlMatcher(includeRegex, excludeRegex);
   }
 
   private String normalizeParam(String paramValue, String defaultVal) {
@@ -158,10 +155,8 @@ public class ContentRewriterFeature {
       return false;
     } else if (includeAll) {
       return true;
-    } else if (include.matcher(url).find()) {
-      return !(exclude != null && exclude.matcher(url).find());
     }
-    return false;
+    return urlMatcher.matches(url);
   }
 
   public boolean shouldRewriteTag(String tag) {
@@ -188,8 +183,8 @@ public class ContentRewriterFeature {
   public int getFingerprint() {
     if (fingerprint == null) {
       int result;
-      result = (include != null ? include.pattern().hashCode() : 0);
-      result = 31 * result + (exclude != null ? exclude.pattern().hashCode() : 0);
+      result = (includeRegex != null ? includeRegex.hashCode() : 0);
+      result = 31 * result + (excludeRegex != null ? excludeRegex.hashCode() : 0);
       for (String s : includeTags) {
         result = 31 * result + s.hashCode();
       }
@@ -34,20 +34,22 @@ import com.google.inject.name.Named;
 import java.net.URI;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
- * Factory for content rewriter features
+ * Factory for content rewriter features.
+ *
+ * Features are rewriting policies with compiled URL patterns, so they are cached: container
+ * defaults in this factory, and gadget specific features on the spec, per container. A cached
+ * feature is rebuilt when the container's content-rewrite configuration object is replaced.
  */
 @Singleton
 public class ContentRewriterFeatureFactory {
 
   private final GadgetSpecFactory specFactory;
 
-//  private ContentRewriterFeature defaultFeature;
-
-  private Map<String, ContentRewriterFeature> contentRewriters;
+  private final ConcurrentMap<String, CachedFeature> contentRewriters;
 
   static final String CONTENT_REWRITE_KEY = "gadgets.content-rewrite";
   static final String INCLUDE_TAGS_KEY = "include-tags";
@@ -55,6 +57,9 @@ public class ContentRewriterFeatureFactory {
   static final String EXCLUDE_TAGS_KEY = "exclude-urls";
   static final String EXPIRES_KEY = "expires";
 
+  // Spec attribute holding the spec's features, by container.
+  static final String SPEC_ATTRIBUTE = "content-rewriter";
+
   private final ContainerConfig config;
 
   @Inject
@@ -64,14 +69,11 @@ public class ContentRewriterFeatureFactory {
     this.config = config;
     this.specFactory = specFactory;
 
-    contentRewriters = new HashMap<String, ContentRewriterFeature>();
+    contentRewriters = new ConcurrentHashMap<String, CachedFeature>();
   }
 
   public ContentRewriterFeature getDefault(String container) {
-    if (!contentRewriters.containsKey(container)) {
-      contentRewriters.put(container, createContentRewriterFeature(null, container));
-    }
-    return contentRewriters.get(container);
+    return get(contentRewriters, null, container);
   }
 
   public ContentRewriterFeature get(HttpRequest request) {
@@ -89,33 +91,62 @@ public class ContentRewriterFeatureFactory {
     return getDefault(request.getContainer());
   }
 
-  private ContentRewriterFeature createContentRewriterFeature(GadgetSpec spec, String container) {
+  private ContentRewriterFeature createContentRewriterFeature(GadgetSpec spec,
+      JSONObject contentRewrite) {
+    if (contentRewrite == null) {
+      return null;
+    }
     try {
-    JSONObject contentRewrite = config.getJsonObject(container, CONTENT_REWRITE_KEY);
+      JSONArray jsonTags = contentRewrite.getJSONArray(INCLUDE_TAGS_KEY);
+      Set<String> tags = new HashSet<String>();
+      for (int i = 0, j = jsonTags.length(); i < j; ++i) {
+        tags.add(jsonTags.getString(i).toLowerCase());
+      }
+
+      return new ContentRewriterFeature(spec,
+          contentRewrite.getString(INCLUDE_URLS_KEY),
+          contentRewrite.getString(EXCLUDE_TAGS_KEY),
+          contentRewrite.getString(EXPIRES_KEY),
+          tags);
+    } catch(JSONException e){
+      return null;
+    }
+  }
 
-    JSONArray jsonTags = contentRewrite.getJSONArray(INCLUDE_TAGS_KEY);
-    Set<String> tags = new HashSet<String>();
-    for (int i = 0, j = jsonTags.length(); i < j; ++i) {
-      tags.add(jsonTags.getString(i).toLowerCase());
+  @SuppressWarnings("unchecked")
+  public ContentRewriterFeature get(GadgetSpec spec, String container) {
+    ConcurrentMap<String, CachedFeature> features =
+        (ConcurrentMap<String, CachedFeature>) spec.getAttribute(SPEC_ATTRIBUTE);
+    if (features == null) {
+      // Racing requests may each create a map; all but one of them are simply discarded.
+      features = new ConcurrentHashMap<String, CachedFeature>(4, 0.75f, 1);
+      spec.setAttribute(SPEC_ATTRIBUTE, features);
     }
+    return get(features, spec, container);
+  }
 
-    return new ContentRewriterFeature(spec,
-        contentRewrite.getString(INCLUDE_URLS_KEY),
-        contentRewrite.getString(EXCLUDE_TAGS_KEY),
-        contentRewrite.getString(EXPIRES_KEY),
-        tags);
-    } catch(JSONException e){
-      return null;
+  private ContentRewriterFeature get(ConcurrentMap<String, CachedFeature> features,
+      GadgetSpec spec, String container) {
+    JSONObject contentRewrite = config.getJsonObject(container, CONTENT_REWRITE_KEY);
+    CachedFeature cached = features.get(container);
+    if (cached == null || cached.contentRewrite != contentRewrite) {
+      cached = new CachedFeature(contentRewrite,
+          createContentRewriterFeature(spec, contentRewrite));
+      features.put(container, cached);
     }
+    return cached.feature;
   }
 
+  /**
+   * A feature along with the configuration it was created from.
+   */
+  private static class CachedFeature {
+    private final JSONObject contentRewrite;
+    private final ContentRewriterFeature feature;
 
-  public ContentRewriterFeature get(GadgetSpec spec, String container) {
-    ContentRewriterFeature rewriterFeature =
-        (ContentRewriterFeature)spec.getAttribute("content-rewriter");
-    if (rewriterFeature != null) return rewriterFeature;
-    rewriterFeature = createContentRewriterFeature(spec,  container);
-    spec.setAttribute("content-rewriter", rewriterFeature);
-    return rewriterFeature;
+    private CachedFeature(JSONObject contentRewrite, ContentRewriterFeature feature) {
+      this.contentRewrite = contentRewrite;
+      this.feature = feature;
+    }
   }
 }
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.rewrite;
+
+import org.apache.shindig.common.uri.Uri;
+
+import com.google.caja.lexer.CharProducer;
+import com.google.caja.lexer.CssLexer;
+import com.google.caja.lexer.CssTokenType;
+import com.google.caja.lexer.InputSource;
+import com.google.caja.lexer.ParseException;
+import com.google.caja.lexer.Token;
+
+import java.io.StringReader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Removes comments and unnecessary whitespace from CSS.
+ *
+ * Whitespace is only removed around punctuation where it can't be significant, so selectors like
+ * "a :hover" keep their meaning. Comments starting with /*! are kept. Input that can't be lexed is
+ * returned unchanged.
+ */
+public class CssMinifier {
+  private static final Logger logger = Logger.getLogger(CssMinifier.class.getName());
+
+  // No whitespace is needed after these characters, or before the ones in NO_SPACE_BEFORE.
+  private static final String NO_SPACE_AFTER = "{};,>(:";
+  private static final String NO_SPACE_BEFORE = "{};,>)!";
+
+  private CssMinifier() {}
+
+  /**
+   * @return The minified CSS, or the original if it can't be minified.
+   */
+  public static String minify(String css, Uri source) {
+    CharProducer producer = CharProducer.Factory.create(new StringReader(css),
+        new InputSource(source.toJavaUri()));
+    CssLexer lexer = new CssLexer(producer);
+    StringBuilder out = new StringBuilder(css.length());
+    boolean whitespace = false;
+    try {
+      while (lexer.hasNext()) {
+        Token<CssTokenType> token = lexer.next();
+        if (token.type == CssTokenType.SPACE ||
+            (token.type == CssTokenType.COMMENT && !token.text.startsWith("/*!"))) {
+          // Comments separate tokens just like whitespace.
+          whitespace = true;
+          continue;
+        }
+        String text = token.text;
+        int last = out.length() - 1;
+        if (text.equals("}") && last >= 0 && out.charAt(last) == ';') {
+          out.setLength(last);
+        } else if (whitespace && last >= 0 && needsSpace(out.charAt(last), text.charAt(0))) {
+          out.append(' ');
+        }
+        whitespace = false;
+        out.append(text);
+      }
+    } catch (ParseException e) {
+      logger.log(Level.FINE, "Unable to minify CSS from " + source, e);
+      return css;
+    }
+    return out.toString();
+  }
+
+  private static boolean needsSpace(char prev, char next) {
+    return NO_SPACE_AFTER.indexOf(prev) == -1 && NO_SPACE_BEFORE.indexOf(next) == -1;
+  }
+}
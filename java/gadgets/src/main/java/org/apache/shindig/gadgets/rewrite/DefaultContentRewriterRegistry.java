@@ -17,6 +17,7 @@
  */
 package org.apache.shindig.gadgets.rewrite;
 
+import org.apache.shindig.common.uri.Uri;
 import org.apache.shindig.gadgets.Gadget;
 import org.apache.shindig.gadgets.GadgetException;
 import org.apache.shindig.gadgets.http.HttpRequest;
@@ -37,6 +38,7 @@ import java.util.List;
 public class DefaultContentRewriterRegistry implements ContentRewriterRegistry {
   protected final List<ContentRewriter> rewriters;
   protected final GadgetHtmlParser htmlParser;
+  private RewriterMonitor monitor;
 
   @Inject
   public DefaultContentRewriterRegistry(List<ContentRewriter> rewriters,
@@ -48,6 +50,14 @@ public class DefaultContentRewriterRegistry implements ContentRewriterRegistry {
     this.htmlParser = htmlParser;
   }
 
+  /**
+   * Every rewriter invocation is timed and recorded when a monitor is set.
+   */
+  @Inject
+  public void setMonitor(RewriterMonitor monitor) {
+    this.monitor = monitor;
+  }
+
   /** {@inheritDoc} */
   public String rewriteGadget(Gadget gadget, View currentView) throws GadgetException {
     if (currentView == null) {
@@ -57,7 +67,7 @@ public class DefaultContentRewriterRegistry implements ContentRewriterRegistry {
     MutableContent mc = new MutableContent(htmlParser, currentView.getContent());
 
     for (ContentRewriter rewriter : rewriters) {
-      rewriter.rewrite(gadget, mc);
+      rewrite(rewriter, gadget, mc);
     }
     return mc.getContent();
   }
@@ -71,7 +81,7 @@ public class DefaultContentRewriterRegistry implements ContentRewriterRegistry {
     MutableContent mc = new MutableContent(htmlParser, content);
 
     for (ContentRewriter rewriter : rewriters) {
-      rewriter.rewrite(gadget, mc);
+      rewrite(rewriter, gadget, mc);
     }
 
     return mc.getContent();
@@ -83,15 +93,45 @@ public class DefaultContentRewriterRegistry implements ContentRewriterRegistry {
 
     boolean wasRewritten = false;
     for (ContentRewriter rewriter : rewriters) {
-      wasRewritten |= (rewriter.rewrite(req, resp, mc) != null);
+      wasRewritten |= (rewrite(rewriter, req, resp, mc) != null);
     }
 
     if (wasRewritten) {
-      return new HttpResponseBuilder(resp).setResponseString(mc.getContent()).create();
+      // Content that was set as bytes, or never decoded, is used without encoding it again.
+      return new HttpResponseBuilder(resp).setResponseNoCopy(mc.getContentBytes()).create();
     }
     return resp;
   }
 
+  private RewriterResults rewrite(ContentRewriter rewriter, Gadget gadget, MutableContent mc) {
+    if (monitor == null) {
+      return rewriter.rewrite(gadget, mc);
+    }
+    int inputLength = mc.getContentLength();
+    int editCount = mc.getEditCount();
+    long start = System.nanoTime();
+    RewriterResults results = rewriter.rewrite(gadget, mc);
+    Uri url = gadget.getSpec() != null ? gadget.getSpec().getUrl() : null;
+    monitor.record(rewriter, System.nanoTime() - start, inputLength, mc.getContentLength(),
+        mc.getEditCount() != editCount, url);
+    return results;
+  }
+
+  private RewriterResults rewrite(ContentRewriter rewriter, HttpRequest req, HttpResponse resp,
+      MutableContent mc) {
+    if (monitor == null) {
+      return rewriter.rewrite(req, resp, mc);
+    }
+    int inputLength = mc.getContentLength();
+    int editCount = mc.getEditCount();
+    long start = System.nanoTime();
+    RewriterResults results = rewriter.rewrite(req, resp, mc);
+    Uri url = req.getGadget() != null ? req.getGadget() : req.getUri();
+    monitor.record(rewriter, System.nanoTime() - start, inputLength, mc.getContentLength(),
+        mc.getEditCount() != editCount, url);
+    return results;
+  }
+
   protected List<ContentRewriter> getRewriters() {
     return rewriters;
   }
@@ -110,10 +110,26 @@ public class HTMLContentRewriter  implements ContentRewriter {
 
   protected RewriterResults rewriteImpl(ContentRewriterFeature feature, Uri gadgetUri,
                                         Uri contentBase, MutableContent content, String container) {
-    if (!feature.isRewriteEnabled() || content.getDocument() == null) {
+    if (!feature.isRewriteEnabled()) {
       return null;
     }
 
+    // Markup without any of the tags is passed through without being parsed at all.
+    Set<String> rewrittenTags = getRewrittenTags(feature);
+    if (!content.mayContainTags(rewrittenTags)) {
+      return RewriterResults.cacheableIndefinitely();
+    }
+
+    if (content.getReadOnlyDocument() == null) {
+      return null;
+    }
+
+    // Look for anything to rewrite in the possibly shared parse first, so that a cached parse is
+    // only copied when it will be changed.
+    if (!DomUtil.hasElementNamedCaseInsensitive(content.getReadOnlyDocument(), rewrittenTags)) {
+      return RewriterResults.cacheableIndefinitely();
+    }
+
     // Get ALL interesting tags
     List<Element> tagList =
         DomUtil.getElementsByTagNameCaseInsensitive(content.getDocument(), TAGS);
@@ -140,6 +156,28 @@ public class HTMLContentRewriter  implements ContentRewriter {
     return RewriterResults.cacheableIndefinitely();
   }
 
+  /**
+   * @return The lower case names of the tags that may be rewritten for the feature.
+   */
+  private static Set<String> getRewrittenTags(ContentRewriterFeature feature) {
+    Set<String> included = feature.getIncludedTags();
+    Set<String> tags = Sets.newHashSet();
+    if (included.contains("style")) {
+      // Stylesheet links are concatenated along with style tags.
+      tags.add("style");
+      tags.add("link");
+    }
+    if (included.contains("script")) {
+      tags.add("script");
+    }
+    for (String tag : LINKING_TAG_ATTRS.keySet()) {
+      if (included.contains(tag)) {
+        tags.add(tag);
+      }
+    }
+    return tags;
+  }
+
   protected boolean rewriteStyleTags(Element head, List<Element> elementList,
                                      ContentRewriterFeature feature, Uri gadgetUri, Uri contentBase, String container) {
     if (!feature.getIncludedTags().contains("style")) {
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.rewrite;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Set;
+
+/**
+ * Removes comments and insignificant whitespace from HTML.
+ *
+ * Like {@link JsMinifier}, the minifier scans rather than parses, since the parse trees used for
+ * rewriting keep markup they don't model as literal text. Whitespace runs in text and tags are
+ * collapsed to a single character, but never removed, so rendering is unchanged. The contents of
+ * pre, textarea, script and style elements are copied verbatim. Conditional comments are kept,
+ * and quotes are dropped from attribute values that don't need them. Input that can't be scanned,
+ * such as an unterminated comment or tag, is copied verbatim from that point.
+ */
+public class HtmlMinifier {
+  // Elements whose content is whitespace sensitive or isn't HTML.
+  private static final Set<String> PRESERVED_TAGS =
+      ImmutableSet.of("pre", "textarea", "script", "style");
+
+  private HtmlMinifier() {}
+
+  /**
+   * @return The minified HTML.
+   */
+  public static String minify(String html) {
+    int length = html.length();
+    StringBuilder out = new StringBuilder(length);
+    int i = 0;
+    while (i < length) {
+      char c = html.charAt(i);
+      if (isWhitespace(c)) {
+        int start = i;
+        while (i < length && isWhitespace(html.charAt(i))) {
+          i++;
+        }
+        // Whitespace around a dropped comment has already been written once.
+        if (out.length() == 0 || !isWhitespace(out.charAt(out.length() - 1))) {
+          out.append(hasLineBreak(html, start, i) ? '\n' : ' ');
+        }
+      } else if (c == '<' && html.startsWith("<!--", i)) {
+        int end = html.indexOf("-->", i + 4);
+        if (end == -1) {
+          out.append(html, i, length);
+          break;
+        }
+        end += 3;
+        if (html.startsWith("<!--[", i) || html.startsWith("<!--<![", i)) {
+          // Conditional comments hold markup for some browsers.
+          out.append(html, i, end);
+        }
+        i = end;
+      } else if (c == '<' && i + 1 < length && isTagStart(html.charAt(i + 1))) {
+        int end = appendTag(html, i, out);
+        if (end == -1) {
+          out.append(html, i, length);
+          break;
+        }
+        String name = getTagName(html, i + 1);
+        i = end;
+        if (PRESERVED_TAGS.contains(name)) {
+          int close = indexOfCloseTag(html, name, i);
+          out.append(html, i, close);
+          i = close;
+        }
+      } else {
+        out.append(c);
+        i++;
+      }
+    }
+    return out.toString();
+  }
+
+  /**
+   * Writes the tag starting at the given offset, collapsing whitespace and unquoting attribute
+   * values.
+   *
+   * @return The offset after the tag, or -1 if it isn't terminated. Nothing is written then.
+   */
+  private static int appendTag(String html, int start, StringBuilder out) {
+    int mark = out.length();
+    // Only attribute values are quoted in tags, but declarations may quote anything.
+    boolean declaration = html.charAt(start + 1) == '!';
+    boolean space = false;
+    int i = start;
+    for (int j = html.length(); i < j; ++i) {
+      char c = html.charAt(i);
+      boolean isValue = out.length() > mark && out.charAt(out.length() - 1) == '=';
+      if (isWhitespace(c)) {
+        space = true;
+      } else if (c == '>') {
+        out.append('>');
+        return i + 1;
+      } else if ((c == '"' || c == '\'') && (isValue || declaration)) {
+        int end = html.indexOf(c, i + 1);
+        if (end == -1) {
+          break;
+        }
+        if (space && !isValue) {
+          out.append(' ');
+        }
+        char next = end + 1 < j ? html.charAt(end + 1) : 0;
+        if (isValue && (isWhitespace(next) || next == '>')
+            && isUnquotable(html, i + 1, end)) {
+          out.append(html, i + 1, end);
+        } else {
+          out.append(html, i, end + 1);
+        }
+        i = end;
+        space = false;
+      } else {
+        // No space is needed on either side of an =.
+        if (space && c != '=' && !isValue) {
+          out.append(' ');
+        }
+        out.append(c);
+        space = false;
+      }
+    }
+    out.setLength(mark);
+    return -1;
+  }
+
+  /**
+   * @return The offset of the close tag for the element, or the end of the input if it isn't
+   *     closed.
+   */
+  private static int indexOfCloseTag(String html, String name, int from) {
+    for (int i = html.indexOf("</", from); i != -1; i = html.indexOf("</", i + 2)) {
+      if (html.regionMatches(true, i + 2, name, 0, name.length())) {
+        return i;
+      }
+    }
+    return html.length();
+  }
+
+  private static String getTagName(String html, int start) {
+    int end = start;
+    while (end < html.length() && Character.isLetterOrDigit(html.charAt(end))) {
+      end++;
+    }
+    return html.substring(start, end).toLowerCase();
+  }
+
+  private static boolean isTagStart(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '/' || c == '!' || c == '?';
+  }
+
+  private static boolean isUnquotable(String html, int start, int end) {
+    if (start == end) {
+      return false;
+    }
+    for (int i = start; i < end; ++i) {
+      char c = html.charAt(i);
+      if (!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z') && !(c >= '0' && c <= '9')
+          && c != '-' && c != '_' && c != '.' && c != ':') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean hasLineBreak(String html, int start, int end) {
+    for (int i = start; i < end; ++i) {
+      char c = html.charAt(i);
+      if (c == '\n' || c == '\r') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+  }
+}
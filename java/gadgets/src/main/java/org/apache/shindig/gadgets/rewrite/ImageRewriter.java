@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.rewrite;
+
+import org.apache.shindig.gadgets.http.HttpCache;
+import org.apache.shindig.gadgets.http.HttpCacheKey;
+import org.apache.shindig.gadgets.http.HttpRequest;
+import org.apache.shindig.gadgets.http.HttpResponse;
+import org.apache.shindig.gadgets.http.HttpResponseBuilder;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+import org.apache.commons.io.IOUtils;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Optimizes proxied images: re-encodes PNG and GIF images losslessly, recompresses JPEG images at
+ * a configured quality, and scales images down to requested dimensions. Re-encoding drops any
+ * metadata (comments, EXIF, color profiles) carried by the original.
+ *
+ * The original response is returned whenever the optimized image wouldn't be smaller, the image
+ * has more than the configured number of pixels, or it can't be decoded or re-encoded (animated
+ * GIFs, unusual color spaces). Results are cached in the HTTP cache next to the original response.
+ */
+@Singleton
+public class ImageRewriter {
+  private static final Logger logger = Logger.getLogger(ImageRewriter.class.getName());
+
+  // Cache key data distinguishing optimized images from the original response.
+  static final String CACHE_KEY = "image";
+
+  // Metadata marking a cached result as "use the original". Avoids caching the bytes twice.
+  static final String ORIGINAL_METADATA = "image-original";
+
+  private final HttpCache cache;
+  private final boolean enabled;
+  private final int jpegQuality;
+  private final long maxPixels;
+
+  /**
+   * @param cache Caches optimized images.
+   * @param enabled Whether images are optimized at all.
+   * @param jpegQuality JPEG quality, from 1 to 100.
+   * @param maxPixels Larger images are never decoded.
+   */
+  @Inject
+  public ImageRewriter(HttpCache cache,
+                       @Named("shindig.image.optimize") boolean enabled,
+                       @Named("shindig.image.jpegQuality") int jpegQuality,
+                       @Named("shindig.image.maxPixels") long maxPixels) {
+    this.cache = cache;
+    this.enabled = enabled;
+    this.jpegQuality = Math.max(1, Math.min(100, jpegQuality));
+    this.maxPixels = maxPixels;
+  }
+
+  /**
+   * Optimizes an image response.
+   *
+   * @param request The request for the image.
+   * @param original The image response. Responses that aren't PNG, GIF or JPEG images are returned
+   *     as is.
+   * @param width The requested width, or 0 to keep the original width.
+   * @param height The requested height, or 0 to keep the original height.
+   * @return The optimized image, or the original.
+   */
+  public HttpResponse rewrite(HttpRequest request, HttpResponse original, int width, int height) {
+    if (!enabled || original.getHttpStatusCode() != HttpResponse.SC_OK) {
+      return original;
+    }
+    String format = getFormat(original.getHeader("Content-Type"));
+    if (format == null) {
+      return original;
+    }
+
+    HttpCacheKey key = new HttpCacheKey(request);
+    key.set(CACHE_KEY, Math.max(width, 0) + "x" + Math.max(height, 0) + ':' + jpegQuality);
+    HttpResponse cached = cache.getResponse(key, request);
+    if (cached != null) {
+      return cached.getMetadata().containsKey(ORIGINAL_METADATA) ? original : cached;
+    }
+
+    byte[] bytes = null;
+    byte[] optimized = null;
+    try {
+      bytes = IOUtils.toByteArray(original.getResponse());
+      optimized = optimize(bytes, format, width, height);
+    } catch (IOException e) {
+      logger.log(Level.FINE, "Unable to optimize image " + request.getUri(), e);
+    } catch (RuntimeException e) {
+      // ImageIO plugins throw all sorts of things on malformed input.
+      logger.log(Level.FINE, "Unable to optimize image " + request.getUri(), e);
+    }
+
+    if (optimized == null || optimized.length >= bytes.length) {
+      cache.addResponse(key, request, new HttpResponseBuilder(original)
+          .setResponse(null)
+          .setMetadata(ORIGINAL_METADATA, "true")
+          .create());
+      return original;
+    }
+    return cache.addResponse(key, request,
+        new HttpResponseBuilder(original).setResponse(optimized).create());
+  }
+
+  /**
+   * @return The ImageIO format name for a content type, or null if the type isn't supported.
+   */
+  static String getFormat(String contentType) {
+    if (contentType == null) {
+      return null;
+    }
+    String type = contentType.toLowerCase();
+    if (type.startsWith("image/png")) {
+      return "png";
+    } else if (type.startsWith("image/gif")) {
+      return "gif";
+    } else if (type.startsWith("image/jpeg") || type.startsWith("image/jpg") ||
+        type.startsWith("image/pjpeg")) {
+      return "jpeg";
+    }
+    return null;
+  }
+
+  private byte[] optimize(byte[] bytes, String format, int width, int height)
+      throws IOException {
+    BufferedImage image = read(bytes);
+    if (image == null) {
+      return null;
+    }
+    image = scale(image, width, height);
+    ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length);
+    if ("jpeg".equals(format)) {
+      if (!writeJpeg(image, out)) {
+        return null;
+      }
+    } else if (!ImageIO.write(image, format, out)) {
+      // No writer for the format (there is no GIF writer before Java 6).
+      return null;
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * @return The image, or null if it is too large, animated, or can't be read.
+   */
+  private BufferedImage read(byte[] bytes) throws IOException {
+    ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes));
+    if (in == null) {
+      return null;
+    }
+    try {
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+      if (!readers.hasNext()) {
+        return null;
+      }
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(in);
+        // Only the first frame of an animation would survive re-encoding.
+        if (reader.getNumImages(true) != 1) {
+          return null;
+        }
+        // Check the size before decoding anything.
+        if ((long) reader.getWidth(0) * reader.getHeight(0) > maxPixels) {
+          return null;
+        }
+        return reader.read(0);
+      } finally {
+        reader.dispose();
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Scales an image down to fit the requested dimensions, preserving its aspect ratio. Images are
+   * never scaled up.
+   */
+  static BufferedImage scale(BufferedImage image, int width, int height) {
+    int originalWidth = image.getWidth();
+    int originalHeight = image.getHeight();
+    double ratio = 1.0;
+    if (width > 0 && width < originalWidth) {
+      ratio = (double) width / originalWidth;
+    }
+    if (height > 0 && height < originalHeight) {
+      ratio = Math.min(ratio, (double) height / originalHeight);
+    }
+    if (ratio == 1.0) {
+      return image;
+    }
+    int scaledWidth = Math.max(1, (int) Math.round(originalWidth * ratio));
+    int scaledHeight = Math.max(1, (int) Math.round(originalHeight * ratio));
+    BufferedImage scaled = new BufferedImage(scaledWidth, scaledHeight,
+        image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB
+                                         : BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = scaled.createGraphics();
+    try {
+      graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+          RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      graphics.drawImage(image, 0, 0, scaledWidth, scaledHeight, null);
+    } finally {
+      graphics.dispose();
+    }
+    return scaled;
+  }
+
+  private boolean writeJpeg(BufferedImage image, ByteArrayOutputStream out) throws IOException {
+    Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+    if (!writers.hasNext() || image.getColorModel().hasAlpha()) {
+      return false;
+    }
+    ImageWriter writer = writers.next();
+    ImageOutputStream imageOut = ImageIO.createImageOutputStream(out);
+    try {
+      ImageWriteParam param = writer.getDefaultWriteParam();
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(jpegQuality / 100f);
+      writer.setOutput(imageOut);
+      writer.write(null, new IIOImage(image, null, null), param);
+    } finally {
+      writer.dispose();
+      imageOut.close();
+    }
+    return true;
+  }
+}
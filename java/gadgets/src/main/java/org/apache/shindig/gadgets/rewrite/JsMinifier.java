@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.rewrite;
+
+import com.google.common.collect.Sets;
+
+import java.util.Set;
+
+/**
+ * Removes comments and unnecessary whitespace from javascript.
+ *
+ * The minifier only scans tokens; it doesn't parse. String, template and regular expression
+ * literals are copied verbatim, including any ${...} substitutions in templates, and a line break
+ * is kept wherever removing it could change how semicolons are inserted. Comments starting with
+ * /*! (licenses) or /*@ (conditional compilation) are kept. Input that can't be scanned, such as
+ * an unterminated string, is returned unchanged.
+ */
+public class JsMinifier {
+  // Keywords after which a slash starts a regular expression rather than a division.
+  private static final Set<String> REGEX_KEYWORDS = Sets.newHashSet(
+      "return", "typeof", "case", "do", "else", "in", "instanceof", "new", "delete", "void",
+      "throw");
+
+  private JsMinifier() {}
+
+  /**
+   * @return The minified javascript, or the original if it can't be minified.
+   */
+  public static String minify(String js) {
+    int length = js.length();
+    StringBuilder out = new StringBuilder(length);
+    // Whitespace skipped since the last token: 0 for none, ' ' or '\n' if it had a line break.
+    char whitespace = 0;
+    boolean regexAllowed = true;
+    boolean lastWasRegex = false;
+    boolean lastWasInteger = false;
+    int i = 0;
+    while (i < length) {
+      char c = js.charAt(i);
+      char next = i + 1 < length ? js.charAt(i + 1) : 0;
+
+      if (c == '/' && next == '/') {
+        while (i < length && !isLineBreak(js.charAt(i))) {
+          i++;
+        }
+        whitespace = '\n';
+        continue;
+      }
+
+      if (c == '/' && next == '*') {
+        int end = js.indexOf("*/", i + 2);
+        if (end == -1) {
+          return js;
+        }
+        String comment = js.substring(i, end + 2);
+        i = end + 2;
+        if (comment.startsWith("/*!") || comment.startsWith("/*@")) {
+          if (whitespace != 0 && out.length() > 0) {
+            out.append(whitespace);
+          }
+          out.append(comment);
+          whitespace = '\n';
+        } else if (hasLineBreak(comment)) {
+          whitespace = '\n';
+        } else if (whitespace == 0) {
+          whitespace = ' ';
+        }
+        continue;
+      }
+
+      if (Character.isWhitespace(c) || c == '\u00a0' || c == '\ufeff') {
+        if (isLineBreak(c)) {
+          whitespace = '\n';
+        } else if (whitespace == 0) {
+          whitespace = ' ';
+        }
+        i++;
+        continue;
+      }
+
+      int start = i;
+      boolean isRegex = false;
+      boolean isInteger = false;
+      if (c == '\'' || c == '"') {
+        i = skipString(js, i);
+        if (i == -1) {
+          return js;
+        }
+        regexAllowed = false;
+      } else if (c == '`') {
+        i = skipTemplate(js, i);
+        if (i == -1) {
+          return js;
+        }
+        regexAllowed = false;
+      } else if (c == '/' && regexAllowed) {
+        i = skipRegex(js, i);
+        if (i == -1) {
+          return js;
+        }
+        isRegex = true;
+        regexAllowed = false;
+      } else if (isIdentifierChar(c)) {
+        while (i < length && isIdentifierChar(js.charAt(i))) {
+          i++;
+        }
+        String word = js.substring(start, i);
+        isInteger = Character.isDigit(c) && word.indexOf('.') == -1;
+        regexAllowed = REGEX_KEYWORDS.contains(word);
+      } else if ((c == '+' || c == '-') && next == c) {
+        i += 2;
+        regexAllowed = false;
+      } else {
+        i++;
+        regexAllowed = c != ')' && c != ']' && c != '}';
+      }
+
+      if (whitespace != 0 && out.length() > 0) {
+        char prev = out.charAt(out.length() - 1);
+        char first = js.charAt(start);
+        if (whitespace == '\n' && endsStatement(prev) && beginsStatement(first)) {
+          out.append('\n');
+        } else if (needsSpace(prev, first, lastWasRegex, lastWasInteger)) {
+          out.append(' ');
+        }
+      }
+      whitespace = 0;
+      out.append(js, start, i);
+      lastWasRegex = isRegex;
+      lastWasInteger = isInteger;
+    }
+    return out.toString();
+  }
+
+  /**
+   * @return The index after the string literal starting at start, or -1 if it isn't terminated.
+   */
+  private static int skipString(String js, int start) {
+    char quote = js.charAt(start);
+    for (int i = start + 1, j = js.length(); i < j; ++i) {
+      char c = js.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (c == quote) {
+        return i + 1;
+      } else if (isLineBreak(c)) {
+        return -1;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return The index after the template literal starting at start, or -1 if it isn't terminated
+   *     or contains a substitution that can't be scanned safely.
+   */
+  private static int skipTemplate(String js, int start) {
+    for (int i = start + 1, j = js.length(); i < j; ++i) {
+      char c = js.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (c == '`') {
+        return i + 1;
+      } else if (c == '$' && i + 1 < j && js.charAt(i + 1) == '{') {
+        i = skipSubstitution(js, i + 2);
+        if (i == -1) {
+          return -1;
+        }
+        // Back up so the loop increment lands on the character after the closing brace.
+        i--;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Finds the end of a ${...} substitution by counting braces. A slash that doesn't start a
+   * comment may be a regular expression holding braces or quotes, which can't be told apart from
+   * a division without parsing, so it makes the substitution unscannable.
+   *
+   * @return The index after the closing brace, or -1 if the end can't be found.
+   */
+  private static int skipSubstitution(String js, int start) {
+    int depth = 0;
+    int i = start;
+    int length = js.length();
+    while (i < length) {
+      char c = js.charAt(i);
+      char next = i + 1 < length ? js.charAt(i + 1) : 0;
+      if (c == '\'' || c == '"') {
+        i = skipString(js, i);
+      } else if (c == '`') {
+        i = skipTemplate(js, i);
+      } else if (c == '/' && next == '/') {
+        while (i < length && !isLineBreak(js.charAt(i))) {
+          i++;
+        }
+      } else if (c == '/' && next == '*') {
+        int end = js.indexOf("*/", i + 2);
+        i = end == -1 ? -1 : end + 2;
+      } else if (c == '/') {
+        return -1;
+      } else if (c == '{') {
+        depth++;
+        i++;
+      } else if (c == '}') {
+        if (depth == 0) {
+          return i + 1;
+        }
+        depth--;
+        i++;
+      } else {
+        i++;
+      }
+      if (i == -1) {
+        return -1;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return The index after the regular expression literal (and its flags) starting at start, or
+   *     -1 if it isn't terminated.
+   */
+  private static int skipRegex(String js, int start) {
+    boolean inClass = false;
+    for (int i = start + 1, j = js.length(); i < j; ++i) {
+      char c = js.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (isLineBreak(c)) {
+        return -1;
+      } else if (c == '[') {
+        inClass = true;
+      } else if (c == ']') {
+        inClass = false;
+      } else if (c == '/' && !inClass) {
+        i++;
+        while (i < j && isIdentifierChar(js.charAt(i))) {
+          i++;
+        }
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean needsSpace(char prev, char next, boolean afterRegex,
+      boolean afterInteger) {
+    if (isIdentifierChar(next)) {
+      // Words would run together, or become regular expression flags.
+      return isIdentifierChar(prev) || afterRegex;
+    }
+    // "a + +b", "a - -b", "a / /re/" and "1 .toString()".
+    return ((prev == '+' || prev == '-' || prev == '/') && next == prev) ||
+        (afterInteger && next == '.');
+  }
+
+  private static boolean endsStatement(char c) {
+    return isIdentifierChar(c) || ")]}'\"`+-/".indexOf(c) != -1;
+  }
+
+  private static boolean beginsStatement(char c) {
+    return isIdentifierChar(c) || "([{'\"`+-!~/".indexOf(c) != -1;
+  }
+
+  private static boolean isIdentifierChar(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') ||
+        c == '_' || c == '$' || c == '\\' || (c > 126 && !Character.isWhitespace(c));
+  }
+
+  private static boolean isLineBreak(char c) {
+    return c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029';
+  }
+
+  private static boolean hasLineBreak(String s) {
+    for (int i = 0, j = s.length(); i < j; ++i) {
+      if (isLineBreak(s.charAt(i))) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.rewrite;
+
+import org.apache.shindig.common.ContainerConfig;
+import org.apache.shindig.common.cache.Cache;
+import org.apache.shindig.common.cache.CacheProvider;
+import org.apache.shindig.common.util.CharsetUtil;
+import org.apache.shindig.common.util.HashUtil;
+import org.apache.shindig.gadgets.Gadget;
+import org.apache.shindig.gadgets.http.HttpRequest;
+import org.apache.shindig.gadgets.http.HttpResponse;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import org.json.JSONObject;
+
+/**
+ * Minifies proxied javascript and CSS, including resources fetched by the concat servlet, and
+ * rendered gadget HTML.
+ *
+ * Disabled unless the container's gadgets.content-rewrite configuration sets "minify" (javascript
+ * and CSS) or "minify-html" to true. Minified javascript and CSS is cached by a hash of the
+ * original, so a resource is only minified again when its content changes. Rendered HTML usually
+ * differs per request, and is minified in a single pass instead.
+ *
+ * This must be the last rewriter, so that it sees the final content.
+ */
+@Singleton
+public class MinifyingContentRewriter implements ContentRewriter {
+  public static final String CACHE_NAME = "minifiedContent";
+
+  static final String CONTENT_REWRITE_KEY = "gadgets.content-rewrite";
+  static final String MINIFY_KEY = "minify";
+  static final String MINIFY_HTML_KEY = "minify-html";
+
+  private final ContainerConfig config;
+  private final Cache<String, byte[]> cache;
+
+  @Inject
+  public MinifyingContentRewriter(ContainerConfig config, CacheProvider cacheProvider) {
+    this.config = config;
+    this.cache = cacheProvider.createCache(CACHE_NAME);
+  }
+
+  public RewriterResults rewrite(Gadget gadget, MutableContent content) {
+    if (!isEnabled(gadget.getContext().getContainer(), MINIFY_HTML_KEY)) {
+      return null;
+    }
+    String html = content.getContent();
+    String minified = HtmlMinifier.minify(html);
+    if (minified.length() < html.length()) {
+      content.setContent(minified);
+    }
+    return RewriterResults.cacheableIndefinitely();
+  }
+
+  public RewriterResults rewrite(HttpRequest request, HttpResponse original,
+      MutableContent content) {
+    boolean css = RewriterUtils.isCss(request, original);
+    if (!css && !RewriterUtils.isJavascript(request, original)) {
+      return null;
+    }
+    if (!isEnabled(request.getContainer(), MINIFY_KEY)) {
+      return null;
+    }
+
+    // Keyed and cached as UTF-8, so that previously minified content is never decoded.
+    byte[] source = content.getContentBytes();
+    String key = (css ? "css:" : "js:") + source.length + ':' + HashUtil.checksum(source);
+    byte[] minified = cache.getElement(key);
+    if (minified == null) {
+      String sourceString = content.getContent();
+      minified = CharsetUtil.getUtf8Bytes(css ? CssMinifier.minify(sourceString, request.getUri())
+          : JsMinifier.minify(sourceString));
+      cache.addElement(key, minified);
+    }
+    if (minified.length >= source.length) {
+      return null;
+    }
+    content.setContentBytes(minified);
+    return RewriterResults.cacheableIndefinitely();
+  }
+
+  private boolean isEnabled(String container, String key) {
+    JSONObject contentRewrite = config.getJsonObject(container, CONTENT_REWRITE_KEY);
+    return contentRewrite != null && contentRewrite.optBoolean(key);
+  }
+}
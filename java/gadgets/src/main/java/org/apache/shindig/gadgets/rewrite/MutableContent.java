@@ -17,22 +17,52 @@
  */
 package org.apache.shindig.gadgets.rewrite;
 
+import org.apache.shindig.common.util.CharsetUtil;
 import org.apache.shindig.gadgets.GadgetException;
 import org.apache.shindig.gadgets.http.HttpResponse;
 import org.apache.shindig.gadgets.parse.GadgetHtmlParser;
 import org.apache.shindig.gadgets.parse.HtmlSerializer;
+import org.apache.shindig.gadgets.parse.HtmlTree;
 
 import org.w3c.dom.Document;
 
+import java.util.Arrays;
+import java.util.Set;
+
 /**
  * Object that maintains a String representation of arbitrary contents
  * and a consistent view of those contents as an HTML parse tree.
+ *
+ * The parse tree is available either as a W3C DOM, for existing rewriters, or as a lighter
+ * {@link HtmlTree}. Only one of the two is current at a time; asking for the other converts it.
+ *
+ * The contents are also available as UTF-8 bytes. A UTF-8 encoded response is used as is, so
+ * content that is only scanned, or set as bytes, is never decoded to a String or encoded again.
  */
 public class MutableContent {
   private String content;
+  // UTF-8 form of the current content, if it has been requested or set.
+  private byte[] contentBytes;
   private HttpResponse contentSource;
   private Document document;
+  private HtmlTree tree;
+  // A parse of the current content which may be shared with other requests, and so is never
+  // modified. It's copied into document when a modifiable document is needed.
+  private Document sharedDocument;
   private final GadgetHtmlParser contentParser;
+  // Counts changes to the content, so that callers can tell whether a rewriter changed anything.
+  private int editCount;
+  // Edits to the tree invalidate the string form, without rewriters having to call notifyEdit.
+  private final HtmlTree.Listener treeListener = new HtmlTree.Listener() {
+    public void treeChanged(HtmlTree changed) {
+      if (changed == tree) {
+        content = null;
+        contentBytes = null;
+        contentSource = null;
+        editCount++;
+      }
+    }
+  };
 
   private static final String MUTABLE_CONTENT_LISTENER = "MutableContentListener";
 
@@ -77,8 +107,12 @@ public class MutableContent {
         content = contentSource.getResponseAsString();
         // Clear on first use
         contentSource = null;
+      } else if (contentBytes != null) {
+        content = CharsetUtil.newUtf8String(contentBytes);
       } else if (document != null) {
         content = HtmlSerializer.serialize(document);
+      } else if (tree != null) {
+        content = tree.serialize();
       }
     }
     return content;
@@ -93,12 +127,46 @@ public class MutableContent {
     // TODO - Equality check may be unnecessary overhead
     if (content == null || !content.equals(newContent)) {
       content = newContent;
+      contentBytes = null;
       document = null;
+      tree = null;
+      sharedDocument = null;
       contentSource = null;
+      editCount++;
     }
   }
 
 
+  /**
+   * Retrieves the current content encoded as UTF-8. The bytes of a UTF-8 encoded response are
+   * returned without decoding them. Callers must not modify the returned array.
+   */
+  public byte[] getContentBytes() {
+    if (contentBytes == null) {
+      contentBytes = getUtf8Source();
+      if (contentBytes == null) {
+        contentBytes = CharsetUtil.getUtf8Bytes(getContent());
+      }
+    }
+    return contentBytes;
+  }
+
+  /**
+   * Sets the object's content as UTF-8 bytes, which are not copied. The String form and parse
+   * tree are only computed again if they are asked for.
+   */
+  public void setContentBytes(byte[] newBytes) {
+    if (contentBytes == null || !Arrays.equals(contentBytes, newBytes)) {
+      contentBytes = newBytes;
+      content = null;
+      document = null;
+      tree = null;
+      sharedDocument = null;
+      contentSource = null;
+      editCount++;
+    }
+  }
+
   /**
    * Notification that the content of the document has changed. Causes the content
    * string to be cleared
@@ -106,7 +174,9 @@ public class MutableContent {
   public void documentChanged() {
     if (document != null) {
       content = null;
+      contentBytes = null;
       contentSource = null;
+      editCount++;
     }
   }
   
@@ -124,21 +194,210 @@ public class MutableContent {
     if (document != null) {
       return document;
     }
-    try {
-      document = contentParser.parseDom(getContent());
-      document.setUserData(MUTABLE_CONTENT_LISTENER, this, null);
-    } catch (GadgetException e) {
-      // TODO: emit info message
-      return null;
+    if (tree != null) {
+      // Rewriters that haven't been ported to the tree get a DOM of its current contents.
+      getContent();
+      tree = null;
+    }
+    if (sharedDocument != null) {
+      document = GadgetHtmlParser.copyDom(sharedDocument);
+      sharedDocument = null;
+    } else {
+      try {
+        document = contentParser.parseDom(getContent());
+      } catch (GadgetException e) {
+        // TODO: emit info message
+        return null;
+      }
     }
+    document.setUserData(MUTABLE_CONTENT_LISTENER, this, null);
     return document;
   }
 
+  /**
+   * Retrieves the object contents as a modifiable {@link HtmlTree}. Edits made through the tree
+   * are reflected by {@link #getContent} without calling {@link #notifyEdit}. If the content is
+   * currently held as a DOM, the DOM is converted and is no longer current.
+   */
+  public HtmlTree getParseTree() {
+    if (tree != null) {
+      return tree;
+    }
+    if (document != null) {
+      tree = contentParser.toTree(document);
+      document.setUserData(MUTABLE_CONTENT_LISTENER, null, null);
+      document = null;
+    } else {
+      sharedDocument = null;
+      try {
+        tree = contentParser.parseTree(getContent());
+      } catch (GadgetException e) {
+        return null;
+      }
+    }
+    tree.setListener(treeListener);
+    return tree;
+  }
+
+  /**
+   * Retrieves the object contents in parsed form for inspection only. The returned document must
+   * not be modified, since it may be shared with other requests; rewriters that decide to make
+   * changes must call {@link #getDocument} and make them there. Until then, no copy of a cached
+   * parse is made.
+   *
+   * Shared documents may be read by several threads at once. They should be traversed with
+   * getFirstChild and getNextSibling rather than NodeLists, whose implementations often cache
+   * positions inside the DOM.
+   */
+  public Document getReadOnlyDocument() {
+    if (document != null) {
+      return document;
+    }
+    if (tree != null) {
+      return getDocument();
+    }
+    if (sharedDocument == null) {
+      Document parsed;
+      try {
+        parsed = contentParser.parseSharedDom(getContent());
+      } catch (GadgetException e) {
+        return null;
+      }
+      if (!GadgetHtmlParser.isShared(parsed)) {
+        // Nobody else has this one, so it can be used as the modifiable document as well.
+        document = parsed;
+        document.setUserData(MUTABLE_CONTENT_LISTENER, this, null);
+        return document;
+      }
+      sharedDocument = parsed;
+    }
+    return sharedDocument;
+  }
+
   /**
    * True if current state has a parsed document. Allows rewriters to switch mode based on
    * which content is most readily available
    */
   public boolean hasDocument() {
-    return (document != null);
+    return (document != null || sharedDocument != null);
+  }
+
+  /**
+   * True if current state has a parse tree.
+   */
+  public boolean hasParseTree() {
+    return tree != null;
+  }
+
+  /**
+   * Checks whether the content may contain an element with one of the given lower case names,
+   * so that rewriters can skip parsing markup that has nothing for them. Content that is only
+   * held in parsed form is not serialized for the check, and is assumed to match.
+   */
+  public boolean mayContainTags(Set<String> tags) {
+    CharSequence chars = getScannableContent();
+    return chars == null ? isParsed() : RewriterUtils.containsTag(chars, tags);
+  }
+
+  /**
+   * Checks whether the content may be a stylesheet with references to other resources, in the
+   * same way as {@link #mayContainTags}.
+   */
+  public boolean mayContainCssReferences() {
+    CharSequence chars = getScannableContent();
+    return chars == null ? isParsed() : RewriterUtils.containsCssReference(chars);
+  }
+
+  /**
+   * @return The content in the cheapest form to scan for ASCII syntax, or null if it is only held
+   *     in parsed form.
+   */
+  private CharSequence getScannableContent() {
+    if (content != null) {
+      return content;
+    }
+    byte[] bytes = contentBytes != null ? contentBytes : getUtf8Source();
+    if (bytes != null) {
+      return new Utf8Chars(bytes);
+    }
+    return contentSource != null ? getContent() : null;
+  }
+
+  private boolean isParsed() {
+    return document != null || sharedDocument != null || tree != null;
+  }
+
+  /**
+   * @return The body of the source response, if it is UTF-8 without a byte order mark.
+   */
+  private byte[] getUtf8Source() {
+    if (contentSource == null) {
+      return null;
+    }
+    String encoding = contentSource.getEncoding();
+    if (!"UTF-8".equals(encoding) && !"UTF8".equals(encoding)) {
+      return null;
+    }
+    byte[] bytes = contentSource.getResponseAsBytes();
+    if (bytes.length >= 3 && bytes[0] == (byte) 0xEF && bytes[1] == (byte) 0xBB
+        && bytes[2] == (byte) 0xBF) {
+      // getContent strips the mark, so the bytes would differ from it.
+      return null;
+    }
+    return bytes;
+  }
+
+  /**
+   * @return The number of times the content has been changed through this object.
+   */
+  int getEditCount() {
+    return editCount;
+  }
+
+  /**
+   * @return The length of the content if it is currently held as a string, or -1 if finding out
+   *     would require decoding or serializing it.
+   */
+  int getContentLength() {
+    return content == null ? -1 : content.length();
+  }
+
+  /**
+   * Presents UTF-8 bytes as characters for scanning ASCII syntax. Each byte of a multi-byte
+   * sequence is outside of the ASCII range, so it can't be mistaken for markup.
+   */
+  private static final class Utf8Chars implements CharSequence {
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+
+    private Utf8Chars(byte[] bytes) {
+      this(bytes, 0, bytes.length);
+    }
+
+    private Utf8Chars(byte[] bytes, int offset, int length) {
+      this.bytes = bytes;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    public int length() {
+      return length;
+    }
+
+    public char charAt(int index) {
+      return (char) (bytes[offset + index] & 0xFF);
+    }
+
+    public CharSequence subSequence(int start, int end) {
+      return new Utf8Chars(bytes, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+      byte[] chars = new byte[length];
+      System.arraycopy(bytes, offset, chars, 0, length);
+      return CharsetUtil.newUtf8String(chars);
+    }
   }
 }
@@ -0,0 +1,338 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.rewrite;
+
+import org.apache.shindig.common.uri.Uri;
+import org.apache.shindig.common.util.CharsetUtil;
+import org.apache.shindig.gadgets.ExecutorProvider;
+import org.apache.shindig.gadgets.Gadget;
+import org.apache.shindig.gadgets.GadgetException;
+import org.apache.shindig.gadgets.http.HttpCache;
+import org.apache.shindig.gadgets.http.HttpCacheKey;
+import org.apache.shindig.gadgets.http.HttpFetcher;
+import org.apache.shindig.gadgets.http.HttpRequest;
+import org.apache.shindig.gadgets.http.HttpResponse;
+import org.apache.shindig.gadgets.parse.HtmlTree;
+import org.apache.shindig.gadgets.spec.View;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+import org.apache.commons.codec.binary.Base64;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Inlines small resources referenced by gadgets, saving a request for each: images become data:
+ * URIs, and stylesheets and scripts become style and script blocks.
+ *
+ * Only resources no larger than shindig.rewrite.inline.maxBytes are inlined, and inlining is
+ * disabled when that is 0. Resources are taken from the HttpCache. A resource that isn't cached
+ * is fetched in the background, and rendering waits for it for at most
+ * shindig.rewrite.inline.fetchBudgetMillis; if it takes longer, it's left for later renders.
+ * Fetches run in the "inline" thread pool, and a resource isn't fetched at all while that pool is
+ * full.
+ *
+ * Which tags and URLs are inlined follows the gadget's content-rewrite feature. Stylesheets that
+ * refer to other resources aren't inlined, since their relative URLs would no longer resolve.
+ * This must run before rewriters that proxy or concatenate the same references.
+ */
+@Singleton
+public class ResourceInliningRewriter implements ContentRewriter {
+  private static final Set<String> TAGS = ImmutableSet.of("img", "link", "script");
+
+  private final HttpCache cache;
+  private final HttpFetcher fetcher;
+  private final ExecutorService executor;
+  private final ContentRewriterFeatureFactory rewriterFeatureFactory;
+  private final int maxBytes;
+  private final long fetchBudget;
+  // Background fetches in progress, so that a resource is only fetched once at a time.
+  private final ConcurrentMap<Uri, Future<HttpResponse>> pending =
+      new ConcurrentHashMap<Uri, Future<HttpResponse>>();
+
+  @Inject
+  public ResourceInliningRewriter(HttpCache cache, HttpFetcher fetcher,
+      @Named(ExecutorProvider.INLINE) ExecutorService executor,
+      ContentRewriterFeatureFactory rewriterFeatureFactory,
+      @Named("shindig.rewrite.inline.maxBytes") int maxBytes,
+      @Named("shindig.rewrite.inline.fetchBudgetMillis") long fetchBudget) {
+    this.cache = cache;
+    this.fetcher = fetcher;
+    this.executor = executor;
+    this.rewriterFeatureFactory = rewriterFeatureFactory;
+    this.maxBytes = maxBytes;
+    this.fetchBudget = fetchBudget;
+  }
+
+  public RewriterResults rewrite(HttpRequest request, HttpResponse original,
+      MutableContent content) {
+    // Not supported
+    return null;
+  }
+
+  public RewriterResults rewrite(Gadget gadget, MutableContent content) {
+    if (maxBytes <= 0 || !content.mayContainTags(TAGS)) {
+      return null;
+    }
+    String container = gadget.getContext().getContainer();
+    ContentRewriterFeature feature = rewriterFeatureFactory.get(gadget.getSpec(), container);
+    if (feature == null || !feature.isRewriteEnabled()) {
+      return null;
+    }
+    Uri base = gadget.getSpec().getUrl();
+    View view = gadget.getCurrentView();
+    if (view != null && view.getHref() != null) {
+      base = view.getHref();
+    }
+
+    HtmlTree tree = content.getParseTree();
+    if (tree == null) {
+      return null;
+    }
+    Map<Integer, Uri> resources = Maps.newLinkedHashMap();
+    for (int element : tree.getElementsByTagName(tree.getRoot(), TAGS)) {
+      Uri uri = getResourceUri(tree, element, feature, base);
+      if (uri != null) {
+        resources.put(element, uri);
+      }
+    }
+    if (resources.isEmpty()) {
+      return null;
+    }
+
+    Map<Uri, HttpResponse> responses = getResponses(resources.values(), container);
+    long ttl = Long.MAX_VALUE;
+    for (Map.Entry<Integer, Uri> entry : resources.entrySet()) {
+      HttpResponse response = responses.get(entry.getValue());
+      if (response == null) {
+        // Still being fetched, so a later render may inline more.
+        ttl = 0;
+      } else if (inline(tree, entry.getKey(), response)) {
+        ttl = Math.min(ttl, response.getCacheTtl());
+      }
+    }
+    return ttl > 0 ? RewriterResults.cacheable(ttl) : RewriterResults.notCacheable();
+  }
+
+  /**
+   * @return The absolute URL of the resource the element refers to, or null if it isn't one that
+   *     may be inlined.
+   */
+  private static Uri getResourceUri(HtmlTree tree, int element,
+      ContentRewriterFeature feature, Uri base) {
+    String name = tree.getTagName(element).toLowerCase();
+    String url;
+    if (name.equals("img")) {
+      url = feature.shouldRewriteTag("img") ? tree.getAttribute(element, "src") : null;
+    } else if (name.equals("link")) {
+      // Stylesheet links are rewritten along with style tags.
+      url = feature.shouldRewriteTag("style")
+          && "stylesheet".equalsIgnoreCase(tree.getAttribute(element, "rel"))
+          ? tree.getAttribute(element, "href") : null;
+    } else {
+      // Inline scripts always run immediately, so async and deferred scripts would run early.
+      String type = tree.getAttribute(element, "type");
+      url = feature.shouldRewriteTag("script") && tree.getFirstChild(element) == HtmlTree.NONE
+          && (type == null || type.toLowerCase().contains("javascript"))
+          && tree.getAttribute(element, "async") == null
+          && tree.getAttribute(element, "defer") == null
+          ? tree.getAttribute(element, "src") : null;
+    }
+    if (url == null) {
+      return null;
+    }
+    Uri uri;
+    try {
+      uri = base.resolve(Uri.parse(url.trim()));
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+    if (!"http".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(uri.getScheme())) {
+      return null;
+    }
+    return feature.shouldRewriteURL(uri.toString()) ? uri : null;
+  }
+
+  /**
+   * @return The cached responses for the resources, and those that could be fetched within the
+   *     budget.
+   */
+  private Map<Uri, HttpResponse> getResponses(Iterable<Uri> resources, String container) {
+    Map<Uri, HttpResponse> responses = Maps.newHashMap();
+    Map<Uri, Future<HttpResponse>> fetches = Maps.newHashMap();
+    for (Uri uri : resources) {
+      if (!responses.containsKey(uri) && !fetches.containsKey(uri)) {
+        HttpRequest request = new HttpRequest(uri).setContainer(container);
+        HttpResponse cached = cache.getResponse(new HttpCacheKey(request), request);
+        if (cached != null) {
+          responses.put(uri, cached);
+        } else {
+          Future<HttpResponse> fetch = fetch(request);
+          if (fetch != null) {
+            fetches.put(uri, fetch);
+          }
+        }
+      }
+    }
+
+    long deadline = System.currentTimeMillis() + fetchBudget;
+    for (Map.Entry<Uri, Future<HttpResponse>> entry : fetches.entrySet()) {
+      Future<HttpResponse> fetch = entry.getValue();
+      long remaining = deadline - System.currentTimeMillis();
+      try {
+        if (remaining > 0) {
+          responses.put(entry.getKey(), fetch.get(remaining, TimeUnit.MILLISECONDS));
+        } else if (fetch.isDone()) {
+          responses.put(entry.getKey(), fetch.get());
+        }
+      } catch (TimeoutException e) {
+        // The fetch continues, and the cached response is used by later renders.
+      } catch (ExecutionException e) {
+        // Not inlined; the reference is left for the browser to fetch.
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    return responses;
+  }
+
+  /**
+   * Starts fetching a resource into the cache in the background.
+   *
+   * @return The pending fetch, or null if it couldn't be started.
+   */
+  private Future<HttpResponse> fetch(final HttpRequest request) {
+    final Uri uri = request.getUri();
+    Future<HttpResponse> fetch = pending.get(uri);
+    if (fetch == null) {
+      final Thread renderer = Thread.currentThread();
+      FutureTask<HttpResponse> task = new FutureTask<HttpResponse>(new Callable<HttpResponse>() {
+        public HttpResponse call() throws GadgetException {
+          try {
+            // A pool configured with caller_runs would otherwise fetch on the rendering thread,
+            // with no deadline.
+            if (Thread.currentThread() == renderer) {
+              throw new RejectedExecutionException("Not fetched on the rendering thread");
+            }
+            return fetcher.fetch(request);
+          } finally {
+            pending.remove(uri);
+          }
+        }
+      });
+      fetch = pending.putIfAbsent(uri, task);
+      if (fetch == null) {
+        fetch = task;
+        try {
+          executor.execute(task);
+        } catch (RejectedExecutionException e) {
+          pending.remove(uri);
+          return null;
+        }
+      }
+    }
+    return fetch;
+  }
+
+  /**
+   * Replaces the element's reference with the content of the response, if it's small enough and
+   * of the right type.
+   *
+   * @return True if the element was changed.
+   */
+  private boolean inline(HtmlTree tree, int element, HttpResponse response) {
+    if (response.getHttpStatusCode() != HttpResponse.SC_OK
+        || response.getContentLength() > maxBytes) {
+      return false;
+    }
+    String name = tree.getTagName(element).toLowerCase();
+    if (name.equals("img")) {
+      String type = getMimeType(response);
+      if (type == null || !type.startsWith("image/")) {
+        return false;
+      }
+      byte[] encoded = Base64.encodeBase64(response.getResponseAsBytes());
+      tree.setAttribute(element, "src",
+          "data:" + type + ";base64," + CharsetUtil.newUtf8String(encoded));
+      removeFetchAttributes(tree, element);
+    } else if (name.equals("link")) {
+      String css = response.getResponseAsString();
+      if (RewriterUtils.containsCssReference(css) || containsIgnoreCase(css, "</style")) {
+        return false;
+      }
+      int style = tree.createElement("style", "type", "text/css");
+      String media = tree.getAttribute(element, "media");
+      if (media != null) {
+        tree.setAttribute(style, "media", media);
+      }
+      tree.appendChild(style, tree.createText(css));
+      tree.insertBefore(tree.getParent(element), style, element);
+      tree.removeChild(element);
+    } else {
+      String js = response.getResponseAsString();
+      if (containsIgnoreCase(js, "</script")) {
+        return false;
+      }
+      tree.removeAttribute(element, "src");
+      removeFetchAttributes(tree, element);
+      tree.appendChild(element, tree.createText(js));
+    }
+    return true;
+  }
+
+  /**
+   * Removes the attributes that only apply to fetching the original reference. An integrity hash
+   * would otherwise be checked against the inlined content, or block it outright.
+   */
+  private static void removeFetchAttributes(HtmlTree tree, int element) {
+    tree.removeAttribute(element, "integrity");
+    tree.removeAttribute(element, "crossorigin");
+  }
+
+  private static String getMimeType(HttpResponse response) {
+    String contentType = response.getHeader("Content-Type");
+    if (contentType == null) {
+      return null;
+    }
+    int semicolon = contentType.indexOf(';');
+    if (semicolon != -1) {
+      contentType = contentType.substring(0, semicolon);
+    }
+    return contentType.trim().toLowerCase();
+  }
+
+  private static boolean containsIgnoreCase(String text, String lowerCase) {
+    return text.toLowerCase().contains(lowerCase);
+  }
+}
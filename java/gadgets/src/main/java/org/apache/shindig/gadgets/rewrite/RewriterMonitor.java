@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.rewrite;
+
+import org.apache.shindig.common.uri.Uri;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * Collects {@link RewriterStatistics} for every rewriter class, and logs rewrites that take longer
+ * than shindig.rewrite.slowThresholdMillis.
+ */
+@Singleton
+public class RewriterMonitor {
+  private static final Logger logger = Logger.getLogger(RewriterMonitor.class.getName());
+
+  private final ConcurrentMap<Class<?>, RewriterStatistics> statistics =
+      new ConcurrentHashMap<Class<?>, RewriterStatistics>();
+  private final long slowThresholdNanos;
+
+  /**
+   * @param slowThresholdMillis Rewrites taking longer than this are logged. 0 disables logging.
+   */
+  @Inject
+  public RewriterMonitor(@Named("shindig.rewrite.slowThresholdMillis") long slowThresholdMillis) {
+    this.slowThresholdNanos = slowThresholdMillis * 1000000;
+  }
+
+  /**
+   * @return The statistics for a rewriter class, created when first needed.
+   */
+  public RewriterStatistics getStatistics(Class<?> rewriterClass) {
+    RewriterStatistics stats = statistics.get(rewriterClass);
+    if (stats == null) {
+      stats = new RewriterStatistics(rewriterClass.getSimpleName());
+      RewriterStatistics existing = statistics.putIfAbsent(rewriterClass, stats);
+      if (existing != null) {
+        return existing;
+      }
+      stats.registerMBean();
+    }
+    return stats;
+  }
+
+  /**
+   * Records a single rewriter invocation.
+   *
+   * @param rewriter The rewriter that was invoked.
+   * @param nanos Time spent in the rewriter.
+   * @param inputLength Content length before the rewriter, or -1 if unknown.
+   * @param outputLength Content length after the rewriter, or -1 if unknown.
+   * @param changed Whether the rewriter changed the content.
+   * @param gadgetUrl The gadget being rewritten, or the proxied url. May be null.
+   */
+  public void record(ContentRewriter rewriter, long nanos, int inputLength, int outputLength,
+      boolean changed, Uri gadgetUrl) {
+    boolean slow = slowThresholdNanos > 0 && nanos > slowThresholdNanos;
+    getStatistics(rewriter.getClass()).record(nanos, inputLength, outputLength, changed, slow);
+    if (slow) {
+      logger.warning("Slow rewrite: " + rewriter.getClass().getSimpleName() + " took " +
+          (nanos / 1000000) + "ms for " + gadgetUrl +
+          (inputLength >= 0 ? " (" + inputLength + " characters)" : ""));
+    }
+  }
+}
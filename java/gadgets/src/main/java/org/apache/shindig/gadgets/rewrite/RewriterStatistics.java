@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.rewrite;
+
+import org.apache.shindig.common.util.JmxUtil;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregate latency, size and change counts for a single rewriter class, exported over JMX.
+ *
+ * Content lengths are only recorded when the content is held as a string both before and after
+ * the rewriter, so that measuring never forces content to be decoded or serialized.
+ */
+public class RewriterStatistics implements RewriterStatisticsMBean {
+  private final String name;
+  private final AtomicLong invocations = new AtomicLong();
+  private final AtomicLong changed = new AtomicLong();
+  private final AtomicLong slow = new AtomicLong();
+  private final AtomicLong totalNanos = new AtomicLong();
+  private final AtomicLong maxNanos = new AtomicLong();
+  private final AtomicLong measured = new AtomicLong();
+  private final AtomicLong totalInputLength = new AtomicLong();
+  private final AtomicLong totalOutputLength = new AtomicLong();
+
+  /**
+   * @param name The rewriter's name, used as the name of the JMX bean.
+   */
+  public RewriterStatistics(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Registers these statistics with the platform MBean server.
+   */
+  public void registerMBean() {
+    JmxUtil.register(this, "RewriterStatistics", name);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Records a single invocation of the rewriter.
+   *
+   * @param nanos Time spent in the rewriter.
+   * @param inputLength Content length before the rewriter, or -1 if unknown.
+   * @param outputLength Content length after the rewriter, or -1 if unknown.
+   * @param wasChanged Whether the rewriter changed the content.
+   * @param wasSlow Whether the invocation took longer than the slow rewrite threshold.
+   */
+  public void record(long nanos, int inputLength, int outputLength, boolean wasChanged,
+      boolean wasSlow) {
+    invocations.incrementAndGet();
+    if (wasChanged) {
+      changed.incrementAndGet();
+    }
+    if (wasSlow) {
+      slow.incrementAndGet();
+    }
+    totalNanos.addAndGet(nanos);
+    long max = maxNanos.get();
+    while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+      max = maxNanos.get();
+    }
+    if (inputLength >= 0 && outputLength >= 0) {
+      measured.incrementAndGet();
+      totalInputLength.addAndGet(inputLength);
+      totalOutputLength.addAndGet(outputLength);
+    }
+  }
+
+  public long getInvocationCount() {
+    return invocations.get();
+  }
+
+  public long getChangedCount() {
+    return changed.get();
+  }
+
+  public long getSlowCount() {
+    return slow.get();
+  }
+
+  public long getAverageLatencyMicros() {
+    long count = invocations.get();
+    return count == 0 ? 0 : totalNanos.get() / count / 1000;
+  }
+
+  public long getMaxLatencyMicros() {
+    return maxNanos.get() / 1000;
+  }
+
+  public long getTotalLatencyMillis() {
+    return totalNanos.get() / 1000000;
+  }
+
+  public long getAverageInputLength() {
+    long count = measured.get();
+    return count == 0 ? 0 : totalInputLength.get() / count;
+  }
+
+  public long getAverageOutputLength() {
+    long count = measured.get();
+    return count == 0 ? 0 : totalOutputLength.get() / count;
+  }
+}
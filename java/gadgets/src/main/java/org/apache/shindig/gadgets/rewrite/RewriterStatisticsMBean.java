@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.rewrite;
+
+/**
+ * JMX view of {@link RewriterStatistics}.
+ */
+public interface RewriterStatisticsMBean {
+  /**
+   * @return The number of times the rewriter was invoked.
+   */
+  long getInvocationCount();
+
+  /**
+   * @return The number of invocations that changed the content.
+   */
+  long getChangedCount();
+
+  /**
+   * @return The number of invocations that took longer than the slow rewrite threshold.
+   */
+  long getSlowCount();
+
+  /**
+   * @return The average time spent in the rewriter, in microseconds.
+   */
+  long getAverageLatencyMicros();
+
+  /**
+   * @return The longest time spent in a single invocation, in microseconds.
+   */
+  long getMaxLatencyMicros();
+
+  /**
+   * @return The total time spent in the rewriter, in milliseconds.
+   */
+  long getTotalLatencyMillis();
+
+  /**
+   * @return The average length of the content passed to the rewriter, in characters, over the
+   *     invocations where it was measured.
+   */
+  long getAverageInputLength();
+
+  /**
+   * @return The average length of the content after the rewriter, in characters, over the
+   *     invocations where it was measured.
+   */
+  long getAverageOutputLength();
+}
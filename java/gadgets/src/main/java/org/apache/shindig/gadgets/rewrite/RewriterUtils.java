@@ -21,6 +21,8 @@ package org.apache.shindig.gadgets.rewrite;
 import org.apache.shindig.gadgets.http.HttpRequest;
 import org.apache.shindig.gadgets.http.HttpResponse;
 
+import java.util.Set;
+
 /**
  * Various utility functions used by rewriters
  */
@@ -48,4 +50,59 @@ public class RewriterUtils {
     }
     return mimeType != null ? mimeType.toLowerCase() : null;
   }
+
+  /**
+   * Scans markup for a start tag with one of the given lower case names, without parsing it. A
+   * false result means that no such element can be present; a true result may be spurious, for
+   * example for a tag inside a comment.
+   */
+  public static boolean containsTag(CharSequence content, Set<String> tags) {
+    if (tags.isEmpty()) {
+      return false;
+    }
+    for (int i = 0, j = content.length(); i < j; ++i) {
+      if (content.charAt(i) == '<') {
+        for (String tag : tags) {
+          int end = i + 1 + tag.length();
+          if (regionMatches(content, i + 1, tag)
+              && (end == j || !Character.isLetterOrDigit(content.charAt(end)))) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Scans a stylesheet for a url() reference or an @import rule, without lexing it. A false
+   * result means that the stylesheet refers to nothing that could be rewritten.
+   */
+  public static boolean containsCssReference(CharSequence content) {
+    for (int i = 0, j = content.length(); i < j; ++i) {
+      char c = content.charAt(i);
+      if (c == '(' && regionMatches(content, i - 3, "url")) {
+        return true;
+      }
+      if (c == '@' && regionMatches(content, i + 1, "import")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Case insensitive comparison of part of the content with a lower case ASCII string.
+   */
+  private static boolean regionMatches(CharSequence content, int offset, String lower) {
+    if (offset < 0 || offset + lower.length() > content.length()) {
+      return false;
+    }
+    for (int i = 0, j = lower.length(); i < j; ++i) {
+      if (Character.toLowerCase(content.charAt(offset + i)) != lower.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
 }
@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.rewrite;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Decides whether a URL matches the include-urls and exclude-urls patterns of a content-rewrite
+ * policy, which is asked for every link in rewritten content.
+ *
+ * Both patterns are regular expressions that are searched for anywhere in the URL. In practice
+ * they are almost always ".*" or an alternation of literal strings, such as "\.js|\.css", so
+ * patterns of that form are compiled into a single Aho-Corasick automaton that checks the include
+ * and exclude literals together in one pass over the URL. Any other pattern falls back to
+ * {@link Pattern}.
+ *
+ * Instances are immutable and thread safe.
+ */
+final class UrlMatcher {
+  private static final int INCLUDE = 1;
+  private static final int EXCLUDE = 2;
+
+  private final Side include;
+  private final Side exclude;
+  // Literals of both sides, when neither needs a regex. Null otherwise.
+  private final Automaton combined;
+
+  /**
+   * @param includeRegex Pattern that URLs must contain, or null to match nothing.
+   * @param excludeRegex Pattern that URLs must not contain, or null to exclude nothing.
+   */
+  UrlMatcher(String includeRegex, String excludeRegex) {
+    include = Side.compile(includeRegex, INCLUDE);
+    exclude = Side.compile(excludeRegex, EXCLUDE);
+    if (include.literals != null && exclude.literals != null) {
+      List<String> literals = Lists.newArrayList(include.literals);
+      literals.addAll(exclude.literals);
+      int[] flags = new int[literals.size()];
+      Arrays.fill(flags, 0, include.literals.size(), INCLUDE);
+      Arrays.fill(flags, include.literals.size(), flags.length, EXCLUDE);
+      combined = new Automaton(literals, flags);
+    } else {
+      combined = null;
+    }
+  }
+
+  /**
+   * @return True if the url contains the include pattern and doesn't contain the exclude pattern.
+   */
+  boolean matches(String url) {
+    if (include.none || exclude.all) {
+      return false;
+    }
+    if (combined != null) {
+      int found = combined.scan(url, EXCLUDE);
+      return (found & EXCLUDE) == 0 && (include.all || (found & INCLUDE) != 0);
+    }
+    return include.find(url) && !exclude.find(url);
+  }
+
+  /**
+   * One of the two patterns.
+   */
+  private static final class Side {
+    // Matches nothing: no pattern was given.
+    private final boolean none;
+    // Matches everything.
+    private final boolean all;
+    // The alternatives, when they're all literal strings.
+    private final List<String> literals;
+    private final Automaton automaton;
+    private final Pattern pattern;
+
+    private Side(boolean none, boolean all, List<String> literals, Pattern pattern, int flag) {
+      this.none = none;
+      this.all = all;
+      this.literals = literals;
+      this.pattern = pattern;
+      if (literals == null || literals.isEmpty()) {
+        automaton = null;
+      } else {
+        int[] flags = new int[literals.size()];
+        Arrays.fill(flags, flag);
+        automaton = new Automaton(literals, flags);
+      }
+    }
+
+    static Side compile(String regex, int flag) {
+      if (regex == null) {
+        return new Side(true, false, Lists.<String>newArrayList(), null, flag);
+      }
+      List<String> literals = Lists.newArrayList();
+      boolean all = false;
+      for (String alternative : splitAlternatives(regex)) {
+        if (alternative.length() == 0 || ".*".equals(alternative)) {
+          all = true;
+          continue;
+        }
+        String literal = toLiteral(alternative);
+        if (literal == null) {
+          return new Side(false, false, null, Pattern.compile(regex), flag);
+        }
+        literals.add(literal);
+      }
+      if (all) {
+        literals.clear();
+      }
+      return new Side(false, all, literals, null, flag);
+    }
+
+    boolean find(String url) {
+      if (none) {
+        return false;
+      } else if (all) {
+        return true;
+      } else if (pattern != null) {
+        return pattern.matcher(url).find();
+      }
+      return automaton != null && automaton.scan(url, ~0) != 0;
+    }
+  }
+
+  /**
+   * Splits a regex on the alternation operators outside of groups and classes. Anything inside of
+   * them makes the alternative non-literal anyway, so only escapes need to be tracked precisely.
+   */
+  private static List<String> splitAlternatives(String regex) {
+    List<String> alternatives = Lists.newArrayList();
+    int depth = 0;
+    int start = 0;
+    for (int i = 0, j = regex.length(); i < j; ++i) {
+      char c = regex.charAt(i);
+      if (c == '\\') {
+        ++i;
+      } else if (c == '(' || c == '[') {
+        ++depth;
+      } else if ((c == ')' || c == ']') && depth > 0) {
+        --depth;
+      } else if (c == '|' && depth == 0) {
+        alternatives.add(regex.substring(start, i));
+        start = i + 1;
+      }
+    }
+    alternatives.add(regex.substring(start));
+    return alternatives;
+  }
+
+  /**
+   * @return The string matched by a regex alternative, or null if it isn't a plain literal.
+   */
+  private static String toLiteral(String alternative) {
+    StringBuilder literal = new StringBuilder(alternative.length());
+    for (int i = 0, j = alternative.length(); i < j; ++i) {
+      char c = alternative.charAt(i);
+      if (c == '\\') {
+        if (i + 1 == j) {
+          return null;
+        }
+        char escaped = alternative.charAt(++i);
+        // Escaped letters and digits are classes, back references or quoting.
+        if (Character.isLetterOrDigit(escaped)) {
+          return null;
+        }
+        literal.append(escaped);
+      } else if (".*+?()[]{}^$|".indexOf(c) != -1) {
+        return null;
+      } else {
+        literal.append(c);
+      }
+    }
+    return literal.toString();
+  }
+
+  /**
+   * Aho-Corasick automaton over a set of literals, each tagged with flags.
+   */
+  private static final class Automaton {
+    // Transitions of each state, sorted by label.
+    private final char[][] labels;
+    private final int[][] targets;
+    private final int[] failures;
+    // Flags of every literal that ends at each state, including those reached via failures.
+    private final int[] outputs;
+
+    Automaton(List<String> literals, int[] flags) {
+      List<Map<Character, Integer>> trie = Lists.newArrayList();
+      List<Integer> outputList = Lists.newArrayList();
+      trie.add(Maps.<Character, Integer>newHashMap());
+      outputList.add(0);
+      for (int i = 0; i < literals.size(); ++i) {
+        int state = 0;
+        for (char c : literals.get(i).toCharArray()) {
+          Integer next = trie.get(state).get(c);
+          if (next == null) {
+            next = trie.size();
+            trie.add(Maps.<Character, Integer>newHashMap());
+            outputList.add(0);
+            trie.get(state).put(c, next);
+          }
+          state = next;
+        }
+        outputList.set(state, outputList.get(state) | flags[i]);
+      }
+
+      int size = trie.size();
+      labels = new char[size][];
+      targets = new int[size][];
+      failures = new int[size];
+      outputs = new int[size];
+      for (int state = 0; state < size; ++state) {
+        Map<Character, Integer> transitions = trie.get(state);
+        char[] stateLabels = new char[transitions.size()];
+        int i = 0;
+        for (Character c : transitions.keySet()) {
+          stateLabels[i++] = c;
+        }
+        Arrays.sort(stateLabels);
+        int[] stateTargets = new int[stateLabels.length];
+        for (i = 0; i < stateLabels.length; ++i) {
+          stateTargets[i] = transitions.get(stateLabels[i]);
+        }
+        labels[state] = stateLabels;
+        targets[state] = stateTargets;
+        outputs[state] = outputList.get(state);
+      }
+
+      // Breadth first, so that failures always point at states that are already complete.
+      LinkedList<Integer> queue = new LinkedList<Integer>();
+      for (int target : targets[0]) {
+        failures[target] = 0;
+        queue.add(target);
+      }
+      while (!queue.isEmpty()) {
+        int state = queue.removeFirst();
+        for (int i = 0; i < labels[state].length; ++i) {
+          char c = labels[state][i];
+          int target = targets[state][i];
+          int failure = failures[state];
+          while (failure != 0 && next(failure, c) == -1) {
+            failure = failures[failure];
+          }
+          int next = next(failure, c);
+          failures[target] = next == -1 ? 0 : next;
+          outputs[target] |= outputs[failures[target]];
+          queue.add(target);
+        }
+      }
+    }
+
+    private int next(int state, char c) {
+      int index = Arrays.binarySearch(labels[state], c);
+      return index < 0 ? -1 : targets[state][index];
+    }
+
+    /**
+     * @return The flags of every literal found in the text, stopping early once any of stopFlags
+     *     has been found.
+     */
+    int scan(String text, int stopFlags) {
+      int found = 0;
+      int state = 0;
+      for (int i = 0, j = text.length(); i < j; ++i) {
+        char c = text.charAt(i);
+        int next = next(state, c);
+        while (next == -1 && state != 0) {
+          state = failures[state];
+          next = next(state, c);
+        }
+        state = next == -1 ? 0 : next;
+        found |= outputs[state];
+        if ((found & stopFlags) != 0) {
+          return found;
+        }
+      }
+      return found;
+    }
+  }
+}
@@ -26,6 +26,7 @@ import org.apache.shindig.gadgets.http.HttpRequest;
 import org.apache.shindig.gadgets.http.HttpResponse;
 import org.apache.shindig.gadgets.rewrite.ContentRewriter;
 import org.apache.shindig.gadgets.rewrite.ContentRewriterFeature;
+import org.apache.shindig.gadgets.rewrite.ContentRewriterFeatureFactory;
 import org.apache.shindig.gadgets.rewrite.CssRewriter;
 import org.apache.shindig.gadgets.rewrite.LinkRewriter;
 import org.apache.shindig.gadgets.rewrite.MutableContent;
@@ -35,7 +36,6 @@ import org.apache.shindig.gadgets.spec.GadgetSpec;
 import org.apache.shindig.gadgets.spec.View;
 import org.json.JSONObject;
 import org.json.JSONException;
-import org.json.JSONArray;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
@@ -62,6 +62,8 @@ public class DefaultContentRewriter implements ContentRewriter {
 
   private final ContainerConfig config;
 
+  private final ContentRewriterFeatureFactory rewriterFeatureFactory;
+
   static final String CONTENT_REWRITE_KEY = "gadgets.content-rewrite";
   static final String INCLUDE_TAGS_KEY = "include-tags";
   static final String INCLUDE_URLS_KEY = "include-urls";
@@ -73,9 +75,11 @@ public class DefaultContentRewriter implements ContentRewriter {
     @Inject
   public DefaultContentRewriter(
       GadgetSpecFactory specFactory,
-      ContainerConfig config) {
+      ContainerConfig config,
+      ContentRewriterFeatureFactory rewriterFeatureFactory) {
     this.specFactory = specFactory;
     this.config = config;
+    this.rewriterFeatureFactory = rewriterFeatureFactory;
   }
 
   public RewriterResults rewrite(HttpRequest request, HttpResponse original,
@@ -129,29 +133,16 @@ public class DefaultContentRewriter implements ContentRewriter {
       return false;
     }
 
-    JSONObject contentRewrite = config.getJsonObject(container, CONTENT_REWRITE_KEY);
-
-    ContentRewriterFeature rewriterFeature;
-    try {
-      JSONArray jsonTags = contentRewrite.getJSONArray(INCLUDE_TAGS_KEY);
-      Set<String> tags = new HashSet<String>();
-      for (int i = 0, j = jsonTags.length(); i < j; ++i) {
-        tags.add(jsonTags.getString(i).toLowerCase());
-      }
-
-      rewriterFeature = new ContentRewriterFeature(spec,
-          contentRewrite.getString(INCLUDE_URLS_KEY),
-          contentRewrite.getString(EXCLUDE_TAGS_KEY),
-          contentRewrite.getString(EXPIRES_KEY),
-          tags);
-    } catch (JSONException e) {
-      return false;
-    }
-
-    if (!rewriterFeature.isRewriteEnabled()) {
+    // Features are cached with their compiled URL patterns, per spec and container.
+    ContentRewriterFeature rewriterFeature = rewriterFeatureFactory.get(spec, container);
+    if (rewriterFeature == null || !rewriterFeature.isRewriteEnabled()) {
       return false;
     }
     if (isHTML(mimeType)) {
+      if (!mc.mayContainTags(rewriterFeature.getIncludedTags())) {
+        // No tag that could be rewritten, so skip tokenizing the content.
+        return false;
+      }
       Map<String, HtmlTagTransformer> transformerMap
           = new HashMap<String, HtmlTagTransformer>();
 
@@ -176,7 +167,7 @@ public class DefaultContentRewriter implements ContentRewriter {
       HtmlRewriter.rewrite(new StringReader(mc.getContent()), source, transformerMap, w);
       return true;
     } else if (isCSS(mimeType)) {
-      if (getProxyUrl(container) != null) {
+      if (getProxyUrl(container) != null && mc.mayContainCssReferences()) {
         CssRewriter.rewrite(new StringReader(mc.getContent()), source, createLinkRewriter(spec, rewriterFeature, container), w, false);
         return true;
       } else {
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.servlet;
+
+import org.apache.shindig.common.servlet.GuiceServletContextListener;
+import org.apache.shindig.gadgets.CacheSnapshotter;
+
+import com.google.inject.Injector;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Restores the cache snapshot when the webapp starts and saves it when the webapp stops. Must be
+ * declared after {@link GuiceServletContextListener}.
+ */
+public class CacheSnapshotListener implements ServletContextListener {
+  private CacheSnapshotter snapshotter;
+
+  public void contextInitialized(ServletContextEvent event) {
+    Injector injector = (Injector)
+        event.getServletContext().getAttribute(GuiceServletContextListener.INJECTOR_ATTRIBUTE);
+    snapshotter = injector.getInstance(CacheSnapshotter.class);
+    snapshotter.start();
+  }
+
+  public void contextDestroyed(ServletContextEvent event) {
+    if (snapshotter != null) {
+      snapshotter.stop();
+    }
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.servlet;
+
+import org.apache.shindig.common.servlet.GuiceServletContextListener;
+import org.apache.shindig.gadgets.CacheWarmer;
+
+import com.google.inject.Injector;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Starts warming caches with the gadgets in shindig.cache.warm.file when the webapp starts. Must
+ * be declared after {@link GuiceServletContextListener}.
+ */
+public class CacheWarmupListener implements ServletContextListener {
+  private static final Logger LOG = Logger.getLogger(CacheWarmupListener.class.getName());
+
+  public void contextInitialized(ServletContextEvent event) {
+    Injector injector = (Injector)
+        event.getServletContext().getAttribute(GuiceServletContextListener.INJECTOR_ATTRIBUTE);
+    try {
+      injector.getInstance(CacheWarmer.class).warmFromList();
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Unable to read the cache warm list", e);
+    }
+  }
+
+  public void contextDestroyed(ServletContextEvent event) {
+    // Nothing to clean up; warming happens on the shared executor.
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.servlet;
+
+import org.apache.shindig.common.servlet.InjectedServlet;
+import org.apache.shindig.common.uri.Uri;
+import org.apache.shindig.common.util.CharsetUtil;
+import org.apache.shindig.gadgets.CacheWarmer;
+
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.List;
+
+/**
+ * Admin endpoint for warming caches with a list of gadgets.
+ *
+ * POST starts warming the gadgets given as url parameters, or as a request body with one url per
+ * line. GET reports the progress and failures of the latest warm up as JSON. Only requests
+ * that send the secret in shindig.cache.warm.token as the X-Shindig-Warmup-Token header are
+ * accepted; while no secret is configured, every request is refused.
+ */
+public class CacheWarmupServlet extends InjectedServlet {
+  static final String URL_PARAM = "url";
+  static final String TOKEN_HEADER = "X-Shindig-Warmup-Token";
+
+  private CacheWarmer warmer;
+  private byte[] token = new byte[0];
+
+  @Inject
+  public void setCacheWarmer(CacheWarmer warmer) {
+    this.warmer = warmer;
+  }
+
+  @Inject
+  public void setToken(@Named("shindig.cache.warm.token") String token) {
+    this.token = token == null ? new byte[0] : CharsetUtil.getUtf8Bytes(token.trim());
+  }
+
+  @Override
+  protected void doGet(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    if (!isAuthorized(request, response)) {
+      return;
+    }
+    CacheWarmer.Progress progress = warmer.getProgress();
+    writeJson(response, progress == null ? "{}" : progress.toJson().toString());
+  }
+
+  @Override
+  protected void doPost(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    if (!isAuthorized(request, response)) {
+      return;
+    }
+    List<Uri> gadgets = Lists.newArrayList();
+    String[] urls = request.getParameterValues(URL_PARAM);
+    if (urls != null) {
+      for (String url : urls) {
+        gadgets.add(Uri.parse(url));
+      }
+    } else {
+      gadgets.addAll(CacheWarmer.parseGadgetList(request.getReader()));
+    }
+    if (gadgets.isEmpty()) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "No gadgets to warm.");
+      return;
+    }
+    response.setStatus(HttpServletResponse.SC_ACCEPTED);
+    writeJson(response, warmer.warm(gadgets).toJson().toString());
+  }
+
+  private boolean isAuthorized(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    String sent = request.getHeader(TOKEN_HEADER);
+    // Compared in constant time so that the secret can't be guessed from response times.
+    if (token.length > 0 && sent != null &&
+        MessageDigest.isEqual(token, CharsetUtil.getUtf8Bytes(sent))) {
+      return true;
+    }
+    response.sendError(HttpServletResponse.SC_FORBIDDEN);
+    return false;
+  }
+
+  private static void writeJson(HttpServletResponse response, String json) throws IOException {
+    response.setContentType("application/json; charset=UTF-8");
+    response.getWriter().write(json);
+  }
+}
@@ -21,7 +21,7 @@ import org.apache.shindig.common.ContainerConfig;
 import org.apache.shindig.common.servlet.InjectedServlet;
 import org.apache.shindig.gadgets.GadgetFeature;
 import org.apache.shindig.gadgets.GadgetFeatureRegistry;
-import org.apache.shindig.gadgets.JsLibrary;
+import org.apache.shindig.gadgets.JsFeatureBundle;
 import org.apache.shindig.gadgets.RenderingContext;
 
 import com.google.inject.Inject;
@@ -89,22 +89,9 @@ public class JsServlet extends InjectedServlet {
         RenderingContext.CONTAINER : RenderingContext.GADGET;
 
     Collection<GadgetFeature> features = registry.getFeatures(needed);
-    StringBuilder jsData = new StringBuilder();
-    for (GadgetFeature feature : features) {
-      for (JsLibrary lib : feature.getJsLibraries(context, container)) {
-        if (!lib.getType().equals(JsLibrary.Type.URL)) {
-          if (debug) {
-            jsData.append(lib.getDebugContent());
-          } else {
-            jsData.append(lib.getContent());
-          }
-          jsData.append(";\n");
-        }
-      }
-    }
-
+    JsFeatureBundle bundle = registry.getJsBundle(features, context, container, debug);
 
-    if (jsData.length() == 0) {
+    if (bundle.isEmpty()) {
       resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
       return;
     }
@@ -116,8 +103,22 @@ public class JsServlet extends InjectedServlet {
       // Unversioned files get cached for 1 hour.
       HttpUtil.setCachingHeaders(resp, 60 * 60);
     }
+    resp.setHeader("ETag", bundle.getETag());
+    if (bundle.getETag().equals(req.getHeader("If-None-Match"))) {
+      resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
     resp.setContentType("text/javascript; charset=utf-8");
-    byte[] response = jsData.toString().getBytes("UTF-8");
+    byte[] response = bundle.getBytes();
+    if (bundle.getGzippedBytes() != null) {
+      resp.setHeader("Vary", "Accept-Encoding");
+      String acceptEncoding = req.getHeader("Accept-Encoding");
+      if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+        resp.setHeader("Content-Encoding", "gzip");
+        response = bundle.getGzippedBytes();
+      }
+    }
     resp.setContentLength(response.length);
     resp.getOutputStream().write(response);
   }
@@ -18,25 +18,34 @@
  */
 package org.apache.shindig.gadgets.servlet;
 
+import org.apache.shindig.gadgets.ExecutorProvider;
 import org.apache.shindig.gadgets.Gadget;
 import org.apache.shindig.gadgets.GadgetContext;
+import org.apache.shindig.gadgets.GadgetException;
+import org.apache.shindig.gadgets.MessageBundleFactory;
 import org.apache.shindig.gadgets.UrlGenerator;
 import org.apache.shindig.gadgets.process.ProcessingException;
 import org.apache.shindig.gadgets.process.Processor;
 import org.apache.shindig.gadgets.spec.GadgetSpec;
 import org.apache.shindig.gadgets.spec.LinkSpec;
+import org.apache.shindig.gadgets.spec.MessageBundle;
 import org.apache.shindig.gadgets.spec.ModulePrefs;
 import org.apache.shindig.gadgets.spec.UserPref;
 import org.apache.shindig.gadgets.spec.View;
+import org.apache.shindig.gadgets.variables.Substitutions;
 
+import com.google.common.collect.Maps;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
@@ -49,173 +58,269 @@ import java.util.concurrent.ExecutorService;
  * a single output JSON construct.
  */
 public class JsonRpcHandler {
+  // Spec attribute holding the request independent part of the gadget's JSON.
+  static final String METADATA_ATTRIBUTE = "jsonrpc.metadata";
+
   private final ExecutorService executor;
   private final Processor processor;
   private final UrlGenerator urlGenerator;
+  private final MessageBundleFactory messageBundleFactory;
 
   @Inject
-  public JsonRpcHandler(ExecutorService executor, Processor processor, UrlGenerator urlGenerator) {
+  public JsonRpcHandler(@Named(ExecutorProvider.METADATA) ExecutorService executor,
+      Processor processor, UrlGenerator urlGenerator, MessageBundleFactory messageBundleFactory) {
     this.executor = executor;
     this.processor = processor;
     this.urlGenerator = urlGenerator;
+    this.messageBundleFactory = messageBundleFactory;
   }
 
   /**
    * Processes a JSON request.
    *
+   * Entries that differ only by module id (the same gadget placed several times on a page) are
+   * processed once; the remaining entries reuse the processed spec.
+   *
    * @param request Original JSON request
    * @return The JSON response.
    */
   public JSONObject process(JSONObject request) throws RpcException, JSONException {
-    List<GadgetContext> gadgets;
-
     JSONObject requestContext = request.getJSONObject("context");
     JSONArray requestedGadgets = request.getJSONArray("gadgets");
 
     // Process all JSON first so that we don't wind up with hanging threads if
     // a JSONException is thrown.
-    gadgets = new ArrayList<GadgetContext>(requestedGadgets.length());
+    Map<String, List<GadgetContext>> groups = Maps.newLinkedHashMap();
     for (int i = 0, j = requestedGadgets.length(); i < j; ++i) {
-      GadgetContext context = new JsonRpcGadgetContext(
-          requestContext, requestedGadgets.getJSONObject(i));
-      gadgets.add(context);
+      JSONObject gadget = requestedGadgets.getJSONObject(i);
+      String key = getGroupKey(gadget);
+      List<GadgetContext> group = groups.get(key);
+      if (group == null) {
+        group = new ArrayList<GadgetContext>(1);
+        groups.put(key, group);
+      }
+      group.add(new JsonRpcGadgetContext(requestContext, gadget));
     }
 
-    // Dispatch a separate thread for each gadget that we wish to render.
+    // Dispatch a separate thread for each distinct gadget that we wish to render.
     // We could probably just submit these directly to the ExecutorService, but if it's an async
     // service instead of a threaded one we would just block.
-    CompletionService<JSONObject> processor =  new ExecutorCompletionService<JSONObject>(executor);
+    CompletionService<List<JSONObject>> processor
+        = new ExecutorCompletionService<List<JSONObject>>(executor);
 
-    for (GadgetContext context : gadgets) {
-      processor.submit(new Job(context));
+    for (List<GadgetContext> group : groups.values()) {
+      processor.submit(new Job(group));
     }
 
     JSONObject response = new JSONObject();
 
-    int numJobs = gadgets.size();
-    do {
+    int numJobs = groups.size();
+    while (numJobs > 0) {
       try {
-        JSONObject gadget = processor.take().get();
-        response.append("gadgets", gadget);
+        for (JSONObject gadget : processor.take().get()) {
+          response.append("gadgets", gadget);
+        }
       } catch (InterruptedException e) {
         throw new RpcException("Processing interrupted", e);
       } catch (ExecutionException ee) {
-        if (!(ee.getCause() instanceof RpcException)) {
-          throw new RpcException("Processing interrupted", ee);
-        }
-        RpcException e = (RpcException)ee.getCause();
-        // Just one gadget failed; mark it as such.
-        try {
-          GadgetContext context = e.getContext();
-          JSONObject errorObj = new JSONObject();
-          errorObj.put("url", context.getUrl())
-                  .put("moduleId", context.getModuleId());
-          errorObj.append("errors", e.getCause().getLocalizedMessage());
-          response.append("gadgets", errorObj);
-        } catch (JSONException je) {
-          throw new RpcException("Unable to write JSON", je);
-        }
+        throw new RpcException("Processing interrupted", ee);
       } catch (JSONException e) {
         throw new RpcException("Unable to write JSON", e);
       } finally {
         numJobs--;
       }
-    } while (numJobs > 0);
+    }
     return response;
   }
 
-  private class Job implements Callable<JSONObject> {
-    private final GadgetContext context;
+  /**
+   * @return A key identifying every property of a requested gadget other than its module id.
+   */
+  private static String getGroupKey(JSONObject gadget) throws JSONException {
+    String[] names = JSONObject.getNames(gadget);
+    if (names == null) {
+      return "";
+    }
+    Arrays.sort(names);
+    StringBuilder key = new StringBuilder();
+    for (String name : names) {
+      if (!"moduleId".equals(name)) {
+        key.append(JSONObject.quote(name)).append(':')
+           .append(JSONObject.quote(String.valueOf(gadget.get(name)))).append(',');
+      }
+    }
+    return key.toString();
+  }
+
+  private class Job implements Callable<List<JSONObject>> {
+    private final List<GadgetContext> contexts;
 
-    public Job(GadgetContext context) {
-      this.context = context;
+    public Job(List<GadgetContext> contexts) {
+      this.contexts = contexts;
     }
 
-    public JSONObject call() throws RpcException {
-      try {
-        Gadget gadget = processor.process(context);
-        GadgetSpec spec = gadget.getSpec();
-
-        JSONObject gadgetJson = new JSONObject();
-
-        ModulePrefs prefs = spec.getModulePrefs();
-
-        // TODO: modularize response fields based on requested items.
-        JSONObject views = new JSONObject();
-        for (View view : spec.getViews().values()) {
-          views.put(view.getName(), new JSONObject()
-               // .put("content", view.getContent())
-               .put("type", view.getType().toString().toLowerCase())
-               .put("quirks", view.getQuirks())
-               .put("preferredHeight", view.getPreferredHeight())
-               .put("preferredWidth", view.getPreferredWidth()));
+    public List<JSONObject> call() throws RpcException {
+      List<JSONObject> results = new ArrayList<JSONObject>(contexts.size());
+      Gadget processed = null;
+      boolean shareable = false;
+      ProcessingException failure = null;
+      for (GadgetContext context : contexts) {
+        try {
+          if (failure == null) {
+            try {
+              Gadget gadget;
+              if (processed == null || !shareable) {
+                gadget = processor.process(context);
+                if (processed == null) {
+                  shareable = !dependsOnModule(gadget);
+                }
+                processed = gadget;
+              } else {
+                gadget = new Gadget()
+                    .setContext(context)
+                    .setSpec(processed.getSpec())
+                    .setCurrentView(processed.getCurrentView());
+              }
+              results.add(getGadgetJson(gadget));
+              continue;
+            } catch (ProcessingException e) {
+              // Every entry in the group refers to the same gadget, so they all fail the same way.
+              failure = e;
+            }
+          }
+          results.add(getErrorJson(context, failure));
+        } catch (JSONException e) {
+          // Shouldn't be possible
+          throw new RpcException(context, e);
         }
+      }
+      return results;
+    }
 
-        // Features.
-        Set<String> feats = prefs.getFeatures().keySet();
-        String[] features = feats.toArray(new String[feats.size()]);
+    /**
+     * @return Whether the processed spec used the module id, in the spec itself or in one of its
+     *     messages, and so can't be shared with other modules.
+     */
+    private boolean dependsOnModule(Gadget gadget) {
+      Set<Substitutions.Type> types = gadget.getSpec().getSubstitutionTypes();
+      if (types.contains(Substitutions.Type.MODULE)) {
+        return true;
+      }
+      if (!types.contains(Substitutions.Type.MESSAGE)) {
+        return false;
+      }
+      // Message values are themselves substituted, as in VariableSubstituter.
+      GadgetContext context = gadget.getContext();
+      try {
+        MessageBundle bundle = messageBundleFactory.getBundle(gadget.getSpec(),
+            context.getLocale(), context.getIgnoreCache());
+        return bundle.getSubstitutionTypes().contains(Substitutions.Type.MODULE);
+      } catch (GadgetException e) {
+        // Processing just fetched the same bundle, so this is unlikely. Don't share the spec.
+        return true;
+      }
+    }
 
-        // Links
-        JSONObject links = new JSONObject();
-        for (LinkSpec link : prefs.getLinks().values()) {
-          links.put(link.getRel(), link.getHref());
-        }
+    private JSONObject getErrorJson(GadgetContext context, ProcessingException e)
+        throws JSONException {
+      JSONObject errorObj = new JSONObject();
+      errorObj.put("url", context.getUrl())
+              .put("moduleId", context.getModuleId());
+      errorObj.append("errors", e.getLocalizedMessage());
+      return errorObj;
+    }
 
-        JSONObject userPrefs = new JSONObject();
-
-        // User pref specs
-        for (UserPref pref : spec.getUserPrefs()) {
-          JSONObject up = new JSONObject()
-              .put("displayName", pref.getDisplayName())
-              .put("type", pref.getDataType().toString().toLowerCase())
-              .put("default", pref.getDefaultValue())
-              .put("enumValues", pref.getEnumValues())
-              .put("orderedEnumValues", getOrderedEnums(pref));
-          userPrefs.put(pref.getName(), up);
-        }
+    private JSONObject getGadgetJson(Gadget gadget) throws JSONException {
+      GadgetContext context = gadget.getContext();
+      GadgetSpec spec = gadget.getSpec();
 
-        // TODO: This should probably just copy all data from
-        // ModulePrefs.getAttributes(), but names have to be converted to
-        // camel case.
-        gadgetJson.put("iframeUrl", urlGenerator.getIframeUrl(gadget))
-                  .put("url",context.getUrl().toString())
-                  .put("moduleId", context.getModuleId())
-                  .put("title", prefs.getTitle())
-                  .put("titleUrl", prefs.getTitleUrl().toString())
-                  .put("views", views)
-                  .put("features", features)
-                  .put("userPrefs", userPrefs)
-                  .put("links", links)
-
-                  // extended meta data
-                  .put("directoryTitle", prefs.getDirectoryTitle())
-                  .put("thumbnail", prefs.getThumbnail().toString())
-                  .put("screenshot", prefs.getScreenshot().toString())
-                  .put("author", prefs.getAuthor())
-                  .put("authorEmail", prefs.getAuthorEmail())
-                  .put("authorAffiliation", prefs.getAuthorAffiliation())
-                  .put("authorLocation", prefs.getAuthorLocation())
-                  .put("authorPhoto", prefs.getAuthorPhoto())
-                  .put("authorAboutme", prefs.getAuthorAboutme())
-                  .put("authorQuote", prefs.getAuthorQuote())
-                  .put("authorLink", prefs.getAuthorLink())
-                  .put("categories", prefs.getCategories())
-                  .put("screenshot", prefs.getScreenshot().toString())
-                  .put("height", prefs.getHeight())
-                  .put("width", prefs.getWidth())
-                  .put("showStats", prefs.getShowStats())
-                  .put("showInDirectory", prefs.getShowInDirectory())
-                  .put("singleton", prefs.getSingleton())
-                  .put("scaling", prefs.getScaling())
-                  .put("scrolling", prefs.getScrolling())
-                  .put("description", prefs.getDescription());
-        return gadgetJson;
-      } catch (ProcessingException e) {
-        throw new RpcException(context, e);
-      } catch (JSONException e) {
-        // Shouldn't be possible
-        throw new RpcException(context, e);
+      // The spec metadata only depends on the (substituted) spec, which is shared by every request
+      // for the same gadget, locale and message bundle; it is built once and copied per request.
+      JSONObject metadata = (JSONObject) spec.getAttribute(METADATA_ATTRIBUTE);
+      if (metadata == null) {
+        metadata = getSpecJson(spec);
+        spec.setAttribute(METADATA_ATTRIBUTE, metadata);
       }
+
+      JSONObject gadgetJson = new JSONObject(metadata, JSONObject.getNames(metadata));
+      gadgetJson.put("iframeUrl", urlGenerator.getIframeUrl(gadget))
+                .put("url", context.getUrl().toString())
+                .put("moduleId", context.getModuleId());
+      return gadgetJson;
+    }
+
+    private JSONObject getSpecJson(GadgetSpec spec) throws JSONException {
+      JSONObject gadgetJson = new JSONObject();
+
+      ModulePrefs prefs = spec.getModulePrefs();
+
+      // TODO: modularize response fields based on requested items.
+      JSONObject views = new JSONObject();
+      for (View view : spec.getViews().values()) {
+        views.put(view.getName(), new JSONObject()
+             // .put("content", view.getContent())
+             .put("type", view.getType().toString().toLowerCase())
+             .put("quirks", view.getQuirks())
+             .put("preferredHeight", view.getPreferredHeight())
+             .put("preferredWidth", view.getPreferredWidth()));
+      }
+
+      // Features.
+      Set<String> feats = prefs.getFeatures().keySet();
+      String[] features = feats.toArray(new String[feats.size()]);
+
+      // Links
+      JSONObject links = new JSONObject();
+      for (LinkSpec link : prefs.getLinks().values()) {
+        links.put(link.getRel(), link.getHref());
+      }
+
+      JSONObject userPrefs = new JSONObject();
+
+      // User pref specs
+      for (UserPref pref : spec.getUserPrefs()) {
+        JSONObject up = new JSONObject()
+            .put("displayName", pref.getDisplayName())
+            .put("type", pref.getDataType().toString().toLowerCase())
+            .put("default", pref.getDefaultValue())
+            .put("enumValues", pref.getEnumValues())
+            .put("orderedEnumValues", getOrderedEnums(pref));
+        userPrefs.put(pref.getName(), up);
+      }
+
+      // TODO: This should probably just copy all data from
+      // ModulePrefs.getAttributes(), but names have to be converted to
+      // camel case.
+      gadgetJson.put("title", prefs.getTitle())
+                .put("titleUrl", prefs.getTitleUrl().toString())
+                .put("views", views)
+                .put("features", features)
+                .put("userPrefs", userPrefs)
+                .put("links", links)
+
+                // extended meta data
+                .put("directoryTitle", prefs.getDirectoryTitle())
+                .put("thumbnail", prefs.getThumbnail().toString())
+                .put("screenshot", prefs.getScreenshot().toString())
+                .put("author", prefs.getAuthor())
+                .put("authorEmail", prefs.getAuthorEmail())
+                .put("authorAffiliation", prefs.getAuthorAffiliation())
+                .put("authorLocation", prefs.getAuthorLocation())
+                .put("authorPhoto", prefs.getAuthorPhoto())
+                .put("authorAboutme", prefs.getAuthorAboutme())
+                .put("authorQuote", prefs.getAuthorQuote())
+                .put("authorLink", prefs.getAuthorLink())
+                .put("categories", prefs.getCategories())
+                .put("screenshot", prefs.getScreenshot().toString())
+                .put("height", prefs.getHeight())
+                .put("width", prefs.getWidth())
+                .put("showStats", prefs.getShowStats())
+                .put("showInDirectory", prefs.getShowInDirectory())
+                .put("singleton", prefs.getSingleton())
+                .put("scaling", prefs.getScaling())
+                .put("scrolling", prefs.getScrolling())
+                .put("description", prefs.getDescription());
+      return gadgetJson;
     }
 
     private List<JSONObject> getOrderedEnums(UserPref pref) throws JSONException {
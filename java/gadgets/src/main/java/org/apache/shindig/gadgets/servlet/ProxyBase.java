@@ -45,6 +45,10 @@ public abstract class ProxyBase {
   // Public because of rewriter. Rewriter should be cleaned up.
   public static final String REWRITE_MIME_TYPE_PARAM = "rewriteMime";
 
+  // Images are scaled down to fit these dimensions, if image optimization is enabled.
+  public static final String RESIZE_WIDTH_PARAM = "resize_w";
+  public static final String RESIZE_HEIGHT_PARAM = "resize_h";
+
   /**
    * Validates the given url.
    *
@@ -25,6 +25,7 @@ import org.apache.shindig.gadgets.http.HttpFetcher;
 import org.apache.shindig.gadgets.http.HttpRequest;
 import org.apache.shindig.gadgets.http.HttpResponse;
 import org.apache.shindig.gadgets.rewrite.ContentRewriterRegistry;
+import org.apache.shindig.gadgets.rewrite.ImageRewriter;
 
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
@@ -56,6 +57,7 @@ public class ProxyHandler extends ProxyBase {
   private final HttpFetcher fetcher;
   private final LockedDomainService lockedDomainService;
   private final ContentRewriterRegistry contentRewriterRegistry;
+  private ImageRewriter imageRewriter;
 
   @Inject
   public ProxyHandler(HttpFetcher fetcher,
@@ -66,6 +68,11 @@ public class ProxyHandler extends ProxyBase {
     this.contentRewriterRegistry = contentRewriterRegistry;
   }
 
+  @Inject
+  public void setImageRewriter(ImageRewriter imageRewriter) {
+    this.imageRewriter = imageRewriter;
+  }
+
   private boolean getIgnoreCache(HttpServletRequest request) {
     String ignoreCache = request.getParameter(IGNORE_CACHE_PARAM);
     if (ignoreCache == null) {
@@ -74,6 +81,18 @@ public class ProxyHandler extends ProxyBase {
     return !ignoreCache.equals("0");
   }
 
+  private int getSize(HttpServletRequest request, String name) {
+    String value = request.getParameter(name);
+    if (value != null) {
+      try {
+        return Integer.parseInt(value);
+      } catch (NumberFormatException nfe) {
+        // Ignore
+      }
+    }
+    return 0;
+  }
+
   /**
    * Generate a remote content request based on the parameters sent from the client.
    */
@@ -128,6 +147,10 @@ public class ProxyHandler extends ProxyBase {
 
     HttpRequest rcr = buildHttpRequest(request);
     HttpResponse results = fetcher.fetch(rcr);
+    if (imageRewriter != null) {
+      results = imageRewriter.rewrite(rcr, results, getSize(request, RESIZE_WIDTH_PARAM),
+          getSize(request, RESIZE_HEIGHT_PARAM));
+    }
     if (contentRewriterRegistry != null) {
       results = contentRewriterRegistry.rewriteHttpResponse(rcr, results);
     }
@@ -19,10 +19,10 @@ package org.apache.shindig.gadgets.spec;
 import org.apache.shindig.common.xml.XmlUtil;
 
 import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -87,23 +87,30 @@ public class Feature {
    * @throws SpecParserException When the Require or Optional tag is not valid
    */
   public Feature(Element feature) throws SpecParserException {
-    this.required = feature.getNodeName().equals("Require");
-    String name = XmlUtil.getAttribute(feature, "feature");
+    this(SpecElement.of(feature), SpecElement.getDescendants(feature, "Param"));
+  }
+
+  /**
+   * @param feature The Require or Optional element.
+   * @param children The Param elements inside of it.
+   */
+  Feature(SpecElement feature, List<SpecElement> children) throws SpecParserException {
+    this.required = feature.getName().equals("Require");
+    String name = XmlUtil.getAttribute(feature.getAttributes(), "feature");
     if (name == null) {
       throw new SpecParserException(
           (required ? "Require" : "Optional") +"@feature is required.");
     }
-    this.name = name;
-    NodeList children = feature.getElementsByTagName("Param");
-    if (children.getLength() > 0) {
-      Map<String, String> params = new HashMap<String, String>(children.getLength(),1);
-      for (int i = 0, j = children.getLength(); i < j; ++i) {
-        Element param = (Element)children.item(i);
-        String paramName = XmlUtil.getAttribute(param, "name");
+    // Feature names come from a small, shared vocabulary.
+    this.name = name.intern();
+    if (!children.isEmpty()) {
+      Map<String, String> params = new HashMap<String, String>(children.size(),1);
+      for (SpecElement param : children) {
+        String paramName = param.getAttribute("name");
         if (paramName == null) {
           throw new SpecParserException("Param@name is required");
         }
-        params.put(paramName, param.getTextContent());
+        params.put(paramName, param.getText());
       }
       this.params = Collections.unmodifiableMap(params);
     } else {
@@ -22,6 +22,9 @@ import org.apache.shindig.common.util.HashUtil;
 import org.apache.shindig.common.xml.XmlException;
 import org.apache.shindig.common.xml.XmlUtil;
 import org.apache.shindig.gadgets.variables.Substitutions;
+
+import com.google.common.collect.ImmutableList;
+
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -43,23 +46,85 @@ public class GadgetSpec {
    * @throws SpecParserException If xml can not be parsed as a valid gadget spec.
    */
   public GadgetSpec(Uri url, String xml) throws SpecParserException {
-    Element doc;
-    try {
-      doc = XmlUtil.parse(xml);
-    } catch (XmlException e) {
-      throw new SpecParserException("Malformed XML in file " + url.toString(), e);
-    }
+    this(url, xml, parse(url, xml));
+  }
+
+  /**
+   * Creates a new Module from an already parsed document element.
+   *
+   * @param url The url of the spec.
+   * @param xml The raw xml that doc was parsed from. Used for the checksum.
+   * @param doc The Module element.
+   * @throws SpecParserException If doc isn't a valid gadget spec.
+   */
+  GadgetSpec(Uri url, String xml, Element doc) throws SpecParserException {
+    this(url, xml, getSections(url, doc));
+  }
+
+  /**
+   * Creates a new Module from its already parsed sections.
+   *
+   * @param url The url of the spec.
+   * @param xml The raw xml that the sections were parsed from. Used for the checksum.
+   */
+  GadgetSpec(Uri url, String xml, Sections sections) throws SpecParserException {
     this.url = url;
 
     // This might not be good enough; should we take message bundle changes
     // into account?
     this.checksum = HashUtil.checksum(xml.getBytes());
+    this.substitutionTypes = Collections.unmodifiableSet(Substitutions.findTypes(xml));
 
-    NodeList children = doc.getChildNodes();
+    Map<String, List<SpecElement>> views = new HashMap<String, List<SpecElement>>();
+    for (SpecElement element : sections.contents) {
+      String viewNames = XmlUtil.getAttribute(element.getAttributes(), "view", "default");
+      for (String view : viewNames.split(",")) {
+        // View names come from a small vocabulary shared by most gadgets.
+        view = view.trim().intern();
+        List<SpecElement> viewElements = views.get(view);
+        if (viewElements == null) {
+          viewElements = new ArrayList<SpecElement>(1);
+          views.put(view, viewElements);
+        }
+        viewElements.add(element);
+      }
+    }
+
+    if (sections.modulePrefs == null) {
+      throw new SpecParserException("At least 1 ModulePrefs is required.");
+    } else {
+      this.modulePrefs = sections.modulePrefs;
+    }
+
+    if (views.isEmpty()) {
+      throw new SpecParserException("At least 1 Content is required.");
+    } else {
+      Map<String, View> tmpViews = new HashMap<String, View>(views.size() * 4 / 3 + 1);
+      Map<List<SpecElement>, View> distinctViews = new HashMap<List<SpecElement>, View>();
+      for (Map.Entry<String, List<SpecElement>> view : views.entrySet()) {
+        View v = new View(view.getKey(), url, view.getValue());
+        // Content shared by several views, e.g. view="home,profile", is only stored once.
+        View same = distinctViews.get(view.getValue());
+        if (same == null) {
+          distinctViews.put(view.getValue(), v);
+        } else {
+          v.shareContent(same);
+        }
+        tmpViews.put(v.getName(), v);
+      }
+      this.views = Collections.unmodifiableMap(tmpViews);
+    }
 
-    ModulePrefs modulePrefs = null;
-    List<UserPref> userPrefs = new LinkedList<UserPref>();
-    Map<String, List<Element>> views = new HashMap<String, List<Element>>();
+    if (!sections.userPrefs.isEmpty()) {
+      this.userPrefs = ImmutableList.copyOf(sections.userPrefs);
+    } else {
+      this.userPrefs = Collections.emptyList();
+    }
+  }
+
+  private static Sections getSections(Uri url, Element doc) throws SpecParserException {
+    Sections sections = new Sections();
+    NodeList children = doc.getChildNodes();
     for (int i = 0, j = children.getLength(); i < j; ++i) {
       Node child = children.item(i);
       if (!(child instanceof Element)) {
@@ -68,52 +133,40 @@ public class GadgetSpec {
       Element element = (Element)child;
       String name = element.getTagName();
       if ("ModulePrefs".equals(name)) {
-        if (modulePrefs == null) {
-          modulePrefs = new ModulePrefs(element, url);
-        } else {
-          throw new SpecParserException(
-              "Only 1 ModulePrefs is allowed.");
-        }
+        sections.setModulePrefs(new ModulePrefs(element, url));
       }
       if ("UserPref".equals(name)) {
-        UserPref pref = new UserPref(element);
-        userPrefs.add(pref);
+        sections.userPrefs.add(new UserPref(element));
       }
       if ("Content".equals(name)) {
-        String viewNames = XmlUtil.getAttribute(element, "view", "default");
-        for (String view : viewNames.split(",")) {
-          view = view.trim();
-          List<Element> viewElements = views.get(view);
-          if (viewElements == null) {
-            viewElements = new LinkedList<Element>();
-            views.put(view, viewElements);
-          }
-          viewElements.add(element);
-        }
+        sections.contents.add(SpecElement.of(element));
       }
     }
+    return sections;
+  }
 
-    if (modulePrefs == null) {
-      throw new SpecParserException("At least 1 ModulePrefs is required.");
-    } else {
-      this.modulePrefs = modulePrefs;
-    }
+  /**
+   * The top level sections of a spec, in document order.
+   */
+  static class Sections {
+    private ModulePrefs modulePrefs;
+    final List<UserPref> userPrefs = new ArrayList<UserPref>();
+    final List<SpecElement> contents = new ArrayList<SpecElement>(1);
 
-    if (views.isEmpty()) {
-      throw new SpecParserException("At least 1 Content is required.");
-    } else {
-      Map<String, View> tmpViews = new HashMap<String, View>();
-      for (Map.Entry<String, List<Element>> view : views.entrySet()) {
-        View v = new View(view.getKey(), view.getValue(), url);
-        tmpViews.put(v.getName(), v);
+    void setModulePrefs(ModulePrefs modulePrefs) throws SpecParserException {
+      if (this.modulePrefs != null) {
+        throw new SpecParserException(
+            "Only 1 ModulePrefs is allowed.");
       }
-      this.views = Collections.unmodifiableMap(tmpViews);
+      this.modulePrefs = modulePrefs;
     }
+  }
 
-    if (!userPrefs.isEmpty()) {
-      this.userPrefs = Collections.unmodifiableList(userPrefs);
-    } else {
-      this.userPrefs = Collections.emptyList();
+  private static Element parse(Uri url, String xml) throws SpecParserException {
+    try {
+      return XmlUtil.parse(xml);
+    } catch (XmlException e) {
+      throw new SpecParserException("Malformed XML in file " + url.toString(), e);
     }
   }
 
@@ -124,6 +177,7 @@ public class GadgetSpec {
   private GadgetSpec(GadgetSpec spec) {
     url = spec.url;
     checksum = spec.checksum;
+    substitutionTypes = spec.substitutionTypes;
   }
 
   /**
@@ -142,6 +196,15 @@ public class GadgetSpec {
     return checksum;
   }
 
+  /**
+   * The types of substitution placeholders that may appear anywhere in the spec. Substitution of
+   * a spec that doesn't contain a type's placeholders doesn't depend on that type's values.
+   */
+  private final Set<Substitutions.Type> substitutionTypes;
+  public Set<Substitutions.Type> getSubstitutionTypes() {
+    return substitutionTypes;
+  }
+
   /**
    * ModulePrefs
    */
@@ -182,7 +245,7 @@ public class GadgetSpec {
    * Used by handler classes to use specs to carry context.
    * Not defined by the specification
    */
-  private final Map<String, Object> attributes = new ConcurrentHashMap<String, Object>();
+  private final Map<String, Object> attributes = new ConcurrentHashMap<String, Object>(4, 0.75f, 1);
   public Object getAttribute(String key) {
     return attributes.get(key);
   }
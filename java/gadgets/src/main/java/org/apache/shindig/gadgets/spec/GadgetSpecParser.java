@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.spec;
+
+import org.apache.shindig.common.uri.Uri;
+
+import com.google.inject.ImplementedBy;
+
+/**
+ * Creates GadgetSpec objects from raw xml.
+ */
+@ImplementedBy(DomGadgetSpecParser.class)
+public interface GadgetSpecParser {
+  /**
+   * @param url The url that the spec was retrieved from. Relative urls in the spec are resolved
+   *     against it.
+   * @param xml The raw xml of the spec.
+   * @return The parsed spec.
+   * @throws SpecParserException If xml can not be parsed as a valid gadget spec.
+   */
+  GadgetSpec parse(Uri url, String xml) throws SpecParserException;
+}
@@ -87,13 +87,17 @@ public class Icon {
    * @param element
    */
   public Icon(Element element) throws SpecParserException {
-    mode = XmlUtil.getAttribute(element, "mode");
+    this(SpecElement.of(element));
+  }
+
+  Icon(SpecElement element) throws SpecParserException {
+    mode = element.getAttribute("mode");
     if (mode != null && !mode.equals("base64")) {
       throw new SpecParserException(
           "The only valid value for Icon@mode is \"base64\"");
     }
-    type = XmlUtil.getAttribute(element, "type", "");
-    content = element.getTextContent();
+    type = XmlUtil.getAttribute(element.getAttributes(), "type", "");
+    content = element.getText();
   }
 
   /**
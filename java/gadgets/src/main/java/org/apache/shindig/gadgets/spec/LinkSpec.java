@@ -24,6 +24,8 @@ import org.apache.shindig.gadgets.variables.Substitutions;
 
 import org.w3c.dom.Element;
 
+import java.util.Map;
+
 /**
  * Represents /ModulePrefs/Link elements.
  */
@@ -31,12 +33,16 @@ public class LinkSpec {
   private final Uri base;
 
   public LinkSpec(Element element, Uri base) throws SpecParserException {
+    this(XmlUtil.getAttributes(element), base);
+  }
+
+  LinkSpec(Map<String, String> attributes, Uri base) throws SpecParserException {
     this.base = base;
-    rel = XmlUtil.getAttribute(element, "rel");
+    rel = XmlUtil.getAttribute(attributes, "rel");
     if (rel == null) {
       throw new SpecParserException("Link/@rel is required!");
     }
-    href = XmlUtil.getUriAttribute(element, "href");
+    href = XmlUtil.getUriAttribute(attributes, "href");
     if (href == null) {
       throw new SpecParserException("Link/@href is required!");
     }
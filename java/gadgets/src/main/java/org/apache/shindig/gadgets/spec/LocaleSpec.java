@@ -21,6 +21,7 @@ import org.apache.shindig.common.xml.XmlUtil;
 
 import org.w3c.dom.Element;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -40,23 +41,33 @@ public class LocaleSpec {
    * @throws SpecParserException If language_direction is not valid
    */
   public LocaleSpec(Element element, Uri specUrl) throws SpecParserException {
-    language = XmlUtil.getAttribute(element, "lang", "all").toLowerCase();
-    country = XmlUtil.getAttribute(element, "country", "ALL").toUpperCase();
-    languageDirection = XmlUtil.getAttribute(element, "language_direction", "ltr");
+    this(XmlUtil.getAttributes(element), SpecElement.getDescendants(element, "msg"), specUrl);
+  }
+
+  /**
+   * @param attributes The attributes of the Locale element.
+   * @param messages The msg elements inside of it.
+   */
+  LocaleSpec(Map<String, String> attributes, List<SpecElement> messages, Uri specUrl)
+      throws SpecParserException {
+    // Language and country codes are a small vocabulary shared by all specs.
+    language = XmlUtil.getAttribute(attributes, "lang", "all").toLowerCase().intern();
+    country = XmlUtil.getAttribute(attributes, "country", "ALL").toUpperCase().intern();
+    languageDirection = XmlUtil.getAttribute(attributes, "language_direction", "ltr").intern();
     if (!("ltr".equals(languageDirection) || "rtl".equals(languageDirection))) {
       throw new SpecParserException("Locale/@language_direction must be ltr or rtl");
     }
-    String messages = XmlUtil.getAttribute(element, "messages");
-    if (messages == null) {
+    String messagesUrl = XmlUtil.getAttribute(attributes, "messages");
+    if (messagesUrl == null) {
       this.messages = Uri.parse("");
     } else {
       try {
-        this.messages = specUrl.resolve(Uri.parse(messages));
+        this.messages = specUrl.resolve(Uri.parse(messagesUrl));
       } catch (IllegalArgumentException e) {
         throw new SpecParserException("Locale@messages url is invalid.");
       }
     }
-    messageBundle = new MessageBundle(element);
+    messageBundle = new MessageBundle(messages, languageDirection);
   }
 
   /**
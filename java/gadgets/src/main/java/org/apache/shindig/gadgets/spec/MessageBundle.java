@@ -17,18 +17,22 @@
  */
 package org.apache.shindig.gadgets.spec;
 
+import org.apache.shindig.common.util.CharsetUtil;
+import org.apache.shindig.common.util.HashUtil;
 import org.apache.shindig.common.xml.XmlException;
 import org.apache.shindig.common.xml.XmlUtil;
+import org.apache.shindig.gadgets.variables.Substitutions;
 
 import com.google.common.collect.Maps;
 
 import org.json.JSONObject;
 import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Represents a messagebundle structure.
@@ -40,6 +44,9 @@ public class MessageBundle {
   private final Map<String, String> messages;
   private final String languageDirection;
   private final String jsonString;
+  // Derived from jsonString on first use. Racing threads compute the same values.
+  private volatile String checksum;
+  private volatile Set<Substitutions.Type> substitutionTypes;
 
    /**
    * Constructs a message bundle from input xml (fetched from an external file).
@@ -56,7 +63,7 @@ public class MessageBundle {
       throw new SpecParserException("Malformed XML in file " + locale.getMessages()
           + ": " + e.getMessage());
     }
-    messages = parseMessages(doc);
+    messages = parseMessages(SpecElement.getDescendants(doc, "msg"));
     jsonString = new JSONObject(messages).toString();
     languageDirection = locale.getLanguageDirection();
   }
@@ -65,9 +72,31 @@ public class MessageBundle {
    * Constructs a message bundle from a /ModulePrefs/Locale with nested messages.
    */
   public MessageBundle(Element element) throws SpecParserException {
-    messages = parseMessages(element);
-    jsonString = new JSONObject(messages).toString();
-    languageDirection = XmlUtil.getAttribute(element, "language_direction", "ltr");
+    this(SpecElement.getDescendants(element, "msg"),
+        XmlUtil.getAttribute(element, "language_direction", "ltr"));
+  }
+
+  /**
+   * Constructs a message bundle from the msg elements of a /ModulePrefs/Locale.
+   */
+  MessageBundle(List<SpecElement> messages, String languageDirection)
+      throws SpecParserException {
+    this.messages = parseMessages(messages);
+    jsonString = new JSONObject(this.messages).toString();
+    this.languageDirection = languageDirection;
+  }
+
+  /**
+   * Constructs a message bundle from previously parsed messages, e.g. when restoring a cache
+   * snapshot.
+   *
+   * @param messages The messages in the bundle.
+   * @param languageDirection The language direction of the bundle.
+   */
+  public MessageBundle(Map<String, String> messages, String languageDirection) {
+    this.messages = Collections.unmodifiableMap(new HashMap<String, String>(messages));
+    jsonString = new JSONObject(this.messages).toString();
+    this.languageDirection = languageDirection;
   }
 
   /**
@@ -121,22 +150,42 @@ public class MessageBundle {
   }
 
   /**
-   * Extracts messages from an element.
+   * @return A checksum of the messages, so that callers can tell bundles apart without comparing
+   *     every message.
+   */
+  public String getChecksum() {
+    if (checksum == null) {
+      checksum = HashUtil.checksum(CharsetUtil.getUtf8Bytes(jsonString));
+    }
+    return checksum;
+  }
+
+  /**
+   * @return The substitution types referenced by the messages. Message values are themselves
+   *     substituted, so anything using the messages also depends on these types.
+   */
+  public Set<Substitutions.Type> getSubstitutionTypes() {
+    if (substitutionTypes == null) {
+      substitutionTypes = Collections.unmodifiableSet(Substitutions.findTypes(jsonString));
+    }
+    return substitutionTypes;
+  }
+
+  /**
+   * Extracts messages from msg elements.
    */
-  private Map<String, String> parseMessages(Element element)
+  private static Map<String, String> parseMessages(List<SpecElement> nodes)
       throws SpecParserException {
-    NodeList nodes = element.getElementsByTagName("msg");
     Map<String, String> messages
-        = new HashMap<String, String>(nodes.getLength(), 1);
+        = new HashMap<String, String>(nodes.size(), 1);
 
-    for (int i = 0, j = nodes.getLength(); i < j; ++i) {
-      Element msg = (Element)nodes.item(i);
-      String name = XmlUtil.getAttribute(msg, "name");
+    for (SpecElement msg : nodes) {
+      String name = msg.getAttribute("name");
       if (name == null) {
         throw new SpecParserException(
             "All message bundle entries must have a name attribute.");
       }
-      messages.put(name, msg.getTextContent().trim());
+      messages.put(name, msg.getText().trim());
     }
     return Collections.unmodifiableMap(messages);
   }
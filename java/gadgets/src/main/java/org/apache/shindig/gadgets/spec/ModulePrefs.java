@@ -17,13 +17,15 @@
  */
 package org.apache.shindig.gadgets.spec;
 import org.apache.shindig.common.uri.Uri;
+import org.apache.shindig.common.xml.XmlUtil;
+import org.apache.shindig.gadgets.variables.SubstitutionTemplate;
 import org.apache.shindig.gadgets.variables.Substitutions;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 import org.w3c.dom.Element;
-import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
@@ -69,16 +71,24 @@ public class ModulePrefs {
   private static final Uri EMPTY_URI = Uri.parse("");
 
   private final Map<String, String> attributes;
+  // Compiled once when the spec is parsed. Substituted prefs don't carry templates.
+  private final Map<String, SubstitutionTemplate> attributeTemplates;
   private final Uri base;
 
   public ModulePrefs(Element element, Uri base) throws SpecParserException {
+    this(XmlUtil.getAttributes(element), base, getSections(element, base));
+  }
+
+  /**
+   * @param attributes The attributes of the ModulePrefs element.
+   * @param sections The sections inside of it.
+   */
+  ModulePrefs(Map<String, String> attributes, Uri base, Sections sections)
+      throws SpecParserException {
     this.base = base;
-    attributes = new HashMap<String, String>();
-    NamedNodeMap attributeNodes = element.getAttributes();
-    for (int i = 0; i < attributeNodes.getLength(); i++) {
-      Node node = attributeNodes.item(i);
-      attributes.put(node.getNodeName(), node.getNodeValue());
-    }
+    this.attributes = Maps.newHashMapWithExpectedSize(attributes.size());
+    this.attributes.putAll(attributes);
+    attributeTemplates = SubstitutionTemplate.compile(attributes);
 
     if (getTitle() == null) {
       throw new SpecParserException("ModulePrefs@title is required.");
@@ -87,31 +97,25 @@ public class ModulePrefs {
     categories = Arrays.asList(
         getAttribute(ATTR_CATEGORY, ""), getAttribute(ATTR_CATEGORY2, ""));
 
-    // Child elements
-    PreloadVisitor preloadVisitor = new PreloadVisitor();
-    FeatureVisitor featureVisitor = new FeatureVisitor();
-    OAuthVisitor oauthVisitor = new OAuthVisitor();
-    IconVisitor iconVisitor = new IconVisitor();
-    LocaleVisitor localeVisitor = new LocaleVisitor();
-    LinkVisitor linkVisitor = new LinkVisitor();
-
-    Map<String, ElementVisitor> visitors = Maps.newHashMapWithExpectedSize(6);
-    visitors.put("Preload", preloadVisitor);
-    visitors.put("Optional", featureVisitor);
-    visitors.put("Require", featureVisitor);
-    visitors.put("OAuth", oauthVisitor);
-    visitors.put("Icon", iconVisitor);
-    visitors.put("Locale", localeVisitor);
-    visitors.put("Link", linkVisitor);
-
-    walk(element, visitors);
+    // Specs are cached for a long time, so the parsed collections are trimmed to size.
+    preloads = ImmutableList.copyOf(sections.preloads);
+    features = compact(sections.features);
+    icons = ImmutableList.copyOf(sections.icons);
+    locales = compact(sections.locales);
+    links = compact(sections.links);
+    oauth = sections.oauth;
+  }
 
-    preloads = Collections.unmodifiableList(preloadVisitor.preloaded);
-    features = Collections.unmodifiableMap(featureVisitor.features);
-    icons = Collections.unmodifiableList(iconVisitor.icons);
-    locales = Collections.unmodifiableMap(localeVisitor.localeMap);
-    links = Collections.unmodifiableMap(linkVisitor.linkMap);
-    oauth = oauthVisitor.oauthSpec;
+  /**
+   * @return An unmodifiable copy of the map with no spare capacity, or a shared empty map.
+   */
+  private static <K, V> Map<K, V> compact(Map<K, V> map) {
+    if (map.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    Map<K, V> copy = Maps.newHashMapWithExpectedSize(map.size());
+    copy.putAll(map);
+    return Collections.unmodifiableMap(copy);
   }
 
   /**
@@ -143,13 +147,19 @@ public class ModulePrefs {
     }
     this.links = Collections.unmodifiableMap(links);
 
-    Map<String, String> attributes
-        = new HashMap<String, String>(prefs.attributes.size());
-    for (Map.Entry<String, String> attr : prefs.attributes.entrySet()) {
-      String substituted = substituter.substituteString(attr.getValue());
-      attributes.put(attr.getKey(), substituted);
+    Map<String, String> attributes;
+    if (prefs.attributeTemplates == null) {
+      attributes = new HashMap<String, String>(prefs.attributes.size());
+      for (Map.Entry<String, String> attr : prefs.attributes.entrySet()) {
+        String substituted = substituter.substituteString(attr.getValue());
+        attributes.put(attr.getKey(), substituted);
+      }
+    } else {
+      attributes = SubstitutionTemplate.substitute(
+          prefs.attributes, prefs.attributeTemplates, substituter);
     }
     this.attributes = Collections.unmodifiableMap(attributes);
+    attributeTemplates = null;
   }
 
   // Canonical spec items first.
@@ -492,20 +502,29 @@ public class ModulePrefs {
 
 
   /**
-   * Walks child nodes of the given node.
-   * @param element
-   * @param visitors Map of tag names to visitors for that tag.
+   * Reads the sections of a ModulePrefs element.
    */
-  private static void walk(Element element, Map<String, ElementVisitor> visitors)
-      throws SpecParserException {
+  private static Sections getSections(Element element, Uri base) throws SpecParserException {
+    Sections sections = new Sections();
     NodeList children = element.getChildNodes();
     for (int i = 0, j = children.getLength(); i < j; ++i) {
       Node child = children.item(i);
-      ElementVisitor visitor = visitors.get(child.getNodeName());
-      if (visitor != null) {
-        visitor.visit((Element)child);
+      String name = child.getNodeName();
+      if ("Preload".equals(name)) {
+        sections.addPreload(new Preload((Element)child, base));
+      } else if ("Optional".equals(name) || "Require".equals(name)) {
+        sections.addFeature(new Feature((Element)child));
+      } else if ("OAuth".equals(name)) {
+        sections.setOAuth(new OAuthSpec((Element)child, base));
+      } else if ("Icon".equals(name)) {
+        sections.addIcon(new Icon((Element)child));
+      } else if ("Locale".equals(name)) {
+        sections.addLocale(new LocaleSpec((Element)child, base));
+      } else if ("Link".equals(name)) {
+        sections.addLink(new LinkSpec((Element)child, base));
       }
     }
+    return sections;
   }
 
   @Override
@@ -541,85 +560,42 @@ public class ModulePrefs {
     return buf.toString();
   }
 
-  interface ElementVisitor {
-    void visit(Element element) throws SpecParserException;
-  }
-
-  /**
-   * Processes ModulePrefs/Preload into a list.
-   */
-  private class PreloadVisitor implements ElementVisitor {
-    private final List<Preload> preloaded = Lists.newLinkedList();
-
-    public void visit(Element element) throws SpecParserException {
-      Preload preload = new Preload(element, base);
-      preloaded.add(preload);
-    }
-  }
-
   /**
-   * Process ModulePrefs/OAuth
+   * The sections of a ModulePrefs element, in document order.
    */
-  private class OAuthVisitor implements ElementVisitor {
-    private OAuthSpec oauthSpec;
-
-    public OAuthVisitor() {
-      this.oauthSpec = null;
-    }
+  static class Sections {
+    private final List<Preload> preloads = Lists.newLinkedList();
+    private final Map<String, Feature> features = Maps.newHashMap();
+    private final List<Icon> icons = Lists.newLinkedList();
+    private final Map<Locale, LocaleSpec> locales = Maps.newHashMap();
+    private final Map<String, LinkSpec> links = Maps.newHashMap();
+    private OAuthSpec oauth;
 
-    public void visit(Element element) throws SpecParserException {
-      if (oauthSpec != null) {
-        throw new SpecParserException("ModulePrefs/OAuth may only occur once.");
-      }
-      oauthSpec = new OAuthSpec(element, base);
+    void addPreload(Preload preload) {
+      preloads.add(preload);
     }
-  }
 
-  /**
-   * Processes ModulePrefs/Require and ModulePrefs/Optional
-   */
-  private static class FeatureVisitor implements ElementVisitor {
-    private final Map<String, Feature> features = Maps.newHashMap();
-
-    public void visit (Element element) throws SpecParserException {
-      Feature feature = new Feature(element);
+    void addFeature(Feature feature) {
       features.put(feature.getName(), feature);
     }
-  }
 
-  /**
-   * Processes ModulePrefs/Icon
-   */
-  private static class IconVisitor implements ElementVisitor {
-    private final List<Icon> icons = Lists.newLinkedList();
-
-    public void visit(Element element) throws SpecParserException {
-      icons.add(new Icon(element));
+    void addIcon(Icon icon) {
+      icons.add(icon);
     }
-  }
-
-  /**
-   * Process ModulePrefs/Locale
-   */
-  private class LocaleVisitor implements ElementVisitor {
-    private final Map<Locale, LocaleSpec> localeMap = Maps.newHashMap();
 
-    public void visit(Element element) throws SpecParserException {
-      LocaleSpec locale = new LocaleSpec(element, base);
-      localeMap.put(new Locale(locale.getLanguage(), locale.getCountry()), locale);
+    void addLocale(LocaleSpec locale) {
+      locales.put(new Locale(locale.getLanguage(), locale.getCountry()), locale);
     }
 
-  }
-
-  /**
-   * Process ModulePrefs/Link
-   */
-  private class LinkVisitor implements ElementVisitor {
-    private final Map<String, LinkSpec> linkMap = Maps.newHashMap();
+    void addLink(LinkSpec link) {
+      links.put(link.getRel(), link);
+    }
 
-    public void visit(Element element) throws SpecParserException {
-      LinkSpec link = new LinkSpec(element, base);
-      linkMap.put(link.getRel(), link);
+    void setOAuth(OAuthSpec oauth) throws SpecParserException {
+      if (this.oauth != null) {
+        throw new SpecParserException("ModulePrefs/OAuth may only occur once.");
+      }
+      this.oauth = oauth;
     }
   }
 }
@@ -27,8 +27,6 @@ import com.google.common.collect.Maps;
 
 import org.apache.commons.lang.StringUtils;
 import org.w3c.dom.Element;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
 
 import java.util.Collections;
 import java.util.HashSet;
@@ -41,7 +39,7 @@ import java.util.Set;
  */
 public class Preload implements RequestAuthenticationInfo {
   private static final Set<String> KNOWN_ATTRIBUTES
-      = ImmutableSet.of("views", "href", "authz", "sign_owner", "sign_viewer");
+      = ImmutableSet.of("views", "href", "authz", "sign_owner", "sign_viewer", "timeout");
 
   private final Uri base;
 
@@ -52,6 +50,13 @@ public class Preload implements RequestAuthenticationInfo {
    * @throws SpecParserException When the href is not specified
    */
   public Preload(Element preload, Uri base) throws SpecParserException {
+    this(XmlUtil.getAttributes(preload), base);
+  }
+
+  /**
+   * @param preload The attributes of the Preload element.
+   */
+  Preload(Map<String, String> preload, Uri base) throws SpecParserException {
     this.base = base;
     href = XmlUtil.getUriAttribute(preload, "href");
     if (href == null) {
@@ -72,12 +77,11 @@ public class Preload implements RequestAuthenticationInfo {
     auth = AuthType.parse(XmlUtil.getAttribute(preload, "authz"));
     signOwner = XmlUtil.getBoolAttribute(preload, "sign_owner", true);
     signViewer = XmlUtil.getBoolAttribute(preload, "sign_viewer", true);
+    timeout = XmlUtil.getIntAttribute(preload, "timeout", -1);
     Map<String, String> attributes = Maps.newHashMap();
-    NamedNodeMap attrs = preload.getAttributes();
-    for (int i = 0; i < attrs.getLength(); ++i) {
-      Node attr = attrs.item(i);
-      if (!KNOWN_ATTRIBUTES.contains(attr.getNodeName())) {
-        attributes.put(attr.getNodeName(), attr.getNodeValue());
+    for (Map.Entry<String, String> attr : preload.entrySet()) {
+      if (!KNOWN_ATTRIBUTES.contains(attr.getKey())) {
+        attributes.put(attr.getKey(), attr.getValue());
       }
     }
     this.attributes = Collections.unmodifiableMap(attributes);
@@ -89,6 +93,7 @@ public class Preload implements RequestAuthenticationInfo {
     auth = preload.auth;
     signOwner = preload.signOwner;
     signViewer = preload.signViewer;
+    timeout = preload.timeout;
     href = base.resolve(substituter.substituteUri(preload.href));
     Map<String, String> attributes = Maps.newHashMap();
     for (Map.Entry<String, String> entry : preload.attributes.entrySet()) {
@@ -129,6 +134,17 @@ public class Preload implements RequestAuthenticationInfo {
     return signViewer;
   }
 
+  /**
+   * Preload/@timeout
+   *
+   * The maximum time, in milliseconds, that rendering should wait for this preload. Negative if
+   * the container's default applies.
+   */
+  private final int timeout;
+  public int getTimeout() {
+    return timeout;
+  }
+
   /**
    * All attributes from the preload tag
    */
@@ -158,6 +174,9 @@ public class Preload implements RequestAuthenticationInfo {
     buf.append("<Preload href='").append(href).append('\'')
        .append(" authz='").append(auth.toString().toLowerCase()).append('\'')
        .append(" views='").append(StringUtils.join(views, ',')).append('\'');
+    if (timeout >= 0) {
+      buf.append(" timeout='").append(timeout).append('\'');
+    }
     for (String attr : attributes.keySet()) {
       buf.append(' ').append(attr).append("='").append(attributes.get(attr))
          .append('\'');
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.spec;
+
+import org.apache.shindig.common.xml.XmlUtil;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The attributes and text of a spec element. Spec sections are built from these rather than from
+ * DOM elements, so that a streaming parser can create them without building a DOM.
+ */
+class SpecElement {
+  private final String name;
+  private final Map<String, String> attributes;
+  private final String text;
+
+  /**
+   * @param name The tag name.
+   * @param attributes The attributes, keyed on their qualified names.
+   * @param text All text inside of the element, as returned by getTextContent.
+   */
+  SpecElement(String name, Map<String, String> attributes, String text) {
+    this.name = name;
+    this.attributes = attributes;
+    this.text = text;
+  }
+
+  static SpecElement of(Element element) {
+    return new SpecElement(
+        element.getTagName(), XmlUtil.getAttributes(element), element.getTextContent());
+  }
+
+  /**
+   * @return All descendants of the element with the given tag name, in document order.
+   */
+  static List<SpecElement> getDescendants(Element element, String name) {
+    NodeList nodes = element.getElementsByTagName(name);
+    if (nodes.getLength() == 0) {
+      return Collections.emptyList();
+    }
+    List<SpecElement> descendants = new ArrayList<SpecElement>(nodes.getLength());
+    for (int i = 0, j = nodes.getLength(); i < j; ++i) {
+      descendants.add(of((Element)nodes.item(i)));
+    }
+    return descendants;
+  }
+
+  String getName() {
+    return name;
+  }
+
+  Map<String, String> getAttributes() {
+    return attributes;
+  }
+
+  String getAttribute(String attr) {
+    return attributes.get(attr);
+  }
+
+  String getText() {
+    return text;
+  }
+}
@@ -0,0 +1,348 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.spec;
+
+import org.apache.shindig.common.uri.Uri;
+import org.apache.shindig.common.xml.XmlException;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Parses specs with a StAX pull parser instead of building a DOM of the document.
+ *
+ * Spec sections are built straight from the stream through the same package-private constructors
+ * that the DOM based constructors delegate to, so both parsers apply the same rules. Content text
+ * is streamed into a single buffer per Content element. The only section still read into a DOM
+ * is ModulePrefs/OAuth, which is rare, small and deeply nested. The resulting GadgetSpec is
+ * identical to the one produced by the DOM parser.
+ *
+ * To use this parser, bind GadgetSpecParser to StaxGadgetSpecParser in a Guice module.
+ */
+public class StaxGadgetSpecParser implements GadgetSpecParser {
+  private static final Logger LOG = Logger.getLogger(StaxGadgetSpecParser.class.getName());
+
+  // Only configured here; readers are created concurrently from the configured factory.
+  private static final XMLInputFactory inputFactory = createInputFactory();
+  private static final DOMImplementation domImpl;
+
+  static {
+    try {
+      domImpl = DocumentBuilderFactory.newInstance().newDocumentBuilder().getDOMImplementation();
+    } catch (ParserConfigurationException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Matches XmlUtil: doctypes and their internal entities are allowed, but nothing outside of the
+   * spec is ever loaded.
+   */
+  private static XMLInputFactory createInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    factory.setProperty(XMLInputFactory.IS_VALIDATING, false);
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, true);
+    factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, true);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    // Refuses external DTDs and entities even where the parser ignores the property above.
+    factory.setXMLResolver(new XMLResolver() {
+      public Object resolveEntity(String publicId, String systemId, String baseUri,
+          String namespace) throws XMLStreamException {
+        throw new XMLStreamException("External entities are not allowed: " + systemId);
+      }
+    });
+    try {
+      factory.setProperty("http://javax.xml.XMLConstants/property/accessExternalDTD", "");
+    } catch (IllegalArgumentException e) {
+      // Only supported by JAXP 1.5 and later.
+      LOG.info("StAX parser doesn't restrict external DTD access.");
+    }
+    try {
+      factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+    } catch (IllegalArgumentException e) {
+      // Namespace declarations are copied as attributes instead.
+      LOG.info("StAX parser is always namespace aware.");
+    }
+    return factory;
+  }
+
+  public GadgetSpec parse(Uri url, String xml) throws SpecParserException {
+    GadgetSpec.Sections sections;
+    try {
+      sections = readSpec(url, xml);
+    } catch (XMLStreamException e) {
+      throw new SpecParserException("Malformed XML in file " + url.toString(),
+          new XmlException(e));
+    }
+    if (sections == null) {
+      throw new SpecParserException("Malformed XML in file " + url.toString());
+    }
+    return new GadgetSpec(url, xml, sections);
+  }
+
+  /**
+   * @return The top level sections, or null if there is no document element.
+   */
+  private static GadgetSpec.Sections readSpec(Uri url, String xml)
+      throws XMLStreamException, SpecParserException {
+    XMLStreamReader reader = inputFactory.createXMLStreamReader(new StringReader(xml));
+    try {
+      while (reader.hasNext()) {
+        if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+          try {
+            return readModule(url, reader);
+          } catch (SpecParserException e) {
+            // Like the DOM parser, report malformed XML anywhere in the spec ahead of an invalid
+            // section.
+            while (reader.hasNext()) {
+              reader.next();
+            }
+            throw e;
+          }
+        }
+      }
+      return null;
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static GadgetSpec.Sections readModule(Uri url, XMLStreamReader reader)
+      throws XMLStreamException, SpecParserException {
+    GadgetSpec.Sections sections = new GadgetSpec.Sections();
+    while (nextChild(reader)) {
+      String name = getTagName(reader);
+      if ("ModulePrefs".equals(name)) {
+        sections.setModulePrefs(readModulePrefs(url, reader));
+      } else if ("UserPref".equals(name)) {
+        Map<String, String> attributes = getAttributes(reader);
+        sections.userPrefs.add(
+            new UserPref(attributes, readDescendants(reader, "EnumValue")));
+      } else if ("Content".equals(name)) {
+        Map<String, String> attributes = getAttributes(reader);
+        sections.contents.add(new SpecElement(name, attributes, readText(reader)));
+      } else {
+        readText(reader);
+      }
+    }
+    // Anything after the document element is ignorable or malformed; let the reader check it.
+    while (reader.hasNext()) {
+      reader.next();
+    }
+    return sections;
+  }
+
+  private static ModulePrefs readModulePrefs(Uri url, XMLStreamReader reader)
+      throws XMLStreamException, SpecParserException {
+    Map<String, String> attributes = getAttributes(reader);
+    ModulePrefs.Sections sections = new ModulePrefs.Sections();
+    while (nextChild(reader)) {
+      String name = getTagName(reader);
+      if ("Preload".equals(name)) {
+        sections.addPreload(new Preload(getAttributes(reader), url));
+        readText(reader);
+      } else if ("Optional".equals(name) || "Require".equals(name)) {
+        SpecElement feature = new SpecElement(name, getAttributes(reader), null);
+        sections.addFeature(new Feature(feature, readDescendants(reader, "Param")));
+      } else if ("OAuth".equals(name)) {
+        sections.setOAuth(new OAuthSpec(readElement(reader), url));
+      } else if ("Icon".equals(name)) {
+        Map<String, String> iconAttributes = getAttributes(reader);
+        sections.addIcon(new Icon(new SpecElement(name, iconAttributes, readText(reader))));
+      } else if ("Locale".equals(name)) {
+        Map<String, String> localeAttributes = getAttributes(reader);
+        sections.addLocale(
+            new LocaleSpec(localeAttributes, readDescendants(reader, "msg"), url));
+      } else if ("Link".equals(name)) {
+        sections.addLink(new LinkSpec(getAttributes(reader), url));
+        readText(reader);
+      } else {
+        readText(reader);
+      }
+    }
+    return new ModulePrefs(attributes, url, sections);
+  }
+
+  /**
+   * Advances to the next child element of the current element.
+   *
+   * @return False if the end of the current element was reached instead.
+   */
+  private static boolean nextChild(XMLStreamReader reader) throws XMLStreamException {
+    while (reader.hasNext()) {
+      switch (reader.next()) {
+        case XMLStreamConstants.START_ELEMENT:
+          return true;
+        case XMLStreamConstants.END_ELEMENT:
+          return false;
+        default:
+          // Text between sections, comments and processing instructions have no effect.
+          break;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Reads the rest of the current element.
+   *
+   * @return All text inside of the element, as with getTextContent.
+   */
+  private static String readText(XMLStreamReader reader) throws XMLStreamException {
+    StringBuilder text = new StringBuilder();
+    int depth = 1;
+    while (depth > 0 && reader.hasNext()) {
+      switch (reader.next()) {
+        case XMLStreamConstants.START_ELEMENT:
+          depth++;
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          depth--;
+          break;
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+        case XMLStreamConstants.SPACE:
+          text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+          break;
+        default:
+          // Markup only contributes its text.
+          break;
+      }
+    }
+    return text.toString();
+  }
+
+  /**
+   * Reads the rest of the current element.
+   *
+   * @return The descendants with the given tag name, in document order, as with
+   *     getElementsByTagName.
+   */
+  private static List<SpecElement> readDescendants(XMLStreamReader reader, String name)
+      throws XMLStreamException {
+    List<SpecElement> descendants = Collections.emptyList();
+    int depth = 1;
+    while (depth > 0 && reader.hasNext()) {
+      switch (reader.next()) {
+        case XMLStreamConstants.START_ELEMENT:
+          if (name.equals(getTagName(reader))) {
+            if (descendants.isEmpty()) {
+              descendants = Lists.newArrayList();
+            }
+            Map<String, String> attributes = getAttributes(reader);
+            descendants.add(new SpecElement(name, attributes, readText(reader)));
+          } else {
+            depth++;
+          }
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          depth--;
+          break;
+        default:
+          break;
+      }
+    }
+    return descendants;
+  }
+
+  /**
+   * Reads the rest of the current element into a DOM element.
+   */
+  private static Element readElement(XMLStreamReader reader) throws XMLStreamException {
+    Document document = domImpl.createDocument(null, null, null);
+    Element root = createElement(document, reader);
+    document.appendChild(root);
+    Node current = root;
+    while (current != document) {
+      switch (reader.next()) {
+        case XMLStreamConstants.START_ELEMENT:
+          Element element = createElement(document, reader);
+          current.appendChild(element);
+          current = element;
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          current = current.getParentNode();
+          break;
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+        case XMLStreamConstants.SPACE:
+          current.appendChild(document.createTextNode(reader.getText()));
+          break;
+        default:
+          break;
+      }
+    }
+    return root;
+  }
+
+  private static Map<String, String> getAttributes(XMLStreamReader reader) {
+    int namespaces = reader.getNamespaceCount();
+    int count = reader.getAttributeCount();
+    // Sorted by name, like the attributes of DOM elements.
+    Map<String, String> attributes = Maps.newTreeMap();
+    for (int i = 0; i < namespaces; ++i) {
+      String prefix = reader.getNamespacePrefix(i);
+      String name = prefix == null || prefix.length() == 0 ? "xmlns" : "xmlns:" + prefix;
+      attributes.put(name, reader.getNamespaceURI(i));
+    }
+    for (int i = 0; i < count; ++i) {
+      String name = getName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i));
+      attributes.put(name, reader.getAttributeValue(i));
+    }
+    return attributes;
+  }
+
+  private static Element createElement(Document document, XMLStreamReader reader) {
+    Element element = document.createElement(getTagName(reader));
+    for (Map.Entry<String, String> attribute : getAttributes(reader).entrySet()) {
+      element.setAttribute(attribute.getKey(), attribute.getValue());
+    }
+    return element;
+  }
+
+  private static String getTagName(XMLStreamReader reader) {
+    return getName(reader.getPrefix(), reader.getLocalName());
+  }
+
+  private static String getName(String prefix, String localName) {
+    if (prefix == null || prefix.length() == 0) {
+      return localName;
+    }
+    return prefix + ':' + localName;
+  }
+}
@@ -18,14 +18,14 @@
 package org.apache.shindig.gadgets.spec;
 
 import org.apache.shindig.common.xml.XmlUtil;
+import org.apache.shindig.gadgets.variables.SubstitutionTemplate;
 import org.apache.shindig.gadgets.variables.Substitutions;
 
 import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -96,6 +96,11 @@ public class UserPref {
     return orderedEnumValues;
   }
 
+  // Compiled once when the spec is parsed. Substituted prefs don't carry templates.
+  private SubstitutionTemplate displayNameTemplate;
+  private SubstitutionTemplate defaultValueTemplate;
+  private Map<String, SubstitutionTemplate> enumValueTemplates;
+
   /**
    * Performs substitutions on the pref. See field comments for details on what
    * is substituted.
@@ -105,25 +110,41 @@ public class UserPref {
    */
   public UserPref substitute(Substitutions substituter) {
     UserPref pref = new UserPref(this);
-    pref.displayName = substituter.substituteString(displayName);
-    pref.defaultValue = substituter.substituteString(defaultValue);
+    if (displayNameTemplate == null) {
+      pref.displayName = substituter.substituteString(displayName);
+      pref.defaultValue = substituter.substituteString(defaultValue);
+    } else {
+      pref.displayName = displayNameTemplate.substitute(substituter);
+      pref.defaultValue = defaultValueTemplate.substitute(substituter);
+    }
     if (enumValues.isEmpty()) {
       pref.enumValues = Collections.emptyMap();
     } else {
-      Map<String, String> values = new HashMap<String, String>(enumValues.size());
-      for (Map.Entry<String, String> entry : enumValues.entrySet()) {
-        values.put(entry.getKey(), substituter.substituteString(entry.getValue()));
+      Map<String, String> values;
+      if (enumValueTemplates == null) {
+        values = new HashMap<String, String>(enumValues.size());
+        for (Map.Entry<String, String> entry : enumValues.entrySet()) {
+          values.put(entry.getKey(), substituter.substituteString(entry.getValue()));
+        }
+      } else {
+        values = SubstitutionTemplate.substitute(enumValues, enumValueTemplates, substituter);
       }
       pref.enumValues = Collections.unmodifiableMap(values);
     }
     if (orderedEnumValues.isEmpty()) {
       pref.orderedEnumValues = Collections.emptyList();
     } else {
+      // Reuse the substitutions made above unless a value was declared more than once.
       List<EnumValuePair> orderedValues
-          = new LinkedList<EnumValuePair>();
+          = new ArrayList<EnumValuePair>(orderedEnumValues.size());
       for (EnumValuePair evp : orderedEnumValues) {
-        orderedValues.add(new EnumValuePair(evp.getValue(),
-            substituter.substituteString(evp.getDisplayValue())));
+        String displayValue = evp.getDisplayValue();
+        if (displayValue.equals(enumValues.get(evp.getValue()))) {
+          displayValue = pref.enumValues.get(evp.getValue());
+        } else {
+          displayValue = substituter.substituteString(displayValue);
+        }
+        orderedValues.add(new EnumValuePair(evp.getValue(), displayValue));
       }
       pref.orderedEnumValues = Collections.unmodifiableList(orderedValues);
     }
@@ -166,6 +187,15 @@ public class UserPref {
    * @throws SpecParserException
    */
   public UserPref(Element element) throws SpecParserException {
+    this(XmlUtil.getAttributes(element), SpecElement.getDescendants(element, "EnumValue"));
+  }
+
+  /**
+   * @param element The attributes of the UserPref element.
+   * @param children The EnumValue elements inside of it.
+   */
+  UserPref(Map<String, String> element, List<SpecElement> children)
+      throws SpecParserException {
     String name = XmlUtil.getAttribute(element, "name");
     if (name == null) {
       throw new SpecParserException("UserPref@name is required.");
@@ -179,18 +209,17 @@ public class UserPref {
     String dataType = XmlUtil.getAttribute(element, "datatype", "string");
     this.dataType = DataType.parse(dataType);
 
-    NodeList children = element.getElementsByTagName("EnumValue");
-    if (children.getLength() > 0) {
-      Map<String, String> enumValues = new HashMap<String, String>();
-      List<EnumValuePair> orderedEnumValues = new LinkedList<EnumValuePair>();
-      for (int i = 0, j = children.getLength(); i < j; ++i) {
-        Element child = (Element)children.item(i);
-        String value = XmlUtil.getAttribute(child, "value");
+    if (!children.isEmpty()) {
+      int count = children.size();
+      Map<String, String> enumValues = new HashMap<String, String>(count * 4 / 3 + 1);
+      List<EnumValuePair> orderedEnumValues = new ArrayList<EnumValuePair>(count);
+      for (SpecElement child : children) {
+        String value = child.getAttribute("value");
         if (value == null) {
           throw new SpecParserException("EnumValue@value is required.");
         }
         String displayValue
-            = XmlUtil.getAttribute(child, "display_value", value);
+            = XmlUtil.getAttribute(child.getAttributes(), "display_value", value);
         enumValues.put(value, displayValue);
         orderedEnumValues.add(new EnumValuePair(value, displayValue));
       }
@@ -200,6 +229,10 @@ public class UserPref {
       this.enumValues = Collections.emptyMap();
       this.orderedEnumValues = Collections.emptyList();
     }
+
+    displayNameTemplate = SubstitutionTemplate.compile(displayName);
+    defaultValueTemplate = SubstitutionTemplate.compile(defaultValue);
+    enumValueTemplates = SubstitutionTemplate.compile(enumValues);
   }
 
   /**
@@ -20,17 +20,16 @@ package org.apache.shindig.gadgets.spec;
 import org.apache.shindig.common.uri.Uri;
 import org.apache.shindig.common.xml.XmlUtil;
 import org.apache.shindig.gadgets.AuthType;
+import org.apache.shindig.gadgets.variables.SubstitutionTemplate;
 import org.apache.shindig.gadgets.variables.Substitutions;
 
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 
-import edu.emory.mathcs.backport.java.util.Collections;
-
 import org.w3c.dom.Element;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -47,6 +46,10 @@ public class View implements RequestAuthenticationInfo {
 
   private final Uri base;
 
+  // Compiled once when the spec is parsed. Views produced by substitute() don't carry templates.
+  private SubstitutionTemplate contentTemplate;
+  private final Map<String, SubstitutionTemplate> attributeTemplates;
+
   /**
    * @param name The name of this view.
    * @param elements List of all views, in order, that make up this view.
@@ -56,6 +59,23 @@ public class View implements RequestAuthenticationInfo {
    * @throws SpecParserException
    */
   public View(String name, List<Element> elements, Uri base) throws SpecParserException {
+    this(name, base, toSpecElements(elements));
+  }
+
+  private static List<SpecElement> toSpecElements(List<Element> elements) {
+    List<SpecElement> specElements = new ArrayList<SpecElement>(elements.size());
+    for (Element element : elements) {
+      specElements.add(SpecElement.of(element));
+    }
+    return specElements;
+  }
+
+  /**
+   * @param name The name of this view.
+   * @param base The base url to resolve href against.
+   * @param elements The Content elements, in order, that make up this view.
+   */
+  View(String name, Uri base, List<SpecElement> elements) throws SpecParserException {
     this.name = name;
     this.base = base;
 
@@ -70,7 +90,8 @@ public class View implements RequestAuthenticationInfo {
     boolean signViewer = true;
     Map<String, String> attributes = Maps.newHashMap();
     StringBuilder content = new StringBuilder();
-    for (Element element : elements) {
+    for (SpecElement specElement : elements) {
+      Map<String, String> element = specElement.getAttributes();
       contentType = XmlUtil.getAttribute(element, "type");
       if (contentType != null) {
         ContentType newType = ContentType.parse(contentType);
@@ -87,12 +108,10 @@ public class View implements RequestAuthenticationInfo {
       auth = XmlUtil.getAttribute(element, "authz", auth);
       signOwner = XmlUtil.getBoolAttribute(element, "sign_owner", signOwner);
       signViewer = XmlUtil.getBoolAttribute(element, "sign_viewer", signViewer);
-      content.append(element.getTextContent());
-      NamedNodeMap attrs = element.getAttributes();
-      for (int i = 0; i < attrs.getLength(); ++i) {
-        Node attr = attrs.item(i);
-        if (!KNOWN_ATTRIBUTES.contains(attr.getNodeName())) {
-          attributes.put(attr.getNodeName(), attr.getNodeValue());
+      content.append(specElement.getText());
+      for (Map.Entry<String, String> attr : element.entrySet()) {
+        if (!KNOWN_ATTRIBUTES.contains(attr.getKey())) {
+          attributes.put(attr.getKey(), attr.getValue());
         }
       }
     }
@@ -104,7 +123,13 @@ public class View implements RequestAuthenticationInfo {
     this.type = type == null ? ContentType.HTML : type;
     this.preferredHeight = preferredHeight;
     this.preferredWidth = preferredWidth;
-    this.attributes = Collections.unmodifiableMap(attributes);
+    if (attributes.isEmpty()) {
+      this.attributes = Collections.<String, String>emptyMap();
+    } else {
+      this.attributes = Collections.unmodifiableMap(attributes);
+    }
+    this.contentTemplate = SubstitutionTemplate.compile(this.content);
+    this.attributeTemplates = SubstitutionTemplate.compile(attributes);
     this.authType = AuthType.parse(auth);
     this.signOwner = signOwner;
     this.signViewer = signViewer;
@@ -129,14 +154,25 @@ public class View implements RequestAuthenticationInfo {
     signOwner = view.signOwner;
     signViewer = view.signViewer;
 
-    content = substituter.substituteString(view.content);
+    if (view.contentTemplate == null) {
+      content = substituter.substituteString(view.content);
+    } else {
+      content = view.contentTemplate.substitute(substituter);
+    }
     base = view.base;
     href = base.resolve(substituter.substituteUri(view.href));
-    Map<String, String> attributes = Maps.newHashMap();
-    for (Map.Entry<String, String> entry : view.attributes.entrySet()) {
-      attributes.put(entry.getKey(), substituter.substituteString(entry.getValue()));
+    Map<String, String> attributes;
+    if (view.attributeTemplates == null) {
+      attributes = Maps.newHashMap();
+      for (Map.Entry<String, String> entry : view.attributes.entrySet()) {
+        attributes.put(entry.getKey(), substituter.substituteString(entry.getValue()));
+      }
+    } else {
+      attributes = SubstitutionTemplate.substitute(
+          view.attributes, view.attributeTemplates, substituter);
     }
     this.attributes = Collections.unmodifiableMap(attributes);
+    attributeTemplates = null;
   }
 
   /**
@@ -217,9 +253,19 @@ public class View implements RequestAuthenticationInfo {
    */
   public void setHrefContent(String content) {
     this.content = content;
+    this.contentTemplate = null;
     this.href = null;
   }
 
+  /**
+   * Makes this view share the content of another view built from the same Content elements, so
+   * that only one copy is retained.
+   */
+  void shareContent(View view) {
+    content = view.content;
+    contentTemplate = view.contentTemplate;
+  }
+
   /**
    * Whether or not the content section has any __UP_ hangman variables.
    */
@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.variables;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A string that has been split once into literal text and substitution placeholders, so that it
+ * may be substituted repeatedly without being rescanned.
+ *
+ * Templates are compiled when a spec is parsed and live as long as the spec, so every request
+ * that renders the spec pays only for looking up and concatenating the replacement values.
+ * Literal text is never copied out of the input; the template only records where placeholders
+ * start and end, and repeated placeholders share a single key.
+ *
+ * Substituting a template always produces the same result as
+ * {@link Substitutions#substituteString} on the original string.
+ */
+public final class SubstitutionTemplate {
+  private static final String[] NO_PLACEHOLDERS = new String[0];
+  private static final int[] NO_OFFSETS = new int[0];
+  private static final boolean[] NO_MESSAGES = new boolean[0];
+
+  private final String input;
+  private final String[] placeholders;
+  // Offsets of each placeholder in the input. Literal text is everything in between.
+  private final int[] starts;
+  private final int[] ends;
+  private final boolean[] messages;
+
+  private SubstitutionTemplate(String input, String[] placeholders, int[] starts, int[] ends,
+      boolean[] messages) {
+    this.input = input;
+    this.placeholders = placeholders;
+    this.starts = starts;
+    this.ends = ends;
+    this.messages = messages;
+  }
+
+  private SubstitutionTemplate(String input) {
+    this(input, NO_PLACEHOLDERS, NO_OFFSETS, NO_OFFSETS, NO_MESSAGES);
+  }
+
+  /**
+   * Locates the placeholders in the input. Markers that do not start with the prefix of a known
+   * substitution type are treated as literal text, since they can never be replaced.
+   *
+   * @param input The string to compile. May be null, in which case substitution produces null.
+   */
+  public static SubstitutionTemplate compile(String input) {
+    if (input == null || input.indexOf("__") == -1) {
+      return new SubstitutionTemplate(input);
+    }
+
+    List<String> placeholders = Lists.newArrayList();
+    List<Integer> offsets = Lists.newArrayList();
+    Map<String, String> keys = Maps.newHashMap();
+    int lastPosition = 0, i;
+    while ((i = input.indexOf("__", lastPosition)) != -1) {
+      int next = input.indexOf("__", i + 2);
+      if (next == -1) {
+        break;
+      }
+      lastPosition = next + 2;
+
+      String pattern = input.substring(i, lastPosition);
+      if (getType(pattern) != null) {
+        String key = keys.get(pattern);
+        if (key == null) {
+          key = pattern;
+          keys.put(key, key);
+        }
+        placeholders.add(key);
+        offsets.add(i);
+        offsets.add(lastPosition);
+      }
+    }
+
+    if (placeholders.isEmpty()) {
+      return new SubstitutionTemplate(input);
+    }
+
+    int count = placeholders.size();
+    int[] starts = new int[count];
+    int[] ends = new int[count];
+    boolean[] messages = new boolean[count];
+    for (int j = 0; j < count; ++j) {
+      starts[j] = offsets.get(2 * j);
+      ends[j] = offsets.get(2 * j + 1);
+      messages[j] = getType(placeholders.get(j)) == Substitutions.Type.MESSAGE;
+    }
+    return new SubstitutionTemplate(input, placeholders.toArray(new String[count]), starts, ends,
+        messages);
+  }
+
+  /**
+   * Compiles the values of the given map that contain placeholders. Values without placeholders
+   * don't need templates and are left out.
+   *
+   * @return An unmodifiable map of keys to compiled values.
+   */
+  public static Map<String, SubstitutionTemplate> compile(Map<String, String> input) {
+    Map<String, SubstitutionTemplate> templates = null;
+    for (Map.Entry<String, String> entry : input.entrySet()) {
+      SubstitutionTemplate template = compile(entry.getValue());
+      if (!template.isConstant()) {
+        if (templates == null) {
+          templates = Maps.newHashMap();
+        }
+        templates.put(entry.getKey(), template);
+      }
+    }
+    if (templates == null) {
+      return Collections.emptyMap();
+    }
+    return Collections.unmodifiableMap(templates);
+  }
+
+  /**
+   * Substitutes a map of values, using templates produced by {@link #compile(Map)} for the values
+   * that need it.
+   *
+   * @return A new, modifiable map of the same keys to the substituted values.
+   */
+  public static Map<String, String> substitute(Map<String, String> values,
+      Map<String, SubstitutionTemplate> templates, Substitutions substituter) {
+    Map<String, String> substituted = Maps.newHashMapWithExpectedSize(values.size());
+    substituted.putAll(values);
+    for (Map.Entry<String, SubstitutionTemplate> entry : templates.entrySet()) {
+      substituted.put(entry.getKey(), entry.getValue().substitute(substituter));
+    }
+    return substituted;
+  }
+
+  private static Substitutions.Type getType(String pattern) {
+    for (Substitutions.Type type : Substitutions.Type.values()) {
+      if (pattern.startsWith(type.getPrefix())) {
+        return type;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return The string this template was compiled from.
+   */
+  public String getInput() {
+    return input;
+  }
+
+  /**
+   * @return True if the template has no placeholders, and therefore always substitutes to its
+   *     input.
+   */
+  public boolean isConstant() {
+    return placeholders.length == 0;
+  }
+
+  /**
+   * Substitutes all placeholders in the template.
+   *
+   * @return The substituted string.
+   */
+  public String substitute(Substitutions substituter) {
+    if (placeholders.length == 0) {
+      return input;
+    }
+
+    String[] replacements = new String[placeholders.length];
+    int length = input.length();
+    for (int i = 0; i < placeholders.length; ++i) {
+      String replacement = substituter.getReplacement(placeholders[i], messages[i]);
+      replacements[i] = replacement;
+      length += replacement.length() - (ends[i] - starts[i]);
+    }
+
+    char[] output = new char[length];
+    int position = 0;
+    int literalStart = 0;
+    for (int i = 0; i < placeholders.length; ++i) {
+      input.getChars(literalStart, starts[i], output, position);
+      position += starts[i] - literalStart;
+      String replacement = replacements[i];
+      replacement.getChars(0, replacement.length(), output, position);
+      position += replacement.length();
+      literalStart = ends[i];
+    }
+    input.getChars(literalStart, input.length(), output, position);
+    return new String(output);
+  }
+
+  @Override
+  public String toString() {
+    return input;
+  }
+}
@@ -21,7 +21,9 @@ import org.apache.shindig.common.uri.Uri;
 
 import com.google.common.collect.Maps;
 
+import java.util.EnumSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Performs string substitutions for message bundles, user prefs, and bidi
@@ -66,6 +68,13 @@ public class Substitutions {
     Type(String prefix) {
       this.prefix = "__" + prefix +  "_";
     }
+
+    /**
+     * @return The full placeholder prefix, e.g. __MSG_.
+     */
+    String getPrefix() {
+      return prefix;
+    }
   }
 
   private final Map<String, String> substitutions;
@@ -141,6 +150,44 @@ public class Substitutions {
     output.append(input.substring(lastPosition));
   }
 
+  /**
+   * Finds the types of placeholders that appear in the input. This is a conservative check: any
+   * occurrence of a type's prefix counts, whether or not it forms a complete placeholder.
+   *
+   * @return The set of types whose placeholders may appear in the input.
+   */
+  public static Set<Type> findTypes(String input) {
+    Set<Type> types = EnumSet.noneOf(Type.class);
+    if (input != null && input.indexOf("__") != -1) {
+      for (Type type : Type.values()) {
+        if (input.indexOf(type.prefix) != -1) {
+          types.add(type);
+        }
+      }
+    }
+    return types;
+  }
+
+  /**
+   * Resolves a single placeholder from a compiled {@link SubstitutionTemplate}.
+   *
+   * @param pattern The complete placeholder, including the surrounding markers.
+   * @param isMessage True if the placeholder is a message, whose value may itself be substituted.
+   * @return The replacement, or the placeholder itself if there is no substitution for it.
+   */
+  String getReplacement(String pattern, boolean isMessage) {
+    String replacement = substitutions.get(pattern);
+    if (replacement == null) {
+      return pattern;
+    }
+    if (isMessage && replacement.indexOf("__") != -1) {
+      StringBuilder output = new StringBuilder(replacement.length() * 120 / 100);
+      performSubstitutions(replacement, output, true);
+      return output.toString();
+    }
+    return replacement;
+  }
+
   /**
    * Performs string substitution only for the specified type. If no
    * substitution for {@code input} was provided or {@code input} is null,
@@ -18,23 +18,47 @@
  */
 package org.apache.shindig.gadgets.variables;
 
+import org.apache.shindig.common.cache.Cache;
+import org.apache.shindig.common.cache.CacheProvider;
 import org.apache.shindig.gadgets.GadgetContext;
 import org.apache.shindig.gadgets.GadgetException;
 import org.apache.shindig.gadgets.MessageBundleFactory;
 import org.apache.shindig.gadgets.spec.GadgetSpec;
 import org.apache.shindig.gadgets.spec.MessageBundle;
+import org.apache.shindig.gadgets.variables.Substitutions.Type;
 
 import com.google.inject.Inject;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * Performs variable substitution on a gadget spec.
+ *
+ * Substituted specs are cached whenever the result doesn't depend on user preferences. The cache
+ * key holds only the inputs that the spec's placeholders actually reference. A spec without any
+ * messages is shared across all locales, for example, and MODULE_ID only matters for specs that
+ * use it.
  */
 public class VariableSubstituter {
+  public static final String CACHE_NAME = "substitutedSpecs";
+
   private final MessageBundleFactory messageBundleFactory;
+  private final Cache<SubstitutionKey, GadgetSpec> cache;
 
-  @Inject
   public VariableSubstituter(MessageBundleFactory messageBundleFactory) {
+    this(messageBundleFactory, null);
+  }
+
+  @Inject
+  public VariableSubstituter(MessageBundleFactory messageBundleFactory,
+                             CacheProvider cacheProvider) {
     this.messageBundleFactory = messageBundleFactory;
+    if (cacheProvider == null) {
+      cache = null;
+    } else {
+      cache = cacheProvider.createCache(CACHE_NAME);
+    }
   }
 
   /**
@@ -45,6 +69,25 @@ public class VariableSubstituter {
   public GadgetSpec substitute(GadgetContext context, GadgetSpec spec) throws GadgetException {
     MessageBundle bundle =
         messageBundleFactory.getBundle(spec, context.getLocale(), context.getIgnoreCache());
+
+    if (cache == null || context.getIgnoreCache()) {
+      return substitute(context, spec, bundle);
+    }
+
+    SubstitutionKey key = makeKey(context, spec, bundle);
+    if (key == null) {
+      return substitute(context, spec, bundle);
+    }
+
+    GadgetSpec substituted = cache.getElement(key);
+    if (substituted == null) {
+      substituted = substitute(context, spec, bundle);
+      cache.addElement(key, substituted);
+    }
+    return substituted;
+  }
+
+  private GadgetSpec substitute(GadgetContext context, GadgetSpec spec, MessageBundle bundle) {
     String dir = bundle.getLanguageDirection();
 
     Substitutions substituter = new Substitutions();
@@ -56,4 +99,83 @@ public class VariableSubstituter {
 
     return spec.substitute(substituter);
   }
+
+  /**
+   * @return A key made of exactly the values that substituting the spec depends on, or null if
+   *     the substituted spec depends on user preferences and shouldn't be cached.
+   */
+  private static SubstitutionKey makeKey(GadgetContext context, GadgetSpec spec,
+      MessageBundle bundle) {
+    Set<Type> types = EnumSet.noneOf(Type.class);
+    types.addAll(spec.getSubstitutionTypes());
+
+    String messages = null;
+    if (types.contains(Type.MESSAGE)) {
+      // Message values are themselves substituted, so they may reference the other types.
+      messages = bundle.getChecksum();
+      types.addAll(bundle.getSubstitutionTypes());
+    }
+
+    // Only declared prefs are ever substituted.
+    if (types.contains(Type.USER_PREF) && !spec.getUserPrefs().isEmpty()) {
+      return null;
+    }
+
+    String dir = types.contains(Type.BIDI) ? bundle.getLanguageDirection() : null;
+    Integer moduleId = types.contains(Type.MODULE) ? context.getModuleId() : null;
+    return new SubstitutionKey(spec, messages, dir, moduleId);
+  }
+
+  /**
+   * Identifies a substituted spec. Unused inputs are null; messages are identified by the bundle's
+   * checksum.
+   */
+  private static final class SubstitutionKey {
+    private final String url;
+    private final String checksum;
+    private final String messages;
+    private final String dir;
+    private final Integer moduleId;
+    private final int hashCode;
+
+    public SubstitutionKey(GadgetSpec spec, String messages, String dir, Integer moduleId) {
+      this.url = spec.getUrl().toString();
+      this.checksum = spec.getChecksum();
+      this.messages = messages;
+      this.dir = dir;
+      this.moduleId = moduleId;
+      int hash = url.hashCode();
+      hash = 31 * hash + checksum.hashCode();
+      hash = 31 * hash + (messages == null ? 0 : messages.hashCode());
+      hash = 31 * hash + (dir == null ? 0 : dir.hashCode());
+      hash = 31 * hash + (moduleId == null ? 0 : moduleId.hashCode());
+      hashCode = hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj == this) {
+        return true;
+      }
+      if (!(obj instanceof SubstitutionKey)) {
+        return false;
+      }
+      SubstitutionKey other = (SubstitutionKey) obj;
+      return hashCode == other.hashCode
+          && url.equals(other.url)
+          && checksum.equals(other.checksum)
+          && equal(messages, other.messages)
+          && equal(dir, other.dir)
+          && equal(moduleId, other.moduleId);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    private static boolean equal(Object a, Object b) {
+      return a == null ? b == null : a.equals(b);
+    }
+  }
 }
@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.gadgets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.shindig.common.cache.LruCacheProvider;
+import org.apache.shindig.common.uri.Uri;
+import org.apache.shindig.gadgets.http.DefaultHttpCache;
+import org.apache.shindig.gadgets.http.HttpCacheKey;
+import org.apache.shindig.gadgets.http.HttpFetcher;
+import org.apache.shindig.gadgets.http.HttpRequest;
+import org.apache.shindig.gadgets.http.HttpResponse;
+import org.apache.shindig.gadgets.http.HttpResponseBuilder;
+import org.apache.shindig.gadgets.spec.GadgetSpec;
+import org.apache.shindig.gadgets.spec.MessageBundle;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Tests for CacheSnapshotter.
+ */
+public class CacheSnapshotterTest {
+  private static final Uri SPEC_URL = Uri.parse("http://example.org/gadget.xml");
+  private static final Uri BUNDLE_URL = Uri.parse("http://example.org/messages.xml");
+  private static final Uri RESOURCE_URL = Uri.parse("http://example.org/data.json");
+  private static final String SPEC_XML =
+      "<Module>" +
+      "<ModulePrefs title='snapshot'><Locale messages='" + BUNDLE_URL + "'/></ModulePrefs>" +
+      "<Content type='html'>Hello, __MSG_name__</Content>" +
+      "</Module>";
+  private static final String BUNDLE_XML =
+      "<messagebundle><msg name='name'>world</msg></messagebundle>";
+  private static final long REFRESH = 60000L;
+
+  private static final Executor DIRECT_EXECUTOR = new Executor() {
+    public void execute(Runnable command) {
+      command.run();
+    }
+  };
+
+  private File file;
+
+  @Before
+  public void setUp() throws Exception {
+    file = File.createTempFile("snapshot", ".bin");
+    file.delete();
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  private Server startServer(File snapshotFile) {
+    Server server = new Server(snapshotFile);
+    server.snapshotter.start();
+    return server;
+  }
+
+  @Test
+  public void restoredAfterRestart() throws Exception {
+    Server first = startServer(file);
+    first.fetcher.responses.put(SPEC_URL, new HttpResponse(SPEC_XML));
+    first.fetcher.responses.put(BUNDLE_URL, new HttpResponse(BUNDLE_XML));
+    GadgetSpec spec = first.specFactory.getGadgetSpec(SPEC_URL.toJavaUri(), false);
+    first.bundleFactory.getBundle(spec, new Locale("all", "ALL"), false);
+    HttpRequest request = new HttpRequest(RESOURCE_URL);
+    first.httpCache.addResponse(new HttpCacheKey(request), request,
+        new HttpResponseBuilder().setResponseString("data").setCacheTtl(100).create());
+    first.snapshotter.stop();
+    assertTrue(file.exists());
+
+    // The second server has nothing to fetch from.
+    Server second = startServer(file);
+    GadgetSpec restored = second.specFactory.getGadgetSpec(SPEC_URL.toJavaUri(), false);
+    MessageBundle bundle
+        = second.bundleFactory.getBundle(restored, new Locale("all", "ALL"), false);
+    HttpResponse response = second.httpCache.getResponse(new HttpCacheKey(request), request);
+
+    assertEquals(0, second.fetcher.fetchCount);
+    assertEquals(spec.getChecksum(), restored.getChecksum());
+    assertEquals("world", bundle.getMessages().get("name"));
+    assertNotNull(response);
+    assertEquals("data", response.getResponseAsString());
+  }
+
+  @Test
+  public void restoredSpecsCanBeSnapshottedAgain() throws Exception {
+    Server first = startServer(file);
+    first.fetcher.responses.put(SPEC_URL, new HttpResponse(SPEC_XML));
+    first.specFactory.getGadgetSpec(SPEC_URL.toJavaUri(), false);
+    first.snapshotter.stop();
+
+    Server second = startServer(file);
+    second.snapshotter.stop();
+    // The new snapshot was moved over the previous one.
+    assertFalse(new File(file.getPath() + ".tmp").exists());
+
+    Server third = startServer(file);
+    third.specFactory.getGadgetSpec(SPEC_URL.toJavaUri(), false);
+    assertEquals(0, third.fetcher.fetchCount);
+  }
+
+  @Test
+  public void notSavedBeforeRestore() throws Exception {
+    Server server = new Server(file);
+    assertEquals(0, server.snapshotter.save());
+    assertFalse(file.exists());
+  }
+
+  @Test
+  public void disabledWithoutFile() throws Exception {
+    Server server = startServer(null);
+    server.fetcher.responses.put(SPEC_URL, new HttpResponse(SPEC_XML));
+    GadgetSpec spec = server.specFactory.getGadgetSpec(SPEC_URL.toJavaUri(), false);
+    server.snapshotter.stop();
+
+    assertFalse(server.snapshotter.isEnabled());
+    assertNull(spec.getAttribute(DefaultGadgetSpecFactory.RAW_XML_KEY));
+  }
+
+  @Test
+  public void corruptSnapshotIgnored() throws Exception {
+    Server first = startServer(file);
+    first.fetcher.responses.put(SPEC_URL, new HttpResponse(SPEC_XML));
+    first.specFactory.getGadgetSpec(SPEC_URL.toJavaUri(), false);
+    first.snapshotter.stop();
+    RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+    truncated.setLength(file.length() / 2);
+    truncated.close();
+
+    Server second = new Server(file);
+    second.snapshotter.restore();
+    second.fetcher.responses.put(SPEC_URL, new HttpResponse(SPEC_XML));
+    second.specFactory.getGadgetSpec(SPEC_URL.toJavaUri(), false);
+    assertEquals(1, second.fetcher.fetchCount);
+  }
+
+  /**
+   * The cached components of a single server process.
+   */
+  private static class Server {
+    final FakeFetcher fetcher = new FakeFetcher();
+    final LruCacheProvider cacheProvider = new LruCacheProvider(10);
+    final DefaultHttpCache httpCache = new DefaultHttpCache(cacheProvider);
+    final DefaultMessageBundleFactory bundleFactory
+        = new DefaultMessageBundleFactory(fetcher, cacheProvider, REFRESH);
+    final DefaultGadgetSpecFactory specFactory
+        = new DefaultGadgetSpecFactory(fetcher, cacheProvider, REFRESH);
+    final CacheSnapshotter snapshotter;
+
+    Server(File file) {
+      snapshotter = new CacheSnapshotter(
+          Lists.<CacheSnapshotSource>newArrayList(httpCache, bundleFactory, specFactory),
+          DIRECT_EXECUTOR, file, 0, 100);
+    }
+  }
+
+  private static class FakeFetcher implements HttpFetcher {
+    final Map<Uri, HttpResponse> responses = Maps.newHashMap();
+    int fetchCount;
+
+    public HttpResponse fetch(HttpRequest request) {
+      ++fetchCount;
+      HttpResponse response = responses.get(request.getUri());
+      return response == null ? HttpResponse.notFound() : response;
+    }
+  }
+}
@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.gadgets;
+
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.isA;
+import static org.easymock.classextension.EasyMock.createMock;
+import static org.easymock.classextension.EasyMock.createNiceMock;
+import static org.easymock.classextension.EasyMock.replay;
+import static org.easymock.classextension.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.shindig.common.ContainerConfig;
+import org.apache.shindig.common.cache.LruCacheProvider;
+import org.apache.shindig.common.uri.Uri;
+import org.apache.shindig.gadgets.http.ContentFetcherFactory;
+import org.apache.shindig.gadgets.http.HttpFetcher;
+import org.apache.shindig.gadgets.http.HttpRequest;
+import org.apache.shindig.gadgets.http.HttpResponse;
+import org.apache.shindig.gadgets.render.RenderingContentRewriter;
+
+import com.google.common.collect.Maps;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for CacheWarmer.
+ */
+public class CacheWarmerTest {
+  private static final Uri SPEC_URL = Uri.parse("http://example.org/gadget.xml");
+  private static final Uri BUNDLE_URL = Uri.parse("http://example.org/messages.xml");
+  private static final Uri PRELOAD_URL = Uri.parse("http://example.org/data.json");
+  private static final Uri MISSING_URL = Uri.parse("http://example.org/missing.xml");
+  private static final String SPEC_XML =
+      "<Module>" +
+      "<ModulePrefs title='warm'>" +
+      "  <Require feature='feature'/>" +
+      "  <Locale lang='en' messages='" + BUNDLE_URL + "'/>" +
+      "  <Preload href='" + PRELOAD_URL + "'/>" +
+      "  <Preload href='" + PRELOAD_URL + "?signed' authz='signed'/>" +
+      "</ModulePrefs>" +
+      "<Content type='html'>Hello</Content>" +
+      "</Module>";
+  private static final String BUNDLE_XML =
+      "<messagebundle><msg name='name'>world</msg></messagebundle>";
+
+  private final FakeFetcher fetcher = new FakeFetcher();
+  private final LruCacheProvider cacheProvider = new LruCacheProvider(10);
+  private final ContentFetcherFactory fetcherFactory = createMock(ContentFetcherFactory.class);
+  private final ContainerConfig containerConfig = createMock(ContainerConfig.class);
+  private final ExecutorService executor = Executors.newFixedThreadPool(2);
+  private DefaultGadgetSpecFactory specFactory;
+  private GadgetFeatureRegistry registry;
+
+  @Before
+  public void setUp() throws Exception {
+    fetcher.responses.put(SPEC_URL, new HttpResponse(SPEC_XML));
+    fetcher.responses.put(BUNDLE_URL, new HttpResponse(BUNDLE_XML));
+    specFactory = new DefaultGadgetSpecFactory(fetcher, cacheProvider, 60000L);
+    registry = new GadgetFeatureRegistry(null, null);
+    registry.setCacheProvider(cacheProvider);
+    JsLibrary lib = JsLibrary.create(JsLibrary.Type.INLINE, "var a;", "feature", null);
+    registry.register(new GadgetFeature("feature", Arrays.asList(lib), Arrays.<String>asList()));
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  private CacheWarmer makeWarmer(boolean preloads, String libs, boolean debug,
+      String... containers) {
+    expect(containerConfig.getContainers()).andReturn(Arrays.asList(containers)).anyTimes();
+    replay(containerConfig);
+    RenderingContentRewriter rewriter = new RenderingContentRewriter(null, containerConfig,
+        registry, createNiceMock(UrlGenerator.class));
+    return new CacheWarmer(specFactory,
+        new DefaultMessageBundleFactory(fetcher, cacheProvider, 60000L), containerConfig,
+        rewriter, fetcherFactory, executor, "en_US", 2, preloads, "", libs, debug);
+  }
+
+  private CacheWarmer makeWarmer(boolean preloads) {
+    return makeWarmer(preloads, "", false, ContainerConfig.DEFAULT_CONTAINER);
+  }
+
+  private long getBundleCount() {
+    return cacheProvider.createCache(GadgetFeatureRegistry.FEATURE_BUNDLES).getSize();
+  }
+
+  private CacheWarmer.Progress warm(CacheWarmer warmer, Uri... gadgets) throws Exception {
+    CacheWarmer.Progress progress = warmer.warm(Arrays.asList(gadgets));
+    assertTrue(progress.await(5, TimeUnit.SECONDS));
+    return progress;
+  }
+
+  @Test
+  public void warmsSpecBundlesAndFeatures() throws Exception {
+    replay(fetcherFactory);
+    CacheWarmer.Progress progress = warm(makeWarmer(false), SPEC_URL);
+
+    assertTrue(progress.isDone());
+    assertTrue(progress.getFailures().isEmpty());
+    assertEquals(2, fetcher.fetchCount);
+    assertEquals(1, getBundleCount());
+
+    // Now cached.
+    specFactory.getGadgetSpec(SPEC_URL.toJavaUri(), false);
+    assertEquals(2, fetcher.fetchCount);
+    verify(fetcherFactory);
+  }
+
+  @Test
+  public void featuresWarmedForEveryContainer() throws Exception {
+    replay(fetcherFactory);
+    warm(makeWarmer(false, "", false, ContainerConfig.DEFAULT_CONTAINER, "other"), SPEC_URL);
+
+    assertEquals(2, getBundleCount());
+  }
+
+  @Test
+  public void debugFeaturesWarmed() throws Exception {
+    replay(fetcherFactory);
+    warm(makeWarmer(false, "", true, ContainerConfig.DEFAULT_CONTAINER, "other"), SPEC_URL);
+
+    assertEquals(4, getBundleCount());
+  }
+
+  @Test
+  public void forcedFeaturesNotInlined() throws Exception {
+    replay(fetcherFactory);
+    CacheWarmer.Progress progress
+        = warm(makeWarmer(false, "feature", false, ContainerConfig.DEFAULT_CONTAINER), SPEC_URL);
+
+    assertTrue(progress.getFailures().isEmpty());
+    // Rendering serves forced features from the js servlet rather than inlining them.
+    assertEquals(0, getBundleCount());
+  }
+
+  @Test
+  public void failuresReported() throws Exception {
+    replay(fetcherFactory);
+    CacheWarmer warmer = makeWarmer(false);
+    CacheWarmer.Progress progress = warm(warmer, MISSING_URL, SPEC_URL);
+
+    assertEquals(2, progress.getTotal());
+    assertEquals(2, progress.getCompleted());
+    assertEquals(1, progress.getFailures().size());
+    assertTrue(progress.getFailures().containsKey(MISSING_URL));
+    assertEquals(progress, warmer.getProgress());
+    assertEquals(1, progress.toJson().getJSONObject("failures").length());
+  }
+
+  @Test
+  public void unauthenticatedPreloadsFetched() throws Exception {
+    expect(fetcherFactory.fetch(isA(HttpRequest.class))).andReturn(new HttpResponse("data"));
+    replay(fetcherFactory);
+
+    warm(makeWarmer(true), SPEC_URL);
+
+    verify(fetcherFactory);
+  }
+
+  @Test
+  public void preloadsFetchedForEveryContainer() throws Exception {
+    expect(fetcherFactory.fetch(isA(HttpRequest.class)))
+        .andReturn(new HttpResponse("data")).times(2);
+    replay(fetcherFactory);
+
+    warm(makeWarmer(true, "", false, ContainerConfig.DEFAULT_CONTAINER, "other"), SPEC_URL);
+
+    verify(fetcherFactory);
+  }
+
+  @Test
+  public void emptyListIsDone() {
+    CacheWarmer.Progress progress = makeWarmer(false).warm(Arrays.<Uri>asList());
+    assertTrue(progress.isDone());
+  }
+
+  @Test
+  public void parseGadgetList() throws Exception {
+    String list = "# Popular gadgets\n\n" + SPEC_URL + "\n  " + BUNDLE_URL + "  \n";
+    assertEquals(Arrays.asList(SPEC_URL, BUNDLE_URL),
+        CacheWarmer.parseGadgetList(new StringReader(list)));
+  }
+
+  @Test
+  public void parseLocales() {
+    assertEquals(Arrays.asList(new Locale("en", "US"), new Locale("fr", "ALL")),
+        CacheWarmer.parseLocales("en_US, fr,"));
+  }
+
+  private static class FakeFetcher implements HttpFetcher {
+    final Map<Uri, HttpResponse> responses = Maps.newConcurrentHashMap();
+    volatile int fetchCount;
+
+    public synchronized HttpResponse fetch(HttpRequest request) {
+      ++fetchCount;
+      HttpResponse response = responses.get(request.getUri());
+      return response == null ? HttpResponse.notFound() : response;
+    }
+  }
+}
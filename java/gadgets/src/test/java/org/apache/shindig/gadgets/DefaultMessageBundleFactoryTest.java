@@ -23,6 +23,7 @@ import static org.easymock.EasyMock.isA;
 import static org.easymock.EasyMock.verify;
 import static org.easymock.classextension.EasyMock.replay;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import org.apache.shindig.common.cache.CacheProvider;
 import org.apache.shindig.common.cache.LruCacheProvider;
@@ -38,6 +39,10 @@ import org.easymock.EasyMock;
 import org.junit.Test;
 
 import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Tests for DefaultMessageBundleFactory
@@ -159,6 +164,83 @@ public class DefaultMessageBundleFactoryTest {
     assertEquals(10, capturingFetcher.request.getCacheTtl());
   }
 
+  @Test
+  public void mergedBundleCachedUnderRequestedLocale() throws Exception {
+    HttpResponse response = new HttpResponse(BASIC_BUNDLE);
+    expect(fetcher.fetch(isA(HttpRequest.class))).andReturn(response).once();
+    replay(fetcher);
+
+    MessageBundleFactory factory = new DefaultMessageBundleFactory(fetcher, cacheProvider, 10000);
+    MessageBundle bundle = factory.getBundle(gadgetSpec, LOCALE, false);
+
+    assertSame(bundle, factory.getBundle(gadgetSpec, LOCALE, false));
+    assertEquals(MSG_0_VALUE, bundle.getMessages().get(MSG_0_NAME));
+    verify(fetcher);
+  }
+
+  @Test
+  public void remoteBundlesFetchedConcurrently() throws Exception {
+    String spec
+        = "<Module>" +
+          "<ModulePrefs title='foo'>" +
+          " <Locale lang='all' country='ALL' messages='http://example.org/all.xml'/>" +
+          " <Locale lang='en' messages='http://example.org/en.xml'/>" +
+          " <Locale lang='en' country='US' messages='" + BUNDLE_URI + "'/>" +
+          "</ModulePrefs>" +
+          "<Content type='html'/>" +
+          "</Module>";
+    final CountDownLatch inFlight = new CountDownLatch(3);
+    HttpFetcher blockingFetcher = new HttpFetcher() {
+      public HttpResponse fetch(HttpRequest request) throws GadgetException {
+        inFlight.countDown();
+        try {
+          // Only completes if every fetch is in flight at once.
+          if (!inFlight.await(5, TimeUnit.SECONDS)) {
+            throw new GadgetException(GadgetException.Code.FAILED_TO_RETRIEVE_CONTENT);
+          }
+        } catch (InterruptedException e) {
+          throw new GadgetException(GadgetException.Code.FAILED_TO_RETRIEVE_CONTENT, e);
+        }
+        return new HttpResponse(BASIC_BUNDLE);
+      }
+    };
+    DefaultMessageBundleFactory factory
+        = new DefaultMessageBundleFactory(blockingFetcher, cacheProvider, 10000);
+    ExecutorService executor = Executors.newCachedThreadPool();
+    factory.setExecutor(executor);
+
+    try {
+      MessageBundle bundle = factory.getBundle(new GadgetSpec(SPEC_URI, spec), LOCALE, false);
+      assertEquals(MSG_1_VALUE, bundle.getMessages().get(MSG_1_NAME));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test(expected = GadgetException.class)
+  public void concurrentFetchFailurePropagates() throws Exception {
+    String spec
+        = "<Module>" +
+          "<ModulePrefs title='foo'>" +
+          " <Locale lang='en' messages='http://example.org/en.xml'/>" +
+          " <Locale lang='en' country='US' messages='" + BUNDLE_URI + "'/>" +
+          "</ModulePrefs>" +
+          "<Content type='html'/>" +
+          "</Module>";
+    expect(fetcher.fetch(isA(HttpRequest.class))).andReturn(HttpResponse.error()).anyTimes();
+    replay(fetcher);
+    DefaultMessageBundleFactory factory
+        = new DefaultMessageBundleFactory(fetcher, cacheProvider, 10000);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    factory.setExecutor(executor);
+
+    try {
+      factory.getBundle(new GadgetSpec(SPEC_URI, spec), LOCALE, true);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
   private static class CapturingFetcher implements HttpFetcher {
     HttpRequest request;
 
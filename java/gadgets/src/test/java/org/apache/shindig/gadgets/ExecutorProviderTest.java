@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets;
+
+import org.apache.shindig.common.PropertiesModule;
+import org.apache.shindig.common.util.InstrumentedThreadPoolExecutor;
+import org.apache.shindig.common.util.VirtualThreads;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Scopes;
+import com.google.inject.name.Names;
+
+import junit.framework.TestCase;
+
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+public class ExecutorProviderTest extends TestCase {
+  private Injector injector;
+
+  @Override
+  protected void setUp() {
+    Properties properties = new Properties();
+    properties.setProperty("shindig.executor.default.coreSize", "3");
+    properties.setProperty("shindig.executor.default.maxSize", "6");
+    properties.setProperty("shindig.executor.default.rejection", "abort");
+    properties.setProperty("shindig.executor.preload.maxSize", "9");
+    properties.setProperty("shindig.executor.metadata.threads", "virtual");
+    injector = Guice.createInjector(new PropertiesModule(properties), new AbstractModule() {
+      @Override
+      protected void configure() {
+        bind(ExecutorService.class)
+            .toProvider(new ExecutorProvider(ExecutorProvider.DEFAULT)).in(Scopes.SINGLETON);
+        bind(Executor.class).to(ExecutorService.class);
+        bind(ExecutorService.class).annotatedWith(Names.named(ExecutorProvider.PRELOAD))
+            .toProvider(new ExecutorProvider(ExecutorProvider.PRELOAD)).in(Scopes.SINGLETON);
+        bind(ExecutorService.class).annotatedWith(Names.named(ExecutorProvider.METADATA))
+            .toProvider(new ExecutorProvider(ExecutorProvider.METADATA)).in(Scopes.SINGLETON);
+      }
+    });
+  }
+
+  @Override
+  protected void tearDown() {
+    injector.getInstance(ExecutorService.class).shutdown();
+    getPool(ExecutorProvider.PRELOAD).shutdown();
+    getPool(ExecutorProvider.METADATA).shutdown();
+  }
+
+  private InstrumentedThreadPoolExecutor getPool(String name) {
+    return (InstrumentedThreadPoolExecutor) injector.getInstance(
+        Key.get(ExecutorService.class, Names.named(name)));
+  }
+
+  public void testDefaultPool() {
+    InstrumentedThreadPoolExecutor pool
+        = (InstrumentedThreadPoolExecutor) injector.getInstance(ExecutorService.class);
+    assertSame(pool, injector.getInstance(Executor.class));
+    assertSame(pool, injector.getInstance(ExecutorService.class));
+    assertEquals("shindig-default", pool.getName());
+    assertEquals(3, pool.getCorePoolSize());
+    assertEquals(6, pool.getMaximumPoolSize());
+    assertEquals(256, pool.getQueueRemainingCapacity());
+    assertEquals("ABORT", pool.getRejectionPolicy());
+  }
+
+  public void testNamedPoolFallsBackToDefaultProperties() {
+    InstrumentedThreadPoolExecutor pool = getPool(ExecutorProvider.PRELOAD);
+    assertNotSame(pool, injector.getInstance(ExecutorService.class));
+    assertSame(pool, getPool(ExecutorProvider.PRELOAD));
+    assertEquals("shindig-preload", pool.getName());
+    assertEquals(3, pool.getCorePoolSize());
+    assertEquals(9, pool.getMaximumPoolSize());
+  }
+
+  public void testVirtualThreadPool() throws Exception {
+    InstrumentedThreadPoolExecutor pool = getPool(ExecutorProvider.METADATA);
+    assertEquals(6, pool.getMaximumPoolSize());
+    // Without virtual threads, the pool falls back to platform threads.
+    assertEquals(VirtualThreads.isSupported() ? 0 : 3, pool.getCorePoolSize());
+    assertEquals("shindig-metadata", pool.getName());
+    Callable<String> task = new Callable<String>() {
+      public String call() {
+        return Thread.currentThread().getName();
+      }
+    };
+    assertTrue(pool.submit(task).get().startsWith("shindig-metadata-"));
+  }
+}
@@ -20,8 +20,13 @@
 package org.apache.shindig.gadgets;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import org.apache.shindig.common.ContainerConfig;
+import org.apache.shindig.common.cache.LruCacheProvider;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -29,6 +34,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -89,6 +95,63 @@ public class GadgetFeatureRegistryTest {
     assertEquals("FAKE FAKE FAKE", unsupported.get(0));
   }
 
+  @Test
+  public void getUnknownLibrariesCached() throws GadgetException {
+    registry.register(makeFeature(FEATURE_NAME, CONTENT, null));
+    registry.getFeatures(Arrays.asList(FEATURE_NAME, "FAKE"), new ArrayList<String>());
+
+    List<String> unsupported = new ArrayList<String>();
+    Collection<GadgetFeature> features
+        = registry.getFeatures(Arrays.asList(FEATURE_NAME, "FAKE"), unsupported);
+    assertEquals(Arrays.asList("FAKE"), unsupported);
+    assertEquals(2, features.size());
+  }
+
+  @Test
+  public void getLibrariesKeepsRequestOrder() throws Exception {
+    registry.register(makeFeature(DEP_NAME, DEP_CONTENT, null));
+    registry.register(makeFeature(FEATURE_NAME, CONTENT, null));
+
+    Iterator<GadgetFeature> i
+        = registry.getFeatures(Arrays.asList(FEATURE_NAME, DEP_NAME)).iterator();
+    assertEquals(CORE_NAME, i.next().getName());
+    assertEquals(FEATURE_NAME, i.next().getName());
+    assertEquals(DEP_NAME, i.next().getName());
+
+    i = registry.getFeatures(Arrays.asList(DEP_NAME, FEATURE_NAME)).iterator();
+    assertEquals(CORE_NAME, i.next().getName());
+    assertEquals(DEP_NAME, i.next().getName());
+    assertEquals(FEATURE_NAME, i.next().getName());
+  }
+
+  @Test
+  public void getLibrariesCachedForSameRequestOrder() throws Exception {
+    registry.register(makeFeature(DEP_NAME, DEP_CONTENT, null));
+    registry.register(makeFeature(FEATURE_NAME, CONTENT, null));
+
+    Collection<GadgetFeature> first
+        = registry.getFeatures(Arrays.asList(FEATURE_NAME, DEP_NAME));
+    Collection<GadgetFeature> second
+        = registry.getFeatures(new LinkedHashSet<String>(Arrays.asList(FEATURE_NAME, DEP_NAME)));
+
+    assertSame(first, second);
+  }
+
+  @Test
+  public void getLibrariesDefaultsToCore() throws Exception {
+    registry.register(makeFeature(FEATURE_NAME, CONTENT, null));
+
+    Collection<GadgetFeature> features = registry.getFeatures(new ArrayList<String>());
+    assertEquals(1, features.size());
+    assertEquals(CORE_NAME, features.iterator().next().getName());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void registerAfterResolving() throws Exception {
+    registry.getFeatures(Arrays.asList(CORE_NAME));
+    registry.register(makeFeature(FEATURE_NAME, CONTENT, null));
+  }
+
   @Test
   public void getAllFeatures() throws Exception {
     for (String feature : FEATURE_LIST) {
@@ -103,4 +166,34 @@ public class GadgetFeatureRegistryTest {
       assertTrue(feature + " not returned.", found.contains(feature));
     }
   }
+
+  @Test
+  public void getJsBundle() throws Exception {
+    registry.register(makeFeature(DEP_NAME, DEP_CONTENT, null));
+    registry.register(makeFeature(FEATURE_NAME, CONTENT, DEP_NAME));
+
+    Collection<GadgetFeature> features = registry.getFeatures(Arrays.asList(FEATURE_NAME));
+    JsFeatureBundle bundle = registry.getJsBundle(features, RenderingContext.GADGET,
+        ContainerConfig.DEFAULT_CONTAINER, false);
+
+    assertEquals(CORE_CONTENT + ";\n" + DEP_CONTENT + ";\n" + CONTENT + ";\n",
+        bundle.getContent());
+  }
+
+  @Test
+  public void getJsBundleCached() throws Exception {
+    registry.setCacheProvider(new LruCacheProvider(10));
+    registry.register(makeFeature(FEATURE_NAME, CONTENT, null));
+
+    Collection<GadgetFeature> features = registry.getFeatures(Arrays.asList(FEATURE_NAME));
+    JsFeatureBundle bundle = registry.getJsBundle(features, RenderingContext.GADGET,
+        ContainerConfig.DEFAULT_CONTAINER, false);
+
+    assertSame(bundle, registry.getJsBundle(features, RenderingContext.GADGET,
+        ContainerConfig.DEFAULT_CONTAINER, false));
+    assertNotSame(bundle, registry.getJsBundle(features, RenderingContext.GADGET,
+        ContainerConfig.DEFAULT_CONTAINER, true));
+    assertNotSame(bundle, registry.getJsBundle(features, RenderingContext.CONTAINER,
+        ContainerConfig.DEFAULT_CONTAINER, false));
+  }
 }
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+public class JsFeatureBundleTest {
+
+  @Test
+  public void utf8Bytes() throws Exception {
+    String js = "var s = '\u4f60\u597d';";
+    JsFeatureBundle bundle = new JsFeatureBundle(js);
+    assertEquals(js, bundle.getContent());
+    assertTrue(Arrays.equals(js.getBytes("UTF-8"), bundle.getBytes()));
+    assertFalse(bundle.isEmpty());
+  }
+
+  @Test
+  public void smallBundleNotGzipped() {
+    assertNull(new JsFeatureBundle("var x = 1;").getGzippedBytes());
+  }
+
+  @Test
+  public void largeBundleGzipped() throws Exception {
+    String js = StringUtils.repeat("var foo = 'bar';\n", 100);
+    JsFeatureBundle bundle = new JsFeatureBundle(js);
+    assertNotNull(bundle.getGzippedBytes());
+    assertTrue(bundle.getGzippedBytes().length < bundle.getBytes().length);
+    byte[] inflated = IOUtils.toByteArray(
+        new GZIPInputStream(new ByteArrayInputStream(bundle.getGzippedBytes())));
+    assertTrue(Arrays.equals(bundle.getBytes(), inflated));
+  }
+
+  @Test
+  public void etagDependsOnContent() {
+    assertEquals(new JsFeatureBundle("a").getETag(), new JsFeatureBundle("a").getETag());
+    assertFalse(new JsFeatureBundle("a").getETag().equals(new JsFeatureBundle("b").getETag()));
+  }
+
+  @Test
+  public void createSkipsUrlLibraries() throws Exception {
+    JsLibrary inline = JsLibrary.create(JsLibrary.Type.INLINE, "inline()", "feat", null);
+    JsLibrary url = JsLibrary.create(JsLibrary.Type.URL, "http://example.org/ext.js", "feat", null);
+    GadgetFeature feature = new GadgetFeature("feat", Arrays.asList(inline, url),
+        Arrays.<String>asList());
+    JsFeatureBundle bundle = JsFeatureBundle.create(Arrays.asList(feature),
+        RenderingContext.GADGET, "default", false);
+    assertEquals("inline();\n", bundle.getContent());
+  }
+
+  @Test
+  public void emptyBundle() {
+    assertTrue(new JsFeatureBundle("").isEmpty());
+  }
+}
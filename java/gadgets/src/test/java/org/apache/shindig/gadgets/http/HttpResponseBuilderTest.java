@@ -21,6 +21,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
@@ -129,4 +130,14 @@ public class HttpResponseBuilderTest {
         .create();
     assertEquals("foo", resp.getResponseAsString());
   }
+
+  @Test
+  public void setResponseNoCopy() {
+    byte[] body = {'f', 'o', 'o'};
+    HttpResponse resp = new HttpResponseBuilder()
+        .setResponseNoCopy(body)
+        .create();
+    assertSame(body, resp.getResponseAsBytes());
+    assertEquals("foo", resp.getResponseAsString());
+  }
 }
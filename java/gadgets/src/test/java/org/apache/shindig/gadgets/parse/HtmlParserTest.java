@@ -17,10 +17,12 @@
  */
 package org.apache.shindig.gadgets.parse;
 
+import org.apache.shindig.common.cache.LruCacheProvider;
 import org.apache.shindig.gadgets.parse.nekohtml.NekoHtmlParser;
 import org.apache.shindig.gadgets.rewrite.XPathWrapper;
 
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
 import junit.framework.TestCase;
@@ -34,6 +36,31 @@ public class HtmlParserTest extends TestCase {
   private final GadgetHtmlParser nekoParser = new NekoHtmlParser(
       new ParseModule.DOMImplementationProvider().get());
 
+  public void testCachedParseIsSharedAndCopied() throws Exception {
+    GadgetHtmlParser parser = new NekoHtmlParser(
+        new ParseModule.DOMImplementationProvider().get());
+    parser.setCacheProvider(new LruCacheProvider(10));
+
+    Document shared = parser.parseSharedDom("<div id=\"foo\">content</div>");
+    assertTrue(GadgetHtmlParser.isShared(shared));
+    assertSame(shared, parser.parseSharedDom("<div id=\"foo\">content</div>"));
+    assertNotSame(shared, parser.parseSharedDom("<div id=\"bar\">content</div>"));
+
+    Document copy = parser.parseDom("<div id=\"foo\">content</div>");
+    assertNotSame(shared, copy);
+    assertFalse(GadgetHtmlParser.isShared(copy));
+    assertEquals(HtmlSerializer.serialize(shared), HtmlSerializer.serialize(copy));
+
+    ((Element) copy.getElementsByTagName("div").item(0)).setAttribute("id", "baz");
+    assertEquals("foo", new XPathWrapper(shared).getValue("/html/body/div/@id"));
+  }
+
+  public void testUncachedParseIsNotShared() throws Exception {
+    Document doc = nekoParser.parseSharedDom("content");
+    assertFalse(GadgetHtmlParser.isShared(doc));
+    assertNotSame(doc, nekoParser.parseSharedDom("content"));
+  }
+
   public void testParseSimpleString() throws Exception {
     parseSimpleString(nekoParser);
   }
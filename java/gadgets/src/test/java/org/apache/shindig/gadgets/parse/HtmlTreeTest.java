@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.parse;
+
+import org.apache.shindig.common.cache.LruCacheProvider;
+import org.apache.shindig.gadgets.parse.nekohtml.NekoSimplifiedHtmlParser;
+
+import com.google.common.collect.ImmutableSet;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for HtmlTree
+ */
+public class HtmlTreeTest extends TestCase {
+  private static final String DOCTYPE = "<!DOCTYPE HTML PUBLIC \"" + HtmlTree.DEFAULT_PUBLIC_ID +
+      "\" \"" + HtmlTree.DEFAULT_SYSTEM_ID + "\">\n";
+
+  private final GadgetHtmlParser parser = new NekoSimplifiedHtmlParser(
+      new ParseModule.DOMImplementationProvider().get());
+
+  public void testParseFragment() throws Exception {
+    HtmlTree tree = parser.parseTree("hello <b>world</b><img src=\"foo.png\">");
+    int body = tree.getBody();
+    assertTrue(tree.isElementNamed(body, "body"));
+    assertEquals(HtmlTree.NONE, tree.getFirstChild(tree.getHead()));
+
+    int text = tree.getFirstChild(body);
+    assertEquals(HtmlTree.TEXT, tree.getNodeType(text));
+    assertEquals("hello <b>world</b>", tree.getText(text));
+    int img = tree.getNextSibling(text);
+    assertEquals("img", tree.getTagName(img));
+    assertEquals("foo.png", tree.getAttribute(img, "SRC"));
+    assertEquals(DOCTYPE +
+        "<html><head></head><body>hello <b>world</b><img src=\"foo.png\"></body></html>",
+        tree.serialize());
+  }
+
+  public void testParseDocumentKeepsDoctype() throws Exception {
+    String doctype = "<!DOCTYPE HTML PUBLIC \"-//W3C//DTD HTML 4.01 Transitional//EN\" " +
+        "\"http://www.w3.org/TR/html4/loose.dtd\">";
+    HtmlTree tree = parser.parseTree(doctype + "<html><body>x</body></html>");
+    assertEquals(doctype + "\n<html><head></head><body>x</body></html>", tree.serialize());
+  }
+
+  public void testHeadWithoutBody() throws Exception {
+    HtmlTree tree = parser.parseTree("<head><script>foo();</script></head>content");
+    assertEquals("foo();", tree.getTextContent(tree.getFirstChildNamed(tree.getHead(), "script")));
+    assertEquals("content", tree.getTextContent(tree.getBody()));
+  }
+
+  public void testEditsSerialized() throws Exception {
+    HtmlTree tree = parser.parseTree("<html><head><style>a{}</style></head><body>b</body></html>");
+    int head = tree.getHead();
+    int style = tree.getFirstChild(head);
+
+    int script = tree.createElement("script", "src", "/js/foo?a=1&b=\"2\"");
+    tree.insertBefore(head, script, style);
+    int base = tree.createElement("base");
+    tree.setAttribute(base, "href", "http://example.org/");
+    tree.appendChild(head, base);
+    tree.setAttribute(tree.getBody(), "dir", "rtl");
+    tree.appendChild(tree.getBody(), tree.createText("<i>c</i>"));
+
+    assertEquals(DOCTYPE + "<html><head>" +
+        "<script src=\"/js/foo?a=1&amp;b=&quot;2&quot;\"></script><style>a{}</style>" +
+        "<base href=\"http://example.org/\">" +
+        "</head><body dir=\"rtl\">b<i>c</i></body></html>", tree.serialize());
+
+    tree.removeChild(style);
+    tree.removeAttribute(tree.getBody(), "DIR");
+    tree.setAttribute(script, "src", "/js/bar");
+    assertEquals(DOCTYPE + "<html><head>" +
+        "<script src=\"/js/bar\"></script><base href=\"http://example.org/\">" +
+        "</head><body>b<i>c</i></body></html>", tree.serialize());
+  }
+
+  public void testMoveChildren() {
+    HtmlTree tree = new HtmlTree();
+    int from = tree.createElement("head");
+    int to = tree.createElement("head");
+    tree.appendChild(from, tree.createElement("a"));
+    tree.appendChild(from, tree.createText("b"));
+    tree.appendChild(to, tree.createText("c"));
+
+    tree.moveChildren(from, to);
+    assertEquals(HtmlTree.NONE, tree.getFirstChild(from));
+    assertEquals("c", tree.getText(tree.getFirstChild(to)));
+    assertEquals("b", tree.getText(tree.getLastChild(to)));
+    assertEquals("a", tree.getTagName(tree.getPreviousSibling(tree.getLastChild(to))));
+  }
+
+  public void testCannotInsertIntoDescendant() {
+    HtmlTree tree = new HtmlTree();
+    int outer = tree.createElement("div");
+    int inner = tree.createElement("div");
+    tree.appendChild(outer, inner);
+    try {
+      tree.appendChild(inner, outer);
+      fail("Created a cycle");
+    } catch (IllegalArgumentException e) {
+      // Expected.
+    }
+  }
+
+  public void testGetElementsByTagName() throws Exception {
+    HtmlTree tree = parser.parseTree("<head><link rel=\"stylesheet\"><script></script></head>" +
+        "<img><p><IMG></p><script></script>");
+    int[] found = tree.getElementsByTagName(tree.getRoot(), ImmutableSet.of("img", "script"));
+    assertEquals(4, found.length);
+    assertEquals("script", tree.getTagName(found[0]));
+    assertEquals("img", tree.getTagName(found[1]));
+    assertEquals("IMG", tree.getTagName(found[2]));
+    assertEquals(tree.getBody(), tree.getParent(found[3]));
+    assertTrue(tree.hasElementNamed(tree.getHead(), ImmutableSet.of("link")));
+    assertFalse(tree.hasElementNamed(tree.getBody(), ImmutableSet.of("link")));
+  }
+
+  public void testCopyIsIndependent() throws Exception {
+    HtmlTree tree = parser.parseTree("<img src=\"a.png\">text");
+    int img = tree.getFirstChild(tree.getBody());
+    String original = tree.serialize();
+
+    HtmlTree copy = tree.copy();
+    copy.setAttribute(img, "src", "b.png");
+    copy.setText(copy.getNextSibling(img), "other");
+    copy.appendChild(copy.getHead(), copy.createElement("style"));
+
+    assertEquals(original, tree.serialize());
+    assertEquals("a.png", tree.getAttribute(img, "src"));
+    assertEquals("b.png", copy.getAttribute(img, "src"));
+    assertTrue(copy.serialize().contains("<style></style>"));
+  }
+
+  public void testCachedTreesAreCopied() throws Exception {
+    GadgetHtmlParser cachingParser = new NekoSimplifiedHtmlParser(
+        new ParseModule.DOMImplementationProvider().get());
+    cachingParser.setCacheProvider(new LruCacheProvider(10));
+
+    HtmlTree first = cachingParser.parseTree("<img src=\"a.png\">");
+    first.setAttribute(first.getFirstChild(first.getBody()), "src", "b.png");
+    HtmlTree second = cachingParser.parseTree("<img src=\"a.png\">");
+    assertNotSame(first, second);
+    assertEquals("a.png", second.getAttribute(second.getFirstChild(second.getBody()), "src"));
+  }
+
+  public void testListenerNotified() {
+    HtmlTree tree = new HtmlTree();
+    final int[] changes = new int[1];
+    tree.setListener(new HtmlTree.Listener() {
+      public void treeChanged(HtmlTree changed) {
+        changes[0]++;
+      }
+    });
+    int element = tree.createElement("html");
+    assertEquals(0, changes[0]);
+    tree.appendChild(tree.getRoot(), element);
+    tree.setAttribute(element, "lang", "en");
+    tree.removeAttribute(element, "dir");
+    assertEquals(2, changes[0]);
+  }
+
+  public void testConvertedFromDocument() throws Exception {
+    String source =
+        "<html><head><script>a < b</script></head><body>1 &lt; 2<img src=x></body></html>";
+    HtmlTree fromDom = parser.toTree(parser.parseDom(source));
+    assertEquals(parser.parseTree(source).serialize(), fromDom.serialize());
+    assertEquals(HtmlSerializer.serialize(parser.parseDom(source)), fromDom.serialize());
+  }
+}
@@ -98,6 +98,8 @@ public class ParseTreeSerializerBenchmark {
     output("NekoSimple-----------------");
     timeParseDom(nekoSimpleParser);
     timeParseDomSerialize(nekoSimpleParser);
+    timeParseTree(nekoSimpleParser);
+    timeParseTreeSerialize(nekoSimpleParser);
   }
 
   private void output(String string) {
@@ -117,6 +119,38 @@ public class ParseTreeSerializerBenchmark {
           ((double)parseMillis)/numRuns + "ms/run]");
   }
 
+  private void timeParseTree(GadgetHtmlParser parser) throws GadgetException {
+    long parseStart = System.currentTimeMillis();
+    for (int i = 0; i < numRuns; ++i) {
+      parser.parseTree(content);
+    }
+    long parseMillis = System.currentTimeMillis() - parseStart;
+
+    output("Parsing HtmlTree [" + parseMillis + " ms total: " +
+          ((double)parseMillis)/numRuns + "ms/run]");
+  }
+
+  private void timeParseTreeSerialize(GadgetHtmlParser parser) throws GadgetException {
+    HtmlTree tree = parser.parseTree(content);
+    long serializeStart = System.currentTimeMillis();
+    for (int i = 0; i < numRuns; ++i) {
+      tree.serialize();
+    }
+    long serializeMillis = System.currentTimeMillis() - serializeStart;
+
+    output("Serializing HtmlTree [" + serializeMillis + " ms total: " +
+          ((double) serializeMillis) / numRuns + "ms/run]");
+
+    long copyStart = System.currentTimeMillis();
+    for (int i = 0; i < numRuns; ++i) {
+      tree.copy();
+    }
+    long copyMillis = System.currentTimeMillis() - copyStart;
+
+    output("Copying HtmlTree [" + copyMillis + " ms total: " +
+          ((double) copyMillis) / numRuns + "ms/run]");
+  }
+
   private void timeParseDomSerialize(GadgetHtmlParser parser) throws GadgetException {
     org.w3c.dom.Document document = parser.parseDom(content);
     try {
@@ -19,6 +19,7 @@ package org.apache.shindig.gadgets.parse.nekohtml;
 
 import org.apache.shindig.gadgets.parse.GadgetHtmlParser;
 import org.apache.shindig.gadgets.parse.HtmlSerializer;
+import org.apache.shindig.gadgets.parse.HtmlTree;
 import org.apache.shindig.gadgets.parse.ParseModule;
 
 import org.apache.commons.io.IOUtils;
@@ -43,6 +44,8 @@ public class NekoParsersTest extends TestCase {
         getResourceAsStream("org/apache/shindig/gadgets/parse/nekohtml/test-expected.html"));
     parseAndCompareBalanced(content, expected, full);
     parseAndCompareBalanced(content, expected, simple);
+    parseTreeAndCompareBalanced(content, expected, full);
+    parseTreeAndCompareBalanced(content, expected, simple);
   }
 
   public void testNotADocument() throws Exception {
@@ -52,6 +55,8 @@ public class NekoParsersTest extends TestCase {
         getResourceAsStream("org/apache/shindig/gadgets/parse/nekohtml/test-fragment-expected.html"));
     parseAndCompareBalanced(content, expected, full);
     parseAndCompareBalanced(content, expected, simple);
+    parseTreeAndCompareBalanced(content, expected, full);
+    parseTreeAndCompareBalanced(content, expected, simple);
   }
 
   public void testNoBody() throws Exception {
@@ -62,6 +67,8 @@ public class NekoParsersTest extends TestCase {
         "org/apache/shindig/gadgets/parse/nekohtml/test-headnobody-expected.html"));
     parseAndCompareBalanced(content, expected, full);
     parseAndCompareBalanced(content, expected, simple);
+    parseTreeAndCompareBalanced(content, expected, full);
+    parseTreeAndCompareBalanced(content, expected, simple);
   }
 
   private void parseAndCompareBalanced(String content, String expected, GadgetHtmlParser parser)
@@ -69,4 +76,10 @@ public class NekoParsersTest extends TestCase {
     Document document = parser.parseDom(content);
     assertEquals(expected, HtmlSerializer.serialize(document));
   }
+
+  private void parseTreeAndCompareBalanced(String content, String expected,
+      GadgetHtmlParser parser) throws Exception {
+    HtmlTree tree = parser.parseTree(content);
+    assertEquals(expected, tree.serialize());
+  }
 }
@@ -17,9 +17,14 @@
  */
 package org.apache.shindig.gadgets.preload;
 
+import static org.easymock.EasyMock.expect;
+import static org.easymock.classextension.EasyMock.createMock;
+import static org.easymock.classextension.EasyMock.replay;
 import static org.junit.Assert.assertEquals;
 
+import org.apache.shindig.common.ContainerConfig;
 import org.apache.shindig.common.testing.TestExecutorService;
+import org.apache.shindig.common.util.FakeTimeSource;
 import org.apache.shindig.gadgets.GadgetContext;
 import org.apache.shindig.gadgets.spec.GadgetSpec;
 
@@ -28,8 +33,12 @@ import com.google.common.collect.Maps;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Tests for FuturePreloaderService.
@@ -87,6 +96,83 @@ public class ConcurrentPreloaderServiceTest {
     service.preload(null, null).getData(PRELOAD_STRING_KEY);
   }
 
+  @Test(expected = PreloadTimeoutException.class)
+  public void containerDeadlineEnforced() throws PreloadException {
+    preloader.tasks.put(PRELOAD_STRING_KEY,
+        new TestPreloadCallable(new DataPreload(PRELOAD_STRING_VALUE)));
+    ContainerConfig config = createMock(ContainerConfig.class);
+    expect(config.get(ContainerConfig.DEFAULT_CONTAINER, "gadgets.preloadTimeout"))
+        .andReturn("100");
+    replay(config);
+
+    FakeTimeSource timeSource = new FakeTimeSource(1000L);
+    ConcurrentPreloaderService service = new ConcurrentPreloaderService(
+        new NeverRunningExecutorService(), Arrays.<Preloader>asList(preloader), config,
+        new PreloadStatistics());
+    service.setTimeSource(timeSource);
+
+    Preloads preloads = service.preload(new GadgetContext(), null);
+    timeSource.setCurrentTimeMillis(1101L);
+    preloads.getData(PRELOAD_STRING_KEY);
+  }
+
+  @Test
+  public void perPreloadTimeoutOverridesContainer() throws PreloadException {
+    preloader.tasks.put(PRELOAD_STRING_KEY,
+        new TimeLimitedCallable(new DataPreload(PRELOAD_STRING_VALUE), 0));
+    PreloadStatistics statistics = new PreloadStatistics();
+    ConcurrentPreloaderService service = new ConcurrentPreloaderService(
+        new NeverRunningExecutorService(), Arrays.<Preloader>asList(preloader), null, statistics);
+
+    try {
+      service.preload(null, null).getData(PRELOAD_STRING_KEY);
+    } catch (PreloadTimeoutException e) {
+      assertEquals(1, statistics.getTimeoutCount());
+      return;
+    }
+    throw new AssertionError("Expected PreloadTimeoutException");
+  }
+
+  @Test
+  public void latencyRecorded() throws PreloadException {
+    preloader.tasks.put(PRELOAD_STRING_KEY,
+        new TestPreloadCallable(new DataPreload(PRELOAD_STRING_VALUE)));
+    PreloadStatistics statistics = new PreloadStatistics();
+    PreloaderService service = new ConcurrentPreloaderService(new TestExecutorService(),
+        Arrays.<Preloader>asList(preloader), null, statistics);
+
+    service.preload(null, null).getData(PRELOAD_STRING_KEY);
+
+    assertEquals(1, statistics.getCompletedCount());
+  }
+
+  /**
+   * Accepts tasks but never runs them, simulating a preload that never returns.
+   */
+  private static class NeverRunningExecutorService extends AbstractExecutorService {
+    public void execute(Runnable command) {
+    }
+
+    public boolean isTerminated() {
+      return false;
+    }
+
+    public boolean isShutdown() {
+      return false;
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+      return true;
+    }
+
+    public void shutdown() {
+    }
+
+    public List<Runnable> shutdownNow() {
+      return Collections.emptyList();
+    }
+  }
+
   private static class TestPreloader implements Preloader {
     private final Map<String, Callable<PreloadedData>> tasks = Maps.newHashMap();
 
@@ -111,6 +197,20 @@ public class ConcurrentPreloaderServiceTest {
     }
   }
 
+  private static class TimeLimitedCallable extends TestPreloadCallable
+      implements TimeLimitedPreload {
+    private final long timeout;
+
+    public TimeLimitedCallable(PreloadedData preload, long timeout) {
+      super(preload);
+      this.timeout = timeout;
+    }
+
+    public long getTimeout() {
+      return timeout;
+    }
+  }
+
   private static class DataPreload implements PreloadedData {
     private final Object data;
 
@@ -21,13 +21,18 @@ package org.apache.shindig.gadgets.preload;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.shindig.common.util.FakeTimeSource;
 
 import com.google.common.collect.Sets;
 
 import org.junit.Test;
 
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -80,6 +85,38 @@ public class ConcurrentPreloadsTest {
     preloads.getData("foo");
   }
 
+  @Test
+  public void getPreloadedDataBeforeDeadline() throws Exception {
+    FakeTimeSource timeSource = new FakeTimeSource(1000L);
+    ConcurrentPreloads preloads = new ConcurrentPreloads(timeSource, null);
+    preloads.add("foo", TestFuture.returnsNormal(), 2000L);
+
+    assertNotNull(preloads.getData("foo"));
+  }
+
+  @Test
+  public void getPreloadedDataAfterDeadline() throws Exception {
+    FakeTimeSource timeSource = new FakeTimeSource(1000L);
+    PreloadStatistics statistics = new PreloadStatistics();
+    ConcurrentPreloads preloads = new ConcurrentPreloads(timeSource, statistics);
+    FutureTask<PreloadedData> neverRun = new FutureTask<PreloadedData>(
+        new Callable<PreloadedData>() {
+          public PreloadedData call() {
+            return null;
+          }
+        });
+    preloads.add("foo", neverRun, 500L);
+
+    try {
+      preloads.getData("foo");
+    } catch (PreloadTimeoutException e) {
+      assertTrue("Outstanding preload should be cancelled.", neverRun.isCancelled());
+      assertEquals(1, statistics.getTimeoutCount());
+      return;
+    }
+    throw new AssertionError("Expected PreloadTimeoutException");
+  }
+
   private static class TestFuture implements Future<PreloadedData> {
     private boolean throwsInterrupted;
     private boolean throwsExecution;
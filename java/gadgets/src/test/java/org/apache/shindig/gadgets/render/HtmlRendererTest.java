@@ -27,6 +27,7 @@ import org.apache.shindig.common.xml.XmlUtil;
 import org.apache.shindig.gadgets.Gadget;
 import org.apache.shindig.gadgets.GadgetContext;
 import org.apache.shindig.gadgets.GadgetException;
+import org.apache.shindig.gadgets.MessageBundleFactory;
 import org.apache.shindig.gadgets.http.ContentFetcherFactory;
 import org.apache.shindig.gadgets.http.HttpRequest;
 import org.apache.shindig.gadgets.http.HttpResponse;
@@ -34,14 +35,22 @@ import org.apache.shindig.gadgets.preload.PreloaderService;
 import org.apache.shindig.gadgets.preload.Preloads;
 import org.apache.shindig.gadgets.rewrite.ContentRewriterRegistry;
 import org.apache.shindig.gadgets.spec.GadgetSpec;
+import org.apache.shindig.gadgets.spec.MessageBundle;
 import org.apache.shindig.gadgets.spec.View;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import org.junit.After;
 import org.junit.Test;
 
 import java.util.Arrays;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Tests for HtmlRenderer
@@ -65,6 +74,16 @@ public class HtmlRendererTest {
   private final FakeContentRewriterRegistry rewriter = new FakeContentRewriterRegistry();
   private final HtmlRenderer renderer = new HtmlRenderer(fetcher, preloaderService, rewriter);
 
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private final FakeMessageBundleFactory messageBundleFactory = new FakeMessageBundleFactory();
+  private final HtmlRenderer concurrentRenderer
+      = new HtmlRenderer(executor, fetcher, preloaderService, messageBundleFactory, rewriter);
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
   private Gadget makeGadget(String content) throws GadgetException {
     GadgetSpec spec = new GadgetSpec(SPEC_URL,
         "<Module><ModulePrefs title=''/><Content><![CDATA[" + content + "]]></Content></Module>");
@@ -146,10 +165,45 @@ public class HtmlRendererTest {
     assertTrue("Rewriting not performed.", rewriter.wasRewritten);
   }
 
+  @Test
+  public void renderProxiedConcurrently() throws Exception {
+    fetcher.plainResponses.put(EXPECTED_PROXIED_HTML_HREF, new HttpResponse(PROXIED_HTML_CONTENT));
+    // The fetch can only complete once the message bundle has been retrieved, which would never
+    // happen if the two were performed serially.
+    fetcher.latch = messageBundleFactory.latch;
+    Gadget gadget = makeHrefGadget("none");
+    String content = concurrentRenderer.render(gadget);
+    assertEquals(PROXIED_HTML_CONTENT, content);
+    assertFalse("Proxied content fetched serially.", fetcher.timedOut);
+    assertTrue("Preloading not performed.", preloaderService.wasPreloaded);
+    assertSame(MessageBundle.EMPTY, gadget.getMessageBundle());
+  }
+
+  @Test
+  public void renderPlainRetrievesMessageBundle() throws Exception {
+    Gadget gadget = makeGadget(BASIC_HTML_CONTENT);
+    String content = concurrentRenderer.render(gadget);
+    assertEquals(BASIC_HTML_CONTENT, content);
+    assertSame(MessageBundle.EMPTY, gadget.getMessageBundle());
+  }
+
+  @Test(expected = RenderingException.class)
+  public void renderProxiedConcurrentlyFetchFailure() throws Exception {
+    concurrentRenderer.render(makeHrefGadget("none"));
+  }
+
+  @Test(expected = RenderingException.class)
+  public void renderProxiedConcurrentlyBadStatus() throws Exception {
+    fetcher.plainResponses.put(EXPECTED_PROXIED_HTML_HREF, HttpResponse.error());
+    concurrentRenderer.render(makeHrefGadget("none"));
+  }
+
   private static class FakeContentFetcherFactory extends ContentFetcherFactory {
     private final Map<Uri, HttpResponse> plainResponses = Maps.newHashMap();
     private final Map<Uri, HttpResponse> signedResponses = Maps.newHashMap();
     private final Map<Uri, HttpResponse> oauthResponses = Maps.newHashMap();
+    private CountDownLatch latch;
+    private boolean timedOut;
 
     public FakeContentFetcherFactory() {
       super(null, null);
@@ -157,6 +211,14 @@ public class HtmlRendererTest {
 
     @Override
     public HttpResponse fetch(HttpRequest request) throws GadgetException {
+      if (latch != null) {
+        try {
+          timedOut = !latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          timedOut = true;
+        }
+      }
+
       if (request.getGadget() == null) {
         throw new GadgetException(GadgetException.Code.FAILED_TO_RETRIEVE_CONTENT,
             "No gadget associated with rendering request.");
@@ -224,4 +286,13 @@ public class HtmlRendererTest {
       throw new UnsupportedOperationException();
     }
   }
+
+  private static class FakeMessageBundleFactory implements MessageBundleFactory {
+    private final CountDownLatch latch = new CountDownLatch(1);
+
+    public MessageBundle getBundle(GadgetSpec spec, Locale locale, boolean ignoreCache) {
+      latch.countDown();
+      return MessageBundle.EMPTY;
+    }
+  }
 }
@@ -35,10 +35,12 @@ import org.apache.shindig.gadgets.parse.ParseModule;
 import org.apache.shindig.gadgets.preload.NullPreloads;
 import org.apache.shindig.gadgets.preload.PreloadException;
 import org.apache.shindig.gadgets.preload.PreloadedData;
+import org.apache.shindig.gadgets.preload.PreloadTimeoutException;
 import org.apache.shindig.gadgets.preload.Preloads;
 import static org.apache.shindig.gadgets.render.RenderingContentRewriter.DEFAULT_HEAD_CONTENT;
 import static org.apache.shindig.gadgets.render.RenderingContentRewriter.FEATURES_KEY;
 import static org.apache.shindig.gadgets.render.RenderingContentRewriter.INSERT_BASE_ELEMENT_KEY;
+import static org.apache.shindig.gadgets.render.RenderingContentRewriter.PRELOAD_TIMED_OUT_KEY;
 import org.apache.shindig.gadgets.rewrite.MutableContent;
 import org.apache.shindig.gadgets.spec.GadgetSpec;
 import org.apache.shindig.gadgets.spec.LocaleSpec;
@@ -474,6 +476,24 @@ public class RenderingContentRewriterTest {
     assertEquals("baz", foo.get("bar"));
   }
 
+  @Test
+  public void messageBundleFromGadgetUsed() throws Exception {
+    Gadget gadget = makeDefaultGadget()
+        .setMessageBundle(new MessageBundle(XmlUtil.parse(
+            "<messagebundle><msg name='one'>retrieved</msg></messagebundle>")));
+
+    control.replay();
+
+    String rewritten = rewrite(gadget, "");
+
+    Pattern prefsPattern
+        = Pattern.compile("(?:.*)gadgets\\.Prefs\\.setMessages_\\((.*)\\);(?:.*)", Pattern.DOTALL);
+    Matcher matcher = prefsPattern.matcher(rewritten);
+    assertTrue("gadgets.Prefs.setMessages_ not invoked.", matcher.matches());
+    JSONObject json = new JSONObject(matcher.group(1));
+    assertEquals("retrieved", json.get("one"));
+  }
+
   // TODO: Test for auth token stuff.
 
   @Test
@@ -633,6 +653,28 @@ public class RenderingContentRewriterTest {
     assertEquals(0, json.length());
   }
 
+  @Test
+  public void timedOutPreloadFlagged() throws Exception {
+    Preloads preloads = new Preloads() {
+      public PreloadedData getData(final String key) throws PreloadException {
+        throw new PreloadTimeoutException("too slow");
+      }
+      public Set<String> getKeys() {
+        return Sets.immutableSortedSet("foo");
+      }
+    };
+
+    Gadget gadget = makeDefaultGadget().setPreloads(preloads);
+    control.replay();
+
+    String rewritten = rewrite(gadget, "");
+
+    JSONObject json = getPreloadedJson(rewritten);
+
+    assertEquals(1, json.length());
+    assertTrue(json.getJSONObject("foo").getBoolean(PRELOAD_TIMED_OUT_KEY));
+  }
+
   private String getBaseElement(String content) {
     Matcher matcher = DOCUMENT_SPLIT_PATTERN.matcher(content);
     assertTrue("Output is not valid HTML.", matcher.matches());
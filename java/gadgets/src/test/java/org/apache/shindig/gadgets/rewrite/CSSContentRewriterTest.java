@@ -59,6 +59,19 @@ public class CSSContentRewriterTest extends BaseRewriterTestCase {
     assertEquals(expected, mc.getContent());
   }
 
+  public void testCssWithoutReferencesUnchanged() throws Exception {
+    String content = "div { color: red; }\n.a:hover { border: 1px solid #ccc; }";
+    HttpRequest request = new HttpRequest(Uri.parse("http://www.example.org/path/plain.css"));
+    request.setGadget(SPEC_URL);
+    HttpResponse response = new HttpResponseBuilder().setHeader("Content-Type", "text/css")
+      .setResponseString(content).create();
+
+    MutableContent mc = new MutableContent(null, content);
+    assertNotNull(rewriter.rewrite(request, response, mc));
+
+    assertSame(content, mc.getContent());
+  }
+
     public void testNoRewriteUnknownMimeType() {
     // Strict mock as we expect no calls
     MutableContent mc = mock(MutableContent.class, true);
@@ -17,8 +17,12 @@
  */
 package org.apache.shindig.gadgets.rewrite;
 
+import org.apache.shindig.gadgets.spec.GadgetSpec;
+
 import com.google.common.collect.Sets;
 
+import org.json.JSONObject;
+
 import java.util.Set;
 
 /**
@@ -112,4 +116,35 @@ public class ContentRewriterFeatureTestCase extends BaseRewriterTestCase {
     assertNotNull(defaultRewriterFeature.getExpires() == 12345);
   }
 
+  public void testFeaturesCachedUntilConfigReplaced() throws Exception {
+    ReplaceableContainerConfig config = new ReplaceableContainerConfig();
+    ContentRewriterFeatureFactory factory = new ContentRewriterFeatureFactory(null, config);
+    GadgetSpec spec = createSpecWithoutRewrite();
+
+    ContentRewriterFeature feature = factory.getDefault(DEFAULT_CONTAINER);
+    assertSame(feature, factory.getDefault(DEFAULT_CONTAINER));
+    ContentRewriterFeature specFeature = factory.get(spec, DEFAULT_CONTAINER);
+    assertSame(specFeature, factory.get(spec, DEFAULT_CONTAINER));
+    assertNotSame(specFeature, factory.get(spec, "other"));
+
+    config.replace();
+    assertNotSame(feature, factory.getDefault(DEFAULT_CONTAINER));
+    assertNotSame(specFeature, factory.get(spec, DEFAULT_CONTAINER));
+  }
+
+  private static class ReplaceableContainerConfig extends FakeContainerConfig {
+    private JSONObject contentRewrite;
+
+    public void replace() {
+      contentRewrite = null;
+    }
+
+    @Override
+    public JSONObject getJsonObject(String container, String parameter) {
+      if (contentRewrite == null) {
+        contentRewrite = super.getJsonObject(container, parameter);
+      }
+      return contentRewrite;
+    }
+  }
 }
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.rewrite;
+
+import org.apache.shindig.common.uri.Uri;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for CssMinifier
+ */
+public class CssMinifierTest extends TestCase {
+  private static final Uri SOURCE = Uri.parse("http://www.example.org/a.css");
+
+  private static void assertMinified(String expected, String css) {
+    assertEquals(expected, CssMinifier.minify(css, SOURCE));
+  }
+
+  public void testWhitespaceAndCommentsRemoved() {
+    assertMinified("a,b>c{color:red;margin:0 auto}",
+        "/* header */\na, b > c {\n  color: red;\n  margin: 0 auto; /* centered */\n}\n");
+  }
+
+  public void testSignificantWhitespaceKept() {
+    assertMinified("a :hover{x:y}", "a :hover { x: y }");
+    assertMinified("@media screen and (max-width:100px){a{b:c}}",
+        "@media screen and (max-width: 100px) {\n  a { b: c; }\n}");
+  }
+
+  public void testLicenseCommentKept() {
+    assertMinified("/*! license */a{b:c}", "/*! license */\na { b: c }");
+  }
+
+  public void testStringsAndUrlsUntouched() {
+    assertMinified("a{content:\"x  ;  }\";background:url('a b.png')}",
+        "a { content: \"x  ;  }\"; background: url('a b.png') }");
+  }
+}
@@ -91,6 +91,55 @@ public class DefaultContentRewriterRegistryTest extends BaseRewriterTestCase {
     assertEquals(body, rewritten); 
   }
 
+  public void testRewritesRecordedPerRewriterClass() throws Exception {
+    List<ContentRewriter> rewriters = Lists.newArrayList(new CaptureRewriter(),
+        new AppendingRewriter("!"), new AppendingRewriter("!"));
+    DefaultContentRewriterRegistry registry = new DefaultContentRewriterRegistry(rewriters, parser);
+    RewriterMonitor monitor = new RewriterMonitor(0);
+    registry.setMonitor(monitor);
+
+    HttpResponse rewritten =
+        registry.rewriteHttpResponse(new HttpRequest(SPEC_URL), new HttpResponse("body"));
+    assertEquals("body!!", rewritten.getResponseAsString());
+
+    RewriterStatistics capture = monitor.getStatistics(CaptureRewriter.class);
+    assertEquals(1, capture.getInvocationCount());
+    assertEquals(0, capture.getChangedCount());
+
+    RewriterStatistics appending = monitor.getStatistics(AppendingRewriter.class);
+    assertEquals(2, appending.getInvocationCount());
+    assertEquals(2, appending.getChangedCount());
+    assertEquals(0, appending.getSlowCount());
+    // The second invocation sees content set by the first.
+    assertEquals(5, appending.getAverageInputLength());
+    assertEquals(6, appending.getAverageOutputLength());
+  }
+
+  public void testSlowRewritesCounted() throws Exception {
+    ContentRewriter slow = new CaptureRewriter() {
+      @Override
+      public RewriterResults rewrite(HttpRequest request, HttpResponse original,
+          MutableContent content) {
+        try {
+          Thread.sleep(5);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return null;
+      }
+    };
+    DefaultContentRewriterRegistry registry =
+        new DefaultContentRewriterRegistry(Arrays.asList(slow), parser);
+    RewriterMonitor monitor = new RewriterMonitor(1);
+    registry.setMonitor(monitor);
+
+    registry.rewriteHttpResponse(new HttpRequest(SPEC_URL), new HttpResponse("body"));
+
+    RewriterStatistics stats = monitor.getStatistics(slow.getClass());
+    assertEquals(1, stats.getSlowCount());
+    assertTrue(stats.getMaxLatencyMicros() >= 5000);
+  }
+
   /**
    * This test ensures that we dont call HttpRespose.getResponseAsString for content types
    * that are not rewriteable by the default set of content rewriters. This is important
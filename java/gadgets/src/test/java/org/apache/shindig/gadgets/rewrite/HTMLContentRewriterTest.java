@@ -17,6 +17,7 @@
  */
 package org.apache.shindig.gadgets.rewrite;
 
+import org.apache.shindig.common.cache.LruCacheProvider;
 import org.apache.shindig.gadgets.http.HttpRequest;
 
 import org.apache.commons.io.IOUtils;
@@ -40,6 +41,38 @@ public class HTMLContentRewriterTest extends BaseRewriterTestCase {
 
   }
 
+  public void testCachedParseNotCopiedWithoutRewritableTags() throws Exception {
+    parser.setCacheProvider(new LruCacheProvider(10));
+    String content = "<html><head><title>t</title></head><body><div>hello</div></body></html>";
+    Document shared = parser.parseSharedDom(content);
+
+    MutableContent mc = rewriteContent(rewriter, content);
+
+    assertSame(shared, mc.getReadOnlyDocument());
+    assertEquals(content, mc.getContent());
+  }
+
+  public void testContentWithoutRewritableTagsNotParsed() throws Exception {
+    String content = "<div>if (a < b) { c(); }</div>";
+    MutableContent mc = rewriteContent(rewriter, content);
+
+    assertFalse(mc.hasDocument());
+    assertSame(content, mc.getContent());
+  }
+
+  public void testCachedParseCopiedWhenRewritten() throws Exception {
+    parser.setCacheProvider(new LruCacheProvider(10));
+    String content = "<html><head></head><body><img src=\"http://example.org/a.png\"></body></html>";
+    Document shared = parser.parseSharedDom(content);
+
+    MutableContent mc = rewriteContent(rewriter, content);
+
+    assertNotSame(shared, mc.getReadOnlyDocument());
+    assertEquals("http://example.org/a.png",
+        new XPathWrapper(shared).getValue("/html/body/img/@src"));
+    assertFalse(mc.getContent().contains("\"http://example.org/a.png\""));
+  }
+
   public void testScriptsBasic() throws Exception {
     String content = IOUtils.toString(this.getClass().getClassLoader().
         getResourceAsStream("org/apache/shindig/gadgets/rewrite/rewritescriptbasic.html"));
@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.rewrite;
+
+import org.apache.shindig.gadgets.parse.GadgetHtmlParser;
+import org.apache.shindig.gadgets.parse.ParseModule;
+import org.apache.shindig.gadgets.parse.nekohtml.NekoHtmlParser;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.IOUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for HtmlMinifier
+ */
+public class HtmlMinifierTest extends TestCase {
+  private static final String[] FIXTURES = {
+      "rewritelinksbasic.html", "rewritescriptbasic.html", "rewritestylebasic.html"};
+
+  private final GadgetHtmlParser parser =
+      new NekoHtmlParser(new ParseModule.DOMImplementationProvider().get());
+
+  private static void assertMinified(String expected, String html) {
+    assertEquals(expected, HtmlMinifier.minify(html));
+  }
+
+  public void testWhitespaceCollapsed() {
+    assertMinified("<div>\n<p>a b</p>\n</div>", "<div>\n  <p>a \t b</p>\n\n</div>");
+  }
+
+  public void testCommentsRemoved() {
+    assertMinified("<p>a b</p>", "<p>a <!-- one\n two --> b</p>");
+    assertMinified("<p>ab</p>", "<p>a<!---->b</p>");
+  }
+
+  public void testConditionalCommentsKept() {
+    String html = "<!--[if IE]><p>ie</p><![endif]--><!--[if !IE]><!--><p>x</p><!--<![endif]-->";
+    assertMinified(html, html);
+  }
+
+  public void testPreservedElementsUntouched() {
+    assertMinified("<pre>  a\n\n  b </pre>\n<TEXTAREA> x  </textarea>",
+        "<pre>  a\n\n  b </pre>\n  <TEXTAREA> x  </textarea>");
+    assertMinified("<script>var s = '  <!-- x -->';</script>",
+        "<script>var s = '  <!-- x -->';</script>");
+    assertMinified("<style>\n  a { color: red; }\n</style>",
+        "<style>\n  a { color: red; }\n</style>");
+  }
+
+  public void testTagsCollapsed() {
+    assertMinified("<a href=\"/a b\" id=x class=\"a&amp;b\">t</a>",
+        "<a\n  href = \"/a b\"   id='x' class=\"a&amp;b\" >t</a >");
+    assertMinified("<img src=a.png alt=\"\"/>", "<img src=\"a.png\" alt=\"\"/>");
+    // An unquoted value would take in the slash.
+    assertMinified("<br class=\"a\"/>", "<br class=\"a\"/>");
+    assertMinified("<input value=\"a/\">", "<input value=\"a/\">");
+  }
+
+  public void testQuotesOutsideValuesIgnored() {
+    assertMinified("<p title=it's>don't</p>", "<p title=it's>don't</p>");
+    assertMinified(
+        "<!DOCTYPE HTML PUBLIC \"-//W3C//DTD  HTML 4.01//EN\">",
+        "<!DOCTYPE HTML  PUBLIC \"-//W3C//DTD  HTML 4.01//EN\">");
+  }
+
+  public void testUnterminatedCopiedVerbatim() {
+    assertMinified("<p>a b <!-- x  \n y", "<p>a  b <!-- x  \n y");
+    assertMinified("<p>a <img src=\"x  y", "<p>a  <img src=\"x  y");
+    assertMinified("<pre> a  b", "<pre> a  b");
+  }
+
+  public void testTextLessThanKept() {
+    assertMinified("1 < 2 <= 3", "1  <  2 <= 3");
+  }
+
+  public void testFixturesRoundTrip() throws Exception {
+    for (String fixture : FIXTURES) {
+      String html = IOUtils.toString(getClass().getClassLoader().getResourceAsStream(
+          "org/apache/shindig/gadgets/rewrite/" + fixture));
+      assertRoundTrip(fixture, html);
+    }
+    assertRoundTrip("inline", "<html><head><title> t </title></head><body>\n"
+        + "<div class='a'  id = \"b\"> x <!-- c -->  y </div>\n"
+        + "<pre>\n  keep\n    this </pre>\n<textarea name=t>  a\n b</textarea>\n"
+        + "<script>\n  var a = 1;\n</script>\n</body></html>");
+  }
+
+  /**
+   * Checks that the minified HTML parses to the same elements, attributes and text, ignoring
+   * comments and whitespace differences outside of preserved elements.
+   */
+  private void assertRoundTrip(String name, String html) throws Exception {
+    String minified = HtmlMinifier.minify(html);
+    assertTrue(name, minified.length() < html.length());
+    assertEquals(name, HtmlMinifier.minify(minified), minified);
+    assertEquivalent(name, parser.parseDom(html), parser.parseDom(minified), false);
+  }
+
+  private static void assertEquivalent(String name, Node expected, Node actual,
+      boolean preserved) {
+    assertEquals(name, expected.getNodeName(), actual.getNodeName());
+    assertEquals(name, getAttributes(expected), getAttributes(actual));
+    List<Object> expectedChildren = getChildren(expected, preserved);
+    List<Object> actualChildren = getChildren(actual, preserved);
+    assertEquals(name + ' ' + expected.getNodeName(),
+        expectedChildren.size(), actualChildren.size());
+    for (int i = 0; i < expectedChildren.size(); ++i) {
+      Object child = expectedChildren.get(i);
+      if (child instanceof Node) {
+        Node node = (Node) child;
+        boolean preservedChild = preserved || node.getNodeName().matches(
+            "(?i)pre|textarea|script|style");
+        assertEquivalent(name, node, (Node) actualChildren.get(i), preservedChild);
+      } else {
+        assertEquals(name, child, actualChildren.get(i));
+      }
+    }
+  }
+
+  private static Map<String, String> getAttributes(Node node) {
+    Map<String, String> attributes = Maps.newHashMap();
+    NamedNodeMap attrs = node.getAttributes();
+    if (attrs != null) {
+      for (int i = 0; i < attrs.getLength(); ++i) {
+        attributes.put(attrs.item(i).getNodeName(), attrs.item(i).getNodeValue());
+      }
+    }
+    return attributes;
+  }
+
+  /**
+   * @return The child elements, and the text between them with comments removed.
+   */
+  private static List<Object> getChildren(Node parent, boolean preserved) {
+    List<Object> children = Lists.newArrayList();
+    StringBuilder text = new StringBuilder();
+    for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if (child.getNodeType() == Node.TEXT_NODE) {
+        text.append(child.getNodeValue());
+      } else if (child.getNodeType() == Node.ELEMENT_NODE) {
+        addText(children, text, preserved);
+        children.add(child);
+      }
+    }
+    addText(children, text, preserved);
+    return children;
+  }
+
+  private static void addText(List<Object> children, StringBuilder text, boolean preserved) {
+    if (text.length() > 0) {
+      children.add(preserved ? text.toString() : text.toString().replaceAll("\\s+", " "));
+      text.setLength(0);
+    }
+  }
+}
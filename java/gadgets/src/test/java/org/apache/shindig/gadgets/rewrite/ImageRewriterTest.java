@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.rewrite;
+
+import org.apache.shindig.common.cache.LruCacheProvider;
+import org.apache.shindig.common.uri.Uri;
+import org.apache.shindig.gadgets.http.DefaultHttpCache;
+import org.apache.shindig.gadgets.http.HttpCache;
+import org.apache.shindig.gadgets.http.HttpRequest;
+import org.apache.shindig.gadgets.http.HttpResponse;
+import org.apache.shindig.gadgets.http.HttpResponseBuilder;
+
+import junit.framework.TestCase;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.zip.CRC32;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Tests for ImageRewriter
+ */
+public class ImageRewriterTest extends TestCase {
+  private static final HttpRequest REQUEST =
+      new HttpRequest(Uri.parse("http://www.example.org/image"));
+
+  private HttpCache cache;
+  private ImageRewriter rewriter;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    cache = new DefaultHttpCache(new LruCacheProvider(10));
+    rewriter = new ImageRewriter(cache, true, 85, 1000000);
+  }
+
+  private static BufferedImage createImage(int width, int height) {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    for (int x = 0; x < width; ++x) {
+      for (int y = 0; y < height; ++y) {
+        image.setRGB(x, y, (x * 255 / width) << 16 | (y * 255 / height) << 8 | 0x80);
+      }
+    }
+    return image;
+  }
+
+  private static byte[] toPng(BufferedImage image) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageIO.write(image, "png", out);
+    return out.toByteArray();
+  }
+
+  private static byte[] toJpeg(BufferedImage image, float quality) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+    ImageWriter writer = writers.next();
+    ImageOutputStream imageOut = ImageIO.createImageOutputStream(out);
+    ImageWriteParam param = writer.getDefaultWriteParam();
+    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+    param.setCompressionQuality(quality);
+    writer.setOutput(imageOut);
+    writer.write(null, new IIOImage(image, null, null), param);
+    writer.dispose();
+    imageOut.close();
+    return out.toByteArray();
+  }
+
+  /**
+   * Inserts a tEXt chunk after the PNG header chunk.
+   */
+  private static byte[] addTextChunk(byte[] png, String text) throws IOException {
+    // 8 byte signature, then IHDR: 4 length, 4 type, 13 data, 4 crc.
+    int headerEnd = 8 + 4 + 4 + 13 + 4;
+    byte[] data = ("Comment\0" + text).getBytes("ISO-8859-1");
+    CRC32 crc = new CRC32();
+    crc.update("tEXt".getBytes("ISO-8859-1"));
+    crc.update(data);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.write(png, 0, headerEnd);
+    out.writeInt(data.length);
+    out.writeBytes("tEXt");
+    out.write(data);
+    out.writeInt((int) crc.getValue());
+    out.write(png, headerEnd, png.length - headerEnd);
+    return bytes.toByteArray();
+  }
+
+  private static HttpResponse createResponse(byte[] bytes, String contentType) {
+    return new HttpResponseBuilder()
+        .setHttpStatusCode(HttpResponse.SC_OK)
+        .setResponse(bytes)
+        .addHeader("Content-Type", contentType)
+        .create();
+  }
+
+  private static BufferedImage read(HttpResponse response) throws IOException {
+    return ImageIO.read(response.getResponse());
+  }
+
+  public void testJpegRecompressed() throws Exception {
+    HttpResponse original = createResponse(toJpeg(createImage(200, 100), 1.0f), "image/jpeg");
+
+    HttpResponse rewritten = rewriter.rewrite(REQUEST, original, 0, 0);
+
+    assertTrue(rewritten.getContentLength() < original.getContentLength());
+    assertEquals("image/jpeg", rewritten.getHeader("Content-Type"));
+    BufferedImage image = read(rewritten);
+    assertEquals(200, image.getWidth());
+    assertEquals(100, image.getHeight());
+  }
+
+  public void testPngMetadataStripped() throws Exception {
+    StringBuilder comment = new StringBuilder();
+    for (int i = 0; i < 100; ++i) {
+      comment.append("metadata ");
+    }
+    byte[] png = addTextChunk(toPng(createImage(20, 20)), comment.toString());
+    HttpResponse original = createResponse(png, "image/png");
+    assertNotNull(read(original));
+
+    HttpResponse rewritten = rewriter.rewrite(REQUEST, original, 0, 0);
+
+    assertTrue(rewritten.getContentLength() < original.getContentLength());
+    assertFalse(rewritten.getResponseAsString().contains("metadata"));
+    assertEquals(20, read(rewritten).getWidth());
+  }
+
+  public void testOriginalKeptWhenNotSmaller() throws Exception {
+    HttpResponse original = createResponse(toPng(createImage(20, 20)), "image/png");
+    assertSame(original, rewriter.rewrite(REQUEST, original, 0, 0));
+    // The decision is cached too.
+    assertSame(original, rewriter.rewrite(REQUEST, original, 0, 0));
+  }
+
+  public void testScaledToFitResizeHints() throws Exception {
+    HttpResponse original = createResponse(toPng(createImage(200, 100)), "image/png");
+
+    BufferedImage image = read(rewriter.rewrite(REQUEST, original, 50, 0));
+    assertEquals(50, image.getWidth());
+    assertEquals(25, image.getHeight());
+
+    image = read(rewriter.rewrite(REQUEST, original, 50, 10));
+    assertEquals(20, image.getWidth());
+    assertEquals(10, image.getHeight());
+  }
+
+  public void testNeverScaledUp() {
+    BufferedImage image = createImage(20, 10);
+    assertSame(image, ImageRewriter.scale(image, 40, 40));
+  }
+
+  public void testPixelBudget() throws Exception {
+    rewriter = new ImageRewriter(cache, true, 85, 100);
+    HttpResponse original = createResponse(toJpeg(createImage(200, 100), 1.0f), "image/jpeg");
+    assertSame(original, rewriter.rewrite(REQUEST, original, 0, 0));
+  }
+
+  public void testResultCached() throws Exception {
+    HttpResponse original = createResponse(toJpeg(createImage(200, 100), 1.0f), "image/jpeg");
+    HttpResponse rewritten = rewriter.rewrite(REQUEST, original, 0, 0);
+    assertSame(rewritten, rewriter.rewrite(REQUEST, original, 0, 0));
+    assertNotSame(rewritten, rewriter.rewrite(REQUEST, original, 100, 0));
+  }
+
+  public void testDisabled() throws Exception {
+    rewriter = new ImageRewriter(cache, false, 85, 1000000);
+    HttpResponse original = createResponse(toJpeg(createImage(200, 100), 1.0f), "image/jpeg");
+    assertSame(original, rewriter.rewrite(REQUEST, original, 0, 0));
+  }
+
+  public void testOtherContentIgnored() throws Exception {
+    HttpResponse original = createResponse(toPng(createImage(20, 20)), "text/html");
+    assertSame(original, rewriter.rewrite(REQUEST, original, 10, 10));
+    HttpResponse broken = createResponse(new byte[] {1, 2, 3}, "image/png");
+    assertSame(broken, rewriter.rewrite(REQUEST, broken, 10, 10));
+  }
+
+  public void testFormats() {
+    assertEquals("png", ImageRewriter.getFormat("image/png"));
+    assertEquals("gif", ImageRewriter.getFormat("IMAGE/GIF"));
+    assertEquals("jpeg", ImageRewriter.getFormat("image/jpeg; charset=binary"));
+    assertNull(ImageRewriter.getFormat("image/svg+xml"));
+    assertNull(ImageRewriter.getFormat(null));
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.rewrite;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for JsMinifier
+ */
+public class JsMinifierTest extends TestCase {
+
+  private static void assertMinified(String expected, String js) {
+    assertEquals(expected, JsMinifier.minify(js));
+  }
+
+  public void testCommentsRemoved() {
+    assertMinified("var a=1;var b=2;",
+        "// leading\nvar a = 1; /* inline */ var b = 2; // trailing");
+  }
+
+  public void testLicenseAndConditionalCommentsKept() {
+    assertMinified("/*! license */\nvar a;\n/*@cc_on @*/\nvar b;",
+        "/*! license */\nvar a;\n/*@cc_on @*/\nvar b;");
+  }
+
+  public void testWhitespaceBetweenWordsKept() {
+    assertMinified("function f(a,b){return typeof a;}",
+        "function f ( a , b ) {\n  return typeof a;\n}");
+  }
+
+  public void testStringsUntouched() {
+    assertMinified("var s=\"a  // b /* c */\"+'d \\' e';",
+        "var s = \"a  // b /* c */\" + 'd \\' e';");
+  }
+
+  public void testTemplatesUntouched() {
+    assertMinified("var u=`http://example.org/${p}`;f(u);",
+        "var u = `http://example.org/${p}`;\nf(u);");
+    assertMinified("var s=`a    b`;", "var s = `a    b`;");
+    assertMinified("var s=`a\\`  ${ {a: '}'}.a + `${ x }  y` }  b`;",
+        "var s = `a\\`  ${ {a: '}'}.a + `${ x }  y` }  b`;");
+    assertMinified("var s=tag`a\n  b`;", "var s = tag`a\n  b`;");
+  }
+
+  public void testUnscannableTemplateUnchanged() {
+    String js = "var s = `${a / 2}`;";
+    assertSame(js, JsMinifier.minify(js));
+    js = "var s = `abc";
+    assertSame(js, JsMinifier.minify(js));
+  }
+
+  public void testRegexUntouched() {
+    assertMinified("var r=/a  b\\/[/ ]*/g;x=a/b/c;",
+        "var r = /a  b\\/[/ ]*/g;\nx = a / b / c;");
+    assertMinified("return/ x /.test(s)", "return / x /.test(s)");
+    assertMinified("/x/ in o", "/x/ in o");
+  }
+
+  public void testOperatorsNotMerged() {
+    assertMinified("a+ +b;c- -d;e++ +f;", "a + +b; c - -d; e++ + f;");
+    assertMinified("1 .toString()", "1 .toString()");
+  }
+
+  public void testLineBreaksKeptForSemicolonInsertion() {
+    assertMinified("a=b\nc()", "a = b\n  c()");
+    assertMinified("return\na", "return\na");
+    assertMinified("a++\nb", "a++\nb");
+    assertMinified("a=[1,2];", "a = [\n  1,\n  2\n];");
+  }
+
+  public void testUnterminatedInputUnchanged() {
+    String js = "var s = 'abc";
+    assertSame(js, JsMinifier.minify(js));
+    js = "a = 1; /* never closed";
+    assertSame(js, JsMinifier.minify(js));
+  }
+}
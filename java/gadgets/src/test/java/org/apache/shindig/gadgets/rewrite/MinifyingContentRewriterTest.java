@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.rewrite;
+
+import org.apache.shindig.common.cache.LruCacheProvider;
+import org.apache.shindig.common.uri.Uri;
+import org.apache.shindig.gadgets.http.HttpRequest;
+import org.apache.shindig.gadgets.http.HttpResponse;
+import org.apache.shindig.gadgets.http.HttpResponseBuilder;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Tests for MinifyingContentRewriter
+ */
+public class MinifyingContentRewriterTest extends BaseRewriterTestCase {
+  private static final String JS = "// comment\nvar a = 1;\n";
+
+  private HttpRequest request;
+  private MinifyingContentRewriter rewriter;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    request = new HttpRequest(Uri.parse("http://www.example.org/a.js"));
+    request.setContainer(DEFAULT_CONTAINER);
+    rewriter = new MinifyingContentRewriter(new MinifyingContainerConfig(true),
+        new LruCacheProvider(10));
+  }
+
+  private static HttpResponse createResponse(String contentType, String body) {
+    return new HttpResponseBuilder()
+        .setHeader("Content-Type", contentType)
+        .setResponseString(body)
+        .create();
+  }
+
+  private MutableContent rewrite(HttpResponse response) {
+    MutableContent content = new MutableContent(parser, response);
+    assertNotNull(rewriter.rewrite(request, response, content));
+    return content;
+  }
+
+  public void testJavascriptMinified() throws Exception {
+    MutableContent content = rewrite(createResponse("application/x-javascript", JS));
+    assertEquals("var a=1;", content.getContent());
+  }
+
+  public void testRewriteMimeTypeHonored() throws Exception {
+    request.setRewriteMimeType("text/javascript");
+    MutableContent content = rewrite(createResponse("text/html", JS));
+    assertEquals("var a=1;", content.getContent());
+  }
+
+  public void testOtherContentIgnored() throws Exception {
+    HttpResponse response = createResponse("text/html", JS);
+    MutableContent content = new MutableContent(parser, response);
+    assertNull(rewriter.rewrite(request, response, content));
+    assertEquals(JS, content.getContent());
+  }
+
+  public void testMinifiedContentCached() throws Exception {
+    LruCacheProvider cacheProvider = new LruCacheProvider(10);
+    rewriter = new MinifyingContentRewriter(new MinifyingContainerConfig(true), cacheProvider);
+    rewrite(createResponse("text/javascript", JS));
+    assertEquals(1, cacheProvider.createCache(MinifyingContentRewriter.CACHE_NAME).getSize());
+    rewrite(createResponse("text/javascript", JS));
+    assertEquals(1, cacheProvider.createCache(MinifyingContentRewriter.CACHE_NAME).getSize());
+  }
+
+  public void testDisabledByContainer() throws Exception {
+    rewriter = new MinifyingContentRewriter(new MinifyingContainerConfig(false),
+        new LruCacheProvider(10));
+    HttpResponse response = createResponse("text/javascript", JS);
+    MutableContent content = new MutableContent(parser, response);
+    assertNull(rewriter.rewrite(request, response, content));
+    assertEquals(JS, content.getContent());
+  }
+
+  public void testGadgetHtmlMinified() throws Exception {
+    MutableContent content = rewriteContent(rewriter, "<div>\n  <!-- comment -->\n  a  b</div>");
+    assertEquals("<div>\na b</div>", content.getContent());
+  }
+
+  public void testGadgetHtmlNotMinifiedWhenDisabled() throws Exception {
+    rewriter = new MinifyingContentRewriter(new MinifyingContainerConfig(false),
+        new LruCacheProvider(10));
+    String html = "<div>\n  <!-- comment -->\n  a  b</div>";
+    assertEquals(html, rewriteContent(rewriter, html).getContent());
+  }
+
+  private static class MinifyingContainerConfig extends FakeContainerConfig {
+    private final boolean minify;
+
+    public MinifyingContainerConfig(boolean minify) {
+      this.minify = minify;
+    }
+
+    @Override
+    public JSONObject getJsonObject(String container, String parameter) {
+      JSONObject json = super.getJsonObject(container, parameter);
+      if (json != null) {
+        try {
+          json.put(MinifyingContentRewriter.MINIFY_KEY, minify);
+          json.put(MinifyingContentRewriter.MINIFY_HTML_KEY, minify);
+        } catch (JSONException e) {
+          throw new RuntimeException(e);
+        }
+      }
+      return json;
+    }
+  }
+}
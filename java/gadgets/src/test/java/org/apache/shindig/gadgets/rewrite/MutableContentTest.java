@@ -19,13 +19,23 @@
 package org.apache.shindig.gadgets.rewrite;
 
 import org.apache.shindig.common.PropertiesModule;
+import org.apache.shindig.common.cache.LruCacheProvider;
+import org.apache.shindig.common.util.CharsetUtil;
+import org.apache.shindig.gadgets.http.HttpResponse;
+import org.apache.shindig.gadgets.http.HttpResponseBuilder;
 import org.apache.shindig.gadgets.parse.GadgetHtmlParser;
+import org.apache.shindig.gadgets.parse.HtmlSerializer;
+import org.apache.shindig.gadgets.parse.HtmlTree;
 import org.apache.shindig.gadgets.parse.ParseModule;
+import org.apache.shindig.gadgets.parse.nekohtml.NekoSimplifiedHtmlParser;
 
+import com.google.common.collect.Sets;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import org.junit.Before;
@@ -33,6 +43,10 @@ import org.junit.Test;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
 public class MutableContentTest {
   private MutableContent mhc;
   
@@ -85,4 +99,136 @@ public class MutableContentTest {
     // GadgetHtmlNode hasn't changed because string hasn't changed
     assertSame(document, mhc.getDocument());
   }
+
+  @Test
+  public void readOnlyDocumentCopiedOnlyWhenModifiable() throws Exception {
+    GadgetHtmlParser parser = new NekoSimplifiedHtmlParser(
+        new ParseModule.DOMImplementationProvider().get());
+    parser.setCacheProvider(new LruCacheProvider(10));
+    mhc = new MutableContent(parser, "DEFAULT VIEW");
+
+    Document shared = mhc.getReadOnlyDocument();
+    assertTrue(GadgetHtmlParser.isShared(shared));
+    assertSame(shared, parser.parseSharedDom("DEFAULT VIEW"));
+    assertTrue(mhc.hasDocument());
+    assertSame(shared, mhc.getReadOnlyDocument());
+
+    Document document = mhc.getDocument();
+    assertNotSame(shared, document);
+    assertSame(document, mhc.getReadOnlyDocument());
+
+    document.getFirstChild().getFirstChild().setTextContent("FOO CONTENT");
+    MutableContent.notifyEdit(document);
+    assertTrue(mhc.getContent().contains("FOO CONTENT"));
+    assertTrue(HtmlSerializer.serialize(shared).contains("DEFAULT VIEW"));
+  }
+
+  @Test
+  public void modifyParseTreeReflectedInContent() throws Exception {
+    HtmlTree tree = mhc.getParseTree();
+    assertTrue(mhc.hasParseTree());
+    int text = tree.getFirstChild(tree.getBody());
+    assertEquals("DEFAULT VIEW", tree.getText(text));
+
+    // No notifyEdit needed.
+    tree.setText(text, "FOO CONTENT");
+    assertTrue(mhc.getContent().contains("FOO CONTENT"));
+    tree.setAttribute(tree.getBody(), "dir", "rtl");
+    assertTrue(mhc.getContent().contains("<body dir=\"rtl\">FOO CONTENT</body>"));
+    assertSame(tree, mhc.getParseTree());
+  }
+
+  @Test
+  public void switchBetweenDocumentAndParseTree() throws Exception {
+    Document document = mhc.getDocument();
+    document.getFirstChild().getLastChild().setTextContent("FOO CONTENT");
+    MutableContent.notifyEdit(document);
+
+    HtmlTree tree = mhc.getParseTree();
+    assertFalse(mhc.hasDocument());
+    assertEquals("FOO CONTENT", tree.getTextContent(tree.getBody()));
+
+    tree.setText(tree.getFirstChild(tree.getBody()), "BAR CONTENT");
+    document = mhc.getDocument();
+    assertFalse(mhc.hasParseTree());
+    assertEquals("BAR CONTENT", document.getDocumentElement().getLastChild().getTextContent());
+
+    // The old tree is no longer current, so changes to it are ignored.
+    tree.setText(tree.getFirstChild(tree.getBody()), "BAZ CONTENT");
+    assertTrue(mhc.getContent().contains("BAR CONTENT"));
+  }
+
+  @Test
+  public void mayContainTagsScansContent() throws Exception {
+    Set<String> tags = Sets.newHashSet("img", "script");
+    mhc.setContent("<div>1 < 2 <imgs> <scripts></div>");
+    assertFalse(mhc.mayContainTags(tags));
+    assertFalse(mhc.hasDocument());
+
+    mhc.setContent("<div><IMG src=\"a.png\"></div>");
+    assertTrue(mhc.mayContainTags(tags));
+    mhc.setContent("<script>");
+    assertTrue(mhc.mayContainTags(tags));
+    assertFalse(mhc.mayContainTags(Collections.<String>emptySet()));
+  }
+
+  @Test
+  public void mayContainTagsDoesNotSerialize() throws Exception {
+    Document document = mhc.getDocument();
+    document.getFirstChild().getFirstChild().setTextContent("FOO CONTENT");
+    MutableContent.notifyEdit(document);
+
+    assertTrue(mhc.mayContainTags(Sets.newHashSet("img")));
+    assertFalse(new MutableContent(null, (String) null).mayContainTags(Sets.newHashSet("img")));
+  }
+
+  @Test
+  public void utf8ResponseBytesUsedWithoutDecoding() throws Exception {
+    HttpResponse response = new HttpResponseBuilder()
+        .setHeader("Content-Type", "text/html; charset=UTF-8")
+        .setResponseString("<div>caf\u00e9 <img src=\"a.png\"></div>")
+        .create();
+    mhc = new MutableContent(null, response);
+
+    assertTrue(mhc.mayContainTags(Sets.newHashSet("img")));
+    assertFalse(mhc.mayContainTags(Sets.newHashSet("script")));
+    assertFalse(mhc.mayContainCssReferences());
+    assertSame(response.getResponseAsBytes(), mhc.getContentBytes());
+    // Still not decoded.
+    assertEquals(-1, mhc.getContentLength());
+    assertEquals("<div>caf\u00e9 <img src=\"a.png\"></div>", mhc.getContent());
+  }
+
+  @Test
+  public void otherResponseEncodingsConvertedToUtf8() throws Exception {
+    HttpResponse response = new HttpResponseBuilder()
+        .setHeader("Content-Type", "text/plain; charset=ISO-8859-1")
+        .setResponse(new byte[] {'c', 'a', 'f', (byte) 0xE9})
+        .create();
+    mhc = new MutableContent(null, response);
+
+    assertTrue(Arrays.equals(CharsetUtil.getUtf8Bytes("caf\u00e9"), mhc.getContentBytes()));
+  }
+
+  @Test
+  public void setContentBytesReflectedInContentAndTree() throws Exception {
+    byte[] bytes = CharsetUtil.getUtf8Bytes("NEW CONTENT");
+    mhc.setContentBytes(bytes);
+    assertSame(bytes, mhc.getContentBytes());
+    assertEquals("NEW CONTENT", mhc.getContent());
+    assertEquals("NEW CONTENT", mhc.getDocument().getDocumentElement().getTextContent());
+
+    mhc.setContent("OTHER");
+    assertEquals("OTHER", CharsetUtil.newUtf8String(mhc.getContentBytes()));
+  }
+
+  @Test
+  public void editedDocumentReflectedInContentBytes() throws Exception {
+    mhc.getContentBytes();
+    Document document = mhc.getDocument();
+    document.getFirstChild().getFirstChild().setTextContent("FOO CONTENT");
+    MutableContent.notifyEdit(document);
+
+    assertTrue(CharsetUtil.newUtf8String(mhc.getContentBytes()).contains("FOO CONTENT"));
+  }
 }
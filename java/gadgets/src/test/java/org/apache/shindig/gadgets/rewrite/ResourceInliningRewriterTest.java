@@ -0,0 +1,299 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.rewrite;
+
+import org.apache.shindig.common.ContainerConfig;
+import org.apache.shindig.common.cache.LruCacheProvider;
+import org.apache.shindig.common.uri.Uri;
+import org.apache.shindig.common.util.InstrumentedThreadPoolExecutor;
+import org.apache.shindig.common.util.InstrumentedThreadPoolExecutor.RejectionPolicy;
+import org.apache.shindig.gadgets.GadgetException;
+import org.apache.shindig.gadgets.http.DefaultHttpCache;
+import org.apache.shindig.gadgets.http.HttpCache;
+import org.apache.shindig.gadgets.http.HttpCacheKey;
+import org.apache.shindig.gadgets.http.HttpFetcher;
+import org.apache.shindig.gadgets.http.HttpRequest;
+import org.apache.shindig.gadgets.http.HttpResponse;
+import org.apache.shindig.gadgets.http.HttpResponseBuilder;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for ResourceInliningRewriter
+ */
+public class ResourceInliningRewriterTest extends BaseRewriterTestCase {
+  private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G'};
+  private static final String CSS = "div { color: red; }";
+  private static final String JS = "var a = 1;";
+
+  private HttpCache cache;
+  private FakeFetcher fetcher;
+  private ExecutorService executor;
+  private ContentRewriterFeatureFactory featureFactory;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    cache = new DefaultHttpCache(new LruCacheProvider(10));
+    fetcher = new FakeFetcher();
+    executor = Executors.newCachedThreadPool();
+    ContentRewriterFeature feature =
+        rewriterFeatureFactory.get(createSpecWithRewrite(".*", ".*exclude.*", "HTTP",
+            HTMLContentRewriter.TAGS), DEFAULT_CONTAINER);
+    featureFactory = mockContentRewriterFeatureFactory(feature);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    executor.shutdownNow();
+    super.tearDown();
+  }
+
+  private ResourceInliningRewriter createRewriter(int maxBytes, long fetchBudget) {
+    return new ResourceInliningRewriter(cache, fetcher, executor, featureFactory, maxBytes,
+        fetchBudget);
+  }
+
+  private static HttpResponse createResponse(String contentType, byte[] body) {
+    return new HttpResponseBuilder()
+        .setHeader("Content-Type", contentType)
+        .setHeader("Cache-Control", "public,max-age=3600")
+        .setResponse(body)
+        .create();
+  }
+
+  private static HttpResponse createResponse(String contentType, String body) {
+    return createResponse(contentType, body.getBytes());
+  }
+
+  private void addToCache(String url, HttpResponse response) {
+    HttpRequest request = new HttpRequest(Uri.parse(url));
+    cache.addResponse(new HttpCacheKey(request), request, response);
+  }
+
+  private void addResources(Map<String, HttpResponse> resources) {
+    resources.put("http://www.example.org/dir/a.png", createResponse("image/png", PNG));
+    resources.put("http://www.example.org/b.css", createResponse("text/css", CSS));
+    resources.put("http://www.example.org/dir/c.js", createResponse("text/javascript", JS));
+  }
+
+  private static final String HTML = "<html><head>"
+      + "<link rel=\"stylesheet\" media=\"print\" href=\"/b.css\">"
+      + "<script src=\"c.js\"></script>"
+      + "</head><body><img src=\"a.png\"></body></html>";
+
+  private void assertInlined(String content) {
+    assertTrue(content, content.contains("<img src=\"data:image/png;base64,iVBORw==\">"));
+    assertTrue(content,
+        content.contains("<style type=\"text/css\" media=\"print\">" + CSS + "</style>"));
+    assertFalse(content, content.contains("<link"));
+    assertTrue(content, content.contains("<script>" + JS + "</script>"));
+  }
+
+  public void testCachedResourcesInlined() throws Exception {
+    Map<String, HttpResponse> resources = Maps.newHashMap();
+    addResources(resources);
+    for (Map.Entry<String, HttpResponse> entry : resources.entrySet()) {
+      addToCache(entry.getKey(), entry.getValue());
+    }
+
+    String content = rewriteContent(createRewriter(1024, 0), HTML).getContent();
+
+    assertInlined(content);
+    assertEquals(0, fetcher.requests.size());
+  }
+
+  public void testUncachedResourcesFetchedWithinBudget() throws Exception {
+    addResources(fetcher.responses);
+
+    String content = rewriteContent(createRewriter(1024, 5000), HTML).getContent();
+
+    assertInlined(content);
+    assertEquals(3, fetcher.requests.size());
+    assertEquals(ContainerConfig.DEFAULT_CONTAINER, fetcher.requests.get(0).getContainer());
+  }
+
+  public void testSlowFetchesNotAwaited() throws Exception {
+    addResources(fetcher.responses);
+    fetcher.latch = new CountDownLatch(1);
+    ResourceInliningRewriter rewriter = createRewriter(1024, 10);
+
+    MutableContent mc = rewriteContent(rewriter, HTML);
+    assertEquals(HTML, mc.getContent());
+
+    // The fetches complete in the background, so the next render finds them in the cache.
+    fetcher.latch.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    assertInlined(rewriteContent(rewriter, HTML).getContent());
+    assertEquals(3, fetcher.requests.size());
+  }
+
+  /**
+   * Replaces the executor with one whose only thread is busy until the returned latch is released.
+   */
+  private CountDownLatch saturate(ExecutorService saturated) {
+    executor.shutdownNow();
+    executor = saturated;
+    final CountDownLatch busy = new CountDownLatch(1);
+    executor.execute(new Runnable() {
+      public void run() {
+        try {
+          busy.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    return busy;
+  }
+
+  public void testSaturatedPoolNotAwaited() throws Exception {
+    addResources(fetcher.responses);
+    CountDownLatch busy = saturate(new InstrumentedThreadPoolExecutor(
+        "test", 1, 1, 0, 60000, RejectionPolicy.ABORT));
+    try {
+      long start = System.currentTimeMillis();
+      MutableContent mc = rewriteContent(createRewriter(1024, 5000), HTML);
+
+      assertTrue(System.currentTimeMillis() - start < 2500);
+      assertEquals(HTML, mc.getContent());
+      assertEquals(0, fetcher.requests.size());
+    } finally {
+      busy.countDown();
+    }
+  }
+
+  public void testNothingFetchedOnRenderingThread() throws Exception {
+    addResources(fetcher.responses);
+    CountDownLatch busy = saturate(new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+        new SynchronousQueue<Runnable>(), new ThreadPoolExecutor.CallerRunsPolicy()));
+    try {
+      MutableContent mc = rewriteContent(createRewriter(1024, 5000), HTML);
+
+      assertEquals(HTML, mc.getContent());
+      assertEquals(0, fetcher.requests.size());
+    } finally {
+      busy.countDown();
+    }
+  }
+
+  public void testLargeResourcesNotInlined() throws Exception {
+    addToCache("http://www.example.org/dir/a.png", createResponse("image/png", PNG));
+    String html = "<html><head></head><body><img src=\"a.png\"></body></html>";
+
+    MutableContent mc = rewriteContent(createRewriter(PNG.length - 1, 0), html);
+
+    assertEquals(html, mc.getContent());
+  }
+
+  public void testUnsuitableResourcesNotInlined() throws Exception {
+    addToCache("http://www.example.org/dir/a.png", createResponse("text/html", PNG));
+    addToCache("http://www.example.org/b.css",
+        createResponse("text/css", "div { background: url(x.png); }"));
+    addToCache("http://www.example.org/dir/c.js",
+        createResponse("text/javascript", "document.write('</script>');"));
+    addToCache("http://www.example.org/exclude/d.js", createResponse("text/javascript", JS));
+    String html = "<html><head>"
+        + "<link rel=\"stylesheet\" href=\"/b.css\">"
+        + "<script src=\"c.js\"></script>"
+        + "<script src=\"/exclude/d.js\"></script>"
+        + "</head><body><img src=\"a.png\"></body></html>";
+
+    MutableContent mc = rewriteContent(createRewriter(1024, 0), html);
+
+    assertEquals(html, mc.getContent());
+  }
+
+  public void testAsyncAndDeferredScriptsNotInlined() throws Exception {
+    addToCache("http://www.example.org/dir/c.js", createResponse("text/javascript", JS));
+    String html = "<html><head>"
+        + "<script src=\"c.js\" async></script>"
+        + "<script src=\"c.js\" defer=\"defer\"></script>"
+        + "</head><body></body></html>";
+
+    MutableContent mc = rewriteContent(createRewriter(1024, 0), html);
+
+    assertEquals(html, mc.getContent());
+  }
+
+  public void testFetchAttributesRemovedWhenInlined() throws Exception {
+    addToCache("http://www.example.org/dir/a.png", createResponse("image/png", PNG));
+    addToCache("http://www.example.org/b.css", createResponse("text/css", CSS));
+    addToCache("http://www.example.org/dir/c.js", createResponse("text/javascript", JS));
+    String html = "<html><head>"
+        + "<link rel=\"stylesheet\" href=\"/b.css\" integrity=\"sha256-b\" crossorigin>"
+        + "<script src=\"c.js\" integrity=\"sha256-c\" crossorigin=\"anonymous\"></script>"
+        + "</head><body><img src=\"a.png\" crossorigin=\"anonymous\"></body></html>";
+
+    String content = rewriteContent(createRewriter(1024, 0), html).getContent();
+
+    assertTrue(content, content.contains("<img src=\"data:image/png;base64,iVBORw==\">"));
+    assertTrue(content, content.contains("<style type=\"text/css\">" + CSS + "</style>"));
+    assertTrue(content, content.contains("<script>" + JS + "</script>"));
+    assertFalse(content, content.contains("integrity"));
+    assertFalse(content, content.contains("crossorigin"));
+  }
+
+  public void testDisabled() throws Exception {
+    Map<String, HttpResponse> resources = Maps.newHashMap();
+    addResources(resources);
+    for (Map.Entry<String, HttpResponse> entry : resources.entrySet()) {
+      addToCache(entry.getKey(), entry.getValue());
+    }
+
+    MutableContent mc = rewriteContent(createRewriter(0, 0), HTML);
+
+    assertEquals(HTML, mc.getContent());
+    assertFalse(mc.hasParseTree());
+  }
+
+  private class FakeFetcher implements HttpFetcher {
+    private final Map<String, HttpResponse> responses = Maps.newHashMap();
+    private final List<HttpRequest> requests = Lists.newArrayList();
+    private volatile CountDownLatch latch;
+
+    public HttpResponse fetch(HttpRequest request) throws GadgetException {
+      synchronized (requests) {
+        requests.add(request);
+      }
+      if (latch != null) {
+        try {
+          latch.await();
+        } catch (InterruptedException e) {
+          throw new GadgetException(GadgetException.Code.INTERNAL_SERVER_ERROR, e);
+        }
+      }
+      HttpResponse response = responses.get(request.getUri().toString());
+      if (response == null) {
+        return HttpResponse.notFound();
+      }
+      return cache.addResponse(new HttpCacheKey(request), request, response);
+    }
+  }
+}
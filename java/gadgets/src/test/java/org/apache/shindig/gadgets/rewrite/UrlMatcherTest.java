@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.rewrite;
+
+import junit.framework.TestCase;
+
+import java.util.regex.Pattern;
+
+/**
+ * Tests for UrlMatcher
+ */
+public class UrlMatcherTest extends TestCase {
+
+  public void testIncludeAll() {
+    UrlMatcher matcher = new UrlMatcher(".*", null);
+    assertTrue(matcher.matches("http://www.example.org/foo.js"));
+    assertTrue(matcher.matches(""));
+  }
+
+  public void testNoInclude() {
+    assertFalse(new UrlMatcher(null, null).matches("http://www.example.org/"));
+  }
+
+  public void testExcludeAll() {
+    assertFalse(new UrlMatcher(".*", ".*").matches("http://www.example.org/"));
+    assertFalse(new UrlMatcher("example", "foo|").matches("http://www.example.org/"));
+  }
+
+  public void testLiteralAlternatives() {
+    UrlMatcher matcher = new UrlMatcher("\\.js|\\.css|/images/", "\\.example\\.com/");
+    assertTrue(matcher.matches("http://www.example.org/foo.js"));
+    assertTrue(matcher.matches("http://www.example.org/foo.css?v=1"));
+    assertTrue(matcher.matches("http://www.example.org/images/a.png"));
+    assertFalse(matcher.matches("http://www.example.org/a.png"));
+    assertFalse(matcher.matches("http://www.example.com/foo.js"));
+    assertFalse(matcher.matches("http://www.examplexcom/foo.png"));
+  }
+
+  public void testOverlappingLiterals() {
+    // Needs failure links: "abd" isn't found by restarting after "ab" fails to become "abc".
+    UrlMatcher matcher = new UrlMatcher("abc|bd|d\\.e", null);
+    assertTrue(matcher.matches("xabdx"));
+    assertTrue(matcher.matches("aabc"));
+    assertTrue(matcher.matches("ad.e"));
+    assertFalse(matcher.matches("adxe"));
+    assertFalse(matcher.matches("ab"));
+  }
+
+  public void testExcludeFoundAfterInclude() {
+    UrlMatcher matcher = new UrlMatcher("test", "\\.com");
+    assertFalse(matcher.matches("http://www.test.com"));
+    assertTrue(matcher.matches("http://www.test.org"));
+  }
+
+  public void testRegexFallback() {
+    UrlMatcher matcher = new UrlMatcher("^http://[a-z]+\\.example\\.org/", "\\d+\\.png$|private");
+    assertTrue(matcher.matches("http://www.example.org/a.png"));
+    assertFalse(matcher.matches("https://www.example.org/a.png"));
+    assertFalse(matcher.matches("http://www.example.org/1.png"));
+    assertFalse(matcher.matches("http://www.example.org/private/a.png"));
+  }
+
+  public void testMatchesSameAsRegex() {
+    String[] includes = {".*", "test\\.com", "a|b", "foo(bar)?", "[xyz]\\.js|\\.css"};
+    String[] excludes = {null, "test", "\\.js", "b|c", "x.*y"};
+    String[] urls = {"http://test.com/a.js", "http://b.org/xx.css", "foo", "http://c.org/x1y.js",
+        "", "http://www.test.com"};
+    for (String include : includes) {
+      for (String exclude : excludes) {
+        UrlMatcher matcher = new UrlMatcher(include, exclude);
+        for (String url : urls) {
+          boolean expected = Pattern.compile(include).matcher(url).find() &&
+              !(exclude != null && Pattern.compile(exclude).matcher(url).find());
+          assertEquals(include + ", " + exclude + ", " + url, expected, matcher.matches(url));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.gadgets.servlet;
+
+import static org.easymock.EasyMock.expect;
+
+import org.apache.shindig.gadgets.CacheWarmer;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Tests for CacheWarmupServlet.
+ */
+public class CacheWarmupServletTest extends ServletTestFixture {
+  private static final String TOKEN = "secret";
+
+  private final CacheWarmer warmer = mock(CacheWarmer.class);
+  private final CacheWarmupServlet servlet = new CacheWarmupServlet();
+
+  @Override
+  public void setUp() {
+    servlet.setCacheWarmer(warmer);
+  }
+
+  public void testAcceptedWithToken() throws Exception {
+    servlet.setToken(TOKEN);
+    expect(request.getHeader(CacheWarmupServlet.TOKEN_HEADER)).andReturn(TOKEN);
+    expect(warmer.getProgress()).andReturn(null);
+    replay();
+
+    servlet.doGet(request, recorder);
+
+    assertEquals(HttpServletResponse.SC_OK, recorder.getHttpStatusCode());
+    assertEquals("{}", recorder.getResponseAsString());
+  }
+
+  public void testRefusedWithWrongToken() throws Exception {
+    servlet.setToken(TOKEN);
+    expect(request.getHeader(CacheWarmupServlet.TOKEN_HEADER)).andReturn("guess");
+    replay();
+
+    servlet.doGet(request, recorder);
+
+    assertEquals(HttpServletResponse.SC_FORBIDDEN, recorder.getHttpStatusCode());
+  }
+
+  public void testRefusedWithoutToken() throws Exception {
+    servlet.setToken(TOKEN);
+    expect(request.getRemoteAddr()).andReturn("127.0.0.1").anyTimes();
+    replay();
+
+    servlet.doPost(request, recorder);
+
+    assertEquals(HttpServletResponse.SC_FORBIDDEN, recorder.getHttpStatusCode());
+  }
+
+  public void testRefusedWhenNoTokenConfigured() throws Exception {
+    servlet.setToken("");
+    expect(request.getHeader(CacheWarmupServlet.TOKEN_HEADER)).andReturn("").anyTimes();
+    replay();
+
+    servlet.doPost(request, recorder);
+
+    assertEquals(HttpServletResponse.SC_FORBIDDEN, recorder.getHttpStatusCode());
+  }
+}
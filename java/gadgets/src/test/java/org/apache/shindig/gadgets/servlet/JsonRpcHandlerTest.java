@@ -19,7 +19,9 @@
 package org.apache.shindig.gadgets.servlet;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import org.apache.shindig.common.testing.TestExecutorService;
@@ -27,10 +29,12 @@ import org.apache.shindig.common.uri.Uri;
 import org.apache.shindig.gadgets.Gadget;
 import org.apache.shindig.gadgets.GadgetContext;
 import org.apache.shindig.gadgets.GadgetException;
+import org.apache.shindig.gadgets.MessageBundleFactory;
 import org.apache.shindig.gadgets.UrlGenerator;
 import org.apache.shindig.gadgets.process.ProcessingException;
 import org.apache.shindig.gadgets.process.Processor;
 import org.apache.shindig.gadgets.spec.GadgetSpec;
+import org.apache.shindig.gadgets.spec.MessageBundle;
 import org.apache.shindig.gadgets.spec.View;
 
 import com.google.common.collect.Maps;
@@ -44,6 +48,7 @@ import org.junit.Test;
 import java.net.URI;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Locale;
 import java.util.Map;
 
 public class JsonRpcHandlerTest {
@@ -76,11 +81,22 @@ public class JsonRpcHandlerTest {
       "<ModulePrefs title=\"" + SPEC_TITLE2 + "\"/>" +
       "<Content type=\"html\">Hello, world</Content>" +
       "</Module>";
+  private static final String MODULE_SPEC_XML =
+      "<Module>" +
+      "<ModulePrefs title=\"Module __MODULE_ID__\"/>" +
+      "<Content type=\"html\">Hello, world</Content>" +
+      "</Module>";
+  private static final String MESSAGE_SPEC_XML =
+      "<Module>" +
+      "<ModulePrefs title=\"__MSG_title__\"/>" +
+      "<Content type=\"html\">Hello, world</Content>" +
+      "</Module>";
 
   private final FakeProcessor processor = new FakeProcessor();
   private final FakeUrlGenerator urlGenerator = new FakeUrlGenerator();
+  private final FakeMessageBundleFactory bundleFactory = new FakeMessageBundleFactory();
   private final JsonRpcHandler jsonRpcHandler
-      = new JsonRpcHandler(new TestExecutorService(), processor, urlGenerator);
+      = new JsonRpcHandler(new TestExecutorService(), processor, urlGenerator, bundleFactory);
 
   private JSONObject createContext(String lang, String country)
       throws JSONException {
@@ -227,23 +243,171 @@ public class JsonRpcHandlerTest {
     assertTrue("Second gadget not returned!", second);
   }
 
+  @Test
+  public void testDuplicateGadgetsProcessedOnce() throws Exception {
+    JSONArray gadgets = new JSONArray()
+        .put(createGadget(SPEC_URL.toString(), 0, null))
+        .put(createGadget(SPEC_URL.toString(), 1, null))
+        .put(createGadget(SPEC_URL.toString(), 2, null));
+    JSONObject input = new JSONObject()
+        .put("context", createContext("en", "US"))
+        .put("gadgets", gadgets);
+
+    JSONObject response = jsonRpcHandler.process(input);
+
+    JSONArray outGadgets = response.getJSONArray("gadgets");
+    assertEquals(3, outGadgets.length());
+    assertEquals(1, processor.processCount);
+    for (int i = 0; i < 3; ++i) {
+      JSONObject gadget = outGadgets.getJSONObject(i);
+      assertEquals(i, gadget.getInt("moduleId"));
+      assertEquals(SPEC_URL.toString(), gadget.getString("url"));
+      assertEquals(SPEC_TITLE, gadget.getString("title"));
+    }
+  }
+
+  @Test
+  public void testDuplicatesWithDifferentPrefsProcessedSeparately() throws Exception {
+    JSONArray gadgets = new JSONArray()
+        .put(createGadget(SPEC_URL.toString(), 0, null))
+        .put(createGadget(SPEC_URL.toString(), 1, Collections.singletonMap("up_one", "abc")));
+    JSONObject input = new JSONObject()
+        .put("context", createContext("en", "US"))
+        .put("gadgets", gadgets);
+
+    JSONObject response = jsonRpcHandler.process(input);
+
+    assertEquals(2, response.getJSONArray("gadgets").length());
+    assertEquals(2, processor.processCount);
+  }
+
+  @Test
+  public void testModuleDependentGadgetsProcessedPerModule() throws Exception {
+    processor.gadgets.put(SPEC_URL.toJavaUri(), MODULE_SPEC_XML);
+    JSONArray gadgets = new JSONArray()
+        .put(createGadget(SPEC_URL.toString(), 0, null))
+        .put(createGadget(SPEC_URL.toString(), 1, null));
+    JSONObject input = new JSONObject()
+        .put("context", createContext("en", "US"))
+        .put("gadgets", gadgets);
+
+    JSONObject response = jsonRpcHandler.process(input);
+
+    assertEquals(2, response.getJSONArray("gadgets").length());
+    assertEquals(2, processor.processCount);
+  }
+
+  @Test
+  public void testModuleDependentMessagesProcessedPerModule() throws Exception {
+    processor.gadgets.put(SPEC_URL.toJavaUri(), MESSAGE_SPEC_XML);
+    bundleFactory.messages.put("title", "Module __MODULE_ID__");
+    JSONArray gadgets = new JSONArray()
+        .put(createGadget(SPEC_URL.toString(), 0, null))
+        .put(createGadget(SPEC_URL.toString(), 1, null));
+    JSONObject input = new JSONObject()
+        .put("context", createContext("en", "US"))
+        .put("gadgets", gadgets);
+
+    JSONObject response = jsonRpcHandler.process(input);
+
+    assertEquals(2, response.getJSONArray("gadgets").length());
+    assertEquals(2, processor.processCount);
+  }
+
+  @Test
+  public void testModuleIndependentMessagesProcessedOnce() throws Exception {
+    processor.gadgets.put(SPEC_URL.toJavaUri(), MESSAGE_SPEC_XML);
+    bundleFactory.messages.put("title", "Module");
+    JSONArray gadgets = new JSONArray()
+        .put(createGadget(SPEC_URL.toString(), 0, null))
+        .put(createGadget(SPEC_URL.toString(), 1, null));
+    JSONObject input = new JSONObject()
+        .put("context", createContext("en", "US"))
+        .put("gadgets", gadgets);
+
+    JSONObject response = jsonRpcHandler.process(input);
+
+    assertEquals(2, response.getJSONArray("gadgets").length());
+    assertEquals(1, processor.processCount);
+  }
+
+  @Test
+  public void testDuplicateGadgetsWithAnError() throws Exception {
+    JSONArray gadgets = new JSONArray()
+        .put(createGadget(SPEC_URL.toString(), 0, null))
+        .put(createGadget(SPEC_URL.toString(), 1, null));
+    JSONObject input = new JSONObject()
+        .put("context", createContext("en", "US"))
+        .put("gadgets", gadgets);
+
+    processor.exceptions.put(SPEC_URL.toJavaUri(), new ProcessingException("broken"));
+
+    JSONObject response = jsonRpcHandler.process(input);
+
+    JSONArray outGadgets = response.getJSONArray("gadgets");
+    assertEquals(2, outGadgets.length());
+    assertEquals(1, processor.processCount);
+    for (int i = 0; i < 2; ++i) {
+      JSONObject gadget = outGadgets.getJSONObject(i);
+      assertEquals(i, gadget.getInt("moduleId"));
+      assertEquals("broken", gadget.getJSONArray("errors").optString(0));
+    }
+  }
+
+  @Test
+  public void testMetadataCachedOnSpec() throws Exception {
+    JSONArray gadgets = new JSONArray()
+        .put(createGadget(SPEC_URL.toString(), 0, null));
+    JSONObject input = new JSONObject()
+        .put("context", createContext("en", "US"))
+        .put("gadgets", gadgets);
+
+    processor.reuseSpecs = true;
+    urlGenerator.iframeUrl = "http://example.org/first";
+    jsonRpcHandler.process(input);
+
+    JSONObject metadata = (JSONObject) processor.specs.get(SPEC_URL.toJavaUri())
+        .getAttribute(JsonRpcHandler.METADATA_ATTRIBUTE);
+    assertNotNull(metadata);
+    assertFalse(metadata.has("iframeUrl"));
+    assertFalse(metadata.has("moduleId"));
+
+    urlGenerator.iframeUrl = "http://example.org/second";
+    gadgets.put(0, createGadget(SPEC_URL.toString(), 5, null));
+    JSONObject gadget = jsonRpcHandler.process(input).getJSONArray("gadgets").getJSONObject(0);
+
+    assertSame(metadata, processor.specs.get(SPEC_URL.toJavaUri())
+        .getAttribute(JsonRpcHandler.METADATA_ATTRIBUTE));
+    assertEquals("http://example.org/second", gadget.getString("iframeUrl"));
+    assertEquals(5, gadget.getInt("moduleId"));
+    assertEquals(SPEC_TITLE, gadget.getString("title"));
+  }
+
   private static class FakeProcessor extends Processor {
     private final Map<URI, ProcessingException> exceptions = Maps.newHashMap();
     private final Map<URI, String> gadgets = Maps.newHashMap();
+    private final Map<URI, GadgetSpec> specs = Maps.newHashMap();
+    private boolean reuseSpecs = false;
+    private int processCount = 0;
 
     public FakeProcessor() {
       super(null, null, null, null);
     }
 
     @Override
-    public Gadget process(GadgetContext context) throws ProcessingException {
+    public synchronized Gadget process(GadgetContext context) throws ProcessingException {
+      processCount++;
       ProcessingException exception = exceptions.get(context.getUrl());
       if (exception != null) {
         throw exception;
       }
 
       try {
-        GadgetSpec spec = new GadgetSpec(Uri.parse("#"), gadgets.get(context.getUrl()));
+        GadgetSpec spec = reuseSpecs ? specs.get(context.getUrl()) : null;
+        if (spec == null) {
+          spec = new GadgetSpec(Uri.parse("#"), gadgets.get(context.getUrl()));
+          specs.put(context.getUrl(), spec);
+        }
         View view = spec.getView(context.getView());
         return new Gadget()
             .setContext(context)
@@ -255,6 +419,14 @@ public class JsonRpcHandlerTest {
     }
   }
 
+  private static class FakeMessageBundleFactory implements MessageBundleFactory {
+    private final Map<String, String> messages = Maps.newHashMap();
+
+    public MessageBundle getBundle(GadgetSpec spec, Locale locale, boolean ignoreCache) {
+      return new MessageBundle(messages, "ltr");
+    }
+  }
+
   private static class FakeUrlGenerator implements UrlGenerator {
     private boolean throwRandomFault = false;
     private String iframeUrl = "http://example.org/gadgets/foo-does-not-matter";
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.spec;
+
+import org.apache.shindig.common.uri.Uri;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Measures the heap footprint of parsed specs, as held in the spec cache.
+ *
+ * footprintTest is not run by default. Run it directly to get the average number of bytes retained
+ * per cached spec, e.g. before and after a change to the spec classes:
+ *
+ * java junit.textui.TestRunner -m org.apache.shindig.gadgets.spec.GadgetSpecFootprintTest.footprintTest
+ */
+public class GadgetSpecFootprintTest extends TestCase {
+  private static final int SPEC_COUNT = 2000;
+
+  /**
+   * A typical directory gadget: a handful of prefs and features, a couple of inline message
+   * bundles and two views of moderately sized content.
+   */
+  static String makeSpecXml(int id) {
+    String content = StringUtils.repeat(
+        "<div class='item'><a href='__UP_link__'>__MSG_item__</a> <span>text</span></div>\n", 40);
+    return "<?xml version='1.0' encoding='UTF-8'?>" +
+        "<Module>" +
+        "<ModulePrefs title='__MSG_title__ " + id + "' title_url='http://example.org/'" +
+        "    description='__MSG_description__' author='Author' author_email='a@example.org'" +
+        "    screenshot='http://example.org/s.png' thumbnail='http://example.org/t.png'" +
+        "    height='250' scrolling='true' category='tools'>" +
+        "  <Require feature='opensocial-0.8'/>" +
+        "  <Require feature='dynamic-height'/>" +
+        "  <Require feature='setprefs'/>" +
+        "  <Optional feature='views'/>" +
+        "  <Preload href='http://example.org/data.json'/>" +
+        "  <Icon>http://example.org/icon.png</Icon>" +
+        "  <Locale>" +
+        "    <msg name='title'>Title</msg>" +
+        "    <msg name='description'>A description of the gadget.</msg>" +
+        "    <msg name='item'>Item</msg>" +
+        "  </Locale>" +
+        "  <Locale lang='fr'>" +
+        "    <msg name='title'>Titre</msg>" +
+        "    <msg name='description'>Une description du gadget.</msg>" +
+        "    <msg name='item'>Element</msg>" +
+        "  </Locale>" +
+        "  <Locale lang='de' messages='http://example.org/de.xml'/>" +
+        "</ModulePrefs>" +
+        "<UserPref name='link' display_name='Link' default_value='http://example.org/'/>" +
+        "<UserPref name='count' display_name='Count' datatype='enum' default_value='5'>" +
+        "  <EnumValue value='5'/><EnumValue value='10'/><EnumValue value='20'/>" +
+        "</UserPref>" +
+        "<UserPref name='hidden' datatype='hidden'/>" +
+        "<Content type='html' view='home,profile'><![CDATA[" + content + "]]></Content>" +
+        "<Content type='html' view='canvas'><![CDATA[" + content + content + "]]></Content>" +
+        "</Module>";
+  }
+
+  private static long usedHeap() throws InterruptedException {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 5; ++i) {
+      System.gc();
+      Thread.sleep(50);
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  public void testSpecsParse() throws Exception {
+    GadgetSpec spec = new GadgetSpec(Uri.parse("http://example.org/0.xml"), makeSpecXml(0));
+    assertEquals(3, spec.getViews().size());
+    assertEquals(3, spec.getUserPrefs().size());
+  }
+
+  public void testViewsFromSameContentShareIt() throws Exception {
+    GadgetSpec spec = new GadgetSpec(Uri.parse("http://example.org/0.xml"), makeSpecXml(0));
+    assertSame(spec.getView("home").getContent(), spec.getView("profile").getContent());
+    assertNotSame(spec.getView("home").getContent(), spec.getView("canvas").getContent());
+  }
+
+  public void footprintTest() throws Exception {
+    String[] xml = new String[SPEC_COUNT];
+    for (int i = 0; i < SPEC_COUNT; ++i) {
+      xml[i] = makeSpecXml(i);
+    }
+
+    GadgetSpec[] specs = new GadgetSpec[SPEC_COUNT];
+    long before = usedHeap();
+    for (int i = 0; i < SPEC_COUNT; ++i) {
+      specs[i] = new GadgetSpec(Uri.parse("http://example.org/" + i + ".xml"), xml[i]);
+    }
+    long after = usedHeap();
+
+    System.out.println("Specs: " + specs.length + ", spec xml: " + xml[0].length() +
+        " chars, retained heap per spec: " + (after - before) / SPEC_COUNT + " bytes");
+  }
+}
@@ -27,14 +27,22 @@ import org.apache.shindig.gadgets.variables.Substitutions.Type;
 import junit.framework.TestCase;
 
 public class GadgetSpecTest extends TestCase {
-  private static final Uri SPEC_URL = Uri.parse("http://example.org/g.xml");
+  static final Uri SPEC_URL = Uri.parse("http://example.org/g.xml");
+
+  /**
+   * Parses a spec at SPEC_URL. Overridden to run these tests against other parsers.
+   */
+  protected GadgetSpec parse(String xml) throws SpecParserException {
+    return new GadgetSpec(SPEC_URL, xml);
+  }
+
   public void testBasic() throws Exception {
     String xml = "<Module>" +
                  "<ModulePrefs title=\"title\"/>" +
                  "<UserPref name=\"foo\" datatype=\"string\"/>" +
                  "<Content type=\"html\">Hello!</Content>" +
                  "</Module>";
-    GadgetSpec spec = new GadgetSpec(SPEC_URL, xml);
+    GadgetSpec spec = parse(xml);
     assertEquals("title", spec.getModulePrefs().getTitle());
     assertEquals(UserPref.DataType.STRING,
         spec.getUserPrefs().get(0).getDataType());
@@ -48,7 +56,7 @@ public class GadgetSpecTest extends TestCase {
                  "<Content type=\"html\" view=\"world\">world</Content>" +
                  "<Content type=\"html\" view=\"hello, test\">test</Content>" +
                  "</Module>";
-    GadgetSpec spec = new GadgetSpec(SPEC_URL, xml);
+    GadgetSpec spec = parse(xml);
     assertEquals("hello test", spec.getView("hello").getContent());
     assertEquals("world", spec.getView("world").getContent());
     assertEquals("test", spec.getView("test").getContent());
@@ -59,7 +67,7 @@ public class GadgetSpecTest extends TestCase {
                  "<Content type=\"html\"/>" +
                  "</Module>";
     try {
-      new GadgetSpec(SPEC_URL, xml);
+      parse(xml);
       fail("No exception thrown when ModulePrefs is missing.");
     } catch (SpecParserException e) {
       // OK
@@ -73,7 +81,7 @@ public class GadgetSpecTest extends TestCase {
                  "<Content type=\"html\"/>" +
                  "</Module>";
     try {
-      new GadgetSpec(SPEC_URL, xml);
+      parse(xml);
       fail("No exception thrown when more than 1 ModulePrefs is specified.");
     } catch (SpecParserException e) {
       // OK
@@ -83,7 +91,7 @@ public class GadgetSpecTest extends TestCase {
   public void testMalformedXml() throws Exception {
     String xml = "<Module><ModulePrefs/>";
     try {
-      new GadgetSpec(SPEC_URL, xml);
+      parse(xml);
       fail("No exception thrown on malformed XML.");
     } catch (SpecParserException e) {
       // OK
@@ -103,7 +111,7 @@ public class GadgetSpecTest extends TestCase {
     substituter.addSubstitution(Type.USER_PREF, "title", title);
     substituter.addSubstitution(Type.MESSAGE, "content", content);
 
-    GadgetSpec spec = new GadgetSpec(SPEC_URL, xml).substitute(substituter);
+    GadgetSpec spec = parse(xml).substitute(substituter);
     assertEquals(title, spec.getModulePrefs().getTitle());
     assertEquals(content, spec.getView(GadgetSpec.DEFAULT_VIEW).getContent());
   }
@@ -20,9 +20,11 @@
 package org.apache.shindig.gadgets.spec;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 import org.apache.shindig.common.uri.Uri;
 import org.apache.shindig.common.xml.XmlUtil;
+import org.apache.shindig.gadgets.variables.Substitutions;
 
 import com.google.common.collect.Maps;
 
@@ -32,6 +34,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.w3c.dom.Element;
 
+import java.util.EnumSet;
 import java.util.Map;
 
 public class MessageBundleTest {
@@ -157,4 +160,22 @@ public class MessageBundleTest {
     JSONObject fromMap = new JSONObject(bundle.getMessages());
     assertJsonEquals(fromString, fromMap);
   }
+
+  @Test
+  public void checksumDistinguishesMessages() throws Exception {
+    MessageBundle bundle = new MessageBundle(locale, XML);
+    assertEquals(bundle.getChecksum(), new MessageBundle(locale, XML).getChecksum());
+    assertFalse(bundle.getChecksum().equals(
+        new MessageBundle(XmlUtil.parse(PARENT_LOCALE)).getChecksum()));
+  }
+
+  @Test
+  public void substitutionTypesFromValues() throws Exception {
+    Map<String, String> messages = Maps.newHashMap();
+    messages.put("title", "Module __MODULE_ID__ for __UP_name__");
+    assertEquals(EnumSet.of(Substitutions.Type.MODULE, Substitutions.Type.USER_PREF),
+        new MessageBundle(messages, "ltr").getSubstitutionTypes());
+    assertEquals(EnumSet.noneOf(Substitutions.Type.class),
+        new MessageBundle(locale, XML).getSubstitutionTypes());
+  }
 }
@@ -57,6 +57,25 @@ public class PreloadTest {
                preload.isSignViewer());
   }
 
+  @Test
+  public void timeout() throws Exception {
+    String xml = "<Preload href='" + HREF + "' timeout='250'/>";
+
+    Preload preload = new Preload(XmlUtil.parse(xml), SPEC_URL);
+
+    assertEquals(250, preload.getTimeout());
+    assertEquals(0, preload.getAttributes().size());
+  }
+
+  @Test
+  public void timeoutDefault() throws Exception {
+    String xml = "<Preload href='" + HREF + "'/>";
+
+    Preload preload = new Preload(XmlUtil.parse(xml), SPEC_URL);
+
+    assertEquals(-1, preload.getTimeout());
+  }
+
   @Test
   public void authzSigned() throws Exception {
     String xml = "<Preload href='" + HREF + "' authz='signed'/>";
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.shindig.gadgets.spec;
+
+import org.apache.shindig.gadgets.GadgetException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+/**
+ * Runs the GadgetSpec tests against StaxGadgetSpecParser, and verifies that it produces the same
+ * specs as the DOM parser.
+ */
+public class StaxGadgetSpecParserTest extends GadgetSpecTest {
+  private static final Logger LOG = Logger.getLogger(StaxGadgetSpecParserTest.class.getName());
+  private static final String FULL_SPEC =
+      "<?xml version='1.0' encoding='UTF-8'?>\n" +
+      "<!DOCTYPE Module [<!ENTITY greeting 'Hello'>]>\n" +
+      "<!-- A comment before the document element. -->\n" +
+      "<Module>\n" +
+      "  <ModulePrefs title='&greeting; __MSG_title__' description='desc'\n" +
+      "      author_email='foo@example.org' height='200' xmlns:os='http://example.org/os'>\n" +
+      "    <Require feature='opensocial-0.8'><Param name='p'>v</Param></Require>\n" +
+      "    <Optional feature='dynamic-height'/>\n" +
+      "    <Preload href='http://example.org/preload' authz='signed' timeout='50'/>\n" +
+      "    <Icon mode='base64' type='image/png'>  aWNvbg==  </Icon>\n" +
+      "    <Link rel='icon' href='/icon.png'/>\n" +
+      "    <!-- Comments inside of metadata are ignored. -->\n" +
+      "    <Locale lang='en' country='US'>\n" +
+      "      <msg name='title'>Title</msg>\n" +
+      "      <msg name='cdata'><![CDATA[<b>bold</b>]]></msg>\n" +
+      "    </Locale>\n" +
+      "    <Locale lang='fr' messages='http://example.org/fr.xml'/>\n" +
+      "  </ModulePrefs>\n" +
+      "  <UserPref name='color' display_name='Color' datatype='enum' default_value='red'>\n" +
+      "    <EnumValue value='red' display_value='Red'/>\n" +
+      "    <EnumValue value='blue'/>\n" +
+      "  </UserPref>\n" +
+      "  <UserPref name='hidden' datatype='hidden'/>\n" +
+      "  <Content type='html' view='home,canvas' preferred_height='100' quirks='false'>\n" +
+      "    <![CDATA[<div id='a'>&amp; __UP_color__</div>]]>\n" +
+      "  </Content>\n" +
+      "  <Content type='html' view='canvas'>more &lt;canvas&gt; <b>markup</b>" +
+      "<!-- dropped -->text</Content>\n" +
+      "  <Content type='url' view='profile' href='http://example.org/profile.html'/>\n" +
+      "  <Content view='empty' type='html' custom='attr'></Content>\n" +
+      "</Module>";
+
+  private final StaxGadgetSpecParser parser = new StaxGadgetSpecParser();
+
+  @Override
+  protected GadgetSpec parse(String xml) throws SpecParserException {
+    return parser.parse(SPEC_URL, xml);
+  }
+
+  private static void assertSameSpec(GadgetSpec expected, GadgetSpec actual) {
+    assertEquals(expected.getChecksum(), actual.getChecksum());
+    assertEquals(expected.getSubstitutionTypes(), actual.getSubstitutionTypes());
+    assertEquals(expected.toString(), actual.toString());
+    assertEquals(expected.getViews().keySet(), actual.getViews().keySet());
+    for (View view : expected.getViews().values()) {
+      View other = actual.getView(view.getName());
+      assertEquals(view.getContent(), other.getContent());
+      assertEquals(view.getAttributes(), other.getAttributes());
+    }
+    assertEquals(expected.getModulePrefs().getLocales().keySet(),
+        actual.getModulePrefs().getLocales().keySet());
+    for (LocaleSpec locale : expected.getModulePrefs().getLocales().values()) {
+      LocaleSpec other = actual.getModulePrefs().getLocales().get(
+          new Locale(locale.getLanguage(), locale.getCountry()));
+      assertEquals(locale.getMessageBundle().getMessages(),
+          other.getMessageBundle().getMessages());
+    }
+  }
+
+  public void testSameAsDomParser() throws Exception {
+    GadgetSpec expected = new DomGadgetSpecParser().parse(SPEC_URL, FULL_SPEC);
+    GadgetSpec actual = parse(FULL_SPEC);
+    assertSameSpec(expected, actual);
+    assertEquals("Hello __MSG_title__", actual.getModulePrefs().getTitle());
+    assertEquals("<b>bold</b>", actual.getModulePrefs().getLocale(new Locale("en", "US"))
+        .getMessageBundle().getMessages().get("cdata"));
+    assertTrue(actual.getView("canvas").getContent().endsWith("more <canvas> markuptext"));
+  }
+
+  public void testEmptyDocument() throws Exception {
+    try {
+      parse("");
+      fail("No exception thrown on empty document.");
+    } catch (SpecParserException e) {
+      assertEquals(GadgetException.Code.MALFORMED_XML_DOCUMENT, e.getCode());
+    }
+  }
+
+  public void testExternalEntitiesNotLoaded() throws Exception {
+    File secret = File.createTempFile("secret", ".txt");
+    secret.deleteOnExit();
+    FileUtils.writeStringToFile(secret, "secret");
+    String xml = "<!DOCTYPE Module [<!ENTITY ext SYSTEM '" + secret.toURI() + "'>]>" +
+                 "<Module><ModulePrefs title='title'/><Content>&ext;</Content></Module>";
+    // The reference is dropped, as with the DOM parser.
+    assertEquals("", parse(xml).getView(GadgetSpec.DEFAULT_VIEW).getContent());
+    assertEquals("", new DomGadgetSpecParser().parse(SPEC_URL, xml)
+        .getView(GadgetSpec.DEFAULT_VIEW).getContent());
+  }
+
+  public void testExternalDtdNotLoaded() throws Exception {
+    File dtd = File.createTempFile("spec", ".dtd");
+    dtd.deleteOnExit();
+    FileUtils.writeStringToFile(dtd, "<!ENTITY greeting 'from the dtd'>");
+    String xml = "<!DOCTYPE Module SYSTEM '" + dtd.toURI() + "'>" +
+                 "<Module><ModulePrefs title='title'/><Content>&greeting;</Content></Module>";
+    try {
+      GadgetSpec spec = parse(xml);
+      fail("External DTD was loaded, content: " +
+          spec.getView(GadgetSpec.DEFAULT_VIEW).getContent());
+    } catch (SpecParserException e) {
+      assertEquals(GadgetException.Code.MALFORMED_XML_DOCUMENT, e.getCode());
+    }
+  }
+
+  /**
+   * Compares the two parsers on a large spec. Not run by default.
+   */
+  public void loadTest() throws Exception {
+    String content = StringUtils.repeat("<div class='row'>Some &amp; content</div>\n", 10000);
+    String xml = FULL_SPEC.replace("more &lt;canvas&gt;", "<![CDATA[" + content + "]]>");
+    DomGadgetSpecParser domParser = new DomGadgetSpecParser();
+    for (int i = 0; i < 50; ++i) {
+      domParser.parse(SPEC_URL, xml);
+      parser.parse(SPEC_URL, xml);
+    }
+
+    int cnt = 200;
+    long now = System.nanoTime();
+    for (int i = 0; i < cnt; ++i) {
+      domParser.parse(SPEC_URL, xml);
+    }
+    long domDuration = System.nanoTime() - now;
+
+    now = System.nanoTime();
+    for (int i = 0; i < cnt; ++i) {
+      parser.parse(SPEC_URL, xml);
+    }
+    long staxDuration = System.nanoTime() - now;
+    LOG.info("Spec size: " + xml.length() + " DOM avg: " + domDuration / cnt +
+        " StAX avg: " + staxDuration / cnt);
+  }
+}
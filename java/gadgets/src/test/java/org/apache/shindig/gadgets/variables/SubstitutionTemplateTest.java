@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.shindig.gadgets.variables;
+
+import org.apache.shindig.gadgets.variables.Substitutions.Type;
+
+import com.google.common.collect.Maps;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+
+public class SubstitutionTemplateTest extends TestCase {
+  private Substitutions subst;
+
+  @Override
+  public void setUp() {
+    subst = new Substitutions();
+    subst.addSubstitution(Type.MESSAGE, "world", "planet __BIDI_DIR__-__UP_planet__ __MSG_x__");
+    subst.addSubstitution(Type.MESSAGE, "x", "X");
+    subst.addSubstitution(Type.BIDI, "DIR", "rtl");
+    subst.addSubstitution(Type.USER_PREF, "hello", "Greetings __MSG_x__");
+    subst.addSubstitution(Type.USER_PREF, "planet", "Earth");
+    subst.addSubstitution(Type.MODULE, "ID", "3");
+  }
+
+  private void assertSameAsSubstituteString(String input) {
+    assertEquals(subst.substituteString(input),
+        SubstitutionTemplate.compile(input).substitute(subst));
+  }
+
+  public void testConstant() throws Exception {
+    String input = "No placeholders here.";
+    SubstitutionTemplate template = SubstitutionTemplate.compile(input);
+    assertTrue(template.isConstant());
+    assertSame(input, template.substitute(subst));
+  }
+
+  public void testUnknownMarkersAreConstant() throws Exception {
+    String input = "foo __bar__ __weeeeee";
+    SubstitutionTemplate template = SubstitutionTemplate.compile(input);
+    assertTrue(template.isConstant());
+    assertSame(input, template.substitute(subst));
+  }
+
+  public void testNull() throws Exception {
+    assertNull(SubstitutionTemplate.compile((String) null).substitute(subst));
+  }
+
+  public void testAllTypes() throws Exception {
+    String input = "__UP_hello__, __MSG_world__! (__MODULE_ID__, __BIDI_DIR__)";
+    SubstitutionTemplate template = SubstitutionTemplate.compile(input);
+    assertFalse(template.isConstant());
+    assertEquals(input, template.getInput());
+    assertEquals("Greetings __MSG_x__, planet rtl-Earth __MSG_x__! (3, rtl)",
+        template.substitute(subst));
+    assertSameAsSubstituteString(input);
+  }
+
+  public void testMissingSubstitutionsKept() throws Exception {
+    assertSameAsSubstituteString("__MSG_missing__ and __UP_missing__");
+  }
+
+  public void testEdgeCases() throws Exception {
+    assertSameAsSubstituteString("");
+    assertSameAsSubstituteString("__");
+    assertSameAsSubstituteString("____");
+    assertSameAsSubstituteString("__MSG_x____UP_planet__");
+    assertSameAsSubstituteString("text __MSG_x__ __ trailing __UP_planet");
+    assertSameAsSubstituteString("__foo__MSG_x__");
+  }
+
+  public void testReusable() throws Exception {
+    SubstitutionTemplate template = SubstitutionTemplate.compile("Hello, __UP_planet__!");
+    assertEquals("Hello, Earth!", template.substitute(subst));
+
+    Substitutions other = new Substitutions();
+    other.addSubstitution(Type.USER_PREF, "planet", "Mars");
+    assertEquals("Hello, Mars!", template.substitute(other));
+  }
+
+  public void testMaps() throws Exception {
+    Map<String, String> input = Maps.newHashMap();
+    input.put("one", "__UP_planet__");
+    input.put("two", "two");
+    Map<String, SubstitutionTemplate> templates = SubstitutionTemplate.compile(input);
+    assertEquals(1, templates.size());
+    Map<String, String> output = SubstitutionTemplate.substitute(input, templates, subst);
+    assertEquals(2, output.size());
+    assertEquals("Earth", output.get("one"));
+    assertEquals("two", output.get("two"));
+  }
+
+  public void testRepeatedPlaceholders() throws Exception {
+    assertSameAsSubstituteString("__UP_planet__ __MSG_x__ __UP_planet__ __MSG_x__");
+  }
+}
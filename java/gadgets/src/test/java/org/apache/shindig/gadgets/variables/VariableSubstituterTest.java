@@ -19,7 +19,10 @@
 package org.apache.shindig.gadgets.variables;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
+import org.apache.shindig.common.cache.LruCacheProvider;
 import org.apache.shindig.common.uri.Uri;
 import org.apache.shindig.gadgets.GadgetContext;
 import org.apache.shindig.gadgets.GadgetException;
@@ -38,6 +41,8 @@ import java.util.Locale;
 public class VariableSubstituterTest {
   private final FakeMessageBundleFactory messageBundleFactory = new FakeMessageBundleFactory();
   private final VariableSubstituter substituter = new VariableSubstituter(messageBundleFactory);
+  private final VariableSubstituter cachingSubstituter
+      = new VariableSubstituter(messageBundleFactory, new LruCacheProvider(10));
 
   private GadgetSpec substitute(String xml) throws Exception {
     return substituter.substitute(new GadgetContext(), new GadgetSpec(Uri.parse("#"), xml));
@@ -95,6 +100,113 @@ public class VariableSubstituterTest {
     assertEquals("I heart shindig", spec.getModulePrefs().getTitle());
   }
 
+  private static GadgetContext makeContext(final int moduleId, final boolean ignoreCache,
+      final String foo) {
+    return new GadgetContext() {
+      @Override
+      public int getModuleId() {
+        return moduleId;
+      }
+
+      @Override
+      public boolean getIgnoreCache() {
+        return ignoreCache;
+      }
+
+      @Override
+      public UserPrefs getUserPrefs() {
+        return new UserPrefs(Maps.immutableMap("foo", foo));
+      }
+    };
+  }
+
+  @Test
+  public void substitutedSpecCached() throws Exception {
+    String xml =
+        "<Module><ModulePrefs title='__MSG_foo__ __BIDI_DIR__'>" +
+        "  <Locale><msg name='foo'>bar</msg></Locale>" +
+        "</ModulePrefs>" +
+        "<Content/>" +
+        "</Module>";
+    GadgetSpec spec = new GadgetSpec(Uri.parse("#"), xml);
+
+    GadgetSpec first = cachingSubstituter.substitute(makeContext(1, false, "a"), spec);
+    GadgetSpec second = cachingSubstituter.substitute(makeContext(2, false, "b"), spec);
+
+    assertEquals("bar ltr", first.getModulePrefs().getTitle());
+    assertSame(first, second);
+  }
+
+  @Test
+  public void substitutedSpecKeyedByModuleId() throws Exception {
+    String xml = "<Module><ModulePrefs title='Module is: __MODULE_ID__'/><Content/></Module>";
+    GadgetSpec spec = new GadgetSpec(Uri.parse("#"), xml);
+
+    GadgetSpec first = cachingSubstituter.substitute(makeContext(1, false, "a"), spec);
+    GadgetSpec second = cachingSubstituter.substitute(makeContext(2, false, "a"), spec);
+    GadgetSpec third = cachingSubstituter.substitute(makeContext(1, false, "a"), spec);
+
+    assertEquals("Module is: 1", first.getModulePrefs().getTitle());
+    assertEquals("Module is: 2", second.getModulePrefs().getTitle());
+    assertSame(first, third);
+  }
+
+  @Test
+  public void substitutedSpecKeyedByTypesInMessages() throws Exception {
+    String xml =
+        "<Module><ModulePrefs title='__MSG_foo__'>" +
+        "  <Locale><msg name='foo'>Module is: __MODULE_ID__</msg></Locale>" +
+        "</ModulePrefs>" +
+        "<Content/>" +
+        "</Module>";
+    GadgetSpec spec = new GadgetSpec(Uri.parse("#"), xml);
+
+    GadgetSpec first = cachingSubstituter.substitute(makeContext(1, false, "a"), spec);
+    GadgetSpec second = cachingSubstituter.substitute(makeContext(2, false, "a"), spec);
+
+    assertEquals("Module is: 1", first.getModulePrefs().getTitle());
+    assertEquals("Module is: 2", second.getModulePrefs().getTitle());
+  }
+
+  @Test
+  public void userPrefDependentSpecNotCached() throws Exception {
+    String xml = "<Module>" +
+                 "<ModulePrefs title='I heart __UP_foo__'/>" +
+                 "<UserPref name='foo'/>" +
+                 "<Content/>" +
+                 "</Module>";
+    GadgetSpec spec = new GadgetSpec(Uri.parse("#"), xml);
+
+    GadgetSpec first = cachingSubstituter.substitute(makeContext(0, false, "shindig"), spec);
+    GadgetSpec second = cachingSubstituter.substitute(makeContext(0, false, "caja"), spec);
+
+    assertEquals("I heart shindig", first.getModulePrefs().getTitle());
+    assertEquals("I heart caja", second.getModulePrefs().getTitle());
+  }
+
+  @Test
+  public void undeclaredUserPrefsCached() throws Exception {
+    String xml = "<Module><ModulePrefs title='I heart __UP_foo__'/><Content/></Module>";
+    GadgetSpec spec = new GadgetSpec(Uri.parse("#"), xml);
+
+    GadgetSpec first = cachingSubstituter.substitute(makeContext(0, false, "shindig"), spec);
+    GadgetSpec second = cachingSubstituter.substitute(makeContext(0, false, "caja"), spec);
+
+    assertEquals("I heart __UP_foo__", first.getModulePrefs().getTitle());
+    assertSame(first, second);
+  }
+
+  @Test
+  public void ignoreCacheBypassesCache() throws Exception {
+    String xml = "<Module><ModulePrefs title='foo'/><Content/></Module>";
+    GadgetSpec spec = new GadgetSpec(Uri.parse("#"), xml);
+
+    GadgetSpec first = cachingSubstituter.substitute(makeContext(0, false, "a"), spec);
+    GadgetSpec second = cachingSubstituter.substitute(makeContext(0, true, "a"), spec);
+
+    assertNotSame(first, second);
+  }
+
   private static class FakeMessageBundleFactory implements MessageBundleFactory {
 
     public MessageBundle getBundle(GadgetSpec spec, Locale locale, boolean ignoreCache)